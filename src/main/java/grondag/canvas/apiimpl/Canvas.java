@@ -42,6 +42,7 @@ import grondag.canvas.perf.ChunkRebuildCounters;
 import grondag.canvas.perf.Timekeeper;
 import grondag.canvas.pipeline.Pipeline;
 import grondag.canvas.pipeline.config.PipelineLoader;
+import grondag.canvas.render.terrain.TerrainQuadTemplate;
 import grondag.canvas.shader.GlProgramManager;
 import grondag.canvas.shader.GlShader;
 import grondag.canvas.shader.GlShaderManager;
@@ -74,6 +75,7 @@ public class Canvas implements Renderer {
 		ItemRenderContext.reload();
 		ChunkRebuildCounters.reset();
 		ChunkColorCache.invalidate();
+		TerrainQuadTemplate.clear();
 		AoVertexClampFunction.reload();
 
 		recompile();
@@ -33,6 +33,9 @@ public abstract class AbstractEncodingContext implements EncodingContext {
 	protected Matrix4f matrix;
 	protected FastMatrix3f normalMatrix;
 	protected int overlay;
+	protected float blockOffsetX;
+	protected float blockOffsetY;
+	protected float blockOffsetZ;
 
 	@Override
 	public final int overlay() {
@@ -58,4 +61,19 @@ public abstract class AbstractEncodingContext implements EncodingContext {
 	public final int sectorRelativeRegionOrigin() {
 		return sectorRelativeRegionOrigin;
 	}
+
+	@Override
+	public final float blockOffsetX() {
+		return blockOffsetX;
+	}
+
+	@Override
+	public final float blockOffsetY() {
+		return blockOffsetY;
+	}
+
+	@Override
+	public final float blockOffsetZ() {
+		return blockOffsetZ;
+	}
 }
@@ -26,18 +26,17 @@ import static grondag.canvas.buffer.format.EncoderUtils.colorizeQuad;
 import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
 import org.jetbrains.annotations.Nullable;
 
-import com.mojang.blaze3d.vertex.PoseStack;
-
 import net.minecraft.CrashReport;
 import net.minecraft.CrashReportCategory;
 import net.minecraft.ReportedException;
+import net.minecraft.client.resources.model.SimpleBakedModel;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
 import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.block.entity.BlockEntity;
 import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.phys.Vec3;
 
-import io.vram.frex.api.math.FastMatrix3f;
 import io.vram.frex.api.model.BlockModel;
 import io.vram.frex.api.model.util.FaceUtil;
 import io.vram.frex.base.renderer.mesh.BaseQuadEmitter;
@@ -47,7 +46,9 @@ import grondag.canvas.config.Configurator;
 import grondag.canvas.light.AoCalculator;
 import grondag.canvas.light.LightSmoother;
 import grondag.canvas.material.state.CanvasRenderMaterial;
+import grondag.canvas.render.terrain.TerrainFaceMerger;
 import grondag.canvas.render.terrain.TerrainFormat;
+import grondag.canvas.render.terrain.TerrainQuadTemplate;
 import grondag.canvas.terrain.region.input.InputRegion;
 import grondag.canvas.terrain.region.input.PackedInputRegion;
 import grondag.canvas.terrain.util.RenderRegionStateIndexer;
@@ -83,10 +84,26 @@ public class TerrainRenderContext extends AbstractBlockRenderContext<InputRegion
 	private int cullCompletionFlags;
 	private int cullResultFlags;
 
+	/** Non-null while the quads of a block state are captured for a template. */
+	@Nullable private TerrainQuadTemplate.Builder templateBuilder;
+
+	/** Block models rendered from a quad template in the current build. */
+	public int templateModelCount;
+	/** Block models rendered by the model in the current build. */
+	public int emittedModelCount;
+
+	/** True if full faces of the current build should be merged after all blocks are encoded. */
+	public boolean mergeFaces;
+	public final TerrainFaceMerger faceMerger = new TerrainFaceMerger();
+
 	public TerrainRenderContext() {
 		super("TerrainRenderContext");
 		region = new InputRegion(this);
 		collectors = new VertexCollectorList(true);
+
+		// terrain encoding uses the block offset instead, these never change
+		matrix = AbsentEncodingContext.INSTANCE.matrix();
+		normalMatrix = AbsentEncodingContext.INSTANCE.normalMatrix();
 	}
 
 	public TerrainRenderContext prepareForRegion(PackedInputRegion protoRegion) {
@@ -95,6 +112,9 @@ public class TerrainRenderContext extends AbstractBlockRenderContext<InputRegion
 		removedBlockEntities.clear();
 		region.prepare(protoRegion);
 		animationBits.clear();
+		templateModelCount = 0;
+		emittedModelCount = 0;
+		mergeFaces = Configurator.mergeTerrainFaces;
 
 		if (Configurator.lightSmoothing) {
 			//            final long start = counter.startRun();
@@ -104,30 +124,61 @@ public class TerrainRenderContext extends AbstractBlockRenderContext<InputRegion
 		return this;
 	}
 
-	public void renderFluid(BlockState blockState, BlockPos blockPos, boolean defaultAo, final BlockModel model, PoseStack matrixStack) {
+	public void renderFluid(BlockState blockState, BlockPos blockPos, boolean defaultAo, final BlockModel model) {
 		isFluidModel = true;
-		renderInner(blockState, blockPos, defaultAo, model, matrixStack);
+		setBlockOffset(blockPos);
+		renderInner(blockState, blockPos, defaultAo, model, false);
 	}
 
-	public void renderBlock(BlockState blockState, BlockPos blockPos, boolean defaultAo, final BlockModel model, PoseStack matrixStack) {
+	/**
+	 * @param hasOffset true if the block type has a random model offset, as from {@link Block#getOffsetType()}
+	 */
+	public void renderBlock(BlockState blockState, BlockPos blockPos, boolean defaultAo, final BlockModel model, boolean hasOffset) {
 		isFluidModel = false;
-		renderInner(blockState, blockPos, defaultAo, model, matrixStack);
-	}
+		setBlockOffset(blockPos);
 
-	// PERF: don't pass in matrixStack each time, just change model matrix directly
-	private void renderInner(BlockState blockState, BlockPos blockPos, boolean defaultAo, final BlockModel model, PoseStack matrixStack) {
-		matrix = matrixStack.last().pose();
+		if (hasOffset) {
+			final Vec3 vec3d = blockState.getOffset(region, blockPos);
 
-		// PERF: can probably grab this at prepare
-		normalMatrix = (FastMatrix3f) (Object) matrixStack.last().normal();
+			if (vec3d != Vec3.ZERO) {
+				blockOffsetX += (float) vec3d.x;
+				blockOffsetY += (float) vec3d.y;
+				blockOffsetZ += (float) vec3d.z;
+			}
+		}
 
+		// Vanilla simple models give the same quads for every block with the same state.
+		// Weighted variants use a position-dependent random, and models from mods may emit anything.
+		final boolean useTemplate = !hasOffset && Configurator.terrainQuadTemplates && model.getClass() == SimpleBakedModel.class;
+		renderInner(blockState, blockPos, defaultAo, model, useTemplate);
+	}
+
+	/**
+	 * Vertex positions are relative to the region origin, which is always
+	 * a multiple of 16, so the block offset is the low bits of the position.
+	 * Terrain encoding adds this directly instead of using a matrix.
+	 */
+	private void setBlockOffset(BlockPos blockPos) {
+		blockOffsetX = blockPos.getX() & 0xF;
+		blockOffsetY = blockPos.getY() & 0xF;
+		blockOffsetZ = blockPos.getZ() & 0xF;
+	}
+
+	private void renderInner(BlockState blockState, BlockPos blockPos, boolean defaultAo, final BlockModel model, boolean useTemplate) {
 		try {
 			aoCalc.prepare(RenderRegionStateIndexer.interiorIndex(blockPos));
 			prepareForBlock(blockState, blockPos, defaultAo, -1);
 			cullCompletionFlags = 0;
 			cullResultFlags = 0;
-			model.renderAsBlock(this, emitter());
+
+			if (useTemplate) {
+				renderTemplate(model);
+			} else {
+				++emittedModelCount;
+				model.renderAsBlock(this, emitter());
+			}
 		} catch (final Throwable var9) {
+			templateBuilder = null;
 			final CrashReport crashReport_1 = CrashReport.forThrowable(var9, "Tesselating block in world - Canvas Renderer");
 			final CrashReportCategory crashReportElement_1 = crashReport_1.addCategory("Block being tesselated");
 			CrashReportCategory.populateBlockDetails(crashReportElement_1, region, blockPos, blockState);
@@ -135,6 +186,49 @@ public class TerrainRenderContext extends AbstractBlockRenderContext<InputRegion
 		}
 	}
 
+	/**
+	 * Renders the current block from the quad template of its state, capturing
+	 * the template from the model first if needed. Only light, AO, tint and
+	 * position are computed for each block.
+	 */
+	private void renderTemplate(BlockModel model) {
+		TerrainQuadTemplate template = TerrainQuadTemplate.get(blockState);
+
+		if (template == null || template.defaultAo != defaultAo || template.defaultPreset != defaultPreset) {
+			// cull test passes everything while capturing so the template has every face
+			templateBuilder = new TerrainQuadTemplate.Builder(defaultAo, defaultPreset);
+			model.renderAsBlock(this, emitter());
+			template = templateBuilder.build();
+			templateBuilder = null;
+			TerrainQuadTemplate.put(blockState, template);
+		}
+
+		++templateModelCount;
+		final BaseQuadEmitter quad = makerQuad;
+		final int quadCount = template.quadCount;
+
+		for (int i = 0; i < quadCount; ++i) {
+			if (!cullTest(template.cullFaceId(i))) {
+				continue;
+			}
+
+			quad.clear();
+			template.loadMeshQuad(i, quad);
+			applyBlockLighting(quad, this);
+
+			final int animationIndex = template.animationIndex(i);
+
+			if (animationIndex >= 0) {
+				animationBits.set(animationIndex);
+			}
+
+			final int colorIndex = template.colorIndex(i);
+			final int tint = colorIndex == -1 ? 0 : indexedColor(colorIndex);
+			final CanvasRenderMaterial mat = template.material(i);
+			TerrainFormat.encodeFromTemplate(template.terrainData(), template.terrainIndex(i), quad, tint, this, collectors.get(mat), tileFlag(mat));
+		}
+	}
+
 	@Override
 	public int brightness() {
 		return 0;
@@ -165,7 +259,7 @@ public class TerrainRenderContext extends AbstractBlockRenderContext<InputRegion
 
 	@Override
 	public boolean cullTest(int faceIndex) {
-		if (faceIndex == FaceUtil.UNASSIGNED_INDEX) {
+		if (faceIndex == FaceUtil.UNASSIGNED_INDEX || templateBuilder != null) {
 			return true;
 		}
 
@@ -188,10 +282,20 @@ public class TerrainRenderContext extends AbstractBlockRenderContext<InputRegion
 
 	@Override
 	protected void encodeQuad(BaseQuadEmitter quad) {
+		if (templateBuilder != null) {
+			templateBuilder.add(quad);
+			return;
+		}
+
 		// needs to happen before offsets are applied
 		applyBlockLighting(quad, this);
 		colorizeQuad(quad, this);
-		TerrainFormat.TERRAIN_ENCODER.encode(quad, this, collectors.get((CanvasRenderMaterial) quad.material()));
+		final CanvasRenderMaterial mat = (CanvasRenderMaterial) quad.material();
+		TerrainFormat.encodeQuad(quad, this, collectors.get(mat), tileFlag(mat));
+	}
+
+	private int tileFlag(CanvasRenderMaterial mat) {
+		return mergeFaces && mat.canTileFaces() ? TerrainFormat.TILED_UV_FLAG : 0;
 	}
 
 	@Override
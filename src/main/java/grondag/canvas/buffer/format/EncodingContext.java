@@ -32,4 +32,15 @@ public interface EncodingContext {
 	int sectorId();
 
 	int sectorRelativeRegionOrigin();
+
+	/**
+	 * Block position within the region plus any model offset.
+	 * Used by terrain encoding in place of {@link #matrix()}, which
+	 * would only ever hold the same translation.
+	 */
+	float blockOffsetX();
+
+	float blockOffsetY();
+
+	float blockOffsetZ();
 }
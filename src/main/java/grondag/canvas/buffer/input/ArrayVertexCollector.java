@@ -23,8 +23,6 @@ package grondag.canvas.buffer.input;
 import java.nio.IntBuffer;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import it.unimi.dsi.fastutil.Swapper;
-import it.unimi.dsi.fastutil.ints.IntComparator;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 
 import net.minecraft.util.Mth;
@@ -34,6 +32,7 @@ import grondag.canvas.buffer.format.CanvasVertexFormats;
 import grondag.canvas.buffer.render.TransferBuffer;
 import grondag.canvas.buffer.util.DrawableStream;
 import grondag.canvas.material.state.RenderState;
+import grondag.canvas.render.terrain.TerrainFaceMerger;
 import grondag.canvas.render.terrain.TerrainFormat;
 import grondag.canvas.render.terrain.TerrainSectorMap.RegionRenderSector;
 
@@ -43,8 +42,7 @@ public class ArrayVertexCollector implements VertexCollector {
 	private int capacity = 1024;
 	private int[] vertexData = new int[capacity];
 	private float[] perQuadDistance = new float[512];
-	private final int[] swapData;
-	private boolean didSwap = false;
+	private QuadSorter quadSorter;
 
 	/** also the index of the first vertex when used in VertexConsumer mode. */
 	private int integerSize = 0;
@@ -57,7 +55,6 @@ public class ArrayVertexCollector implements VertexCollector {
 		this.isTerrain = isTerrain;
 		bucketSorter = isTerrain && !renderState.sorted ? new VertexBucket.Sorter() : null;
 		quadStrideInts = isTerrain ? TerrainFormat.TERRAIN_MATERIAL.quadStrideInts : CanvasVertexFormats.STANDARD_MATERIAL_FORMAT.quadStrideInts;
-		swapData = new int[quadStrideInts * 2];
 		arrayCount.incrementAndGet();
 		arryBytes.addAndGet(capacity);
 	}
@@ -123,6 +120,14 @@ public class ArrayVertexCollector implements VertexCollector {
 		return allocate(size);
 	}
 
+	/** Adds all vertex data of the given collector after the data already here. */
+	public void append(ArrayVertexCollector source) {
+		assert !isTerrain;
+		final int size = source.integerSize;
+		final int start = allocate(size);
+		System.arraycopy(source.vertexData, 0, vertexData, start, size);
+	}
+
 	public void toBuffer(IntBuffer intBuffer, int startingIndex) {
 		intBuffer.put(vertexData, startingIndex, integerSize);
 	}
@@ -139,6 +144,30 @@ public class ArrayVertexCollector implements VertexCollector {
 		}
 	}
 
+	/**
+	 * Merges coplanar full faces flagged during encoding.  Must happen before
+	 * buckets are sorted, and not for translucent collectors, which are never flagged.
+	 *
+	 * @return number of quads removed
+	 */
+	public int mergeFaces(TerrainFaceMerger merger) {
+		assert isTerrain;
+
+		final int quadCount = quadCount();
+		final int[] buckets = bucketSorter == null ? null : bucketSorter.quadBuckets(quadCount, quadStrideInts);
+		final int newQuadCount = merger.merge(vertexData, quadCount, buckets);
+
+		if (newQuadCount != quadCount) {
+			integerSize = newQuadCount * quadStrideInts;
+
+			if (bucketSorter != null) {
+				bucketSorter.rebuild(buckets, newQuadCount, quadStrideInts);
+			}
+		}
+
+		return quadCount - newQuadCount;
+	}
+
 	public VertexBucket[] sortVertexBuckets() {
 		return bucketSorter == null ? null : bucketSorter.sort(vertexData, integerSize);
 	}
@@ -149,11 +178,41 @@ public class ArrayVertexCollector implements VertexCollector {
 		return sortQuads(
 			(float) (sortPos.x - sector.paddedBlockOriginX),
 			(float) (sortPos.y - sector.paddedBlockOriginY),
-			(float) (sortPos.z - sector.paddedBlockOriginZ)
+			(float) (sortPos.z - sector.paddedBlockOriginZ),
+			false
 		);
 	}
 
-	private boolean sortQuads(float x, float y, float z) {
+	/**
+	 * Like {@link #sortTerrainQuads(Vec3, RegionRenderSector)} but assumes quads are
+	 * already sorted for a nearby position and only repairs the order.
+	 * Use {@link #didFullSort()} to learn if a full sort was needed anyway.
+	 */
+	public boolean repairTerrainQuads(Vec3 sortPos, RegionRenderSector sector) {
+		assert isTerrain;
+
+		return sortQuads(
+			(float) (sortPos.x - sector.paddedBlockOriginX),
+			(float) (sortPos.y - sector.paddedBlockOriginY),
+			(float) (sortPos.z - sector.paddedBlockOriginZ),
+			true
+		);
+	}
+
+	/** True if the last sort or repair sorted all quads from scratch. */
+	public boolean didFullSort() {
+		return quadSorter == null || quadSorter.didFullSort();
+	}
+
+	/**
+	 * Camera can move less than half this distance from the last sort
+	 * position without any change to quad sort order.
+	 */
+	public float sortSeparation() {
+		return quadSorter == null ? Float.POSITIVE_INFINITY : quadSorter.minimumSeparation(quadCount(), true);
+	}
+
+	private boolean sortQuads(float x, float y, float z, boolean repair) {
 		final int quadCount = quadCount();
 		final QuadDistanceFunc distanceFunc = isTerrain ? quadDistanceTerrain : quadDistanceStandard;
 
@@ -165,46 +224,21 @@ public class ArrayVertexCollector implements VertexCollector {
 			perQuadDistance[j] = distanceFunc.compute(x, y, z, j);
 		}
 
-		didSwap = false;
-
-		// sort the indexes by distance - farthest first
-		// mergesort is important here - quicksort causes problems
-		// PERF: consider sorting primitive packed long array with distance in high bits
-		// and then use result to reorder the array. Will need to copy vertex data.
-		it.unimi.dsi.fastutil.Arrays.mergeSort(0, quadCount, comparator, swapper);
+		if (quadSorter == null) {
+			quadSorter = new QuadSorter();
+		}
 
-		return didSwap;
+		// sort by distance - farthest first
+		// sort must be stable - quads at equal distance keep their order
+		return repair
+			? quadSorter.repair(vertexData, perQuadDistance, quadCount, quadStrideInts)
+			: quadSorter.sort(vertexData, perQuadDistance, quadCount, quadStrideInts);
 	}
 
 	private interface QuadDistanceFunc {
 		float compute(float x, float y, float z, int quadIndex);
 	}
 
-	private final IntComparator comparator = new IntComparator() {
-		@Override
-		public int compare(int a, int b) {
-			return Float.compare(perQuadDistance[b], perQuadDistance[a]);
-		}
-	};
-
-	private final Swapper swapper = new Swapper() {
-		@Override
-		public void swap(int a, int b) {
-			didSwap = true;
-			final float distSwap = perQuadDistance[a];
-			perQuadDistance[a] = perQuadDistance[b];
-			perQuadDistance[b] = distSwap;
-
-			final int aIndex = a * quadStrideInts;
-			final int bIndex = b * quadStrideInts;
-
-			System.arraycopy(vertexData, aIndex, swapData, 0, quadStrideInts);
-			System.arraycopy(vertexData, bIndex, swapData, quadStrideInts, quadStrideInts);
-			System.arraycopy(swapData, 0, vertexData, bIndex, quadStrideInts);
-			System.arraycopy(swapData, quadStrideInts, vertexData, aIndex, quadStrideInts);
-		}
-	};
-
 	private final QuadDistanceFunc quadDistanceStandard = this::getDistanceSq;
 
 	private float getDistanceSq(float x, float y, float z, int quadIndex) {
@@ -324,7 +358,7 @@ public class ArrayVertexCollector implements VertexCollector {
 
 	public void sortIfNeeded() {
 		if (renderState.sorted) {
-			sortQuads(0, 0, 0);
+			sortQuads(0, 0, 0, false);
 		}
 	}
 
@@ -60,18 +60,23 @@ public class CanvasImmediate extends BufferSource {
 		CanvasRenderMaterial mat = ((CompositeRenderTypeExt) renderLayer).canvas_materialState();
 
 		if (mat.isMissing()) {
-			return super.getBuffer(renderLayer);
+			return fallbackBuffer(renderLayer);
 		}
 
 		mat = contextState.mapMaterial(mat);
 
 		if (mat.isMissing()) {
-			return super.getBuffer(renderLayer);
+			return fallbackBuffer(renderLayer);
 		} else {
 			return collectors.consumer.prepare(mat);
 		}
 	}
 
+	/** Vanilla buffer for render types without a material. Drawing these may use GL state. */
+	protected VertexConsumer fallbackBuffer(RenderType renderLayer) {
+		return super.getBuffer(renderLayer);
+	}
+
 	public FrexVertexConsumer getConsumer(RenderMaterial material) {
 		final CanvasRenderMaterial mat = contextState.mapMaterial((CanvasRenderMaterial) material);
 		return collectors.consumer.prepare(mat);
@@ -0,0 +1,260 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+
+package grondag.canvas.buffer.input;
+
+import java.util.Arrays;
+
+import net.minecraft.util.Mth;
+
+/**
+ * Sorts quads back-to-front using packed long keys instead of
+ * moving vertex data during the sort.
+ *
+ * <p>Each key holds the inverted float bits of the quad distance in the
+ * high word and the original quad index in the low word. Distances are
+ * always non-negative, so the raw float bits order the same as the floats
+ * and inverting them gives farthest-first order.  Keys are radix sorted
+ * on the high word only. LSD radix sort is stable and the keys start in
+ * index order, so quads at equal distance keep their original order.
+ *
+ * <p>Vertex data is then moved once, quad by quad, into final position.
+ */
+public class QuadSorter {
+	private static final int RADIX_BITS = 8;
+	private static final int RADIX_SIZE = 1 << RADIX_BITS;
+	private static final int RADIX_MASK = RADIX_SIZE - 1;
+	private static final int PASS_COUNT = 32 / RADIX_BITS;
+
+	/** Average number of positions each quad may move during repair before a full sort is used instead. */
+	private static final int MAX_REPAIR_MOVES_PER_QUAD = 4;
+
+	private final int[] counts = new int[RADIX_SIZE];
+	private long[] keys = new long[512];
+	private long[] keySwap = new long[512];
+	private long[] sortedKeys;
+	private int[] swapData;
+	private boolean didFullSort;
+
+	/**
+	 * Reorders quads in vertexData so that the farthest quad comes first.
+	 *
+	 * @param vertexData vertex data, sorted in place
+	 * @param perQuadDistance distance (or squared distance) of each quad, must be non-negative
+	 * @param quadCount number of quads to sort
+	 * @param quadStrideInts number of integers in each quad
+	 * @return true if the order of any quad changed
+	 */
+	public boolean sort(int[] vertexData, float[] perQuadDistance, int quadCount, int quadStrideInts) {
+		didFullSort = true;
+
+		if (quadCount < 2) {
+			sortedKeys = null;
+			return false;
+		}
+
+		prepareKeys(perQuadDistance, quadCount);
+		radixSort(quadCount);
+		return applyOrder(vertexData, quadCount, quadStrideInts);
+	}
+
+	/**
+	 * Same outcome as {@link #sort(int[], float[], int, int)} but assumes the quads
+	 * are already close to sorted, as they will be when the same data was sorted
+	 * for a nearby camera position.  Order is repaired with an insertion sort and
+	 * falls back to a full radix sort if the input turns out to be badly out of order.
+	 * Check {@link #didFullSort()} afterwards to know which path was taken.
+	 */
+	public boolean repair(int[] vertexData, float[] perQuadDistance, int quadCount, int quadStrideInts) {
+		didFullSort = false;
+
+		if (quadCount < 2) {
+			sortedKeys = null;
+			return false;
+		}
+
+		prepareKeys(perQuadDistance, quadCount);
+		final long[] keys = this.keys;
+		int moveBudget = quadCount * MAX_REPAIR_MOVES_PER_QUAD;
+
+		// Keys all have the sign bit set because distance bits are never negative,
+		// so signed comparison orders them correctly.
+		for (int i = 1; i < quadCount; ++i) {
+			final long k = keys[i];
+			int j = i - 1;
+
+			if (keys[j] <= k) {
+				continue;
+			}
+
+			do {
+				keys[j + 1] = keys[j];
+				--j;
+			} while (j >= 0 && keys[j] > k);
+
+			keys[j + 1] = k;
+			moveBudget -= i - j - 1;
+
+			if (moveBudget < 0) {
+				// Too far out of order to be worth repairing.
+				// Keys before i+1 came from positions before i+1 so
+				// input order is still index order for equal distances.
+				didFullSort = true;
+				radixSort(quadCount);
+				break;
+			}
+		}
+
+		return applyOrder(vertexData, quadCount, quadStrideInts);
+	}
+
+	/**
+	 * True when the last call to sort or repair had to sort all keys from scratch.
+	 */
+	public boolean didFullSort() {
+		return didFullSort;
+	}
+
+	/**
+	 * Smallest difference in (non-squared) distance between consecutive quads as of the
+	 * last sort. The camera can move up to half this far without changing sort order
+	 * because the distance to each quad can change at most as much as the camera moved.
+	 *
+	 * @param distanceIsSquared true if distances given to the last sort were squared
+	 * @return minimum separation, or {@link Float#POSITIVE_INFINITY} if fewer than two quads
+	 */
+	public float minimumSeparation(int quadCount, boolean distanceIsSquared) {
+		final long[] keys = sortedKeys;
+
+		if (keys == null || quadCount < 2) {
+			return Float.POSITIVE_INFINITY;
+		}
+
+		float result = Float.POSITIVE_INFINITY;
+		float prior = keyDistance(keys[0], distanceIsSquared);
+
+		for (int i = 1; i < quadCount; ++i) {
+			final float d = keyDistance(keys[i], distanceIsSquared);
+			result = Math.min(result, prior - d);
+			prior = d;
+		}
+
+		return result;
+	}
+
+	private static float keyDistance(long key, boolean distanceIsSquared) {
+		final float d = Float.intBitsToFloat(~(int) (key >>> 32));
+		return distanceIsSquared ? (float) Math.sqrt(d) : d;
+	}
+
+	private void prepareKeys(float[] perQuadDistance, int quadCount) {
+		if (keys.length < quadCount) {
+			final int newSize = Mth.smallestEncompassingPowerOfTwo(quadCount);
+			keys = new long[newSize];
+			keySwap = new long[newSize];
+		}
+
+		final long[] keys = this.keys;
+
+		for (int i = 0; i < quadCount; ++i) {
+			keys[i] = ((long) ~Float.floatToRawIntBits(perQuadDistance[i]) << 32) | i;
+		}
+
+		sortedKeys = keys;
+	}
+
+	/**
+	 * Stable LSD radix sort of the high word of {@link #keys}.
+	 * Result will be in {@link #sortedKeys}, which may be either key array.
+	 */
+	private void radixSort(int quadCount) {
+		long[] src = keys;
+		long[] dst = keySwap;
+		final int[] counts = this.counts;
+
+		for (int pass = 0; pass < PASS_COUNT; ++pass) {
+			final int shift = 32 + pass * RADIX_BITS;
+			Arrays.fill(counts, 0);
+
+			for (int i = 0; i < quadCount; ++i) {
+				++counts[(int) (src[i] >>> shift) & RADIX_MASK];
+			}
+
+			// when every key has the same digit the pass would not change anything
+			if (counts[(int) (src[0] >>> shift) & RADIX_MASK] == quadCount) {
+				continue;
+			}
+
+			int offset = 0;
+
+			for (int d = 0; d < RADIX_SIZE; ++d) {
+				final int c = counts[d];
+				counts[d] = offset;
+				offset += c;
+			}
+
+			for (int i = 0; i < quadCount; ++i) {
+				final long k = src[i];
+				dst[counts[(int) (k >>> shift) & RADIX_MASK]++] = k;
+			}
+
+			final long[] swap = src;
+			src = dst;
+			dst = swap;
+		}
+
+		sortedKeys = src;
+	}
+
+	/**
+	 * Moves vertex data into the order given by {@link #sortedKeys}.
+	 * @return true if the order of any quad changed
+	 */
+	private boolean applyOrder(int[] vertexData, int quadCount, int quadStrideInts) {
+		final long[] src = sortedKeys;
+		int firstMoved = 0;
+
+		while (firstMoved < quadCount && (int) src[firstMoved] == firstMoved) {
+			++firstMoved;
+		}
+
+		if (firstMoved == quadCount) {
+			return false;
+		}
+
+		final int integerSize = quadCount * quadStrideInts;
+		int[] swapData = this.swapData;
+
+		if (swapData == null || swapData.length < integerSize) {
+			swapData = new int[Mth.smallestEncompassingPowerOfTwo(integerSize)];
+			this.swapData = swapData;
+		}
+
+		// quads before the first moved quad are already in place
+		final int startIndex = firstMoved * quadStrideInts;
+		System.arraycopy(vertexData, startIndex, swapData, startIndex, integerSize - startIndex);
+
+		for (int i = firstMoved; i < quadCount; ++i) {
+			System.arraycopy(swapData, (int) src[i] * quadStrideInts, vertexData, i * quadStrideInts, quadStrideInts);
+		}
+
+		return true;
+	}
+}
@@ -30,6 +30,7 @@ public record VertexBucket(int firstVertexIndex, int vertexCount) {
 	public static class Sorter {
 		private final IntArrayList[] buckets = new IntArrayList[7];
 		private int[] swapData;
+		private int[] quadBuckets;
 
 		Sorter() {
 			for (int i = 0; i < 7; ++i) {
@@ -79,5 +80,32 @@ public record VertexBucket(int firstVertexIndex, int vertexCount) {
 		void add(int bucketIndex, int integerIndex) {
 			buckets[bucketIndex].add(integerIndex);
 		}
+
+		/** Bucket index of each quad in allocation order. The array is reused. */
+		int[] quadBuckets(int quadCount, int quadStrideInts) {
+			int[] result = quadBuckets;
+
+			if (result == null || result.length < quadCount) {
+				result = new int[Mth.smallestEncompassingPowerOfTwo(quadCount)];
+				quadBuckets = result;
+			}
+
+			for (int i = 0; i < 7; ++i) {
+				for (final int integerIndex : buckets[i]) {
+					result[integerIndex / quadStrideInts] = i;
+				}
+			}
+
+			return result;
+		}
+
+		/** Replaces bucket contents after quads have been added, removed or moved. */
+		void rebuild(int[] quadBuckets, int quadCount, int quadStrideInts) {
+			clear();
+
+			for (int i = 0; i < quadCount; ++i) {
+				buckets[quadBuckets[i]].add(i * quadStrideInts);
+			}
+		}
 	}
 }
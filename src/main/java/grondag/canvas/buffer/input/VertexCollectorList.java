@@ -23,6 +23,7 @@ package grondag.canvas.buffer.input;
 import java.util.Comparator;
 import java.util.function.Predicate;
 
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 
 import io.vram.frex.api.buffer.FrexVertexConsumer;
@@ -45,6 +46,8 @@ import grondag.canvas.terrain.region.RegionPosition;
  */
 public class VertexCollectorList {
 	private final ObjectArrayList<ArrayVertexCollector> active = new ObjectArrayList<>();
+	/** Collector index of each active collector, in the same order. */
+	private final IntArrayList activeIndexes = new IntArrayList();
 	private final ArrayVertexCollector[] collectors = new ArrayVertexCollector[RenderState.MAX_COUNT];
 	private final ObjectArrayList<ArrayVertexCollector> drawList = new ObjectArrayList<>();
 	public final boolean isTerrain;
@@ -122,11 +125,42 @@ public class VertexCollectorList {
 			result = new ArrayVertexCollector(materialState.renderState(), isTerrain);
 			collectors[index] = result;
 			active.add(result);
+			activeIndexes.add(index);
 		}
 
 		return result;
 	}
 
+	/**
+	 * Adds vertex data from every collector in the source list to the matching
+	 * collector in this list, after any data already here. Source is not changed.
+	 * Both lists must be used within the same material context.
+	 */
+	public void appendAll(VertexCollectorList source) {
+		final ObjectArrayList<ArrayVertexCollector> sourceActive = source.active;
+		final int limit = sourceActive.size();
+
+		for (int i = 0; i < limit; ++i) {
+			final ArrayVertexCollector sourceCollector = sourceActive.get(i);
+
+			if (sourceCollector.isEmpty()) {
+				continue;
+			}
+
+			final int index = source.activeIndexes.getInt(i);
+			ArrayVertexCollector target = collectors[index];
+
+			if (target == null) {
+				target = new ArrayVertexCollector(sourceCollector.renderState, isTerrain);
+				collectors[index] = target;
+				active.add(target);
+				activeIndexes.add(index);
+			}
+
+			target.append(sourceCollector);
+		}
+	}
+
 	public boolean contains(CanvasRenderMaterial materialState) {
 		final int index = materialState.collectorIndex();
 		return index < collectors.length && collectors[index] != null;
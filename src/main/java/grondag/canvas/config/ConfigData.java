@@ -93,6 +93,22 @@ class ConfigData {
 	public TransferBuffers.Config transferBufferMode = TransferBuffers.Config.AUTO;
 	@Comment("Uses slower and safer memory allocation method for GL buffers.  Use only if having problems. Requires restart.")
 	boolean safeNativeMemoryAllocation = false;
+	@Comment("Translucent terrain is only resorted when camera movement could change the order, and prior order is repaired instead of sorted from scratch.")
+	boolean incrementalTranslucentSort = true;
+	@Comment("Terrain workers use per-thread queues and steal work from each other instead of sharing one queue. Ignored when useCombinedThreadPool is enabled. Requires restart.")
+	boolean useWorkStealingExecutor = false;
+	@Comment("Microseconds per frame for rebuilding near or urgent regions on the main thread. Beyond this, rebuilds already drawn are moved to the front of the off-thread queue. Zero means no limit.")
+	int mainThreadRebuildBudgetMicros = 0;
+	@Comment("Capture packed section data on the main thread and unpack block states on worker threads. Reduces main-thread time per region rebuild but uses more memory for queued rebuilds.")
+	boolean deferSectionUnpacking = false;
+	@Comment("Reuse encoded quads of simple block models for every block with the same state. Only light, AO, tint and position are computed per block.")
+	boolean terrainQuadTemplates = false;
+	@Comment("Merge coplanar full block faces with identical light and color into larger quads that repeat the texture. Reduces terrain vertex memory and vertex work for flat surfaces.")
+	boolean mergeTerrainFaces = false;
+	@Comment("Encode vertices of common mobs on terrain worker threads while the render thread handles other entities. Only renderers known to be safe off-thread are used.")
+	boolean parallelEntityEncoding = false;
+	@Comment("Encode particles of all Canvas-managed sheets before drawing, then draw them from one buffer. Looks up particle materials once per type and culls by region visibility when cullParticles is on.")
+	boolean batchParticleDraws = false;
 
 	// DEBUG
 	@Comment("Output runtime per-material shader source. For shader development debugging.")
@@ -23,6 +23,7 @@ package grondag.canvas.config;
 import static grondag.canvas.config.ConfigManager.DEFAULTS;
 import static grondag.canvas.config.ConfigManager.parse;
 import static grondag.canvas.config.Configurator.advancedTerrainCulling;
+import static grondag.canvas.config.Configurator.batchParticleDraws;
 import static grondag.canvas.config.Configurator.blendFluidColors;
 import static grondag.canvas.config.Configurator.clampExteriorVertices;
 import static grondag.canvas.config.Configurator.conciseErrors;
@@ -33,6 +34,7 @@ import static grondag.canvas.config.Configurator.debugNativeMemoryAllocation;
 import static grondag.canvas.config.Configurator.debugOcclusionBoxes;
 import static grondag.canvas.config.Configurator.debugOcclusionRaster;
 import static grondag.canvas.config.Configurator.debugSpriteAtlas;
+import static grondag.canvas.config.Configurator.deferSectionUnpacking;
 import static grondag.canvas.config.Configurator.disableUnseenSpriteAnimation;
 import static grondag.canvas.config.Configurator.disableVignette;
 import static grondag.canvas.config.Configurator.displayRenderProfiler;
@@ -44,11 +46,15 @@ import static grondag.canvas.config.Configurator.fixLuminousBlockShading;
 import static grondag.canvas.config.Configurator.forceJmxModelLoading;
 import static grondag.canvas.config.Configurator.greedyRenderThread;
 import static grondag.canvas.config.Configurator.groupAnimatedSprites;
+import static grondag.canvas.config.Configurator.incrementalTranslucentSort;
 import static grondag.canvas.config.Configurator.logGlStateChanges;
 import static grondag.canvas.config.Configurator.logMachineInfo;
 import static grondag.canvas.config.Configurator.logMaterials;
 import static grondag.canvas.config.Configurator.logMissingUniforms;
 import static grondag.canvas.config.Configurator.logRenderLagSpikes;
+import static grondag.canvas.config.Configurator.mainThreadRebuildBudgetMicros;
+import static grondag.canvas.config.Configurator.mergeTerrainFaces;
+import static grondag.canvas.config.Configurator.parallelEntityEncoding;
 import static grondag.canvas.config.Configurator.pipelineId;
 import static grondag.canvas.config.Configurator.preprocessShaderSource;
 import static grondag.canvas.config.Configurator.preventDepthFighting;
@@ -64,11 +70,13 @@ import static grondag.canvas.config.Configurator.semiFlatLighting;
 import static grondag.canvas.config.Configurator.shaderDebug;
 import static grondag.canvas.config.Configurator.staticFrustumPadding;
 import static grondag.canvas.config.Configurator.steadyDebugScreen;
+import static grondag.canvas.config.Configurator.terrainQuadTemplates;
 import static grondag.canvas.config.Configurator.terrainSetupOffThread;
 import static grondag.canvas.config.Configurator.traceOcclusionEdgeCases;
 import static grondag.canvas.config.Configurator.traceTextureLoad;
 import static grondag.canvas.config.Configurator.transferBufferMode;
 import static grondag.canvas.config.Configurator.useCombinedThreadPool;
+import static grondag.canvas.config.Configurator.useWorkStealingExecutor;
 import static grondag.canvas.config.Configurator.wavyGrass;
 
 import java.lang.ref.WeakReference;
@@ -395,6 +403,79 @@ public class ConfigGui {
 				})
 				.build());
 
+		tweaks.addEntry(ENTRY_BUILDER
+				.startBooleanToggle(new TranslatableComponent("config.canvas.value.incremental_translucent_sort"), incrementalTranslucentSort)
+				.setDefaultValue(DEFAULTS.incrementalTranslucentSort)
+				.setTooltip(parse("config.canvas.help.incremental_translucent_sort"))
+				.setSaveConsumer(b -> {
+					incrementalTranslucentSort = b;
+				})
+				.build());
+
+		tweaks.addEntry(ENTRY_BUILDER
+				.startBooleanToggle(new TranslatableComponent("config.canvas.value.use_work_stealing_executor"), useWorkStealingExecutor)
+				.setDefaultValue(DEFAULTS.useWorkStealingExecutor)
+				.setTooltip(parse("config.canvas.help.use_work_stealing_executor"))
+				.requireRestart()
+				.setSaveConsumer(b -> {
+					useWorkStealingExecutor = b;
+				})
+				.build());
+
+		tweaks.addEntry(ENTRY_BUILDER
+				.startIntSlider(new TranslatableComponent("config.canvas.value.main_thread_rebuild_budget_micros"), mainThreadRebuildBudgetMicros, 0, 10000)
+				.setDefaultValue(DEFAULTS.mainThreadRebuildBudgetMicros)
+				.setTooltip(parse("config.canvas.help.main_thread_rebuild_budget_micros"))
+				.setSaveConsumer(b -> {
+					mainThreadRebuildBudgetMicros = b;
+				})
+				.build());
+
+		tweaks.addEntry(ENTRY_BUILDER
+				.startBooleanToggle(new TranslatableComponent("config.canvas.value.defer_section_unpacking"), deferSectionUnpacking)
+				.setDefaultValue(DEFAULTS.deferSectionUnpacking)
+				.setTooltip(parse("config.canvas.help.defer_section_unpacking"))
+				.setSaveConsumer(b -> {
+					deferSectionUnpacking = b;
+				})
+				.build());
+
+		tweaks.addEntry(ENTRY_BUILDER
+				.startBooleanToggle(new TranslatableComponent("config.canvas.value.terrain_quad_templates"), terrainQuadTemplates)
+				.setDefaultValue(DEFAULTS.terrainQuadTemplates)
+				.setTooltip(parse("config.canvas.help.terrain_quad_templates"))
+				.setSaveConsumer(b -> {
+					terrainQuadTemplates = b;
+				})
+				.build());
+
+		tweaks.addEntry(ENTRY_BUILDER
+				.startBooleanToggle(new TranslatableComponent("config.canvas.value.merge_terrain_faces"), mergeTerrainFaces)
+				.setDefaultValue(DEFAULTS.mergeTerrainFaces)
+				.setTooltip(parse("config.canvas.help.merge_terrain_faces"))
+				.setSaveConsumer(b -> {
+					mergeTerrainFaces = b;
+				})
+				.build());
+
+		tweaks.addEntry(ENTRY_BUILDER
+				.startBooleanToggle(new TranslatableComponent("config.canvas.value.parallel_entity_encoding"), parallelEntityEncoding)
+				.setDefaultValue(DEFAULTS.parallelEntityEncoding)
+				.setTooltip(parse("config.canvas.help.parallel_entity_encoding"))
+				.setSaveConsumer(b -> {
+					parallelEntityEncoding = b;
+				})
+				.build());
+
+		tweaks.addEntry(ENTRY_BUILDER
+				.startBooleanToggle(new TranslatableComponent("config.canvas.value.batch_particle_draws"), batchParticleDraws)
+				.setDefaultValue(DEFAULTS.batchParticleDraws)
+				.setTooltip(parse("config.canvas.help.batch_particle_draws"))
+				.setSaveConsumer(b -> {
+					batchParticleDraws = b;
+				})
+				.build());
+
 		// DEBUG
 		final ConfigCategory debug = builder.getOrCreateCategory(new TranslatableComponent("config.canvas.category.debug"));
 
@@ -83,6 +83,14 @@ public class Configurator {
 	public static boolean cullBackfacingTerrain = DEFAULTS.cullBackfacingTerrain;
 	public static boolean debugSpriteAtlas = DEFAULTS.debugSpriteAtlas;
 	public static boolean traceTextureLoad = DEFAULTS.traceTextureLoad;
+	public static boolean deferSectionUnpacking = DEFAULTS.deferSectionUnpacking;
+	public static boolean terrainQuadTemplates = DEFAULTS.terrainQuadTemplates;
+	public static boolean mergeTerrainFaces = DEFAULTS.mergeTerrainFaces;
+	public static boolean parallelEntityEncoding = DEFAULTS.parallelEntityEncoding;
+	public static boolean batchParticleDraws = DEFAULTS.batchParticleDraws;
+	public static int mainThreadRebuildBudgetMicros = DEFAULTS.mainThreadRebuildBudgetMicros;
+	public static boolean useWorkStealingExecutor = DEFAULTS.useWorkStealingExecutor;
+	public static boolean incrementalTranslucentSort = DEFAULTS.incrementalTranslucentSort;
 
 	//    @LangKey("config.acuity_fancy_fluids")
 	//    @Comment({"Enable fancy water and lava rendering.",
@@ -164,6 +172,14 @@ public class Configurator {
 		cullBackfacingTerrain = config.cullBackfacingTerrain;
 		debugSpriteAtlas = config.debugSpriteAtlas;
 		traceTextureLoad = config.traceTextureLoad;
+		deferSectionUnpacking = config.deferSectionUnpacking;
+		terrainQuadTemplates = config.terrainQuadTemplates;
+		mergeTerrainFaces = config.mergeTerrainFaces;
+		parallelEntityEncoding = config.parallelEntityEncoding;
+		batchParticleDraws = config.batchParticleDraws;
+		mainThreadRebuildBudgetMicros = Mth.clamp(config.mainThreadRebuildBudgetMicros, 0, 10000);
+		useWorkStealingExecutor = config.useWorkStealingExecutor;
+		incrementalTranslucentSort = config.incrementalTranslucentSort;
 	}
 
 	static void writeToConfig(ConfigData config) {
@@ -225,5 +241,13 @@ public class Configurator {
 		config.cullBackfacingTerrain = cullBackfacingTerrain;
 		config.debugSpriteAtlas = debugSpriteAtlas;
 		config.traceTextureLoad = traceTextureLoad;
+		config.deferSectionUnpacking = deferSectionUnpacking;
+		config.terrainQuadTemplates = terrainQuadTemplates;
+		config.mergeTerrainFaces = mergeTerrainFaces;
+		config.parallelEntityEncoding = parallelEntityEncoding;
+		config.batchParticleDraws = batchParticleDraws;
+		config.mainThreadRebuildBudgetMicros = mainThreadRebuildBudgetMicros;
+		config.useWorkStealingExecutor = useWorkStealingExecutor;
+		config.incrementalTranslucentSort = incrementalTranslucentSort;
 	}
 }
@@ -22,7 +22,6 @@ package grondag.canvas.light;
 
 import net.minecraft.core.BlockPos;
 import net.minecraft.util.Mth;
-import net.minecraft.world.level.block.state.BlockState;
 
 import grondag.canvas.terrain.region.input.InputRegion;
 
@@ -60,11 +59,10 @@ public class LightSmoother {
 					final int bz = z + minZ;
 					smoothPos.set(bx, by, bz);
 
-					final BlockState state = region.getBlockState(bx, by, bz);
 					// don't use cache here because we are populating the cache
 					final int packedLight = region.directBrightness(smoothPos);
 
-					final boolean opaque = state.isSolidRender(region, smoothPos);
+					final boolean opaque = region.isSolidRender(smoothPos);
 
 					final int i = index(x, y, z);
 
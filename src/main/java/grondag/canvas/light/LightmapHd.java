@@ -22,72 +22,70 @@ package grondag.canvas.light;
 
 import java.util.concurrent.atomic.AtomicInteger;
 
-import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
-
 import net.minecraft.client.resources.language.I18n;
-import net.minecraft.util.Mth;
 
 import io.vram.frex.base.renderer.mesh.BaseQuadEmitter;
 
 import grondag.canvas.CanvasMod;
 
 class LightmapHd {
-	// MAYBE: use Fermion cache
-	static final Object2ObjectOpenHashMap<AoFaceData, LightmapHd> MAP = new Object2ObjectOpenHashMap<>(Mth.smallestEncompassingPowerOfTwo(LightmapSizer.maxCount), LightmapSizer.maxCount / (float) Mth.smallestEncompassingPowerOfTwo(LightmapSizer.maxCount));
-	private static final AtomicInteger nextIndex = new AtomicInteger();
+	private static final LightmapHdCache CACHE = new LightmapHdCache(LightmapSizer.maxCount, m -> LightmapHdTexture.instance().enque(m));
 	private static boolean errorNoticeNeeded = true;
+	final AoFaceData key;
+	final int hash;
+	final int slot;
 	public final int uMinImg;
 	public final int vMinImg;
 	private final int[] light;
 
-	private LightmapHd(AoFaceData faceData) {
-		final int index = nextIndex.getAndIncrement();
-		final int s = index % LightmapSizer.mapsPerAxis;
-		final int t = index / LightmapSizer.mapsPerAxis;
+	/** Number of holders, or -1 once evicted from the cache. */
+	private final AtomicInteger refCount = new AtomicInteger(1);
+
+	LightmapHd(AoFaceData key, int slot, int[] light) {
+		this.key = key;
+		hash = key.hashCode();
+		this.slot = slot;
+		final int s = slot % LightmapSizer.mapsPerAxis;
+		final int t = slot / LightmapSizer.mapsPerAxis;
 		uMinImg = s * LightmapSizer.paddedSize;
 		vMinImg = t * LightmapSizer.paddedSize;
-		light = new int[LightmapSizer.lightmapPixels];
+		this.light = light;
+	}
 
-		if (index >= LightmapSizer.maxCount) {
-			if (errorNoticeNeeded) {
-				CanvasMod.LOG.warn(I18n.get("error.canvas.fail_create_lightmap"));
-				errorNoticeNeeded = false;
-			}
-		} else {
-			// MAYBE: pool these and the main array - not needed after upload
-
-			final int[] aoLight = new int[LightmapSizer.lightmapPixels];
-			final int[] skyLight = new int[LightmapSizer.lightmapPixels];
-			final int[] blockLight = new int[LightmapSizer.lightmapPixels];
-
-			// MAYBE: make this an option for AO debugging
-			//			Arrays.fill(skyLight, 255);
-			//			Arrays.fill(blockLight, 255);
-
-			// MAYBE: skips steps when all unit value or same  value
-			LightmapHdCalc.computeAo(aoLight, faceData);
-			LightmapHdCalc.computeLight(blockLight, faceData, false);
-			LightmapHdCalc.computeLight(skyLight, faceData, true);
-
-			for (int i = 0; i < LightmapSizer.lightmapPixels; ++i) {
-				final int ao = aoLight[i];
-				final int sky = skyLight[i]; // * ao / 255;
-				final int block = blockLight[i]; // * ao / 255;
-				light[i] = (sky << 24) | (ao << 16) | (block << 8) | ao;
-			}
+	static int[] computeLight(AoFaceData faceData) {
+		final int[] light = new int[LightmapSizer.lightmapPixels];
+
+		// MAYBE: pool these and the main array - not needed after upload
 
-			LightmapHdTexture.instance().enque(this);
+		final int[] aoLight = new int[LightmapSizer.lightmapPixels];
+		final int[] skyLight = new int[LightmapSizer.lightmapPixels];
+		final int[] blockLight = new int[LightmapSizer.lightmapPixels];
+
+		// MAYBE: make this an option for AO debugging
+		//			Arrays.fill(skyLight, 255);
+		//			Arrays.fill(blockLight, 255);
+
+		// MAYBE: skips steps when all unit value or same  value
+		LightmapHdCalc.computeAo(aoLight, faceData);
+		LightmapHdCalc.computeLight(blockLight, faceData, false);
+		LightmapHdCalc.computeLight(skyLight, faceData, true);
+
+		for (int i = 0; i < LightmapSizer.lightmapPixels; ++i) {
+			final int ao = aoLight[i];
+			final int sky = skyLight[i]; // * ao / 255;
+			final int block = blockLight[i]; // * ao / 255;
+			light[i] = (sky << 24) | (ao << 16) | (block << 8) | ao;
 		}
+
+		return light;
 	}
 
 	public static String occupancyReport() {
-		final int i = nextIndex.get();
-		return String.format("%d of %d ( %d percent )", i, LightmapSizer.maxCount, i * 100 / LightmapSizer.maxCount);
+		return CACHE.occupancyReport();
 	}
 
 	public static void reload() {
-		nextIndex.set(0);
-		MAP.clear();
+		CACHE.clear();
 		errorNoticeNeeded = true;
 	}
 
@@ -95,24 +93,50 @@ class LightmapHd {
 		return v * LightmapSizer.paddedSize + u;
 	}
 
+	/**
+	 * Finds or creates a lightmap for the given face data. The result is held
+	 * until {@link #release()} is called, normally when the region that
+	 * holds the quad is released, and can't be evicted before then.
+	 *
+	 * @return null if every texture slot is held
+	 */
 	// MAYBE: can reduce texture consumption 8X by reusing rotations/inversions
 	public static LightmapHd find(AoFaceData faceData) {
-		LightmapHd result = MAP.get(faceData);
+		final LightmapHd result = CACHE.acquire(faceData);
 
-		if (result == null) {
-			synchronized (MAP) {
-				result = MAP.get(faceData);
-
-				if (result == null) {
-					result = new LightmapHd(faceData);
-					MAP.put(faceData.clone(), result);
-				}
-			}
+		if (result == null && errorNoticeNeeded) {
+			CanvasMod.LOG.warn(I18n.get("error.canvas.fail_create_lightmap"));
+			errorNoticeNeeded = false;
 		}
 
 		return result;
 	}
 
+	boolean tryAcquire() {
+		int count;
+
+		do {
+			count = refCount.get();
+
+			if (count < 0) {
+				return false;
+			}
+		} while (!refCount.compareAndSet(count, count + 1));
+
+		return true;
+	}
+
+	/** Removes a holder. The texture slot can be reused once the lightmap has none. */
+	public void release() {
+		final int count = refCount.decrementAndGet();
+		assert count >= 0 : "LightmapHd released more times than acquired";
+	}
+
+	/** Succeeds only if there are no holders, and then prevents any more. */
+	boolean tryEvict() {
+		return refCount.compareAndSet(0, -1);
+	}
+
 	/**
 	 * Handles padding.
 	 */
@@ -0,0 +1,241 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+package grondag.canvas.light;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import it.unimi.dsi.fastutil.HashCommon;
+
+/**
+ * Concurrent cache of HD lightmaps keyed by face light and AO values.
+ *
+ * <p>Lookups are lock-free. The table is an open-addressing array read with
+ * volatile semantics, and each entry keeps its hash so most non-matching
+ * entries are skipped without comparing face data. Only insertion, eviction
+ * and table growth take the lock. New lightmaps are computed before the lock
+ * is taken, so terrain workers only serialize on the table write.
+ *
+ * <p>Each lightmap occupies one texture slot and counts its holders. A lightmap
+ * with no holders stays cached, so it can still be found, until a new lightmap
+ * needs a slot and none are free. It is then evicted and its slot reused.
+ * Eviction sets the count to -1 before the entry is removed, so a concurrent
+ * lookup can never acquire an evicted lightmap.
+ */
+final class LightmapHdCache {
+	private static final Object TOMBSTONE = new Object();
+	private static final int MIN_TABLE_SIZE = 1024;
+
+	private final int slotLimit;
+	private final Consumer<LightmapHd> onCreate;
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private volatile AtomicReferenceArray<Object> table = new AtomicReferenceArray<>(MIN_TABLE_SIZE);
+	private volatile int liveCount;
+	private volatile long evictionCount;
+
+	// guarded by this
+	private int nextSlot;
+	private int usedCells;
+	private int clockHand;
+
+	/**
+	 * @param slotLimit maximum number of lightmaps, and texture slots, in use at one time
+	 * @param onCreate called outside the lock with each newly created lightmap
+	 */
+	LightmapHdCache(int slotLimit, Consumer<LightmapHd> onCreate) {
+		this.slotLimit = slotLimit;
+		this.onCreate = onCreate;
+	}
+
+	/**
+	 * Finds or creates a lightmap matching the given face data and adds a holder.
+	 * The caller must call {@link LightmapHd#release()} when done with it.
+	 *
+	 * @return null if every texture slot is held
+	 */
+	LightmapHd acquire(AoFaceData faceData) {
+		final int hash = faceData.hashCode();
+		LightmapHd result = find(table, faceData, hash);
+
+		if (result != null) {
+			hitCount.increment();
+			return result;
+		}
+
+		final int[] light = LightmapHd.computeLight(faceData);
+
+		synchronized (this) {
+			// another thread may have added it while we computed
+			result = find(table, faceData, hash);
+
+			if (result != null) {
+				hitCount.increment();
+				return result;
+			}
+
+			final int slot = claimSlot();
+
+			if (slot < 0) {
+				return null;
+			}
+
+			result = new LightmapHd(faceData.clone(), slot, light);
+			insert(result);
+		}
+
+		missCount.increment();
+		onCreate.accept(result);
+		return result;
+	}
+
+	private static LightmapHd find(AtomicReferenceArray<Object> table, AoFaceData faceData, int hash) {
+		final int mask = table.length() - 1;
+		int i = HashCommon.mix(hash) & mask;
+		Object o;
+
+		// table is never full, so there is always a null cell to end the search
+		while ((o = table.get(i)) != null) {
+			if (o != TOMBSTONE) {
+				final LightmapHd map = (LightmapHd) o;
+
+				if (map.hash == hash && map.key.equals(faceData) && map.tryAcquire()) {
+					return map;
+				}
+			}
+
+			i = (i + 1) & mask;
+		}
+
+		return null;
+	}
+
+	/** Must hold lock. */
+	private int claimSlot() {
+		if (nextSlot < slotLimit) {
+			return nextSlot++;
+		}
+
+		return evict();
+	}
+
+	/**
+	 * Evicts the next lightmap without holders in clock order and returns its slot.
+	 * Must hold lock.
+	 *
+	 * @return -1 if every lightmap has a holder
+	 */
+	private int evict() {
+		final AtomicReferenceArray<Object> table = this.table;
+		final int mask = table.length() - 1;
+
+		for (int n = table.length(); n > 0; --n) {
+			final int i = clockHand;
+			clockHand = (i + 1) & mask;
+
+			if (table.get(i) instanceof final LightmapHd map && map.tryEvict()) {
+				table.set(i, TOMBSTONE);
+				--liveCount;
+				++evictionCount;
+				return map.slot;
+			}
+		}
+
+		return -1;
+	}
+
+	/** Must hold lock. */
+	private void insert(LightmapHd map) {
+		AtomicReferenceArray<Object> table = this.table;
+
+		// keep at least a quarter of cells null so that searches end quickly
+		if ((usedCells + 1) * 4 > table.length() * 3) {
+			table = rehash(table);
+		}
+
+		final int mask = table.length() - 1;
+		int i = HashCommon.mix(map.hash) & mask;
+		Object o;
+
+		while ((o = table.get(i)) != null && o != TOMBSTONE) {
+			i = (i + 1) & mask;
+		}
+
+		if (o == null) {
+			++usedCells;
+		}
+
+		table.set(i, map);
+		++liveCount;
+	}
+
+	/**
+	 * Copies live entries to a new table, dropping tombstones, and doubles the size
+	 * if more than a quarter of the cells are live.  Lookups still searching the old
+	 * table will see a consistent, if stale, view. Must hold lock.
+	 */
+	private AtomicReferenceArray<Object> rehash(AtomicReferenceArray<Object> oldTable) {
+		final int oldLength = oldTable.length();
+		final AtomicReferenceArray<Object> newTable = new AtomicReferenceArray<>(liveCount * 4 > oldLength ? oldLength * 2 : oldLength);
+		final int mask = newTable.length() - 1;
+
+		for (int j = 0; j < oldLength; ++j) {
+			if (oldTable.get(j) instanceof final LightmapHd map) {
+				int i = HashCommon.mix(map.hash) & mask;
+
+				while (newTable.get(i) != null) {
+					i = (i + 1) & mask;
+				}
+
+				newTable.set(i, map);
+			}
+		}
+
+		usedCells = liveCount;
+		clockHand = 0;
+		table = newTable;
+		return newTable;
+	}
+
+	synchronized void clear() {
+		table = new AtomicReferenceArray<>(MIN_TABLE_SIZE);
+		nextSlot = 0;
+		usedCells = 0;
+		clockHand = 0;
+		liveCount = 0;
+		evictionCount = 0;
+		hitCount.reset();
+		missCount.reset();
+	}
+
+	int liveCount() {
+		return liveCount;
+	}
+
+	String occupancyReport() {
+		final int live = liveCount;
+		final long hits = hitCount.sum();
+		final long total = hits + missCount.sum();
+
+		return String.format("%d of %d ( %d percent )  hit rate: %d%%  evicted: %d", live, slotLimit, live * 100L / slotLimit,
+				total == 0 ? 0 : hits * 100 / total, evictionCount);
+	}
+}
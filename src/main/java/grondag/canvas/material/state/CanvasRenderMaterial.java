@@ -77,6 +77,12 @@ public class CanvasRenderMaterial extends BaseRenderMaterial implements RenderMa
 	protected final MaterialShaderImpl terrainDepthShader;
 	protected final boolean primaryTargetTransparency;
 
+	/**
+	 * True if terrain quads with this material can be merged into quads that repeat
+	 * the sprite.  Needs the default shaders, which know how to wrap a repeated UV.
+	 */
+	protected final boolean canTileFaces;
+
 	/**
 	 * Will be always visible condition in vertex-controlled render state.
 	 * This is ensured by the state mask.
@@ -141,6 +147,10 @@ public class CanvasRenderMaterial extends BaseRenderMaterial implements RenderMa
 
 		primaryTargetTransparency = primaryTargetTransparency(canvasBits);
 
+		canTileFaces = !sorted() && !discardsTexture()
+				&& vertexShaderIndex == MaterialShaderManager.DEFAULT_VERTEX_INDEX
+				&& fragmentShaderIndex == MaterialShaderManager.DEFAULT_FRAGMENT_INDEX;
+
 		// Important that these happen because otherwise material shaders will never be registered - they aren't part of render state.
 		shader = MaterialShaderManager.INSTANCE.find(vertexShaderIndex, fragmentShaderIndex, ProgramType.MATERIAL_COLOR);
 		guiShader = MaterialShaderManager.INSTANCE.find(vertexShaderIndex, fragmentShaderIndex, ProgramType.MATERIAL_COLOR);
@@ -192,6 +202,11 @@ public class CanvasRenderMaterial extends BaseRenderMaterial implements RenderMa
 		return shaderFlags;
 	}
 
+	/** Texture state is resolved lazily so the atlas check can't happen in the constructor. */
+	public boolean canTileFaces() {
+		return canTileFaces && texture().isAtlas();
+	}
+
 	@Override
 	public String toString() {
 		final StringBuilder sb = new StringBuilder();
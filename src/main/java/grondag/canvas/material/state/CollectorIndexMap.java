@@ -20,27 +20,33 @@
 
 package grondag.canvas.material.state;
 
-import it.unimi.dsi.fastutil.Hash;
-import it.unimi.dsi.fastutil.longs.Long2IntFunction;
-import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import java.util.function.LongFunction;
 
 public class CollectorIndexMap {
 	public static final int MAX_COLLECTOR_COUNT = 4096;
+
+	/** Only changed while the map lock is held. */
 	static int nextIndex = 0;
 
 	private static final long[] KEYS_BY_INDEX = new long[MAX_COLLECTOR_COUNT];
 	private static final RenderState[] RENDER_STATES = new RenderState[MAX_COLLECTOR_COUNT];
-	static final Long2IntOpenHashMap MAP = new Long2IntOpenHashMap(256, Hash.VERY_FAST_LOAD_FACTOR);
+	static final ConcurrentLongTable<Entry> MAP = new ConcurrentLongTable<>(256, Entry::key);
 
-	private static final Long2IntFunction FUNC = key -> {
+	/**
+	 * Arrays are filled before the entry is published, so any thread
+	 * that gets an index from the map will see them filled.
+	 */
+	private static final LongFunction<Entry> FUNC = key -> {
 		final int result = nextIndex++;
 		RENDER_STATES[result] = RenderState.fromBits(key);
 		KEYS_BY_INDEX[result] = key;
-		return result;
+		return new Entry(key, result);
 	};
 
-	public static synchronized int indexFromKey(long collectorKey) {
-		return MAP.computeIfAbsent(collectorKey, FUNC);
+	record Entry(long key, int index) { }
+
+	public static int indexFromKey(long collectorKey) {
+		return MAP.computeIfAbsent(collectorKey, FUNC).index();
 	}
 
 	public static long keyFromIndex(int index) {
@@ -0,0 +1,123 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+package grondag.canvas.material.state;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongFunction;
+import java.util.function.ToLongFunction;
+
+import it.unimi.dsi.fastutil.HashCommon;
+
+/**
+ * Read-mostly map from long keys to values that carry their own key.
+ *
+ * <p>Lookups are lock-free: they read an open-addressing table published
+ * through a volatile field, with each cell written only once.  Values are
+ * added under a lock and the factory runs while it is held, so each key gets
+ * exactly one value and factories that assign dense indices stay dense.
+ * When the table grows a copy is published.  Lookups still reading the old
+ * table see every value that was there, and a lookup that misses checks again
+ * under the lock, so a stale table only costs time.
+ *
+ * <p>There is no removal.  That keeps every cell write-once and makes the
+ * lookup a plain probe with no retries.
+ */
+final class ConcurrentLongTable<T> {
+	private final ToLongFunction<T> keyFunction;
+	private volatile AtomicReferenceArray<T> table;
+
+	// guarded by this
+	private int size;
+
+	ConcurrentLongTable(int expectedSize, ToLongFunction<T> keyFunction) {
+		this.keyFunction = keyFunction;
+		table = new AtomicReferenceArray<>(HashCommon.arraySize(expectedSize, 0.5f));
+	}
+
+	/** Lock-free. Returns null if key is absent. */
+	T get(long key) {
+		final AtomicReferenceArray<T> table = this.table;
+		final int mask = table.length() - 1;
+		int i = (int) HashCommon.mix(key) & mask;
+		T value;
+
+		// table is never full, so there is always a null cell to end the search
+		while ((value = table.get(i)) != null) {
+			if (keyFunction.applyAsLong(value) == key) {
+				return value;
+			}
+
+			i = (i + 1) & mask;
+		}
+
+		return null;
+	}
+
+	T computeIfAbsent(long key, LongFunction<T> factory) {
+		final T result = get(key);
+		return result == null ? computeIfAbsentLocked(key, factory) : result;
+	}
+
+	private synchronized T computeIfAbsentLocked(long key, LongFunction<T> factory) {
+		T result = get(key);
+
+		if (result == null) {
+			result = factory.apply(key);
+			assert keyFunction.applyAsLong(result) == key;
+
+			AtomicReferenceArray<T> table = this.table;
+
+			if (++size * 2 > table.length()) {
+				table = grow(table);
+			}
+
+			insert(table, key, result);
+		}
+
+		return result;
+	}
+
+	private static <T> void insert(AtomicReferenceArray<T> table, long key, T value) {
+		final int mask = table.length() - 1;
+		int i = (int) HashCommon.mix(key) & mask;
+
+		while (table.get(i) != null) {
+			i = (i + 1) & mask;
+		}
+
+		table.set(i, value);
+	}
+
+	private AtomicReferenceArray<T> grow(AtomicReferenceArray<T> oldTable) {
+		final int oldLength = oldTable.length();
+		final AtomicReferenceArray<T> newTable = new AtomicReferenceArray<>(oldLength * 2);
+
+		for (int i = 0; i < oldLength; ++i) {
+			final T value = oldTable.get(i);
+
+			if (value != null) {
+				insert(newTable, keyFunction.applyAsLong(value), value);
+			}
+		}
+
+		table = newTable;
+		return newTable;
+	}
+}
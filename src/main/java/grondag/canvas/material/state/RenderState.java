@@ -36,8 +36,6 @@ import static grondag.canvas.material.state.MaterialStateEncoder.WRITE_MASK;
 import static grondag.canvas.material.state.MaterialStateEncoder.primaryTargetTransparency;
 
 import com.google.common.base.Strings;
-import it.unimi.dsi.fastutil.Hash;
-import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 
 import com.mojang.blaze3d.systems.RenderSystem;
 
@@ -374,7 +372,7 @@ public final class RenderState {
 	public static final int MAX_COUNT = 4096;
 	static int nextIndex = 0;
 	static final RenderState[] STATES = new RenderState[MAX_COUNT];
-	static final Long2ObjectOpenHashMap<RenderState> MAP = new Long2ObjectOpenHashMap<>(4096, Hash.VERY_FAST_LOAD_FACTOR);
+	static final ConcurrentLongTable<RenderState> MAP = new ConcurrentLongTable<>(4096, s -> s.bits);
 
 	private static RenderState active = null;
 	private static RenderState shadowActive = null;
@@ -391,15 +389,14 @@ public final class RenderState {
 		return STATES[index];
 	}
 
-	public static synchronized RenderState fromBits(long bits) {
-		RenderState result = RenderState.MAP.get(bits);
-
-		if (result == null) {
-			result = new RenderState(bits);
-			RenderState.MAP.put(bits, result);
-			RenderState.STATES[result.index] = result;
-		}
+	public static RenderState fromBits(long bits) {
+		return MAP.computeIfAbsent(bits, RenderState::create);
+	}
 
+	/** Called only while the map lock is held, which makes index assignment safe. */
+	private static RenderState create(long bits) {
+		final RenderState result = new RenderState(bits);
+		STATES[result.index] = result;
 		return result;
 	}
 
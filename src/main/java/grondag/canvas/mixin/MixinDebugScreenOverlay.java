@@ -55,6 +55,8 @@ import grondag.canvas.config.Configurator;
 import grondag.canvas.mixinterface.BufferBuilderExt;
 import grondag.canvas.render.terrain.cluster.SlabAllocator;
 import grondag.canvas.render.world.CanvasWorldRenderer;
+import grondag.canvas.shader.GlShaderManager;
+import grondag.canvas.terrain.util.SectionSnapshotCache;
 import grondag.canvas.terrain.util.TerrainExecutor;
 import grondag.canvas.varia.AutoImmediate;
 import grondag.canvas.varia.CanvasGlHelper;
@@ -206,6 +208,7 @@ public class MixinDebugScreenOverlay extends GuiComponent {
 		result.add(GlBufferAllocator.debugString());
 		result.add(TransferBuffers.debugString());
 		result.add(ArrayVertexCollector.debugReport());
+		result.add(SectionSnapshotCache.debugString());
 		TerrainExecutor.INSTANCE.debugReport(result);
 
 		@SuppressWarnings("resource")
@@ -213,7 +216,9 @@ public class MixinDebugScreenOverlay extends GuiComponent {
 		result.add("Solid " + worldRenderState.solidClusterRealm.debugSummary());
 		result.add("Translucent " + worldRenderState.translucentClusterRealm.debugSummary());
 		result.add(worldRenderState.drawlistDebugSummary());
+		result.add(CanvasWorldRenderer.instance().entityDebugSummary());
 		result.add(SlabAllocator.debugSummary());
+		result.add(GlShaderManager.INSTANCE.debugSummary());
 
 		return result;
 	}
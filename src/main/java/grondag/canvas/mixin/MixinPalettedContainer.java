@@ -22,6 +22,10 @@ package grondag.canvas.mixin;
 
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 
 import net.minecraft.util.BitStorage;
 import net.minecraft.world.level.block.state.BlockState;
@@ -38,9 +42,38 @@ public abstract class MixinPalettedContainer<T> implements PalettedContainerExt
 	@Shadow private T defaultValue;
 	@Shadow private Palette<T> palette;
 
+	private int modCount;
+
+	// these cover all changes to storage or palette, including resize
+	@Inject(method = {
+		"set(ILjava/lang/Object;)V",
+		"setBits",
+		"read(Lnet/minecraft/network/FriendlyByteBuf;)V",
+		"read(Lnet/minecraft/nbt/ListTag;[J)V"
+	}, at = @At("HEAD"), require = 4)
+	private void onModify(CallbackInfo ci) {
+		++modCount;
+	}
+
+	@Inject(method = "getAndSet(ILjava/lang/Object;)Ljava/lang/Object;", at = @At("HEAD"), require = 1)
+	private void onGetAndSet(CallbackInfoReturnable<T> ci) {
+		++modCount;
+	}
+
+	@Override
+	public int canvas_modCount() {
+		return modCount;
+	}
+
 	@SuppressWarnings("unchecked")
 	@Override
 	public PaletteCopy canvas_paletteCopy() {
 		return ChunkPaletteCopier.captureCopy((Palette<BlockState>) palette, storage, (BlockState) defaultValue);
 	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public PaletteCopy canvas_packedPaletteCopy() {
+		return ChunkPaletteCopier.capturePackedCopy((Palette<BlockState>) palette, storage, (BlockState) defaultValue);
+	}
 }
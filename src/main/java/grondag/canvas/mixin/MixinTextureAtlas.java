@@ -111,6 +111,10 @@ public abstract class MixinTextureAtlas extends AbstractTexture implements Textu
 		// Safeguard for non-terrain animations added by mods - they will always be animated
 		animationBits.set(0, animationIndex);
 
+		// Allocate every word now so that unlocked reads in canvas_trackFrameAnimation never see the array replaced
+		perFrameBits.set(animationIndex);
+		perFrameBits.clear();
+
 		if (Configurator.groupAnimatedSprites && animationMinX != Integer.MAX_VALUE) {
 			if (Configurator.traceTextureLoad) {
 				CanvasMod.LOG.info("Enabling combined animation for atlas " + location.toString());
@@ -187,7 +191,12 @@ public abstract class MixinTextureAtlas extends AbstractTexture implements Textu
 
 	@Override
 	public void canvas_trackFrameAnimation(int animationIndex) {
-		perFrameBits.set(animationIndex);
+		// entities may be encoded off the render thread - lock only when the bit is new
+		if (!perFrameBits.get(animationIndex)) {
+			synchronized (perFrameBits) {
+				perFrameBits.set(animationIndex);
+			}
+		}
 	}
 
 	@SuppressWarnings("resource")
@@ -21,6 +21,8 @@
 package grondag.canvas.mixin;
 
 import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.injection.At;
@@ -31,6 +33,7 @@ import net.minecraft.Util;
 
 import grondag.canvas.config.Configurator;
 import grondag.canvas.terrain.util.TerrainExecutor;
+import grondag.canvas.varia.ConcurrentMemo;
 
 @Mixin(Util.class)
 public class MixinUtil {
@@ -40,4 +43,18 @@ public class MixinUtil {
 			ci.setReturnValue(TerrainExecutor.INSTANCE);
 		}
 	}
+
+	// Render types are memoized and entity renderers may run off the render thread.
+	// Not gated on parallelEntityEncoding: vanilla memoizes render types in static
+	// initializers, which run once at startup, and the option can be turned on later
+	// without a restart.  Reads of the concurrent map take no lock.
+	@Inject(at = @At("HEAD"), method = "memoize(Ljava/util/function/Function;)Ljava/util/function/Function;", cancellable = true)
+	private static <T, R> void onMemoize(Function<T, R> function, CallbackInfoReturnable<Function<T, R>> ci) {
+		ci.setReturnValue(ConcurrentMemo.of(function));
+	}
+
+	@Inject(at = @At("HEAD"), method = "memoize(Ljava/util/function/BiFunction;)Ljava/util/function/BiFunction;", cancellable = true)
+	private static <T, U, R> void onMemoizeBi(BiFunction<T, U, R> function, CallbackInfoReturnable<BiFunction<T, U, R>> ci) {
+		ci.setReturnValue(ConcurrentMemo.of(function));
+	}
 }
@@ -24,4 +24,10 @@ import grondag.canvas.terrain.util.ChunkPaletteCopier.PaletteCopy;
 
 public interface PalettedContainerExt {
 	PaletteCopy canvas_paletteCopy();
+
+	/** Like {@link #canvas_paletteCopy()} but keeps the data packed until read. */
+	PaletteCopy canvas_packedPaletteCopy();
+
+	/** Changes whenever contents change. Render thread only. */
+	int canvas_modCount();
 }
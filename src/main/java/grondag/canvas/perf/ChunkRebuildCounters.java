@@ -20,19 +20,40 @@
 
 package grondag.canvas.perf;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 import io.vram.sc.concurrency.ConcurrentPerformanceCounter;
 
 import grondag.canvas.CanvasMod;
 import grondag.canvas.config.Configurator;
+import grondag.canvas.render.terrain.TerrainFormat;
+import grondag.canvas.render.terrain.TerrainQuadTemplate;
+import grondag.canvas.render.terrain.cluster.SlabAllocator;
 
 public abstract class ChunkRebuildCounters {
 	public static final boolean ENABLED = Configurator.enablePerformanceTrace;
 	private static final ConcurrentPerformanceCounter buildCounter = new ConcurrentPerformanceCounter();
 	private static final ConcurrentPerformanceCounter copyCounter = new ConcurrentPerformanceCounter();
+	private static final ConcurrentPerformanceCounter unpackCounter = new ConcurrentPerformanceCounter();
 	private static final ConcurrentPerformanceCounter uploadCounter = new ConcurrentPerformanceCounter();
+	private static final ConcurrentPerformanceCounter visibleBuildCounter = new ConcurrentPerformanceCounter();
 	private static final ThreadLocal<Long> chunkStart = ThreadLocal.withInitial(() -> 0L);
 	private static final ThreadLocal<Long> copyStart = ThreadLocal.withInitial(() -> 0L);
+	private static final ThreadLocal<Long> unpackStart = ThreadLocal.withInitial(() -> 0L);
 	private static final ThreadLocal<Long> uploadStart = ThreadLocal.withInitial(() -> 0L);
+	private static final AtomicInteger sortSkipCount = new AtomicInteger();
+	private static final AtomicInteger sortRepairCount = new AtomicInteger();
+	private static final AtomicInteger sortFullCount = new AtomicInteger();
+	private static final AtomicInteger sortUnchangedCount = new AtomicInteger();
+	private static final AtomicInteger occlusionCachedCount = new AtomicInteger();
+	private static final AtomicInteger occlusionBuiltCount = new AtomicInteger();
+	private static final AtomicLong blockStateCallCount = new AtomicLong();
+	private static final AtomicLong replacedBlockStateCallCount = new AtomicLong();
+	private static final AtomicLong templateModelCount = new AtomicLong();
+	private static final AtomicLong emittedModelCount = new AtomicLong();
+	private static final AtomicLong mergeInputQuadCount = new AtomicLong();
+	private static final AtomicLong mergeRemovedQuadCount = new AtomicLong();
 
 	private ChunkRebuildCounters() {
 	}
@@ -40,7 +61,21 @@ public abstract class ChunkRebuildCounters {
 	public static void reset() {
 		buildCounter.clearStats();
 		copyCounter.clearStats();
+		unpackCounter.clearStats();
 		uploadCounter.clearStats();
+		visibleBuildCounter.clearStats();
+		sortSkipCount.set(0);
+		sortRepairCount.set(0);
+		sortFullCount.set(0);
+		sortUnchangedCount.set(0);
+		occlusionCachedCount.set(0);
+		occlusionBuiltCount.set(0);
+		blockStateCallCount.set(0);
+		replacedBlockStateCallCount.set(0);
+		templateModelCount.set(0);
+		emittedModelCount.set(0);
+		mergeInputQuadCount.set(0);
+		mergeRemovedQuadCount.set(0);
 	}
 
 	public static void startChunk() {
@@ -57,8 +92,37 @@ public abstract class ChunkRebuildCounters {
 			final int copyCount = copyCounter.runCount();
 			CanvasMod.LOG.info(String.format("World copy time per chunk for last %d regions = %,dns  total time: %fs", copyCount, copyCount == 0 ? 0 : copyCounter.runTime() / copyCount, copyCounter.runTime() / 1000000000d));
 
+			final int unpackCount = unpackCounter.runCount();
+			CanvasMod.LOG.info(String.format("World copy unpack time per chunk for last %d regions = %,dns  total time: %fs", unpackCount, unpackCount == 0 ? 0 : unpackCounter.runTime() / unpackCount, unpackCounter.runTime() / 1000000000d));
+
 			final int uploadCount = uploadCounter.runCount();
 			CanvasMod.LOG.info(String.format("Upload time per region for last %d regions = %,dns  total time: %fs", uploadCount, uploadCount == 0 ? 0 : uploadCounter.runTime() / uploadCount, uploadCounter.runTime() / 1000000000d));
+
+			final int visibleBuildCount = visibleBuildCounter.runCount();
+			CanvasMod.LOG.info(String.format("Time to build after first visible for last %d regions = %,dns", visibleBuildCount, visibleBuildCount == 0 ? 0 : visibleBuildCounter.runTime() / visibleBuildCount));
+
+			CanvasMod.LOG.info(String.format("Translucent resorts skipped: %,d  repaired: %,d  full: %,d  unchanged (no upload): %,d",
+					sortSkipCount.get(), sortRepairCount.get(), sortFullCount.get(), sortUnchangedCount.get()));
+
+			final int occlusionCached = occlusionCachedCount.get();
+			final int occlusionCount = occlusionCached + occlusionBuiltCount.get();
+			CanvasMod.LOG.info(String.format("Occlusion results reused: %,d of %,d  hit rate: %d%%",
+					occlusionCached, occlusionCount, occlusionCount == 0 ? 0 : occlusionCached * 100 / occlusionCount));
+
+			CanvasMod.LOG.info(String.format("BlockState calls per region with property table: %,d  without: %,d",
+					blockStateCallCount.get() / 2000, replacedBlockStateCallCount.get() / 2000));
+
+			CanvasMod.LOG.info(String.format("Block models per region from quad templates: %,d  from models: %,d  templates: %,d",
+					templateModelCount.get() / 2000, emittedModelCount.get() / 2000, TerrainQuadTemplate.size()));
+
+			if (Configurator.mergeTerrainFaces) {
+				final long removed = mergeRemovedQuadCount.get();
+				final long input = mergeInputQuadCount.get();
+				CanvasMod.LOG.info(String.format("Solid quads per region before face merge: %,d  removed: %,d (%d%%)  bytes saved: %,d  %s",
+						input / 2000, removed / 2000, input == 0 ? 0 : removed * 100 / input,
+						removed * TerrainFormat.TERRAIN_MATERIAL.quadStrideInts * 4 / 2000, SlabAllocator.debugSummary()));
+			}
+
 			reset();
 
 			CanvasMod.LOG.info("");
@@ -74,6 +138,15 @@ public abstract class ChunkRebuildCounters {
 		copyCounter.addCount(1);
 	}
 
+	public static void startUnpack() {
+		unpackStart.set(System.nanoTime());
+	}
+
+	public static void completeUnpack() {
+		unpackCounter.endRun(unpackStart.get());
+		unpackCounter.addCount(1);
+	}
+
 	public static void startUpload() {
 		uploadStart.set(System.nanoTime());
 	}
@@ -82,4 +155,64 @@ public abstract class ChunkRebuildCounters {
 		uploadCounter.endRun(uploadStart.get());
 		uploadCounter.addCount(1);
 	}
+
+	/**
+	 * Region that was found visible and needing rebuild now has new drawables.
+	 * @param visibleSinceNanos nano time when the region was first found visible and needing rebuild
+	 */
+	public static void completeVisibleBuild(long visibleSinceNanos) {
+		visibleBuildCounter.endRun(visibleSinceNanos);
+		visibleBuildCounter.addCount(1);
+	}
+
+	/** Resort not scheduled because camera movement could not change quad order. */
+	public static void skipSort() {
+		sortSkipCount.incrementAndGet();
+	}
+
+	/**
+	 * Resort was run.
+	 * @param repaired true if prior order was repaired, false if quads were fully sorted
+	 * @param changed true if quad order changed and an upload was needed
+	 */
+	public static void completeSort(boolean repaired, boolean changed) {
+		(repaired ? sortRepairCount : sortFullCount).incrementAndGet();
+
+		if (!changed) {
+			sortUnchangedCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Region occlusion result was computed.
+	 * @param cached true if the result was reused from a region with identical contents
+	 */
+	public static void completeOcclusion(boolean cached) {
+		(cached ? occlusionCachedCount : occlusionBuiltCount).incrementAndGet();
+	}
+
+	/**
+	 * BlockState method calls made during one region build and the calls that would
+	 * have been made if block properties were not read from the region palette.
+	 */
+	public static void addBlockStateCalls(int calls, int replacedCalls) {
+		blockStateCallCount.addAndGet(calls);
+		replacedBlockStateCallCount.addAndGet(replacedCalls);
+	}
+
+	/**
+	 * Block models rendered during one region build from quad templates and by the model.
+	 */
+	public static void addModelCounts(int templateModels, int emittedModels) {
+		templateModelCount.addAndGet(templateModels);
+		emittedModelCount.addAndGet(emittedModels);
+	}
+
+	/**
+	 * Solid terrain quads of one region build before face merging and the number removed by it.
+	 */
+	public static void addMergedQuads(int inputQuads, int removedQuads) {
+		mergeInputQuadCount.addAndGet(inputQuads);
+		mergeRemovedQuadCount.addAndGet(removedQuads);
+	}
 }
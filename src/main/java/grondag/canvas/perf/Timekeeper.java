@@ -20,7 +20,10 @@
 
 package grondag.canvas.perf;
 
+import java.util.Arrays;
+
 import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 
 import com.mojang.blaze3d.vertex.PoseStack;
@@ -70,12 +73,100 @@ public abstract class Timekeeper {
 		}
 	}
 
+	/**
+	 * Distribution of a per-frame measurement over recent frames.
+	 * Used for work that is spread across the frame instead of being a single step.
+	 */
+	private static class FrameHistogram {
+		private static final int SAMPLE_COUNT = 256;
+
+		/**
+		 * Upper limit of each bucket in nanoseconds. Samples beyond the last limit go in a final bucket.
+		 * Negative samples, as for net time saved, go in a separate bucket shown only when not empty.
+		 */
+		private static final long[] BUCKET_LIMITS = {100000, 250000, 500000, 1000000, 2000000, 4000000, 8000000};
+
+		private final long[] samples = new long[SAMPLE_COUNT];
+		private final long[] sorted = new long[SAMPLE_COUNT];
+		private final int[] buckets = new int[BUCKET_LIMITS.length + 1];
+		private int sampleCount;
+		private int nextSample;
+
+		void add(long nanos) {
+			samples[nextSample] = nanos;
+			nextSample = (nextSample + 1) % SAMPLE_COUNT;
+
+			if (sampleCount < SAMPLE_COUNT) {
+				++sampleCount;
+			}
+		}
+
+		/** Percentiles over recent frames, in milliseconds. */
+		String percentiles() {
+			final int count = sampleCount;
+			System.arraycopy(samples, 0, sorted, 0, count);
+			Arrays.sort(sorted, 0, count);
+
+			return String.format("p50 %.3f p90 %.3f p99 %.3f max %.3f ms",
+					percentile(count, 50) / 1000000f, percentile(count, 90) / 1000000f,
+					percentile(count, 99) / 1000000f, percentile(count, 100) / 1000000f);
+		}
+
+		private long percentile(int count, int percent) {
+			return count == 0 ? 0 : sorted[Math.min(count - 1, count * percent / 100)];
+		}
+
+		/** Count of recent frames in each bucket, with bucket limits in milliseconds. */
+		String buckets() {
+			final int[] buckets = this.buckets;
+			Arrays.fill(buckets, 0);
+			int negativeCount = 0;
+
+			for (int i = 0; i < sampleCount; ++i) {
+				final long s = samples[i];
+
+				if (s < 0) {
+					++negativeCount;
+					continue;
+				}
+
+				int b = 0;
+
+				while (b < BUCKET_LIMITS.length && s > BUCKET_LIMITS[b]) {
+					++b;
+				}
+
+				++buckets[b];
+			}
+
+			final StringBuilder sb = new StringBuilder();
+
+			if (negativeCount > 0) {
+				sb.append(String.format("<0:%d ", negativeCount));
+			}
+
+			for (int b = 0; b < BUCKET_LIMITS.length; ++b) {
+				sb.append(String.format("<%s:%d ", BUCKET_LIMITS[b] / 1000000f, buckets[b]));
+			}
+
+			sb.append(String.format(">%s:%d", BUCKET_LIMITS[BUCKET_LIMITS.length - 1] / 1000000f, buckets[BUCKET_LIMITS.length]));
+			return sb.toString();
+		}
+	}
+
 	private static long threshold;
 
 	public abstract void startFrame(ProfilerGroup group, String token);
 	public abstract void swap(ProfilerGroup group, String token);
 	public abstract void completePass();
 
+	/**
+	 * Records the total time spent on something during the last frame.
+	 * Unlike profiler steps, these are shown as a distribution over recent frames.
+	 * Samples may be negative, for measurements such as net time saved.
+	 */
+	public abstract void addFrameSample(String token, long nanos);
+
 	private static class Active extends Timekeeper {
 		private static final int CONTAINER_SETUP_FRAME = 0;
 		private static final int GPU_SETUP_FRAME = 1;
@@ -83,6 +174,7 @@ public abstract class Timekeeper {
 
 		private Object2LongOpenHashMap<String> cpuElapsed;
 		private Object2LongOpenHashMap<String> gpuElapsed;
+		private final Object2ObjectLinkedOpenHashMap<String, FrameHistogram> histograms = new Object2ObjectLinkedOpenHashMap<>();
 		private Group[] groups;
 		private int[] gpuQueryId;
 		private boolean gpuEnabled = false;
@@ -176,6 +268,15 @@ public abstract class Timekeeper {
 			swap(null, null);
 		}
 
+		@Override
+		public void addFrameSample(String token, long nanos) {
+			histograms.computeIfAbsent(token, t -> new FrameHistogram()).add(nanos);
+
+			if (Configurator.logRenderLagSpikes && nanos > threshold) {
+				CanvasMod.LOG.info(String.format("Lag spike at %s - %,dns, threshold is %,dns", token, nanos, threshold));
+			}
+		}
+
 		public boolean populateResult() {
 			if (frameSinceReload < GPU_SETUP_FRAME || !gpuEnabled) {
 				return false;
@@ -294,6 +395,8 @@ public abstract class Timekeeper {
 		public void swap(ProfilerGroup group, String token) { }
 		@Override
 		public void completePass() { }
+		@Override
+		public void addFrameSample(String token, long nanos) { }
 	}
 
 	private static final Timekeeper DEACTIVATED = new Deactivated();
@@ -392,6 +495,19 @@ public abstract class Timekeeper {
 			}
 		}
 
+		for (final var entry : active.histograms.object2ObjectEntrySet()) {
+			final FrameHistogram histogram = entry.getValue();
+			final String title = String.format("<%s>", entry.getKey());
+			final String percentiles = histogram.percentiles();
+			final String buckets = histogram.buckets();
+			renderBack(i, 0, fr.width(title), 0x99000000, ms);
+			renderLine(title, i, 0, 0xFFFFFFFF, ms, fr);
+			renderBack(i, 24, fr.width(percentiles), 0x99000000, ms);
+			renderLine(percentiles, i, 24, 0xFFFFFFFF, ms, fr);
+			renderBack(i, 24, fr.width(buckets), 0x99000000, ms);
+			renderLine(buckets, i, 24, 0xFFFFFFFF, ms, fr);
+		}
+
 		ms.popPose();
 	}
 
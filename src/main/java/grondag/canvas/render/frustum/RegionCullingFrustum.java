@@ -24,13 +24,13 @@ import com.mojang.math.Matrix4f;
 
 import net.minecraft.client.Camera;
 import net.minecraft.client.multiplayer.ClientLevel;
-import net.minecraft.util.Mth;
 
 import grondag.canvas.render.world.WorldRenderState;
 import grondag.canvas.terrain.region.RenderRegionStorage;
 
 public class RegionCullingFrustum extends FastFrustum {
 	private final WorldRenderState worldRenderState;
+	private final RegionVisibilityCache regionVisibility = new RegionVisibilityCache();
 
 	public boolean enableRegionCulling = false;
 
@@ -53,62 +53,34 @@ public class RegionCullingFrustum extends FastFrustum {
 		worldTopY = world.getMaxBuildHeight();
 	}
 
+	/**
+	 * Call each frame after region visibility is known and before region culling is used.
+	 * Results for each region are remembered until the next call, if cached is true.
+	 */
+	public void prepareRegionVisibility(boolean cached) {
+		final RenderRegionStorage regions = worldRenderState.renderRegionStorage;
+		regionVisibility.prepare(regions::isPotentiallyVisible, lastCameraX, lastCameraY, lastCameraZ, worldRenderState.chunkRenderDistance(), cached);
+	}
+
+	public RegionVisibilityCache regionVisibility() {
+		return regionVisibility;
+	}
+
+	/** True if any region touched by the box is potentially visible, without testing frustum planes. */
+	public boolean isRegionVisible(double x0, double y0, double z0, double x1, double y1, double z1) {
+		// Always assume entities outside world vertical range are visible
+		if (y1 >= worldTopY || y0 < worldBottomY) {
+			return true;
+		}
+
+		return regionVisibility.isBoxVisible(x0, y0, z0, x1, y1, z1);
+	}
+
 	@Override
 	public boolean cubeInFrustum(double x0, double y0, double z0, double x1, double y1, double z1) {
 		if (super.cubeInFrustum(x0, y0, z0, x1, y1, z1)) {
 			if (enableRegionCulling) {
-				// Always assume entities outside world vertical range are visible
-				if (y1 >= worldTopY || y0 < worldBottomY) {
-					return true;
-				}
-
-				final int rx0 = Mth.floor(x0) & 0xFFFFFFF0;
-				final int ry0 = Mth.floor(y0) & 0xFFFFFFF0;
-				final int rz0 = Mth.floor(z0) & 0xFFFFFFF0;
-				final int rx1 = Mth.floor(x1) & 0xFFFFFFF0;
-				final int ry1 = Mth.floor(y1) & 0xFFFFFFF0;
-				final int rz1 = Mth.floor(z1) & 0xFFFFFFF0;
-
-				int flags = rx0 == rz1 ? 0 : 1;
-				if (ry0 != ry1) flags |= 2;
-				if (rz0 != rz1) flags |= 4;
-
-				final RenderRegionStorage regions = worldRenderState.renderRegionStorage;
-
-				switch (flags) {
-					case 0b000:
-						return regions.isPotentiallyVisible(rx0, ry0, rz0);
-
-					case 0b001:
-						return regions.isPotentiallyVisible(rx0, ry0, rz0) || regions.isPotentiallyVisible(rx1, ry0, rz0);
-
-					case 0b010:
-						return regions.isPotentiallyVisible(rx0, ry0, rz0) || regions.isPotentiallyVisible(rx0, ry1, rz0);
-
-					case 0b011:
-						return regions.isPotentiallyVisible(rx0, ry0, rz0) || regions.isPotentiallyVisible(rx1, ry0, rz0)
-								|| regions.isPotentiallyVisible(rx0, ry1, rz0) || regions.isPotentiallyVisible(rx1, ry1, rz0);
-
-					case 0b100:
-						return regions.isPotentiallyVisible(rx0, ry0, rz0) || regions.isPotentiallyVisible(rx0, ry0, rz1);
-
-					case 0b101:
-						return regions.isPotentiallyVisible(rx0, ry0, rz0) || regions.isPotentiallyVisible(rx1, ry0, rz0)
-								|| regions.isPotentiallyVisible(rx0, ry0, rz1) || regions.isPotentiallyVisible(rx1, ry0, rz1);
-
-					case 0b110:
-						return regions.isPotentiallyVisible(rx0, ry0, rz0) || regions.isPotentiallyVisible(rx0, ry1, rz0)
-								|| regions.isPotentiallyVisible(rx0, ry0, rz1) || regions.isPotentiallyVisible(rx0, ry1, rz1);
-
-					case 0b111:
-						return regions.isPotentiallyVisible(rx0, ry0, rz0) || regions.isPotentiallyVisible(rx1, ry0, rz0)
-								|| regions.isPotentiallyVisible(rx0, ry1, rz0) || regions.isPotentiallyVisible(rx1, ry1, rz0)
-								|| regions.isPotentiallyVisible(rx0, ry0, rz1) || regions.isPotentiallyVisible(rx1, ry0, rz1)
-								|| regions.isPotentiallyVisible(rx0, ry1, rz1) || regions.isPotentiallyVisible(rx1, ry1, rz1);
-					default:
-						assert false : "Pathological spatial test result in RegionCullingFrustum";
-						return true;
-				}
+				return isRegionVisible(x0, y0, z0, x1, y1, z1);
 			} else {
 				return true;
 			}
@@ -0,0 +1,171 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+
+package grondag.canvas.render.frustum;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+/**
+ * Remembers region visibility for the current frame so that objects in
+ * the same render region share one region lookup.  Lookups in the region
+ * storage are synchronized per chunk column and a box can touch up to eight
+ * regions, which adds up when there are thousands of entities.
+ *
+ * <p>Results are kept in a grid of regions centered on the camera and sized
+ * to the render distance.  Regions outside the grid are looked up every time.
+ * When objects are spread out few lookups are shared, so the grid can be
+ * disabled for a frame.  Lookups are still counted.
+ * Not thread-safe.
+ */
+public class RegionVisibilityCache {
+	private static final int Y_RADIUS = 16;
+	private static final int Y_DIAMETER = Y_RADIUS * 2 + 1;
+
+	private static final byte UNKNOWN = 0;
+	private static final byte VISIBLE = 1;
+	private static final byte NOT_VISIBLE = 2;
+
+	private int xzRadius = -1;
+	private int xzDiameter;
+	private byte[] states;
+	/** Grid entries set this frame, cleared on next prepare so the grid is never filled whole. */
+	private final IntArrayList setIndexes = new IntArrayList();
+	private RegionVisibility source;
+	private boolean enabled;
+	private int originX, originY, originZ;
+	private int lookupCount;
+	private int boxCount;
+	private int culledBoxCount;
+
+	/**
+	 * Forgets all prior results. Call once per frame, after region visibility is known.
+	 * Camera position is in block coordinates.
+	 *
+	 * @param enabled if false, every region is looked up in the source until the next call
+	 */
+	public void prepare(RegionVisibility source, double cameraX, double cameraY, double cameraZ, int renderDistanceChunks, boolean enabled) {
+		this.source = source;
+		this.enabled = enabled;
+		lookupCount = 0;
+		boxCount = 0;
+		culledBoxCount = 0;
+
+		// two extra chunks for regions retained beyond render distance
+		final int newRadius = Math.max(1, renderDistanceChunks + 2);
+
+		if (newRadius != xzRadius) {
+			xzRadius = newRadius;
+			xzDiameter = newRadius * 2 + 1;
+			states = new byte[xzDiameter * xzDiameter * Y_DIAMETER];
+			setIndexes.clear();
+		} else {
+			final byte[] states = this.states;
+			final int[] setIndexes = this.setIndexes.elements();
+			final int setCount = this.setIndexes.size();
+
+			for (int i = 0; i < setCount; ++i) {
+				states[setIndexes[i]] = UNKNOWN;
+			}
+
+			this.setIndexes.clear();
+		}
+
+		originX = (floor(cameraX) >> 4) - xzRadius;
+		originY = (floor(cameraY) >> 4) - Y_RADIUS;
+		originZ = (floor(cameraZ) >> 4) - xzRadius;
+	}
+
+	/** Arguments are the origin of a region in block coordinates. */
+	public boolean isPotentiallyVisible(int x, int y, int z) {
+		final int gx = (x >> 4) - originX;
+		final int gy = (y >> 4) - originY;
+		final int gz = (z >> 4) - originZ;
+
+		final int xzDiameter = this.xzDiameter;
+
+		if (!enabled || gx < 0 || gx >= xzDiameter || gy < 0 || gy >= Y_DIAMETER || gz < 0 || gz >= xzDiameter) {
+			++lookupCount;
+			return source.isPotentiallyVisible(x, y, z);
+		}
+
+		final int index = (gx * xzDiameter + gz) * Y_DIAMETER + gy;
+		final byte state = states[index];
+
+		if (state != UNKNOWN) {
+			return state == VISIBLE;
+		}
+
+		++lookupCount;
+		final boolean result = source.isPotentiallyVisible(x, y, z);
+		states[index] = result ? VISIBLE : NOT_VISIBLE;
+		setIndexes.add(index);
+		return result;
+	}
+
+	/** True if any region touched by the box is potentially visible. */
+	public boolean isBoxVisible(double x0, double y0, double z0, double x1, double y1, double z1) {
+		final int rx0 = floor(x0) & 0xFFFFFFF0;
+		final int ry0 = floor(y0) & 0xFFFFFFF0;
+		final int rz0 = floor(z0) & 0xFFFFFFF0;
+		final int rx1 = floor(x1) & 0xFFFFFFF0;
+		final int ry1 = floor(y1) & 0xFFFFFFF0;
+		final int rz1 = floor(z1) & 0xFFFFFFF0;
+		++boxCount;
+
+		for (int x = rx0; x <= rx1; x += 16) {
+			for (int y = ry0; y <= ry1; y += 16) {
+				for (int z = rz0; z <= rz1; z += 16) {
+					if (isPotentiallyVisible(x, y, z)) {
+						return true;
+					}
+				}
+			}
+		}
+
+		++culledBoxCount;
+		return false;
+	}
+
+	/** Region lookups made since the last call to prepare. */
+	public int lookupCount() {
+		return lookupCount;
+	}
+
+	/** Boxes tested since the last call to prepare. */
+	public int boxCount() {
+		return boxCount;
+	}
+
+	/** Boxes found not visible since the last call to prepare. */
+	public int culledBoxCount() {
+		return culledBoxCount;
+	}
+
+	private static int floor(double value) {
+		final int i = (int) value;
+		return value < i ? i - 1 : i;
+	}
+
+	@FunctionalInterface
+	public interface RegionVisibility {
+		/** Arguments are the origin of a region in block coordinates. */
+		boolean isPotentiallyVisible(int x, int y, int z);
+	}
+}
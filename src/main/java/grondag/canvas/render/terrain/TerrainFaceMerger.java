@@ -0,0 +1,484 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+
+package grondag.canvas.render.terrain;
+
+import static grondag.canvas.render.terrain.TerrainFormat.TILED_UV_FLAG;
+import static grondag.canvas.render.terrain.TerrainFormat.TILED_UV_SCALE;
+
+import java.util.Arrays;
+
+import it.unimi.dsi.fastutil.HashCommon;
+
+/**
+ * Greedy merge of coplanar full block faces in encoded terrain quads.
+ *
+ * <p>A face can be merged if it covers exactly one block face on the block grid,
+ * its whole sprite is mapped once across it, and all four vertices have the same
+ * light, AO, color, normal and material.  Faces on the same plane with identical
+ * attributes and the same vertex and UV layout are combined into rectangles.
+ * Each rectangle becomes one quad that repeats the sprite once per block, flagged
+ * with {@link TerrainFormat#TILED_UV_FLAG} so the shader wraps its UV.
+ *
+ * <p>Only quads already marked with that flag are considered.  The flag is
+ * cleared from every quad that is not merged.
+ *
+ * <p>Not thread-safe. Each terrain context has its own instance.
+ */
+public class TerrainFaceMerger {
+	private static final int QUAD_STRIDE = TerrainFormat.TERRAIN_QUAD_STRIDE;
+	private static final int VERTEX_STRIDE = TerrainFormat.TERRAIN_VERTEX_STRIDE;
+	private static final int MAX_REPEAT = TILED_UV_SCALE;
+	private static final int UV_MAX = 0xFFFF;
+
+	private long[] keys = new long[256];
+	/** Packed s, t coordinate of the minimum corner of each candidate face. */
+	private int[] cells = new int[256];
+	private boolean[] removed = new boolean[256];
+	/** Group, cell and quad index of each candidate, in that order from high bits to low. */
+	private long[] sortKeys = new long[256];
+	/** Open addressing table of group representatives. The slot is the group ID. */
+	private int[] groups = new int[512];
+	private int[] grid = new int[MAX_REPEAT * MAX_REPEAT];
+	private int[] output = new int[QUAD_STRIDE * 256];
+	private int[] outputBuckets = new int[256];
+
+	private int[] data;
+	private int mergedCount;
+	private int outputCount;
+
+	/**
+	 * Merges faces in place.
+	 *
+	 * @param data encoded terrain quads
+	 * @param quadCount number of quads in data
+	 * @param buckets cull face bucket of each quad, updated to match the output, or null
+	 * @return number of quads after merging
+	 */
+	public int merge(int[] data, int quadCount, int[] buckets) {
+		this.data = data;
+		ensureCapacity(quadCount);
+
+		final long[] sortKeys = this.sortKeys;
+		int candidateCount = 0;
+		Arrays.fill(groups, -1);
+
+		for (int q = 0; q < quadCount; ++q) {
+			removed[q] = false;
+
+			if (classify(data, q, buckets == null ? 0 : buckets[q])) {
+				sortKeys[candidateCount++] = ((long) group(q) << 40) | ((long) cells[q] << 24) | q;
+			}
+		}
+
+		mergedCount = 0;
+		outputCount = 0;
+
+		if (candidateCount > 1) {
+			// faces of each group are adjacent after sort, row by row
+			Arrays.sort(sortKeys, 0, candidateCount);
+
+			int start = 0;
+
+			while (start < candidateCount) {
+				final long group = sortKeys[start] >>> 40;
+				int end = start + 1;
+
+				while (end < candidateCount && (sortKeys[end] >>> 40) == group) {
+					++end;
+				}
+
+				if (end - start > 1) {
+					mergeGroup(start, end);
+				}
+
+				start = end;
+			}
+		}
+
+		if (mergedCount == 0) {
+			// nothing merged - only need to clear the candidate flags
+			for (int q = 0; q < quadCount; ++q) {
+				clearFlag(data, q * QUAD_STRIDE);
+			}
+
+			this.data = null;
+			return quadCount;
+		}
+
+		// unmerged quads keep their order, merged quads follow
+		final int mergedQuadCount = outputCount;
+		final int[] output = this.output;
+		int target = 0;
+
+		for (int q = 0; q < quadCount; ++q) {
+			if (!removed[q]) {
+				final int targetIndex = target * QUAD_STRIDE;
+				System.arraycopy(data, q * QUAD_STRIDE, data, targetIndex, QUAD_STRIDE);
+				clearFlag(data, targetIndex);
+
+				if (buckets != null) {
+					buckets[target] = buckets[q];
+				}
+
+				++target;
+			}
+		}
+
+		System.arraycopy(output, 0, data, target * QUAD_STRIDE, mergedQuadCount * QUAD_STRIDE);
+
+		if (buckets != null) {
+			System.arraycopy(outputBuckets, 0, buckets, target, mergedQuadCount);
+		}
+
+		this.data = null;
+		return target + mergedQuadCount;
+	}
+
+	private void ensureCapacity(int quadCount) {
+		if (keys.length < quadCount) {
+			final int newSize = Math.max(quadCount, keys.length * 2);
+			sortKeys = new long[newSize];
+			keys = new long[newSize];
+			cells = new int[newSize];
+			removed = new boolean[newSize];
+			groups = new int[Integer.highestOneBit(newSize) * 4];
+		}
+	}
+
+	/** Slot of the first candidate with the same attributes, which becomes the slot of this one if none. */
+	private int group(int quad) {
+		final int[] groups = this.groups;
+		final int mask = groups.length - 1;
+		final int base = quad * QUAD_STRIDE;
+		final long key = keys[quad];
+		int slot = (int) HashCommon.mix(key ^ ((long) data[base + 3] << 32) ^ ((long) data[base + 5] * 31) ^ data[base + 6]) & mask;
+
+		while (true) {
+			final int other = groups[slot];
+
+			if (other == -1) {
+				groups[slot] = quad;
+				return slot;
+			} else if (sameAttributes(quad, other)) {
+				return slot;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private static void clearFlag(int[] data, int quadIndex) {
+		data[quadIndex] &= ~TILED_UV_FLAG;
+		data[quadIndex + VERTEX_STRIDE] &= ~TILED_UV_FLAG;
+		data[quadIndex + VERTEX_STRIDE * 2] &= ~TILED_UV_FLAG;
+		data[quadIndex + VERTEX_STRIDE * 3] &= ~TILED_UV_FLAG;
+	}
+
+	/**
+	 * Checks if the quad is a mergeable full face and computes its key and cell.
+	 *
+	 * <p>Key bits from low to high: plane axis (2), plane coordinate (8), bucket (3),
+	 * vertex layout (16), AO (8) and the low 16 bits of the region word, which hold
+	 * sector and normal signs.  Color, light with material, and normal words are
+	 * compared separately.
+	 */
+	private boolean classify(int[] data, int quad, int bucket) {
+		final int base = quad * QUAD_STRIDE;
+		final int region = data[base];
+
+		if ((region & TILED_UV_FLAG) == 0) {
+			return false;
+		}
+
+		final int color = data[base + 3];
+		final int lightMaterial = data[base + 5];
+		final int normal = data[base + 6];
+		final int ao = data[base + 2] & 0xFF000000;
+
+		int minX = 255, minY = 255, minZ = 255;
+		int maxX = 0, maxY = 0, maxZ = 0;
+
+		for (int v = 0; v < 4; ++v) {
+			final int i = base + v * VERTEX_STRIDE;
+
+			// must be exactly on the block grid - fractions are zero
+			if ((data[i] >>> 16) != 0 || data[i + 1] != 0) {
+				return false;
+			}
+
+			if ((data[i] & 0xFFFF) != (region & 0xFFFF) || (data[i + 2] & 0xFF000000) != ao
+					|| data[i + 3] != color || data[i + 5] != lightMaterial || data[i + 6] != normal) {
+				return false;
+			}
+
+			final int pos = data[i + 2];
+			final int x = pos & 0xFF;
+			final int y = (pos >> 8) & 0xFF;
+			final int z = (pos >> 16) & 0xFF;
+			minX = Math.min(minX, x);
+			minY = Math.min(minY, y);
+			minZ = Math.min(minZ, z);
+			maxX = Math.max(maxX, x);
+			maxY = Math.max(maxY, y);
+			maxZ = Math.max(maxZ, z);
+		}
+
+		final int axis;
+		final int plane;
+		final int minS;
+		final int minT;
+
+		if (maxX == minX && maxY == minY + 1 && maxZ == minZ + 1) {
+			axis = 0;
+			plane = minX;
+			minS = minY;
+			minT = minZ;
+		} else if (maxY == minY && maxX == minX + 1 && maxZ == minZ + 1) {
+			axis = 1;
+			plane = minY;
+			minS = minX;
+			minT = minZ;
+		} else if (maxZ == minZ && maxX == minX + 1 && maxY == minY + 1) {
+			axis = 2;
+			plane = minZ;
+			minS = minX;
+			minT = minY;
+		} else {
+			return false;
+		}
+
+		final int layout = layout(data, base, axis, minS, minT);
+
+		if (layout == -1) {
+			return false;
+		}
+
+		keys[quad] = axis | (plane << 2) | (bucket << 10) | ((long) layout << 13) | ((long) (ao >>> 24) << 29) | ((long) (region & 0xFFFF) << 37);
+		cells[quad] = (minT << 8) | minS;
+		return true;
+	}
+
+	/**
+	 * Four bits per vertex: corner s, corner t, u at max and v at max.
+	 * Returns -1 if the corners are not all distinct or the sprite is not
+	 * mapped exactly once, with u and v each following one in-plane axis.
+	 */
+	private static int layout(int[] data, int base, int axis, int minS, int minT) {
+		int result = 0;
+		int cornerMask = 0;
+
+		for (int v = 0; v < 4; ++v) {
+			final int i = base + v * VERTEX_STRIDE;
+			final int pos = data[i + 2];
+			final int s = (axis == 0 ? (pos >> 8) & 0xFF : pos & 0xFF) - minS;
+			final int t = (axis == 2 ? (pos >> 8) & 0xFF : (pos >> 16) & 0xFF) - minT;
+			final int texU = data[i + 4] & 0xFFFF;
+			final int texV = data[i + 4] >>> 16;
+
+			// allow for rounding of sprite coordinates
+			if ((texU > 1 && texU < UV_MAX - 1) || (texV > 1 && texV < UV_MAX - 1)) {
+				return -1;
+			}
+
+			cornerMask |= 1 << (s | (t << 1));
+			result |= (s | (t << 1) | (texU <= 1 ? 0 : 4) | (texV <= 1 ? 0 : 8)) << (v * 4);
+		}
+
+		if (cornerMask != 0b1111) {
+			return -1;
+		}
+
+		return uFollowsS(result) == -1 ? -1 : result;
+	}
+
+	/**
+	 * 1 if u follows s and v follows t, 0 if u follows t and v follows s, -1 if neither.
+	 */
+	private static int uFollowsS(int layout) {
+		boolean uS = true, uT = true, vS = true, vT = true;
+
+		for (int a = 0; a < 4; ++a) {
+			final int la = (layout >> (a * 4)) & 0xF;
+
+			for (int b = a + 1; b < 4; ++b) {
+				final int lb = (layout >> (b * 4)) & 0xF;
+				final boolean sameS = (la & 1) == (lb & 1);
+				final boolean sameT = (la & 2) == (lb & 2);
+				final boolean sameU = (la & 4) == (lb & 4);
+				final boolean sameV = (la & 8) == (lb & 8);
+
+				// with distinct corners, a coordinate follows an axis if it only changes when that axis changes
+				if (sameS != sameU) uS = false;
+				if (sameT != sameU) uT = false;
+				if (sameS != sameV) vS = false;
+				if (sameT != sameV) vT = false;
+			}
+		}
+
+		if (uS && vT) {
+			return 1;
+		} else if (uT && vS) {
+			return 0;
+		} else {
+			return -1;
+		}
+	}
+
+	private boolean sameAttributes(int a, int b) {
+		final int[] data = this.data;
+		final int ia = a * QUAD_STRIDE;
+		final int ib = b * QUAD_STRIDE;
+		return keys[a] == keys[b] && data[ia + 3] == data[ib + 3] && data[ia + 5] == data[ib + 5] && data[ia + 6] == data[ib + 6];
+	}
+
+	/**
+	 * Greedy rectangles over one group of identical faces in one plane, in rows of t
+	 * and then columns of s.  Rectangles are limited to {@link #MAX_REPEAT} on each side.
+	 */
+	private void mergeGroup(int start, int end) {
+		final long[] sortKeys = this.sortKeys;
+		int minS = 255, minT = 255, maxS = 0, maxT = 0;
+
+		for (int i = start; i < end; ++i) {
+			final int cell = (int) (sortKeys[i] >>> 24) & 0xFFFF;
+			minS = Math.min(minS, cell & 0xFF);
+			maxS = Math.max(maxS, cell & 0xFF);
+			minT = Math.min(minT, cell >> 8);
+			maxT = Math.max(maxT, cell >> 8);
+		}
+
+		final int width = maxS - minS + 1;
+		final int height = maxT - minT + 1;
+
+		if (grid.length < width * height) {
+			grid = new int[width * height];
+		}
+
+		final int[] grid = this.grid;
+		Arrays.fill(grid, 0, width * height, -1);
+
+		for (int i = start; i < end; ++i) {
+			final int q = (int) sortKeys[i] & 0xFFFFFF;
+			final int cell = (int) (sortKeys[i] >>> 24) & 0xFFFF;
+			final int g = ((cell >> 8) - minT) * width + (cell & 0xFF) - minS;
+
+			// duplicate faces at the same position are left as they are
+			if (grid[g] == -1) {
+				grid[g] = q;
+			}
+		}
+
+		for (int t = 0; t < height; ++t) {
+			for (int s = 0; s < width; ++s) {
+				final int q = grid[t * width + s];
+
+				if (q < 0) {
+					continue;
+				}
+
+				int w = 1;
+
+				while (w < MAX_REPEAT && s + w < width && grid[t * width + s + w] >= 0) {
+					++w;
+				}
+
+				int h = 1;
+
+				rows:
+				while (h < MAX_REPEAT && t + h < height) {
+					final int row = (t + h) * width + s;
+
+					for (int i = 0; i < w; ++i) {
+						if (grid[row + i] < 0) {
+							break rows;
+						}
+					}
+
+					++h;
+				}
+
+				if (w * h == 1) {
+					grid[t * width + s] = -2;
+					continue;
+				}
+
+				for (int j = 0; j < h; ++j) {
+					final int row = (t + j) * width + s;
+
+					for (int i = 0; i < w; ++i) {
+						removed[grid[row + i]] = true;
+						grid[row + i] = -2;
+					}
+				}
+
+				emit(q, w, h);
+			}
+		}
+	}
+
+	/** Writes a quad covering w by h faces, using the face at the minimum corner for everything else. */
+	private void emit(int quad, int w, int h) {
+		final int index = outputCount++;
+
+		if (output.length < outputCount * QUAD_STRIDE) {
+			output = Arrays.copyOf(output, output.length * 2);
+			outputBuckets = Arrays.copyOf(outputBuckets, outputBuckets.length * 2);
+		}
+
+		final int[] output = this.output;
+		final int base = quad * QUAD_STRIDE;
+		final int target = index * QUAD_STRIDE;
+		System.arraycopy(data, base, output, target, QUAD_STRIDE);
+
+		final long key = keys[quad];
+		final int axis = (int) (key & 3);
+		final int layout = (int) (key >>> 13) & 0xFFFF;
+		final boolean uFollowsS = uFollowsS(layout) == 1;
+		final int uMax = tiledUV(uFollowsS ? w : h);
+		final int vMax = tiledUV(uFollowsS ? h : w);
+		// position increments for the s and t axes when the corner is at max
+		final int sStep = (axis == 0 ? (w - 1) << 8 : w - 1);
+		final int tStep = (axis == 2 ? (h - 1) << 8 : (h - 1) << 16);
+
+		for (int v = 0; v < 4; ++v) {
+			final int i = target + v * VERTEX_STRIDE;
+			final int corner = (layout >> (v * 4)) & 0xF;
+
+			// unit faces already include the first block on each axis
+			if ((corner & 1) != 0) {
+				output[i + 2] += sStep;
+			}
+
+			if ((corner & 2) != 0) {
+				output[i + 2] += tStep;
+			}
+
+			output[i + 4] = ((corner & 4) == 0 ? 0 : uMax) | ((corner & 8) == 0 ? 0 : vMax << 16);
+		}
+
+		outputBuckets[index] = (int) (key >>> 10) & 7;
+		mergedCount += w * h;
+	}
+
+	private static int tiledUV(int repeatCount) {
+		return Math.round(repeatCount * (float) UV_MAX / TILED_UV_SCALE);
+	}
+}
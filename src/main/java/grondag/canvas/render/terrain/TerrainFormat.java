@@ -43,12 +43,14 @@ import net.minecraft.client.Minecraft;
 import net.minecraft.util.Mth;
 
 import io.vram.frex.api.material.MaterialConstants;
-import io.vram.frex.api.math.FastMatri4f;
-import io.vram.frex.api.math.FastMatrix3f;
+import io.vram.frex.api.model.util.ColorUtil;
+import io.vram.frex.base.renderer.mesh.BaseQuadEmitter;
 
 import grondag.canvas.buffer.format.CanvasVertexFormat;
 import grondag.canvas.buffer.format.CanvasVertexFormatElement;
+import grondag.canvas.buffer.format.EncodingContext;
 import grondag.canvas.buffer.format.QuadEncoder;
+import grondag.canvas.buffer.input.VertexCollector;
 import grondag.canvas.material.state.CanvasRenderMaterial;
 
 public class TerrainFormat {
@@ -70,17 +72,104 @@ public class TerrainFormat {
 	static final int TERRAIN_QUAD_STRIDE = TERRAIN_MATERIAL.quadStrideInts;
 	static final int TERRAIN_VERTEX_STRIDE = TERRAIN_MATERIAL.vertexStrideInts;
 
-	public static final QuadEncoder TERRAIN_ENCODER = (quad, context, buff) -> {
-		final FastMatri4f matrix = (FastMatri4f) context.matrix();
-		final FastMatrix3f normalMatrix = context.normalMatrix();
-		final boolean isNormalMatrixUseful = !normalMatrix.f_isIdentity();
+	/**
+	 * Added to each integer position component of quad templates so that vertices
+	 * slightly outside the block do not encode as negative values.
+	 */
+	private static final int TEMPLATE_POSITION_BIAS = 16;
+	private static final int TEMPLATE_REGION_ORIGIN = TEMPLATE_POSITION_BIAS | (TEMPLATE_POSITION_BIAS << 8) | (TEMPLATE_POSITION_BIAS << 16);
+
+	/**
+	 * Set in the region word of every vertex of a merged face, which repeats its sprite
+	 * once per block. UV of those quads is divided by {@link #TILED_UV_SCALE}.
+	 * Before merging, the flag marks quads with materials that allow their sprite to repeat.
+	 */
+	public static final int TILED_UV_FLAG = 0x2000;
+
+	/** Merged faces span at most one region, so UV repeat counts up to 16 are stored as a fraction of 16. */
+	public static final int TILED_UV_SCALE = 16;
+
+	public static final QuadEncoder TERRAIN_ENCODER = (quad, context, buff) -> encodeQuad(quad, context, buff, 0);
+
+	/**
+	 * Same as {@link #TERRAIN_ENCODER} with additional flags in the region word.
+	 *
+	 * @param regionFlags {@link #TILED_UV_FLAG} if the quad may be merged, or zero
+	 */
+	public static void encodeQuad(BaseQuadEmitter quad, EncodingContext context, VertexCollector buff, int regionFlags) {
+		quad.overlayCoords(context.overlay());
 
-		final int overlay = context.overlay();
+		final int sectorId = context.sectorId();
+		assert sectorId >= 0;
+
+		final int baseTargetIndex = buff.allocate(TERRAIN_QUAD_STRIDE, quad.effectiveCullFaceId());
 
-		quad.overlayCoords(overlay);
+		// terrain is never rotated or scaled, so only the block offset is applied
+		encode(quad, buff.data(), baseTargetIndex, context.blockOffsetX(), context.blockOffsetY(), context.blockOffsetZ(),
+				sectorId | regionFlags, context.sectorRelativeRegionOrigin(), !Minecraft.useAmbientOcclusion());
+	}
+
+	/**
+	 * Encodes a quad at the block origin for use as a template. Sector and integer
+	 * position are filled in by {@link #encodeFromTemplate}, along with light, AO and
+	 * tint. Lighting and colors of the quad are not used.
+	 */
+	public static void encodeTemplate(BaseQuadEmitter quad, int[] target, int targetIndex) {
+		encode(quad, target, targetIndex, 0, 0, 0, 0, TEMPLATE_REGION_ORIGIN, true);
+	}
+
+	/**
+	 * Copies a quad template into the buffer, patching the fields that depend on block
+	 * position.  Block offset of the context must be whole blocks.
+	 *
+	 * @param template data from {@link #encodeTemplate}
+	 * @param quad the template quad after lighting, only used for light, AO and vertex colors
+	 * @param tint color multiplier for vertex colors, or 0 if vertex colors are final in the template
+	 * @param regionFlags {@link #TILED_UV_FLAG} if the quad may be merged, or zero
+	 */
+	public static void encodeFromTemplate(int[] template, int templateIndex, BaseQuadEmitter quad, int tint, EncodingContext context, VertexCollector buff, int regionFlags) {
+		final int sectorId = context.sectorId();
+		assert sectorId >= 0;
+		final int regionBits = sectorId | regionFlags;
 
+		final int baseTargetIndex = buff.allocate(TERRAIN_QUAD_STRIDE, quad.effectiveCullFaceId());
+		final int[] target = buff.data();
+		final int sectorRelativeRegionOrigin = context.sectorRelativeRegionOrigin();
+		final int xOffset = (int) context.blockOffsetX() + (sectorRelativeRegionOrigin & 0xFF) - TEMPLATE_POSITION_BIAS;
+		final int yOffset = (int) context.blockOffsetY() + ((sectorRelativeRegionOrigin >> 8) & 0xFF) - TEMPLATE_POSITION_BIAS;
+		final int zOffset = (int) context.blockOffsetZ() + ((sectorRelativeRegionOrigin >> 16) & 0xFF) - TEMPLATE_POSITION_BIAS;
 		final boolean aoDisabled = !Minecraft.useAmbientOcclusion();
 		final float[] aoData = quad.ao;
+
+		for (int i = 0; i < 4; i++) {
+			final int fromIndex = templateIndex + i * TERRAIN_VERTEX_STRIDE;
+			final int toIndex = baseTargetIndex + i * TERRAIN_VERTEX_STRIDE;
+
+			target[toIndex] = template[fromIndex] | regionBits;
+			target[toIndex + 1] = template[fromIndex + 1];
+
+			final int pos = template[fromIndex + 2];
+			final int xInt = (pos & 0xFF) + xOffset;
+			final int yInt = ((pos >> 8) & 0xFF) + yOffset;
+			final int zInt = ((pos >> 16) & 0xFF) + zOffset;
+			final int ao = aoDisabled ? 0xFF000000 : (Math.round(aoData[i] * 255) << 24);
+			target[toIndex + 2] = xInt | (yInt << 8) | (zInt << 16) | ao;
+
+			target[toIndex + 3] = tint == 0 ? template[fromIndex + 3] : ColorUtil.swapRedBlueIfNeeded(ColorUtil.multiplyColor(tint, quad.vertexColor(i)));
+			target[toIndex + 4] = template[fromIndex + 4];
+
+			final int packedLight = quad.lightmap(i);
+			final int blockLight = packedLight & 0xFF;
+			final int skyLight = (packedLight >> 16) & 0xFF;
+			target[toIndex + 5] = blockLight | (skyLight << 8) | (template[fromIndex + 5] & 0xFFFF0000);
+
+			target[toIndex + 6] = template[fromIndex + 6];
+		}
+	}
+
+	private static void encode(BaseQuadEmitter quad, int[] target, int baseTargetIndex, float xOffset, float yOffset, float zOffset,
+			int regionBits, int sectorRelativeRegionOrigin, boolean aoDisabled) {
+		final float[] aoData = quad.ao;
 		final CanvasRenderMaterial mat = (CanvasRenderMaterial) quad.material();
 
 		assert mat.preset() != MaterialConstants.PRESET_DEFAULT;
@@ -102,16 +191,9 @@ public class TerrainFormat {
 
 		final int material = mat.materialIndexer().index(quad.spriteId()) << 16;
 
-		final int baseTargetIndex = buff.allocate(TERRAIN_QUAD_STRIDE, quad.effectiveCullFaceId());
-		final int[] target = buff.data();
 		final int baseSourceIndex = quad.vertexStart();
 		final int[] source = quad.data();
 
-		// This and pos vertex encoding are the only differences from standard format
-		final int sectorId = context.sectorId();
-		assert sectorId >= 0;
-		final int sectorRelativeRegionOrigin = context.sectorRelativeRegionOrigin();
-
 		for (int i = 0; i < 4; i++) {
 			final int vertexMask = 1 << i;
 			final int fromIndex = baseSourceIndex + i * MESH_VERTEX_STRIDE;
@@ -122,7 +204,7 @@ public class TerrainFormat {
 
 			if (p != packedNormal) {
 				packedNormal = p;
-				transformedNormal = isNormalMatrixUseful ? normalMatrix.f_transformPacked3f(packedNormal) : packedNormal;
+				transformedNormal = packedNormal;
 				normalFlagBits = (transformedNormal >>> 8) & 0x8000;
 				transformedNormal = transformedNormal & 0xFFFF;
 			}
@@ -132,7 +214,7 @@ public class TerrainFormat {
 
 			if (t != packedTangent) {
 				packedTangent = p;
-				transformedTangent = isNormalMatrixUseful ? normalMatrix.f_transformPacked3f(packedTangent) : packedTangent;
+				transformedTangent = packedTangent;
 				tangentFlagBits = (transformedTangent >>> 9) & 0x4000;
 				transformedTangent = transformedTangent << 16;
 			}
@@ -142,9 +224,9 @@ public class TerrainFormat {
 			final float y = Float.intBitsToFloat(source[fromIndex + VERTEX_Y]);
 			final float z = Float.intBitsToFloat(source[fromIndex + VERTEX_Z]);
 
-			final float xOut = matrix.f_m00() * x + matrix.f_m10() * y + matrix.f_m20() * z + matrix.f_m30();
-			final float yOut = matrix.f_m01() * x + matrix.f_m11() * y + matrix.f_m21() * z + matrix.f_m31();
-			final float zOut = matrix.f_m02() * x + matrix.f_m12() * y + matrix.f_m22() * z + matrix.f_m32();
+			final float xOut = x + xOffset;
+			final float yOut = y + yOffset;
+			final float zOut = z + zOffset;
 
 			int xInt = Mth.floor(xOut);
 			int yInt = Mth.floor(yOut);
@@ -159,7 +241,7 @@ public class TerrainFormat {
 			yInt += ((sectorRelativeRegionOrigin >> 8) & 0xFF);
 			zInt += ((sectorRelativeRegionOrigin >> 16) & 0xFF);
 
-			target[toIndex] = sectorId | normalFlagBits | tangentFlagBits | (xFract << 16);
+			target[toIndex] = regionBits | normalFlagBits | tangentFlagBits | (xFract << 16);
 			target[toIndex + 1] = yFract | (zFract << 16);
 
 			final int ao = aoDisabled ? 0xFF000000 : (Math.round(aoData[i] * 255) << 24);
@@ -177,5 +259,5 @@ public class TerrainFormat {
 
 			target[toIndex + 6] = transformedNormal | transformedTangent;
 		}
-	};
+	}
 }
@@ -0,0 +1,183 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+
+package grondag.canvas.render.terrain;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.minecraft.world.level.block.state.BlockState;
+
+import io.vram.frex.api.model.util.ColorUtil;
+import io.vram.frex.base.renderer.mesh.BaseQuadEmitter;
+import io.vram.frex.base.renderer.mesh.MeshEncodingHelper;
+
+import grondag.canvas.material.state.CanvasRenderMaterial;
+import grondag.canvas.mixinterface.SpriteExt;
+
+/**
+ * Terrain quads of one block state, captured the first time the state is
+ * rendered and reused for every later block with that state.
+ *
+ * <p>Each quad is kept twice: the mesh quad as emitted by the model, which is
+ * still needed to compute AO and light for each block, and the terrain encoding
+ * of that quad at the block origin.  Rendering a block from a template skips
+ * the model, material lookup and most of the vertex encoding.
+ *
+ * <p>Only models whose quads depend on nothing but the block state can use
+ * a template.  Templates are discarded on resource reload.
+ */
+public final class TerrainQuadTemplate {
+	private static final ConcurrentHashMap<BlockState, TerrainQuadTemplate> TEMPLATES = new ConcurrentHashMap<>();
+
+	private static final int MESH_STRIDE = MeshEncodingHelper.TOTAL_MESH_QUAD_STRIDE;
+
+	/** Context AO setting when captured. Template is stale if this changes. */
+	public final boolean defaultAo;
+	/** Context default material preset when captured. Template is stale if this changes. */
+	public final int defaultPreset;
+	public final int quadCount;
+	private final int[] meshData;
+	private final int[] terrainData;
+	private final CanvasRenderMaterial[] materials;
+	private final int[] cullFaceIds;
+	private final int[] colorIndexes;
+	private final int[] animationIndexes;
+
+	private TerrainQuadTemplate(Builder builder) {
+		defaultAo = builder.defaultAo;
+		defaultPreset = builder.defaultPreset;
+		quadCount = builder.quadCount;
+		meshData = Arrays.copyOf(builder.meshData, quadCount * MESH_STRIDE);
+		terrainData = Arrays.copyOf(builder.terrainData, quadCount * TerrainFormat.TERRAIN_QUAD_STRIDE);
+		materials = Arrays.copyOf(builder.materials, quadCount);
+		cullFaceIds = Arrays.copyOf(builder.cullFaceIds, quadCount);
+		colorIndexes = Arrays.copyOf(builder.colorIndexes, quadCount);
+		animationIndexes = Arrays.copyOf(builder.animationIndexes, quadCount);
+	}
+
+	public static TerrainQuadTemplate get(BlockState blockState) {
+		return TEMPLATES.get(blockState);
+	}
+
+	public static void put(BlockState blockState, TerrainQuadTemplate template) {
+		TEMPLATES.put(blockState, template);
+	}
+
+	public static void clear() {
+		TEMPLATES.clear();
+	}
+
+	public static int size() {
+		return TEMPLATES.size();
+	}
+
+	public int cullFaceId(int quadIndex) {
+		return cullFaceIds[quadIndex];
+	}
+
+	/** Block color index of the quad, or -1 if vertex colors are not tinted. */
+	public int colorIndex(int quadIndex) {
+		return colorIndexes[quadIndex];
+	}
+
+	/** Sprite animation index of the quad, or -1 if not animated. */
+	public int animationIndex(int quadIndex) {
+		return animationIndexes[quadIndex];
+	}
+
+	public CanvasRenderMaterial material(int quadIndex) {
+		return materials[quadIndex];
+	}
+
+	/** Copies the mesh quad, as emitted by the model, into the given quad. */
+	public void loadMeshQuad(int quadIndex, BaseQuadEmitter quad) {
+		System.arraycopy(meshData, quadIndex * MESH_STRIDE, quad.data(), 0, MESH_STRIDE);
+	}
+
+	public int[] terrainData() {
+		return terrainData;
+	}
+
+	public int terrainIndex(int quadIndex) {
+		return quadIndex * TerrainFormat.TERRAIN_QUAD_STRIDE;
+	}
+
+	public static class Builder {
+		private final boolean defaultAo;
+		private final int defaultPreset;
+		private int quadCount;
+		private int[] meshData = new int[MESH_STRIDE * 8];
+		private int[] terrainData = new int[TerrainFormat.TERRAIN_QUAD_STRIDE * 8];
+		private CanvasRenderMaterial[] materials = new CanvasRenderMaterial[8];
+		private int[] cullFaceIds = new int[8];
+		private int[] colorIndexes = new int[8];
+		private int[] animationIndexes = new int[8];
+
+		public Builder(boolean defaultAo, int defaultPreset) {
+			this.defaultAo = defaultAo;
+			this.defaultPreset = defaultPreset;
+		}
+
+		/**
+		 * Adds a quad with its final material but before lighting and color are applied.
+		 * Vertex colors of untinted quads are finalized in place.
+		 */
+		public void add(BaseQuadEmitter quad) {
+			final int index = quadCount++;
+
+			if (index == materials.length) {
+				final int newSize = index * 2;
+				meshData = Arrays.copyOf(meshData, newSize * MESH_STRIDE);
+				terrainData = Arrays.copyOf(terrainData, newSize * TerrainFormat.TERRAIN_QUAD_STRIDE);
+				materials = Arrays.copyOf(materials, newSize);
+				cullFaceIds = Arrays.copyOf(cullFaceIds, newSize);
+				colorIndexes = Arrays.copyOf(colorIndexes, newSize);
+				animationIndexes = Arrays.copyOf(animationIndexes, newSize);
+			}
+
+			System.arraycopy(quad.data(), 0, meshData, index * MESH_STRIDE, MESH_STRIDE);
+
+			final CanvasRenderMaterial mat = (CanvasRenderMaterial) quad.material();
+			materials[index] = mat;
+			cullFaceIds[index] = quad.cullFaceId();
+
+			final int colorIndex = mat.disableColorIndex() ? -1 : quad.colorIndex();
+			colorIndexes[index] = colorIndex;
+
+			if (colorIndex == -1) {
+				// same as EncoderUtils.colorizeQuad for untinted quads
+				quad.vertexColor(0, ColorUtil.swapRedBlueIfNeeded(quad.vertexColor(0)));
+				quad.vertexColor(1, ColorUtil.swapRedBlueIfNeeded(quad.vertexColor(1)));
+				quad.vertexColor(2, ColorUtil.swapRedBlueIfNeeded(quad.vertexColor(2)));
+				quad.vertexColor(3, ColorUtil.swapRedBlueIfNeeded(quad.vertexColor(3)));
+			}
+
+			animationIndexes[index] = !mat.discardsTexture() && mat.texture().isAtlas()
+					? ((SpriteExt) mat.texture().spriteIndex().fromIndex(quad.spriteId())).canvas_animationIndex() : -1;
+
+			TerrainFormat.encodeTemplate(quad, terrainData, index * TerrainFormat.TERRAIN_QUAD_STRIDE);
+		}
+
+		public TerrainQuadTemplate build() {
+			return new TerrainQuadTemplate(this);
+		}
+	}
+}
@@ -20,54 +20,68 @@
 
 package grondag.canvas.render.terrain;
 
+import it.unimi.dsi.fastutil.HashCommon;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
 
 import net.minecraft.core.BlockPos;
 import net.minecraft.world.phys.Vec3;
 
-import grondag.canvas.terrain.region.RegionPosition;
+import grondag.canvas.CanvasMod;
 import grondag.canvas.varia.FixedCapacityIndexAllocator;
 
+/**
+ * Assigns terrain regions to 128-block sectors near the camera and tracks
+ * the sector offsets uploaded to terrain shaders.
+ *
+ * <p>Sector count and the shader array length depend on level height and
+ * render distance and are set by {@link #resize(int, int, int, int)}, which must be
+ * followed by a shader reload.  Each size has its own {@link Layout} so that
+ * regions releasing sectors from before a resize can't disturb the new one.
+ *
+ * <p>Sectors are kept in striped maps so that terrain workers looking up
+ * sectors in different parts of the world don't contend.
+ */
 public class TerrainSectorMap {
 	private static final int SECTOR_AXIS_LENGTH_BLOCKS = 128;
 	private static final int SECTOR_BLOCK_MASK = SECTOR_AXIS_LENGTH_BLOCKS - 1;
 	private static final int SECTOR_COORDINATE_MASK = ~SECTOR_BLOCK_MASK;
 	private static final int BLOCK_TO_SECTOR_SHIFT_BITS = 7;
-
 	private static final int SECTOR_AXIS_LENGTH_REGIONS = SECTOR_AXIS_LENGTH_BLOCKS / 16;
-	private static final int SECTOR_XZ_RADIUS = (32 + 2 + SECTOR_AXIS_LENGTH_REGIONS - 1) / SECTOR_AXIS_LENGTH_REGIONS;
-	private static final int SECTOR_XZ_DIAMETER = 1 + SECTOR_XZ_RADIUS * 2;
-	private static final int MIN_WORLD_HEIGHT_BLOCKS_INCLUSIVE = -64;
-	private static final int MAX_WORLD_HEIGHT_BLOCKS_EXCLUSIVE = 320;
-	private static final int SECTOR_Y_DIAMETER_BLOCKS = MAX_WORLD_HEIGHT_BLOCKS_EXCLUSIVE - MIN_WORLD_HEIGHT_BLOCKS_INCLUSIVE;
-	private static final int SECTOR_Y_DIAMETER = (SECTOR_Y_DIAMETER_BLOCKS + SECTOR_AXIS_LENGTH_BLOCKS - 1) / SECTOR_AXIS_LENGTH_BLOCKS;
-	private static final int MAX_SECTORS_LOADED = (SECTOR_XZ_DIAMETER * SECTOR_XZ_DIAMETER * SECTOR_Y_DIAMETER + 1) / 2 * 2;
-	// Two extra ints at end for
-	public static final int UNIFORM_ARRAY_LENGTH = MAX_SECTORS_LOADED / 2;
-
-	private static long sectorKey(int blockX, int blockY, int blockZ) {
-		// shift Y up so we only have 3 sectors vertically
-		blockY -= MIN_WORLD_HEIGHT_BLOCKS_INCLUSIVE;
-		return BlockPos.asLong(blockX & SECTOR_COORDINATE_MASK, blockY & SECTOR_COORDINATE_MASK, blockZ & SECTOR_COORDINATE_MASK);
-	}
+
+	/** Packed shader offsets have five bits per axis. */
+	private static final int OFFSET_BITS = 5;
+	private static final int OFFSET_MASK = (1 << OFFSET_BITS) - 1;
+	static final int MAX_SECTOR_XZ_RADIUS = (OFFSET_MASK - 1) / 2;
+	static final int MAX_SECTOR_Y_DIAMETER = OFFSET_MASK + 1;
+
+	/** Terrain vertices have 13 bits for sector ID. The next bit is {@link TerrainFormat#TILED_UV_FLAG}. */
+	static final int MAX_SECTOR_COUNT = 0x2000;
+
+	/**
+	 * Vertex uniform components left for uniforms other than sector offsets.
+	 * Terrain shaders use far fewer than this.
+	 */
+	static final int RESERVED_UNIFORM_COMPONENTS = 1024;
+
+	private static final int STRIPE_COUNT = 16;
+
+	/** Vanilla overworld height and the default maximum render distance, used until a level is loaded. */
+	private static final int DEFAULT_MIN_BLOCK_Y = -64;
+	private static final int DEFAULT_HEIGHT_BLOCKS = 384;
+	private static final int DEFAULT_RENDER_DISTANCE = 32;
 
 	private static int sectorXorZ(int blockXorZ) {
 		return blockXorZ >> BLOCK_TO_SECTOR_SHIFT_BITS;
 	}
 
-	private static int sectorY(int blockY) {
-		return (blockY - MIN_WORLD_HEIGHT_BLOCKS_INCLUSIVE) >> BLOCK_TO_SECTOR_SHIFT_BITS;
-	}
-
 	//////////////////////////////////////////////////////////////////////////////////////////
 
-	private final Long2ObjectOpenHashMap<RegionRenderSector> map = new Long2ObjectOpenHashMap<>();
-	private final FixedCapacityIndexAllocator allocator = new FixedCapacityIndexAllocator(MAX_SECTORS_LOADED);
+	private volatile Layout layout = new Layout(DEFAULT_MIN_BLOCK_Y, DEFAULT_HEIGHT_BLOCKS, DEFAULT_RENDER_DISTANCE, Integer.MAX_VALUE);
+	private int maxRenderDistanceChunks = DEFAULT_RENDER_DISTANCE;
 	private int originBlockX, originBlockZ;
 	private int originSectorX, originSectorZ;
 	private Vec3 cameraPos;
-	private final int[] sectorOffsets = new int[UNIFORM_ARRAY_LENGTH];
 
 	public int originBlockX() {
 		return originBlockX;
@@ -78,37 +92,80 @@ public class TerrainSectorMap {
 	}
 
 	public void clear() {
-		synchronized (map) {
-			map.clear();
-			allocator.clear();
+		layout.clear();
+	}
+
+	/**
+	 * Sizes the map for the given level height and render distance, discarding all
+	 * sectors if the size changes.  Shaders that use {@link #uniformData()} must
+	 * be reloaded after a change.
+	 *
+	 * <p>The sector uniform array must fit in the vertex uniform components of the
+	 * driver.  If it would not, the sector radius is reduced until it does, and
+	 * {@link #maxRenderDistanceChunks()} is less than the requested render distance.
+	 * Only if a radius of one sector still doesn't fit are fewer sectors allowed, and
+	 * regions beyond that count share a sector ID, as they do when the vertex sector
+	 * ID limit is reached.
+	 *
+	 * @param maxVertexUniformComponents value of GL_MAX_VERTEX_UNIFORM_COMPONENTS
+	 * @return true if the size changed
+	 */
+	public boolean resize(int minBlockY, int heightBlocks, int renderDistanceChunks, int maxVertexUniformComponents) {
+		final Layout newLayout = new Layout(minBlockY, heightBlocks, renderDistanceChunks, maxVertexUniformComponents);
+		maxRenderDistanceChunks = newLayout.isRadiusLimited ? Math.min(renderDistanceChunks, newLayout.xzRadius * SECTOR_AXIS_LENGTH_REGIONS - 2) : renderDistanceChunks;
+
+		if (newLayout.sameSize(layout)) {
+			return false;
+		}
+
+		if (newLayout.isRadiusLimited) {
+			CanvasMod.LOG.warn(String.format("Terrain render distance limited to %d chunks by the driver's limit of %d vertex uniform components at this world height.",
+					maxRenderDistanceChunks, maxVertexUniformComponents));
+		}
+
+		if (newLayout.isUniformLimited) {
+			CanvasMod.LOG.warn(String.format("Terrain sectors limited to %d by the driver's limit of %d vertex uniform components. Distant terrain may not render correctly at this render distance and world height.",
+					newLayout.maxSectorCount, maxVertexUniformComponents));
 		}
+
+		layout = newLayout;
+		return true;
 	}
 
 	public Vec3 cameraPos() {
 		return cameraPos;
 	}
 
+	/** Packed sector offsets, two per int, sized to {@link #uniformArrayLength()}. */
 	public int[] uniformData() {
-		return sectorOffsets;
+		return layout.uniformData();
 	}
 
-	public RegionRenderSector findSector(RegionPosition origin) {
-		final long key = sectorKey(origin.getX(), origin.getY(), origin.getZ());
+	public int uniformArrayLength() {
+		return layout.uniformArrayLength;
+	}
 
-		synchronized (map) {
-			RegionRenderSector result = map.get(key);
+	/** Render distance given to the last resize, reduced if sectors for it would not fit in vertex uniforms. */
+	public int maxRenderDistanceChunks() {
+		return maxRenderDistanceChunks;
+	}
 
-			if (result == null) {
-				result = new RegionRenderSector(origin);
-				map.put(key, result);
-				result.retain(origin);
-				result.updateCameraDependentValues();
-			} else {
-				result.retain(origin);
-			}
+	/** Maximum distance, in sectors, of a loaded sector from the camera sector on X and Z axes. */
+	public int xzRadius() {
+		return layout.xzRadius;
+	}
 
-			return result;
-		}
+	/** Y coordinate of the bottom of the lowest sector. */
+	public int minBlockY() {
+		return layout.minBlockY;
+	}
+
+	public RegionRenderSector findSector(BlockPos origin) {
+		return layout.findSector(origin);
+	}
+
+	int loadedSectorCount() {
+		return layout.loadedSectorCount();
 	}
 
 	public void setCamera(Vec3 cameraPos, BlockPos cameraBlockPos) {
@@ -125,41 +182,175 @@ public class TerrainSectorMap {
 			originSectorX = sectorXorZ(blockX);
 			originSectorZ = sectorXorZ(blockZ);
 
-			synchronized (map) {
-				for (final var sector : map.values()) {
-					sector.updateCameraDependentValues();
+			// Origin is written before taking each stripe lock, so sectors
+			// created after their stripe is updated will see the new origin.
+			layout.updateCameraDependentValues();
+		}
+	}
+
+	private static int sectorCount(int xzRadius, int ySectorCount) {
+		final int xzDiameter = 1 + xzRadius * 2;
+		return Math.min(MAX_SECTOR_COUNT, (xzDiameter * xzDiameter * ySectorCount + 1) / 2 * 2);
+	}
+
+	private class Layout {
+		final int minBlockY;
+		final int ySectorCount;
+		final int xzRadius;
+		final int maxSectorCount;
+		final int uniformArrayLength;
+		/** True when the radius was reduced to fit vertex uniform components. */
+		final boolean isRadiusLimited;
+		/** True when the sector count was reduced to fit vertex uniform components, even at the smallest radius. */
+		final boolean isUniformLimited;
+
+		@SuppressWarnings("unchecked")
+		private final Long2ObjectOpenHashMap<RegionRenderSector>[] stripes = new Long2ObjectOpenHashMap[STRIPE_COUNT];
+		private final FixedCapacityIndexAllocator allocator;
+
+		/** Packed offset for each sector ID. Separate words so that sectors in different stripes never share a write. */
+		private final int[] sectorOffsets;
+		private final int[] uniformData;
+
+		private Layout(int minBlockY, int heightBlocks, int renderDistanceChunks, int maxVertexUniformComponents) {
+			this.minBlockY = minBlockY;
+			ySectorCount = Math.max(1, Math.min(MAX_SECTOR_Y_DIAMETER, (heightBlocks + SECTOR_AXIS_LENGTH_BLOCKS - 1) / SECTOR_AXIS_LENGTH_BLOCKS));
+			// two extra chunks for regions retained beyond render distance
+			int xzRadius = Math.min(MAX_SECTOR_XZ_RADIUS, (renderDistanceChunks + 2 + SECTOR_AXIS_LENGTH_REGIONS - 1) / SECTOR_AXIS_LENGTH_REGIONS);
+			// two sectors per uniform component
+			final int uniformSectorLimit = (int) Math.min(Integer.MAX_VALUE, Math.max(1L, (long) maxVertexUniformComponents - RESERVED_UNIFORM_COMPONENTS) * 2);
+			int sectorCount = sectorCount(xzRadius, ySectorCount);
+			final int requestedRadius = xzRadius;
+
+			while (sectorCount > uniformSectorLimit && xzRadius > 1) {
+				sectorCount = sectorCount(--xzRadius, ySectorCount);
+			}
+
+			this.xzRadius = xzRadius;
+			isRadiusLimited = xzRadius < requestedRadius;
+			isUniformLimited = sectorCount > uniformSectorLimit;
+			maxSectorCount = Math.min(sectorCount, uniformSectorLimit);
+			uniformArrayLength = maxSectorCount / 2;
+			allocator = new FixedCapacityIndexAllocator(maxSectorCount);
+			sectorOffsets = new int[maxSectorCount];
+			uniformData = new int[uniformArrayLength];
+
+			for (int i = 0; i < STRIPE_COUNT; ++i) {
+				stripes[i] = new Long2ObjectOpenHashMap<>();
+			}
+		}
+
+		boolean sameSize(Layout other) {
+			return minBlockY == other.minBlockY && ySectorCount == other.ySectorCount && xzRadius == other.xzRadius && maxSectorCount == other.maxSectorCount;
+		}
+
+		long sectorKey(int blockX, int blockY, int blockZ) {
+			// shift Y up so sectors start at the bottom of the world
+			blockY -= minBlockY;
+			return BlockPos.asLong(blockX & SECTOR_COORDINATE_MASK, blockY & SECTOR_COORDINATE_MASK, blockZ & SECTOR_COORDINATE_MASK);
+		}
+
+		int sectorY(int blockY) {
+			return (blockY - minBlockY) >> BLOCK_TO_SECTOR_SHIFT_BITS;
+		}
+
+		Long2ObjectOpenHashMap<RegionRenderSector> stripe(long sectorKey) {
+			return stripes[(int) HashCommon.mix(sectorKey) & (STRIPE_COUNT - 1)];
+		}
+
+		RegionRenderSector findSector(BlockPos origin) {
+			final long key = sectorKey(origin.getX(), origin.getY(), origin.getZ());
+			final Long2ObjectOpenHashMap<RegionRenderSector> stripe = stripe(key);
+
+			synchronized (stripe) {
+				RegionRenderSector result = stripe.get(key);
+
+				if (result == null) {
+					result = new RegionRenderSector(this, origin);
+					stripe.put(key, result);
+					result.retain(origin);
+					result.updateCameraDependentValues();
+				} else {
+					result.retain(origin);
+				}
+
+				return result;
+			}
+		}
+
+		void updateCameraDependentValues() {
+			for (final var stripe : stripes) {
+				synchronized (stripe) {
+					for (final var sector : stripe.values()) {
+						sector.updateCameraDependentValues();
+					}
+				}
+			}
+		}
+
+		int loadedSectorCount() {
+			int result = 0;
+
+			for (final var stripe : stripes) {
+				synchronized (stripe) {
+					result += stripe.size();
 				}
 			}
+
+			return result;
+		}
+
+		void clear() {
+			for (final var stripe : stripes) {
+				synchronized (stripe) {
+					stripe.clear();
+				}
+			}
+
+			allocator.clear();
+		}
+
+		int[] uniformData() {
+			final int[] sectorOffsets = this.sectorOffsets;
+			final int[] result = uniformData;
+
+			for (int i = 0; i < uniformArrayLength; ++i) {
+				result[i] = (sectorOffsets[i * 2] & 0xFFFF) | (sectorOffsets[i * 2 + 1] << 16);
+			}
+
+			return result;
 		}
 	}
 
 	public class RegionRenderSector {
 		// only used in dev environment
-		final ReferenceOpenHashSet<RegionPosition> holders = new ReferenceOpenHashSet<>();
+		final ReferenceOpenHashSet<BlockPos> holders = new ReferenceOpenHashSet<>();
 
 		int retainCount = 0;
 
+		private final Layout layout;
 		final long sectorKey;
 		public final int paddedBlockOriginX, paddedBlockOriginY, paddedBlockOriginZ;
 		public final int sectorOriginX, sectorOriginY, sectorOriginZ;
 		int sectorId = -1;
 
-		private RegionRenderSector(RegionPosition origin) {
+		private RegionRenderSector(Layout layout, BlockPos origin) {
+			this.layout = layout;
 			final int x = origin.getX();
 			final int y = origin.getY();
 			final int z = origin.getZ();
-			sectorKey = sectorKey(x, y, z);
+			sectorKey = layout.sectorKey(x, y, z);
 
 			// Shifted negative to give positive packed coordinates with negative vertex coordinates
 			paddedBlockOriginX = (x & SECTOR_COORDINATE_MASK) - 63;
-			paddedBlockOriginY = ((y + 64) & SECTOR_COORDINATE_MASK) - 63 - 64;
+			paddedBlockOriginY = ((y - layout.minBlockY) & SECTOR_COORDINATE_MASK) - 63 + layout.minBlockY;
 			paddedBlockOriginZ = (z & SECTOR_COORDINATE_MASK) - 63;
 
 			sectorOriginX = sectorXorZ(x);
-			sectorOriginY = sectorY(y);
+			sectorOriginY = layout.sectorY(y);
 			sectorOriginZ = sectorXorZ(z);
 
-			sectorId = allocator.claimIndex();
+			sectorId = layout.allocator.claimIndex();
 		}
 
 		public int sectorId() {
@@ -167,48 +358,41 @@ public class TerrainSectorMap {
 			return sectorId;
 		}
 
-		private void retain(RegionPosition origin) {
+		/** Must hold stripe lock. */
+		private void retain(BlockPos origin) {
 			assert sectorId != -1 : "retaining unallocated sector";
 			assert holders.add(origin);
 			++retainCount;
 		}
 
-		public RegionRenderSector release(RegionPosition origin) {
-			synchronized (map) {
+		public RegionRenderSector release(BlockPos origin) {
+			final Long2ObjectOpenHashMap<RegionRenderSector> stripe = layout.stripe(sectorKey);
+
+			synchronized (stripe) {
 				assert holders.remove(origin);
 
 				if (--retainCount == 0) {
-					allocator.releaseIndex(sectorId);
-					map.remove(sectorKey);
+					layout.allocator.releaseIndex(sectorId);
+					stripe.remove(sectorKey);
 				}
 
 				return null;
 			}
 		}
 
+		/** Must hold stripe lock. */
 		private void updateCameraDependentValues() {
 			assert sectorId != -1 : "unallocated sector not removed from map";
 			assert retainCount > 0 : "unused sector not removed from map";
 
-			final int xOffset = SECTOR_XZ_RADIUS + sectorOriginX - originSectorX;
-			final int zOffset = SECTOR_XZ_RADIUS + sectorOriginZ - originSectorZ;
-			assert (xOffset & 0xF) == xOffset;
-			assert (zOffset & 0xF) == zOffset;
-			assert (sectorOriginY & 3) == sectorOriginY;
-
-			final int packedOffset = (xOffset | (sectorOriginY << 4) | (zOffset << 8));
-			final int wordIndex = sectorId >> 1;
-			int wordValue = sectorOffsets[wordIndex];
-
-			if ((sectorId & 1) == 1) {
-				// odd
-				wordValue = (wordValue & 0x0000FFFF) | (packedOffset << 16);
-			} else {
-				// even
-				wordValue = (wordValue & 0xFFFF0000) | packedOffset;
-			}
+			final int xzRadius = layout.xzRadius;
+			final int xOffset = xzRadius + sectorOriginX - originSectorX;
+			final int zOffset = xzRadius + sectorOriginZ - originSectorZ;
+			assert (xOffset & OFFSET_MASK) == xOffset;
+			assert (zOffset & OFFSET_MASK) == zOffset;
+			assert (sectorOriginY & OFFSET_MASK) == sectorOriginY;
 
-			sectorOffsets[wordIndex] = wordValue;
+			layout.sectorOffsets[sectorId] = xOffset | (sectorOriginY << OFFSET_BITS) | (zOffset << (OFFSET_BITS * 2));
 		}
 
 		/**
@@ -222,7 +406,7 @@ public class TerrainSectorMap {
 		 * <p>The sector is only 128 blocks wide on each axis, so this gives
 		 * us ample margin.
 		 */
-		public int sectorRelativeRegionOrigin(RegionPosition position) {
+		public int sectorRelativeRegionOrigin(BlockPos position) {
 			final int x = position.getX() - paddedBlockOriginX;
 			final int y = position.getY() - paddedBlockOriginY;
 			final int z = position.getZ() - paddedBlockOriginZ;
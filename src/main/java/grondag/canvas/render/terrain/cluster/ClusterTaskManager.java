@@ -31,10 +31,13 @@ public class ClusterTaskManager {
 	}
 
 	private static final ArrayDeque<ClusterTask> TASKS = new ArrayDeque<>();
+	private static int frameCount;
 
 	private ClusterTaskManager() { }
 
 	public static void run(long deadlineNanos) {
+		++frameCount;
+
 		if (FlawlessFrames.isActive()) {
 			deadlineNanos = Long.MAX_VALUE;
 		}
@@ -53,6 +56,11 @@ public class ClusterTaskManager {
 		} while (System.nanoTime() < deadlineNanos);
 	}
 
+	/** Number of calls to {@link #run(long)}, which happens once per frame. */
+	static int frameCount() {
+		return frameCount;
+	}
+
 	static void schedule(ClusterTask task) {
 		TASKS.offer(task);
 	}
@@ -0,0 +1,97 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+
+package grondag.canvas.render.terrain.cluster;
+
+/**
+ * Size classes are the base slab size times a power of two, like
+ * {@link grondag.canvas.buffer.util.BinIndex} but with a base that is a whole
+ * number of quads.  Released slabs are kept up to the number claimed in the same
+ * size class over roughly the last {@link #DEMAND_WINDOW} frames, and never
+ * beyond a total retained size.
+ */
+public class DemandSlabPoolPolicy implements SlabPoolPolicy {
+	public static final int SIZE_CLASS_COUNT = 15;
+
+	/** Claims decay by 1/DEMAND_WINDOW each frame, so demand is a sum over about this many frames. */
+	static final int DEMAND_WINDOW = 64;
+
+	/** Fixed-point scale for demand so that decay doesn't truncate small counts to zero. */
+	private static final int DEMAND_SCALE = 256;
+
+	private final int baseCapacityBytes;
+	private final long maxRetainedBytes;
+	private final int[] claimCounts = new int[SIZE_CLASS_COUNT];
+	private final int[] demand = new int[SIZE_CLASS_COUNT];
+
+	/**
+	 * @param baseCapacityBytes capacity of the smallest size class
+	 * @param maxRetainedBytes released slabs are not kept past this total
+	 */
+	public DemandSlabPoolPolicy(int baseCapacityBytes, long maxRetainedBytes) {
+		assert (long) baseCapacityBytes << (SIZE_CLASS_COUNT - 1) <= Integer.MAX_VALUE;
+		this.baseCapacityBytes = baseCapacityBytes;
+		this.maxRetainedBytes = maxRetainedBytes;
+	}
+
+	@Override
+	public int sizeClass(int minCapacityBytes) {
+		final long units = ((long) minCapacityBytes + baseCapacityBytes - 1) / baseCapacityBytes;
+		final int result = units <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(units - 1);
+		return result < SIZE_CLASS_COUNT ? result : -1;
+	}
+
+	@Override
+	public int capacityBytes(int sizeClass) {
+		return baseCapacityBytes << sizeClass;
+	}
+
+	@Override
+	public void trackClaim(int sizeClass) {
+		++claimCounts[sizeClass];
+	}
+
+	@Override
+	public int retainLimit(int sizeClass) {
+		return (demand[sizeClass] + DEMAND_SCALE - 1) / DEMAND_SCALE;
+	}
+
+	@Override
+	public long maxRetainedBytes() {
+		return maxRetainedBytes;
+	}
+
+	@Override
+	public void update() {
+		for (int i = 0; i < SIZE_CLASS_COUNT; ++i) {
+			final int d = demand[i];
+			demand[i] = d - (d + DEMAND_WINDOW - 1) / DEMAND_WINDOW + claimCounts[i] * DEMAND_SCALE;
+			claimCounts[i] = 0;
+		}
+	}
+
+	@Override
+	public void clear() {
+		for (int i = 0; i < SIZE_CLASS_COUNT; ++i) {
+			demand[i] = 0;
+			claimCounts[i] = 0;
+		}
+	}
+}
@@ -101,7 +101,7 @@ public class Slab extends AbstractGlBuffer implements SynchronizedBuffer {
 
 	@Override
 	public void onBufferSync() {
-		shutdown();
+		SlabAllocator.recycle(this);
 	}
 
 	/** Returns the number of vertices allocated. */
@@ -145,7 +145,6 @@ public class Slab extends AbstractGlBuffer implements SynchronizedBuffer {
 	protected void onShutdown() {
 		assert RenderSystem.isOnRenderThread();
 		assert usedVertexCount == 0;
-		SlabAllocator.notifyShutdown(this);
 	}
 
 	private class TransferSlab implements TransferBuffer {
@@ -33,15 +33,17 @@ public class SlabAllocator {
 		usedBytes += vertexCount * BYTES_PER_SLAB_VERTEX;
 	}
 
-	static void notifyShutdown(Slab slab) {
-		assert slab.usedVertexCount() == 0;
-		--slabCount;
-		capacityBytes -= slab.capacityBytes();
-	}
-
 	public static final int SLAB_QUAD_VERTEX_COUNT_INCREMENT = 0x1000;
 	public static final int BYTES_PER_SLAB_VERTEX = 28;
 	static final int SLAB_BYTES_INCREMENT = SLAB_QUAD_VERTEX_COUNT_INCREMENT * BYTES_PER_SLAB_VERTEX;
+	private static final long MAX_RETAINED_BYTES = 0x4000000L;
+
+	private static final SlabPool<Slab> POOL = new SlabPool<>(
+			new DemandSlabPoolPolicy(SLAB_BYTES_INCREMENT, MAX_RETAINED_BYTES),
+			DemandSlabPoolPolicy.SIZE_CLASS_COUNT,
+			Slab::new,
+			Slab::capacityBytes,
+			Slab::shutdown);
 
 	static {
 		// Want IDE to show actual numbers above, so check here at run time that nothing changed and got missed.
@@ -51,15 +53,41 @@ public class SlabAllocator {
 	static Slab claim(int minCapacityBytes) {
 		assert RenderSystem.isOnRenderThread();
 		++slabCount;
-		final var result = new Slab((minCapacityBytes + SLAB_BYTES_INCREMENT - 1) / SLAB_BYTES_INCREMENT * SLAB_BYTES_INCREMENT);
+		final var result = POOL.claim((minCapacityBytes + SLAB_BYTES_INCREMENT - 1) / SLAB_BYTES_INCREMENT * SLAB_BYTES_INCREMENT);
 		capacityBytes += result.capacityBytes();
 		return result;
 	}
 
+	/** Called when the GPU is done with a released slab. The pool decides if it is kept or deleted. */
+	static void recycle(Slab slab) {
+		assert RenderSystem.isOnRenderThread();
+		assert slab.usedVertexCount() == 0;
+		--slabCount;
+		capacityBytes -= slab.capacityBytes();
+		POOL.release(slab);
+	}
+
+	/** Call once per frame. */
+	public static void update() {
+		assert RenderSystem.isOnRenderThread();
+		POOL.update();
+	}
+
+	public static void forceReload() {
+		assert RenderSystem.isOnRenderThread();
+		POOL.clear();
+	}
+
 	public static String debugSummary() {
-		return String.format("%d slabs %dMb occ:%d",
+		final long claims = POOL.hitCount() + POOL.missCount();
+
+		return String.format("%d slabs %dMb occ:%d pool hit:%d%% miss:%d kept:%d %dMb",
 				slabCount,
 				capacityBytes / 0x100000L,
-				capacityBytes > 0 ? usedBytes * 100L / capacityBytes : 0);
+				capacityBytes > 0 ? usedBytes * 100L / capacityBytes : 0,
+				claims > 0 ? POOL.hitCount() * 100L / claims : 0,
+				POOL.missCount(),
+				POOL.retainedCount(),
+				POOL.retainedBytes() / 0x100000L);
 	}
 }
@@ -0,0 +1,157 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+
+package grondag.canvas.render.terrain.cluster;
+
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Free lists of released slabs by size class, so that slabs can be reused
+ * instead of deleted and created again as clusters come and go.
+ * Sizes and retention are decided by a {@link SlabPoolPolicy}.
+ *
+ * <p>Generic in the slab type so that tests can use something other than GL buffers.
+ * Not thread-safe - slabs are only claimed and released on the render thread.
+ */
+public class SlabPool<T> {
+	private final SlabPoolPolicy policy;
+	private final IntFunction<T> factory;
+	private final ToIntFunction<T> capacity;
+	private final Consumer<T> destroyer;
+	private final ArrayDeque<T>[] free;
+
+	private long retainedBytes;
+	private long hitCount;
+	private long missCount;
+
+	/**
+	 * @param policy chooses size classes and how many to keep
+	 * @param sizeClassCount number of size classes the policy can return
+	 * @param factory creates a new slab with the given capacity in bytes
+	 * @param capacity reports the capacity in bytes of a slab
+	 * @param destroyer frees a slab that will not be kept
+	 */
+	@SuppressWarnings("unchecked")
+	public SlabPool(SlabPoolPolicy policy, int sizeClassCount, IntFunction<T> factory, ToIntFunction<T> capacity, Consumer<T> destroyer) {
+		this.policy = policy;
+		this.factory = factory;
+		this.capacity = capacity;
+		this.destroyer = destroyer;
+		free = new ArrayDeque[sizeClassCount];
+
+		for (int i = 0; i < sizeClassCount; ++i) {
+			free[i] = new ArrayDeque<>();
+		}
+	}
+
+	/** Returns a released slab with at least the given capacity if one is available, or else a new slab. */
+	public T claim(int minCapacityBytes) {
+		final int sizeClass = policy.sizeClass(minCapacityBytes);
+
+		if (sizeClass < 0) {
+			++missCount;
+			return factory.apply(minCapacityBytes);
+		}
+
+		policy.trackClaim(sizeClass);
+		final T result = free[sizeClass].pollLast();
+
+		if (result == null) {
+			++missCount;
+			return factory.apply(policy.capacityBytes(sizeClass));
+		} else {
+			++hitCount;
+			retainedBytes -= capacity.applyAsInt(result);
+			return result;
+		}
+	}
+
+	/** Keeps the slab for reuse if the policy allows, or else destroys it. Slab must no longer be in use. */
+	public void release(T slab) {
+		final int bytes = capacity.applyAsInt(slab);
+		final int sizeClass = policy.sizeClass(bytes);
+
+		if (sizeClass >= 0 && policy.capacityBytes(sizeClass) == bytes
+				&& free[sizeClass].size() < policy.retainLimit(sizeClass)
+				&& retainedBytes + bytes <= policy.maxRetainedBytes()) {
+			free[sizeClass].offerLast(slab);
+			retainedBytes += bytes;
+		} else {
+			destroyer.accept(slab);
+		}
+	}
+
+	/** Ages demand and destroys released slabs beyond what recent demand justifies, least recently released first. */
+	public void update() {
+		policy.update();
+
+		for (int i = 0; i < free.length; ++i) {
+			final ArrayDeque<T> queue = free[i];
+			final int limit = policy.retainLimit(i);
+
+			while (queue.size() > limit) {
+				final T slab = queue.pollFirst();
+				retainedBytes -= capacity.applyAsInt(slab);
+				destroyer.accept(slab);
+			}
+		}
+	}
+
+	/** Destroys all released slabs and resets demand and statistics. */
+	public void clear() {
+		for (final ArrayDeque<T> queue : free) {
+			for (final T slab : queue) {
+				destroyer.accept(slab);
+			}
+
+			queue.clear();
+		}
+
+		policy.clear();
+		retainedBytes = 0;
+		hitCount = 0;
+		missCount = 0;
+	}
+
+	public long retainedBytes() {
+		return retainedBytes;
+	}
+
+	public long hitCount() {
+		return hitCount;
+	}
+
+	public long missCount() {
+		return missCount;
+	}
+
+	public int retainedCount() {
+		int result = 0;
+
+		for (final ArrayDeque<T> queue : free) {
+			result += queue.size();
+		}
+
+		return result;
+	}
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+
+package grondag.canvas.render.terrain.cluster;
+
+/**
+ * Decides slab sizes and how many released slabs to keep for reuse.
+ * Knows nothing about GL buffers so it can be exercised without a GL context.
+ */
+public interface SlabPoolPolicy {
+	/**
+	 * Size class able to hold at least the given number of bytes,
+	 * or -1 if slabs that large are not pooled.
+	 */
+	int sizeClass(int minCapacityBytes);
+
+	/** Actual capacity of slabs in the given size class. */
+	int capacityBytes(int sizeClass);
+
+	/** Called for each claim in a pooled size class, whether or not the pool could supply it. */
+	void trackClaim(int sizeClass);
+
+	/** Maximum number of released slabs to keep in the given size class. */
+	int retainLimit(int sizeClass);
+
+	/** Released slabs are not kept if their total capacity would exceed this. */
+	long maxRetainedBytes();
+
+	/** Called once per frame to age demand tracking. */
+	void update();
+
+	/** Forget all demand history. */
+	void clear();
+}
@@ -35,6 +35,15 @@ import grondag.canvas.render.terrain.drawlist.SlabIndex;
 import grondag.canvas.render.terrain.drawlist.TerrainVAO;
 
 public class VertexCluster implements ClusterTask {
+	/** Compaction starts when at least this fraction of consumed slab storage holds no live data. */
+	private static final float COMPACTION_THRESHOLD = 0.25f;
+
+	/** Compaction also starts with more slabs than this, to limit binds and draw calls for the cluster. */
+	private static final int MAX_SLABS_BEFORE_COMPACTION = 4;
+
+	/** Compaction stops after moving at least this many bytes and continues in a later step. */
+	private static final int MAX_COMPACTION_BYTES_PER_STEP = 0x100000;
+
 	private final ReferenceOpenHashSet<ClusterDrawList> holdingLists = new ReferenceOpenHashSet<>();
 	public final VertexClusterRealm realm;
 	private final IdentityHashMap<ClusteredDrawableStorage, RegionAllocation> allocatedRegions = new IdentityHashMap<>();
@@ -118,33 +127,68 @@ public class VertexCluster implements ClusterTask {
 		return allocatedRegions.containsKey(storage);
 	}
 
+	/**
+	 * Once scheduled, compaction continues over as many steps as needed
+	 * until all regions are in one slab, even if fragmentation drops below
+	 * the threshold part-way through.
+	 */
 	private void scheduleIfNeeded() {
-		if (!isClosed && slabs.size() > 1 && !isScheduled) {
+		if (!isClosed && slabs.size() > 1 && !isScheduled
+				&& (slabs.size() > MAX_SLABS_BEFORE_COMPACTION || fragmentation() >= COMPACTION_THRESHOLD)) {
 			isScheduled = true;
 			ClusterTaskManager.schedule(this);
 		}
 	}
 
+	/**
+	 * Bytes of slab storage holding live data or lost to released allocations.
+	 * Excludes free space at the end of the hungry slab, because new
+	 * allocations and compaction can still use it.
+	 */
+	long consumedBytes() {
+		long result = 0;
+
+		for (final Slab slab : slabs) {
+			result += slab == hungrySlab ? slab.capacityBytes() - slab.availableBytes() : slab.capacityBytes();
+		}
+
+		return result;
+	}
+
+	/** Fraction of consumed slab storage that holds no live data. */
+	private float fragmentation() {
+		final long consumed = consumedBytes();
+		return consumed == 0 ? 0 : 1f - (float) activeBytes / consumed;
+	}
+
 	public int slabCount() {
 		return slabs.size();
 	}
 
 	@Override
 	public boolean run(long deadlineNanos) {
-		if (isScheduled) {
+		if (!isScheduled) {
+			return true;
+		}
+
+		if (isClosed || slabs.size() < 2 || compactStep(deadlineNanos)) {
 			isScheduled = false;
-			compact();
+			return true;
 		}
 
-		return true;
+		return false;
 	}
 
-	private void compact() {
-		if (slabs.size() < 2) {
-			// nothing to do
-			return;
-		}
-
+	/**
+	 * Moves regions into the hungry slab until all are there, the deadline passes
+	 * or {@link #MAX_COMPACTION_BYTES_PER_STEP} have been moved.  Every region
+	 * allocation is valid after each step and draw lists holding this cluster are
+	 * invalidated if anything moved, so the cluster can be drawn normally
+	 * between steps.
+	 *
+	 * @return true if compaction is complete
+	 */
+	private boolean compactStep(long deadlineNanos) {
 		// NB: hungry slab can't be null here because we have at least two slabs. But
 		// it may not be big enough. Ensure hungry slab can hold everything, including own contents
 		assert hungrySlab.usedBytes() >= 0;
@@ -156,25 +200,39 @@ public class VertexCluster implements ClusterTask {
 		}
 
 		final Slab hungrySlab = this.hungrySlab;
+		int movedBytes = 0;
+		boolean isComplete = true;
 
 		for (final var region : allocatedRegions.values()) {
 			final var oldAllocation = region.getAllocation();
 
 			if (oldAllocation.slab != hungrySlab) {
+				if (movedBytes >= MAX_COMPACTION_BYTES_PER_STEP || System.nanoTime() >= deadlineNanos) {
+					isComplete = false;
+					break;
+				}
+
 				final var newAllocation = hungrySlab.transferFromSlabAllocation(region.factory, oldAllocation);
 				region.setAllocation(newAllocation);
 				oldAllocation.release();
+				movedBytes += oldAllocation.quadVertexCount * SlabAllocator.BYTES_PER_SLAB_VERTEX;
 			}
 		}
 
-		assert slabs.size() == 1;
-		assert slabs.get(0) == hungrySlab;
+		if (movedBytes > 0) {
+			realm.addCompactionBytes(movedBytes);
 
-		if (!holdingLists.isEmpty()) {
-			for (final var list : holdingLists) {
-				list.invalidate();
+			if (!holdingLists.isEmpty()) {
+				for (final var list : holdingLists) {
+					list.invalidate();
+				}
 			}
 		}
+
+		assert !isComplete || slabs.size() == 1;
+		assert !isComplete || slabs.get(0) == hungrySlab;
+
+		return isComplete;
 	}
 
 	void addListListener(ClusterDrawList listener) {
@@ -50,6 +50,12 @@ public class VertexClusterRealm {
 
 	private boolean isClosed = false;
 
+	private long compactionBytes;
+	private long lastCompactionBytes;
+	private int lastFrameCount;
+	private long nextReportTime;
+	private long compactionBytesPerFrame;
+
 	public final boolean isTranslucent;
 
 	public VertexClusterRealm(boolean isTranslucent) {
@@ -87,6 +93,10 @@ public class VertexClusterRealm {
 		assert deadCluster != null : "Clump gone missing.";
 	}
 
+	void addCompactionBytes(int bytes) {
+		compactionBytes += bytes;
+	}
+
 	//private int lastFrame = 0;
 
 	// WIP: make this faster
@@ -96,11 +106,26 @@ public class VertexClusterRealm {
 		}
 
 		long activeByes = 0;
+		long consumedBytes = 0;
 
 		for (final var cluster : clusters.values()) {
 			activeByes += cluster.activeBytes();
+			consumedBytes += cluster.consumedBytes();
 		}
 
+		final long newTime = System.currentTimeMillis();
+
+		if (newTime > nextReportTime) {
+			nextReportTime = newTime + 1000;
+			final int frameCount = ClusterTaskManager.frameCount();
+			final int frames = Math.max(1, frameCount - lastFrameCount);
+			compactionBytesPerFrame = (compactionBytes - lastCompactionBytes) / frames;
+			lastFrameCount = frameCount;
+			lastCompactionBytes = compactionBytes;
+		}
+
+		final long fragmentation = consumedBytes == 0 ? 0 : 100 - activeByes * 100 / consumedBytes;
+
 		//if (++lastFrame >= 200) {
 		//	lastFrame = 0;
 		//
@@ -114,6 +139,7 @@ public class VertexClusterRealm {
 		//	}
 		//}
 
-		return String.format("clusters: %d %dMb", clusters.size(), activeByes / 0x100000);
+		return String.format("clusters: %d %dMb frag: %d%% moved: %dKb/frame", clusters.size(), activeByes / 0x100000,
+				fragmentation, compactionBytesPerFrame / 1024);
 	}
 }
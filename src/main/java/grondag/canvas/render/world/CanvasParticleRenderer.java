@@ -23,6 +23,7 @@ package grondag.canvas.render.world;
 import java.util.Iterator;
 
 import com.google.common.util.concurrent.Runnables;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 
 import com.mojang.blaze3d.systems.RenderSystem;
 import com.mojang.blaze3d.vertex.BufferBuilder;
@@ -40,16 +41,20 @@ import net.minecraft.client.particle.ParticleRenderType;
 import net.minecraft.client.renderer.GameRenderer;
 import net.minecraft.client.renderer.LightTexture;
 import net.minecraft.client.renderer.texture.TextureAtlas;
+import net.minecraft.core.particles.ParticleType;
 
 import io.vram.frex.api.material.MaterialConstants;
 import io.vram.frex.api.material.MaterialFinder;
 import io.vram.frex.api.material.MaterialMap;
 
+import grondag.canvas.buffer.input.ArrayVertexCollector;
 import grondag.canvas.buffer.input.VertexCollectorList;
+import grondag.canvas.config.Configurator;
 import grondag.canvas.material.state.CanvasRenderMaterial;
 import grondag.canvas.mixinterface.ParticleEngineExt;
 import grondag.canvas.mixinterface.ParticleExt;
 import grondag.canvas.render.frustum.RegionCullingFrustum;
+import grondag.canvas.varia.ReferenceFlagCache;
 
 public class CanvasParticleRenderer {
 	private Tesselator tessellator;
@@ -60,12 +65,35 @@ public class CanvasParticleRenderer {
 	private CanvasRenderMaterial baseMat;
 	private CanvasRenderMaterial emissiveMat;
 	private final RegionCullingFrustum cullingFrustum;
+	// FEAT: enhanced material maps for particles - shaders for animation in particular
+	private final ReferenceFlagCache<ParticleType<?>> emissiveParticleTypes = new ReferenceFlagCache<>(particleType -> {
+		final var mat = MaterialMap.getForParticle(particleType).getMapped(null);
+		return mat != null && mat.emissive();
+	});
+	private final ObjectArrayList<ArrayVertexCollector> batchDrawList = new ObjectArrayList<>();
+	/** Region culling is enabled on the frustum only for the batched path. */
+	private final ParticleCuller<Particle> particleCuller;
+	private final ParticleCuller<Particle> batchedParticleCuller;
 
 	public CanvasParticleRenderer(RegionCullingFrustum cullingFrustum) {
 		this.cullingFrustum = cullingFrustum;
+
+		particleCuller = new ParticleCuller<>(particle -> cullingFrustum.isVisible(particle.getBoundingBox()), particle -> {
+			// FEAT: enhanced material maps for particles - shaders for animation in particular
+			final var mat = MaterialMap.getForParticle(((ParticleExt) particle).canvas_particleType()).getMapped(null);
+			return mat != null && mat.emissive();
+		});
+
+		batchedParticleCuller = new ParticleCuller<>(particle -> cullingFrustum.isVisible(particle.getBoundingBox()),
+				particle -> emissiveParticleTypes.test(((ParticleExt) particle).canvas_particleType()));
 	}
 
 	public void renderParticles(ParticleEngine pm, PoseStack matrixStack, VertexCollectorList collectors, LightTexture lightmapTextureManager, Camera camera, float tickDelta) {
+		if (Configurator.batchParticleDraws) {
+			renderBatched(pm, matrixStack, collectors, lightmapTextureManager, camera, tickDelta);
+			return;
+		}
+
 		cullingFrustum.enableRegionCulling = false;
 		final PoseStack renderMatrix = RenderSystem.getModelViewStack();
 		renderMatrix.pushPose();
@@ -91,39 +119,165 @@ public class CanvasParticleRenderer {
 			if (!particles.hasNext()) continue;
 
 			final VertexConsumer consumer = beginSheet(particleTextureSheet, collectors);
+			final CanvasRenderMaterial baseMat = this.baseMat;
+			final CanvasRenderMaterial emissiveMat = this.emissiveMat;
 
-			while (particles.hasNext()) {
-				final Particle particle = particles.next();
+			particleCuller.forEach(particles, baseMat != null, (particle, emissive) -> {
+				renderParticle(particle, emissive ? emissiveMat : baseMat, collectors, consumer, camera, tickDelta, particleTextureSheet);
+			});
 
-				if (!cullingFrustum.isVisible(particle.getBoundingBox())) {
-					continue;
-				}
+			drawHandler.run();
+		}
+
+		renderMatrix.popPose();
+		RenderSystem.applyModelViewMatrix();
+		teardownVanillaParticleRender();
+	}
+
+	/**
+	 * Encodes particles of every Canvas-managed sheet before drawing any of them,
+	 * then draws them from one buffer.  Sheets Canvas doesn't manage are drawn the vanilla
+	 * way, after pending Canvas particles, so draw order across sheets is unchanged.
+	 *
+	 * <p>Emissive materials are looked up once per particle type instead of once per
+	 * particle.  When particle culling is on, the frustum also tests region visibility,
+	 * using results shared by all particles in the same region.
+	 */
+	private void renderBatched(ParticleEngine pm, PoseStack matrixStack, VertexCollectorList collectors, LightTexture lightmapTextureManager, Camera camera, float tickDelta) {
+		final RegionCullingFrustum cullingFrustum = this.cullingFrustum;
+		cullingFrustum.enableRegionCulling = Configurator.cullParticles;
+
+		if (Configurator.cullParticles) {
+			cullingFrustum.prepareRegionVisibility(true);
+		}
+
+		final PoseStack renderMatrix = RenderSystem.getModelViewStack();
+		renderMatrix.pushPose();
+		renderMatrix.mulPoseMatrix(matrixStack.last().pose());
+		RenderSystem.applyModelViewMatrix();
+
+		this.lightmapTextureManager = lightmapTextureManager;
+		tessellator = Tesselator.getInstance();
+		bufferBuilder = tessellator.getBuilder();
+		ext = (ParticleEngineExt) pm;
+		boolean hasBatch = false;
+
+		for (final ParticleRenderType particleTextureSheet : ext.canvas_textureSheets()) {
+			final Iterable<Particle> iterable = ext.canvas_particles().get(particleTextureSheet);
+
+			if (iterable == null) {
+				continue;
+			}
+
+			final Iterator<Particle> particles = iterable.iterator();
+
+			if (!particles.hasNext()) continue;
+
+			final CanvasRenderMaterial baseMat = baseMaterial(particleTextureSheet);
+			final VertexConsumer consumer;
 
-				try {
-					if (baseMat != null) {
-						// FEAT: enhanced material maps for particles - shaders for animation in particular
-						final var mat = MaterialMap.getForParticle(((ParticleExt) particle).canvas_particleType()).getMapped(null);
-						collectors.consumer.defaultMaterial(mat == null || !mat.emissive() ? baseMat : emissiveMat);
-					}
-
-					particle.render(consumer, camera, tickDelta);
-				} catch (final Throwable exception) {
-					final CrashReport crashReport = CrashReport.forThrowable(exception, "Rendering Particle");
-					final CrashReportCategory crashReportSection = crashReport.addCategory("Particle being rendered");
-					crashReportSection.setDetail("Particle", particle::toString);
-					crashReportSection.setDetail("Particle Type", particleTextureSheet::toString);
-					throw new ReportedException(crashReport);
+			if (baseMat == null) {
+				if (hasBatch) {
+					drawBatch(collectors);
+					hasBatch = false;
 				}
+
+				RenderSystem.setShader(GameRenderer::getParticleShader);
+				RenderSystem.setShaderColor(1.0F, 1.0F, 1.0F, 1.0F);
+				setupVanillaParticleRender();
+				particleTextureSheet.begin(bufferBuilder, ext.canvas_textureManager());
+				consumer = bufferBuilder;
+			} else {
+				consumer = collectors.consumer.prepare(baseMat);
+				hasBatch = true;
 			}
 
-			drawHandler.run();
+			final CanvasRenderMaterial emissiveMat = baseMat == null ? null : emissiveMaterial(particleTextureSheet);
+
+			batchedParticleCuller.forEach(particles, baseMat != null, (particle, emissive) -> {
+				renderParticle(particle, emissive ? emissiveMat : baseMat, collectors, consumer, camera, tickDelta, particleTextureSheet);
+			});
+
+			if (baseMat == null) {
+				particleTextureSheet.end(tessellator);
+			}
 		}
 
+		if (hasBatch) {
+			drawBatch(collectors);
+		}
+
+		cullingFrustum.enableRegionCulling = false;
 		renderMatrix.popPose();
 		RenderSystem.applyModelViewMatrix();
 		teardownVanillaParticleRender();
 	}
 
+	/** Material is null for sheets Canvas does not manage. */
+	private static void renderParticle(Particle particle, CanvasRenderMaterial material, VertexCollectorList collectors, VertexConsumer consumer,
+			Camera camera, float tickDelta, ParticleRenderType particleTextureSheet) {
+		try {
+			if (material != null) {
+				collectors.consumer.defaultMaterial(material);
+			}
+
+			particle.render(consumer, camera, tickDelta);
+		} catch (final Throwable exception) {
+			final CrashReport crashReport = CrashReport.forThrowable(exception, "Rendering Particle");
+			final CrashReportCategory crashReportSection = crashReport.addCategory("Particle being rendered");
+			crashReportSection.setDetail("Particle", particle::toString);
+			crashReportSection.setDetail("Particle Type", particleTextureSheet::toString);
+			throw new ReportedException(crashReport);
+		}
+	}
+
+	/** Draws all Canvas-managed particle collectors from one buffer upload. */
+	private void drawBatch(VertexCollectorList collectors) {
+		final ObjectArrayList<ArrayVertexCollector> drawList = batchDrawList;
+
+		for (final CanvasRenderMaterial mat : BATCH_MATERIALS) {
+			final ArrayVertexCollector collector = collectors.getIfExists(mat);
+
+			// emissive and base materials normally share a collector
+			if (collector != null && !collector.isEmpty() && !drawList.contains(collector)) {
+				drawList.add(collector);
+			}
+		}
+
+		if (!drawList.isEmpty()) {
+			// clears the list and the collectors
+			ArrayVertexCollector.draw(drawList);
+		}
+	}
+
+	/** Call when material maps may have changed. */
+	public void clearMaterialCache() {
+		emissiveParticleTypes.clear();
+	}
+
+	/** Null for sheets Canvas does not manage. */
+	private static CanvasRenderMaterial baseMaterial(ParticleRenderType particleTextureSheet) {
+		if (particleTextureSheet == ParticleRenderType.TERRAIN_SHEET) {
+			return RENDER_STATE_TERRAIN;
+		} else if (particleTextureSheet == ParticleRenderType.PARTICLE_SHEET_LIT || particleTextureSheet == ParticleRenderType.PARTICLE_SHEET_OPAQUE) {
+			return RENDER_STATE_OPAQUE_OR_LIT;
+		} else if (particleTextureSheet == ParticleRenderType.PARTICLE_SHEET_TRANSLUCENT) {
+			return RENDER_STATE_TRANSLUCENT;
+		} else {
+			return null;
+		}
+	}
+
+	private static CanvasRenderMaterial emissiveMaterial(ParticleRenderType particleTextureSheet) {
+		if (particleTextureSheet == ParticleRenderType.TERRAIN_SHEET) {
+			return RENDER_STATE_TERRAIN_EMISSIVE;
+		} else if (particleTextureSheet == ParticleRenderType.PARTICLE_SHEET_TRANSLUCENT) {
+			return RENDER_STATE_TRANSLUCENT_EMISSIVE;
+		} else {
+			return RENDER_STATE_OPAQUE_OR_LIT_EMISSIVE;
+		}
+	}
+
 	private void setupVanillaParticleRender() {
 		lightmapTextureManager.turnOnLightLayer();
 		RenderSystem.enableDepthTest();
@@ -209,4 +363,14 @@ public class CanvasParticleRenderer {
 	private static final CanvasRenderMaterial RENDER_STATE_TRANSLUCENT_EMISSIVE = (CanvasRenderMaterial) baseFinder().copyFrom(RENDER_STATE_TRANSLUCENT)
 			.emissive(true)
 			.find();
+
+	/** In vanilla sheet order, so solid particles are drawn before translucent. */
+	private static final CanvasRenderMaterial[] BATCH_MATERIALS = {
+		RENDER_STATE_TERRAIN,
+		RENDER_STATE_TERRAIN_EMISSIVE,
+		RENDER_STATE_OPAQUE_OR_LIT,
+		RENDER_STATE_OPAQUE_OR_LIT_EMISSIVE,
+		RENDER_STATE_TRANSLUCENT,
+		RENDER_STATE_TRANSLUCENT_EMISSIVE
+	};
 }
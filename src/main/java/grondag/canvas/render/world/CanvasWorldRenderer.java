@@ -27,6 +27,7 @@ import java.util.SortedSet;
 
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap.Entry;
 import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import it.unimi.dsi.fastutil.objects.ObjectIterator;
 import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
 import org.jetbrains.annotations.Nullable;
@@ -109,6 +110,7 @@ import grondag.canvas.pipeline.Pipeline;
 import grondag.canvas.pipeline.PipelineManager;
 import grondag.canvas.render.frustum.RegionCullingFrustum;
 import grondag.canvas.render.terrain.cluster.ClusterTaskManager;
+import grondag.canvas.render.terrain.cluster.SlabAllocator;
 import grondag.canvas.shader.GlProgram;
 import grondag.canvas.shader.GlProgramManager;
 import grondag.canvas.shader.data.MatrixData;
@@ -128,6 +130,8 @@ public class CanvasWorldRenderer extends LevelRenderer {
 	public final WorldRenderState worldRenderState = new WorldRenderState(this);
 
 	private final RegionCullingFrustum entityCullingFrustum = new RegionCullingFrustum(worldRenderState);
+	private final EntityCuller entityCuller = new EntityCuller();
+	private final ParallelEntityEncoder parallelEntityEncoder = new ParallelEntityEncoder();
 	private final RenderContextState contextState = new RenderContextState();
 	private final CanvasImmediate worldRenderImmediate = new CanvasImmediate(new BufferBuilder(256), CanvasImmediate.entityBuilders(), contextState);
 	/** Contains the player model output for First Person Model, separate to draw in material pass only. */
@@ -195,6 +199,7 @@ public class CanvasWorldRenderer extends LevelRenderer {
 		MaterialConditionImpl.update();
 		GlProgramManager.INSTANCE.onRenderTick();
 
+		regionRebuildManager.startFrame();
 		regionRebuildManager.processExternalBuildRequests();
 
 		Entity.setViewScale(Mth.clamp(mc.options.renderDistance / 8.0D, 1.0D, 2.5D));
@@ -370,7 +375,6 @@ public class CanvasWorldRenderer extends LevelRenderer {
 
 		boolean didRenderOutlines = false;
 		final CanvasImmediate immediate = worldRenderImmediate;
-		final Iterator<Entity> entities = world.entitiesForRendering().iterator();
 		final PostChain entityOutlineShader = wr.canvas_entityOutlineShader();
 		final SortableVisibleRegionList visibleRegions = worldRenderState.cameraVisibleRegions;
 		entityBlockContext.tickDelta(tickDelta);
@@ -385,14 +389,18 @@ public class CanvasWorldRenderer extends LevelRenderer {
 		renderSystemModelViewStack.mulPoseMatrix(viewMatrixStack.last().pose());
 		RenderSystem.applyModelViewMatrix();
 
-		entityCullingFrustum.enableRegionCulling = Configurator.cullEntityRender;
+		ObjectArrayList<Entity> entities = entityCuller.cull(world.entitiesForRendering(), entityRenderDispatcher, entityCullingFrustum,
+				mc.player, Configurator.cullEntityRender, frameCameraX, frameCameraY, frameCameraZ);
 
-		while (entities.hasNext()) {
-			final Entity entity = entities.next();
+		if (Configurator.parallelEntityEncoding) {
+			entities = parallelEntityEncoder.dispatch(entities, entityRenderDispatcher, wr, camera.getEntity(), frameCameraX, frameCameraY, frameCameraZ, tickDelta);
+			entityCount += parallelEntityEncoder.offThreadEntityCount();
+		}
 
-			if (!entityRenderDispatcher.shouldRender(entity, entityCullingFrustum, frameCameraX, frameCameraY, frameCameraZ) && !entity.hasIndirectPassenger(mc.player)) {
-				continue;
-			}
+		final int entityLimit = entities.size();
+
+		for (int entityIndex = 0; entityIndex < entityLimit; ++entityIndex) {
+			final Entity entity = entities.get(entityIndex);
 
 			if (entity instanceof LocalPlayer && camera.getEntity() != entity) {
 				continue;
@@ -454,6 +462,8 @@ public class CanvasWorldRenderer extends LevelRenderer {
 			}
 		}
 
+		parallelEntityEncoder.complete(immediate.collectors);
+		entityCuller.setDrawnCount(entityCount);
 		contextState.setCurrentEntity(null);
 		SkyShadowRenderer.restoreEntityShadows(mc);
 
@@ -795,6 +805,7 @@ public class CanvasWorldRenderer extends LevelRenderer {
 		BufferSynchronizer.checkPoint();
 		DirectBufferAllocator.update();
 		TransferBuffers.update();
+		SlabAllocator.update();
 		PipelineManager.reloadIfNeeded(false);
 		FlawlessFramesController.handleToggle();
 
@@ -802,7 +813,7 @@ public class CanvasWorldRenderer extends LevelRenderer {
 			vanillaWorldRenderer.canvas_setupFabulousBuffers();
 		}
 
-		if (mc.options.renderDistance != worldRenderState.chunkRenderDistance()) {
+		if (mc.options.renderDistance != worldRenderState.requestedChunkRenderDistance()) {
 			allChanged();
 		}
 
@@ -837,6 +848,7 @@ public class CanvasWorldRenderer extends LevelRenderer {
 
 	@Override
 	public void allChanged() {
+		worldRenderState.resizeSectors();
 		PipelineManager.reloadIfNeeded(true);
 
 		// cause injections to fire but disable all other vanilla logic
@@ -850,8 +862,10 @@ public class CanvasWorldRenderer extends LevelRenderer {
 		vanillaWorldRenderer.canvas_reload();
 
 		worldRenderState.clear();
+		particleRenderer.clearMaterialCache();
 		TransferBuffers.forceReload();
 		StreamBufferAllocator.forceReload();
+		SlabAllocator.forceReload();
 		//ClassInspector.inspect();
 	}
 
@@ -860,6 +874,10 @@ public class CanvasWorldRenderer extends LevelRenderer {
 		return worldRenderState.regionRebuildManager.isEmpty() && worldRenderState.regionBuilder().isEmpty() && !worldRenderState.terrainIterator.hasWork();
 	}
 
+	public String entityDebugSummary() {
+		return entityCuller.debugSummary();
+	}
+
 	@Override
 	public int countRenderedChunks() {
 		return worldRenderState.cameraVisibleRegions.getActiveCount();
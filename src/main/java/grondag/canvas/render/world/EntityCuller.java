@@ -0,0 +1,168 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+
+package grondag.canvas.render.world;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+import net.minecraft.client.renderer.culling.Frustum;
+import net.minecraft.client.renderer.entity.EntityRenderDispatcher;
+import net.minecraft.client.renderer.entity.EntityRenderer;
+import net.minecraft.client.renderer.entity.MobRenderer;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.Mob;
+import net.minecraft.world.phys.AABB;
+
+import grondag.canvas.render.frustum.RegionCullingFrustum;
+import grondag.canvas.render.frustum.RegionVisibilityCache;
+import grondag.canvas.varia.ReferenceFlagCache;
+
+/**
+ * Finds entities to render each frame.
+ *
+ * <p>Normally the frustum planes are tested first and regions after, as before.
+ * When the last sampled frame showed many entities crowded into few regions - mob
+ * farms and the like - region visibility is remembered for the frame, so entities
+ * in the same region share one region lookup, and regions are tested first, so
+ * that entities in hidden regions never reach the entity renderer.  That avoids
+ * bounding box allocation and plane tests for them.  With entities spread out,
+ * region tests rarely share a result and remembering them is slower than looking
+ * them up, so crowding is only sampled every few frames until it is found.
+ *
+ * <p>Entities that can be visible outside their own bounds - because they carry a
+ * passenger, are leashed, disable culling or have a renderer with its own visibility
+ * test, as for guardian beams and end crystals - are always tested by the renderer
+ * first.  Draw order is the same as the world entity list.
+ */
+public class EntityCuller {
+	/** Same as EntityRenderer.shouldRender. */
+	private static final double CULLING_BOX_PADDING = 0.5;
+
+	/** Region tests per region lookup in the prior frame at or above which regions are tested first. */
+	private static final int CROWDED_BOXES_PER_LOOKUP = 4;
+
+	/** Frames between samples of crowding while entities are spread out. */
+	private static final int SAMPLE_INTERVAL = 16;
+
+	private final ObjectArrayList<Entity> visibleEntities = new ObjectArrayList<>();
+
+	/** Renderer classes that override shouldRender, other than for leashes which are checked directly. */
+	private final ReferenceFlagCache<Class<?>> customVisibility = new ReferenceFlagCache<>(EntityCuller::overridesShouldRender);
+
+	private boolean regionsFirst;
+	private int framesSinceSample;
+	private int culledCount;
+	private int regionCulledCount;
+	private int regionLookupCount;
+	private int drawnCount;
+
+	/**
+	 * Returns entities that pass region and frustum tests, or that carry the given player.
+	 * DO NOT RETAIN A REFERENCE.
+	 */
+	public ObjectArrayList<Entity> cull(Iterable<Entity> entities, EntityRenderDispatcher dispatcher, RegionCullingFrustum frustum,
+			Entity player, boolean regionCulling, double cameraX, double cameraY, double cameraZ) {
+		final ObjectArrayList<Entity> visible = visibleEntities;
+		visible.clear();
+		culledCount = 0;
+		final boolean regionsFirst = regionCulling && this.regionsFirst;
+		final boolean sample = regionCulling && (regionsFirst || ++framesSinceSample >= SAMPLE_INTERVAL);
+		frustum.prepareRegionVisibility(sample);
+		frustum.enableRegionCulling = regionCulling;
+
+		for (final Entity entity : entities) {
+			final boolean isSpecial = entity.noCulling || entity.isVehicle()
+					|| (entity instanceof Mob && ((Mob) entity).getLeashHolder() != null);
+
+			if (regionsFirst && !isSpecial && !customVisibility.test(dispatcher.getRenderer(entity).getClass())) {
+				final AABB box = entity.getBoundingBoxForCulling();
+
+				// renderer uses a box around the entity position when bounds are NaN - leave those to it
+				if (!Double.isNaN(box.minX + box.minY + box.minZ + box.maxX + box.maxY + box.maxZ)) {
+					if (!frustum.isRegionVisible(box.minX - CULLING_BOX_PADDING, box.minY - CULLING_BOX_PADDING, box.minZ - CULLING_BOX_PADDING,
+							box.maxX + CULLING_BOX_PADDING, box.maxY + CULLING_BOX_PADDING, box.maxZ + CULLING_BOX_PADDING)) {
+						++culledCount;
+						continue;
+					}
+
+					// regions of this entity are known to be visible
+					frustum.enableRegionCulling = false;
+				}
+			}
+
+			if (dispatcher.shouldRender(entity, frustum, cameraX, cameraY, cameraZ) || (isSpecial && entity.hasIndirectPassenger(player))) {
+				visible.add(entity);
+			} else {
+				++culledCount;
+			}
+
+			frustum.enableRegionCulling = regionCulling;
+		}
+
+		final RegionVisibilityCache regionVisibility = frustum.regionVisibility();
+		regionCulledCount = regionVisibility.culledBoxCount();
+		regionLookupCount = regionVisibility.lookupCount();
+
+		// lookups are only shared, and so only show crowding, when results were remembered
+		if (sample) {
+			framesSinceSample = 0;
+			this.regionsFirst = regionVisibility.boxCount() > 0 && regionVisibility.boxCount() >= regionLookupCount * CROWDED_BOXES_PER_LOOKUP;
+		}
+
+		return visible;
+	}
+
+	/**
+	 * Matched by parameter types because method names are remapped at run time.
+	 * MobRenderer only adds leashes, which are checked directly.
+	 */
+	private static boolean overridesShouldRender(Class<?> rendererClass) {
+		for (Class<?> c = rendererClass; c != null && c != EntityRenderer.class; c = c.getSuperclass()) {
+			if (c == MobRenderer.class) {
+				continue;
+			}
+
+			for (final Method method : c.getDeclaredMethods()) {
+				final Class<?>[] params = method.getParameterTypes();
+
+				if (method.getReturnType() == boolean.class && !Modifier.isStatic(method.getModifiers()) && params.length == 5
+						&& Entity.class.isAssignableFrom(params[0]) && params[1] == Frustum.class
+						&& params[2] == double.class && params[3] == double.class && params[4] == double.class) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/** Entities actually drawn from the last result, which may be fewer for first-person and spectator cases. */
+	public void setDrawnCount(int drawnCount) {
+		this.drawnCount = drawnCount;
+	}
+
+	public String debugSummary() {
+		return String.format("Entities drawn: %d  region culled: %d  frustum culled: %d  region lookups: %d%s",
+				drawnCount, regionCulledCount, culledCount - regionCulledCount, regionLookupCount, regionsFirst ? "  regions first" : "");
+	}
+}
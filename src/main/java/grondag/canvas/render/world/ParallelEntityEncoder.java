@@ -0,0 +1,355 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+
+package grondag.canvas.render.world;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+
+import com.mojang.blaze3d.vertex.BufferBuilder;
+import com.mojang.blaze3d.vertex.PoseStack;
+import com.mojang.blaze3d.vertex.VertexConsumer;
+
+import net.minecraft.Util;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.RenderType;
+import net.minecraft.client.renderer.entity.BatRenderer;
+import net.minecraft.client.renderer.entity.CaveSpiderRenderer;
+import net.minecraft.client.renderer.entity.ChickenRenderer;
+import net.minecraft.client.renderer.entity.CodRenderer;
+import net.minecraft.client.renderer.entity.CowRenderer;
+import net.minecraft.client.renderer.entity.EndermiteRenderer;
+import net.minecraft.client.renderer.entity.EntityRenderDispatcher;
+import net.minecraft.client.renderer.entity.EntityRenderer;
+import net.minecraft.client.renderer.entity.ExperienceOrbRenderer;
+import net.minecraft.client.renderer.entity.GlowSquidRenderer;
+import net.minecraft.client.renderer.entity.PigRenderer;
+import net.minecraft.client.renderer.entity.PufferfishRenderer;
+import net.minecraft.client.renderer.entity.RabbitRenderer;
+import net.minecraft.client.renderer.entity.SalmonRenderer;
+import net.minecraft.client.renderer.entity.SheepRenderer;
+import net.minecraft.client.renderer.entity.SilverfishRenderer;
+import net.minecraft.client.renderer.entity.SlimeRenderer;
+import net.minecraft.client.renderer.entity.SpectralArrowRenderer;
+import net.minecraft.client.renderer.entity.SpiderRenderer;
+import net.minecraft.client.renderer.entity.SquidRenderer;
+import net.minecraft.client.renderer.entity.TippableArrowRenderer;
+import net.minecraft.client.renderer.entity.TropicalFishRenderer;
+import net.minecraft.world.entity.Entity;
+
+import grondag.canvas.CanvasMod;
+import grondag.canvas.apiimpl.rendercontext.TerrainRenderContext;
+import grondag.canvas.buffer.input.CanvasImmediate;
+import grondag.canvas.buffer.input.VertexCollectorList;
+import grondag.canvas.material.state.RenderContextState;
+import grondag.canvas.mixinterface.LevelRendererExt;
+import grondag.canvas.perf.Timekeeper;
+import grondag.canvas.terrain.util.TerrainExecutor;
+import grondag.canvas.terrain.util.TerrainExecutorTask;
+
+/**
+ * Encodes vertices for some entities on terrain worker threads while the render
+ * thread handles the rest.
+ *
+ * <p>Entity renderers keep per-renderer model state that is changed for each entity,
+ * so every entity with the same renderer is encoded in the same task, in list order.
+ * Only renderers known to use nothing else that is unsafe off-thread are eligible,
+ * matched by exact class so that subclasses added by mods are never included.
+ * Named, glowing and camera entities always stay on the render thread because they
+ * use fonts, outline buffers or first-person handling.  When a renderer has any such
+ * entity, all of its entities stay on the render thread for that frame.
+ *
+ * <p>A renderer that needs a vanilla buffer, which may draw with GL as render types
+ * change, stops its task.  That task is run again on the render thread and the
+ * renderer is not used off-thread after that.
+ *
+ * <p>Each task has its own collectors.  These are appended to the render thread
+ * collectors in the order tasks were created, which follows the entity list, so output
+ * is the same no matter which thread encoded each task.  Tasks not yet started when the
+ * render thread finishes its own entities are run on the render thread instead.
+ */
+public class ParallelEntityEncoder {
+	/** Main-thread time saved each frame, net of waiting and merging. Can be negative. */
+	public static final String SAVED_TIME_TOKEN = "entities saved";
+
+	private static final long WAIT_PARK_NANOS = 50000L;
+
+	private static final Set<Class<?>> THREAD_SAFE_RENDERERS = Set.of(
+		BatRenderer.class,
+		CaveSpiderRenderer.class,
+		ChickenRenderer.class,
+		CodRenderer.class,
+		CowRenderer.class,
+		EndermiteRenderer.class,
+		ExperienceOrbRenderer.class,
+		GlowSquidRenderer.class,
+		PigRenderer.class,
+		PufferfishRenderer.class,
+		RabbitRenderer.class,
+		SalmonRenderer.class,
+		SheepRenderer.class,
+		SilverfishRenderer.class,
+		SlimeRenderer.class,
+		SpectralArrowRenderer.class,
+		SpiderRenderer.class,
+		SquidRenderer.class,
+		TippableArrowRenderer.class,
+		TropicalFishRenderer.class
+	);
+
+	/** Renderers found to need the render thread. */
+	private final ReferenceOpenHashSet<Class<?>> renderThreadRenderers = new ReferenceOpenHashSet<>();
+	private final ObjectArrayList<Entity> renderThreadEntities = new ObjectArrayList<>();
+	/** Eligible renderers with at least one entity that must stay on the render thread this frame. */
+	private final ReferenceOpenHashSet<EntityRenderer<?>> excludedRenderers = new ReferenceOpenHashSet<>();
+	private final Reference2ObjectOpenHashMap<EntityRenderer<?>, Partition> partitionMap = new Reference2ObjectOpenHashMap<>();
+	/** Partitions in use this frame, in order of first entity. */
+	private final ObjectArrayList<Partition> partitions = new ObjectArrayList<>();
+	private final ObjectArrayList<Partition> pool = new ObjectArrayList<>();
+
+	private LevelRendererExt levelRenderer;
+	private double cameraX, cameraY, cameraZ;
+	private float tickDelta;
+	private Thread renderThread;
+	private int offThreadEntityCount;
+	private long dispatchNanos;
+
+	/**
+	 * Starts encoding eligible entities on worker threads.
+	 * Call {@link #complete(VertexCollectorList)} after the returned entities are drawn.
+	 *
+	 * @return entities to draw on the render thread, in original order. DO NOT RETAIN A REFERENCE.
+	 */
+	public ObjectArrayList<Entity> dispatch(ObjectArrayList<Entity> entities, EntityRenderDispatcher dispatcher, LevelRendererExt levelRenderer,
+			Entity cameraEntity, double cameraX, double cameraY, double cameraZ, float tickDelta) {
+		final long start = Util.getNanos();
+		final Minecraft mc = Minecraft.getInstance();
+		final ObjectArrayList<Entity> renderThreadEntities = this.renderThreadEntities;
+		renderThreadEntities.clear();
+		this.levelRenderer = levelRenderer;
+		this.cameraX = cameraX;
+		this.cameraY = cameraY;
+		this.cameraZ = cameraZ;
+		this.tickDelta = tickDelta;
+		renderThread = Thread.currentThread();
+		offThreadEntityCount = 0;
+
+		final int limit = entities.size();
+		final ReferenceOpenHashSet<EntityRenderer<?>> excludedRenderers = this.excludedRenderers;
+		excludedRenderers.clear();
+
+		// Renderer model state is shared by all entities of the renderer, so if any
+		// entity must stay on the render thread, all entities of that renderer do.
+		for (int i = 0; i < limit; ++i) {
+			final Entity entity = entities.get(i);
+			final EntityRenderer<?> renderer = dispatcher.getRenderer(entity);
+
+			if (isEligible(renderer) && !excludedRenderers.contains(renderer)
+					&& (entity == cameraEntity || entity.hasCustomName() || mc.shouldEntityAppearGlowing(entity))) {
+				excludedRenderers.add(renderer);
+			}
+		}
+
+		for (int i = 0; i < limit; ++i) {
+			final Entity entity = entities.get(i);
+			final EntityRenderer<?> renderer = dispatcher.getRenderer(entity);
+
+			if (isEligible(renderer) && !excludedRenderers.contains(renderer)) {
+				Partition partition = partitionMap.get(renderer);
+
+				if (partition == null) {
+					partition = pool.isEmpty() ? new Partition() : pool.pop();
+					partition.rendererClass = renderer.getClass();
+					partitionMap.put(renderer, partition);
+					partitions.add(partition);
+				}
+
+				partition.entities.add(entity);
+				++offThreadEntityCount;
+			} else {
+				renderThreadEntities.add(entity);
+			}
+		}
+
+		for (final Partition partition : partitions) {
+			partition.start();
+			TerrainExecutor.INSTANCE.execute(partition);
+		}
+
+		dispatchNanos = Util.getNanos() - start;
+		return renderThreadEntities;
+	}
+
+	private boolean isEligible(EntityRenderer<?> renderer) {
+		return THREAD_SAFE_RENDERERS.contains(renderer.getClass()) && !renderThreadRenderers.contains(renderer.getClass());
+	}
+
+	/** Number of entities encoded by tasks since the last dispatch, whichever thread ran them. */
+	public int offThreadEntityCount() {
+		return offThreadEntityCount;
+	}
+
+	/**
+	 * Finishes all tasks from the last dispatch and appends their output to the target,
+	 * in task order. Does nothing if no tasks were dispatched.  Render thread only.
+	 */
+	public void complete(VertexCollectorList target) {
+		if (partitions.isEmpty()) {
+			return;
+		}
+
+		final long start = Util.getNanos();
+		long offThreadNanos = 0;
+		long inlineNanos = 0;
+
+		for (final Partition partition : partitions) {
+			if (partition.claimed.compareAndSet(false, true)) {
+				// not started by any worker - cheaper to run it here than to wait
+				partition.encode();
+				inlineNanos += partition.encodeNanos;
+			} else {
+				while (!partition.isDone) {
+					LockSupport.parkNanos(this, WAIT_PARK_NANOS);
+				}
+
+				offThreadNanos += partition.encodeNanos;
+			}
+
+			final CanvasImmediate immediate = partition.immediate;
+
+			if (partition.needsRenderThread) {
+				CanvasMod.LOG.info("Entity renderer " + partition.rendererClass.getName() + " uses a vanilla buffer and will be encoded on the render thread.");
+				renderThreadRenderers.add(partition.rendererClass);
+				immediate.collectors.clear();
+				partition.encode();
+				inlineNanos += partition.encodeNanos;
+			}
+
+			target.appendAll(immediate.collectors);
+			immediate.collectors.clear();
+			// draws anything that fell back to vanilla buffers
+			immediate.endBatch();
+			partition.entities.clear();
+			pool.add(partition);
+		}
+
+		partitions.clear();
+		partitionMap.clear();
+
+		// Encoding run here would have happened anyway. Dispatch, waiting and merging would not.
+		final long overheadNanos = dispatchNanos + Util.getNanos() - start - inlineNanos;
+		Timekeeper.instance.addFrameSample(SAVED_TIME_TOKEN, offThreadNanos - overheadNanos);
+	}
+
+	private class Partition implements TerrainExecutorTask {
+		private final RenderContextState contextState = new RenderContextState();
+		private final PoseStack poseStack = new PoseStack();
+		private Class<?> rendererClass;
+		/** Set when encoding stopped because a vanilla buffer was requested off the render thread. */
+		private boolean needsRenderThread;
+
+		private final CanvasImmediate immediate = new CanvasImmediate(new BufferBuilder(256), new Object2ObjectLinkedOpenHashMap<>(), contextState) {
+			@Override
+			protected VertexConsumer fallbackBuffer(RenderType renderLayer) {
+				if (Thread.currentThread() != renderThread) {
+					throw RenderThreadRequired.INSTANCE;
+				}
+
+				return super.fallbackBuffer(renderLayer);
+			}
+		};
+
+		private final ObjectArrayList<Entity> entities = new ObjectArrayList<>();
+		/** Set by whichever thread encodes the entities. A task from a prior frame may still be queued. */
+		private final AtomicBoolean claimed = new AtomicBoolean(true);
+		private volatile boolean isDone;
+		private long encodeNanos;
+
+		/** Called after entities are added. */
+		private void start() {
+			isDone = false;
+			needsRenderThread = false;
+			encodeNanos = 0;
+			claimed.set(false);
+		}
+
+		@Override
+		public void run(TerrainRenderContext context) {
+			if (claimed.compareAndSet(false, true)) {
+				try {
+					encode();
+				} catch (final RenderThreadRequired e) {
+					needsRenderThread = true;
+
+					while (!poseStack.clear()) {
+						poseStack.popPose();
+					}
+				} catch (final Exception e) {
+					CanvasMod.LOG.error("Unhandled error during parallel entity encoding. Some entities may not be drawn.", e);
+				} finally {
+					isDone = true;
+					LockSupport.unpark(renderThread);
+				}
+			}
+		}
+
+		private void encode() {
+			final long start = Util.getNanos();
+			final ObjectArrayList<Entity> entities = this.entities;
+			final int limit = entities.size();
+
+			for (int i = 0; i < limit; ++i) {
+				final Entity entity = entities.get(i);
+
+				if (entity.tickCount == 0) {
+					entity.xOld = entity.getX();
+					entity.yOld = entity.getY();
+					entity.zOld = entity.getZ();
+				}
+
+				contextState.setCurrentEntity(entity);
+				levelRenderer.canvas_renderEntity(entity, cameraX, cameraY, cameraZ, tickDelta, poseStack, immediate);
+			}
+
+			contextState.setCurrentEntity(null);
+			encodeNanos = Util.getNanos() - start;
+		}
+
+		@Override
+		public int priority() {
+			return -1;
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static class RenderThreadRequired extends RuntimeException {
+		private static final RenderThreadRequired INSTANCE = new RenderThreadRequired();
+
+		private RenderThreadRequired() {
+			super(null, null, false, false);
+		}
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+
+package grondag.canvas.render.world;
+
+import java.util.Iterator;
+import java.util.function.Predicate;
+
+/**
+ * Visits the particles of one sheet that pass culling, with whether each one
+ * uses the emissive material.  Both particle paths of CanvasParticleRenderer
+ * use it and differ only in the tests given: the batched path tests region
+ * visibility and emissive flags cached per frame and per particle type.
+ *
+ * <p>Kept free of game classes so it can be run without the game.
+ */
+public class ParticleCuller<P> {
+	private final Predicate<? super P> visibility;
+	private final Predicate<? super P> emissive;
+
+	public ParticleCuller(Predicate<? super P> visibility, Predicate<? super P> emissive) {
+		this.visibility = visibility;
+		this.emissive = emissive;
+	}
+
+	/**
+	 * @param mapMaterials if false, emissive flags are not looked up and are always false,
+	 * as for sheets Canvas does not manage
+	 * @return number of particles culled
+	 */
+	public int forEach(Iterator<? extends P> particles, boolean mapMaterials, Visitor<? super P> visitor) {
+		int culledCount = 0;
+
+		while (particles.hasNext()) {
+			final P particle = particles.next();
+
+			if (!visibility.test(particle)) {
+				++culledCount;
+				continue;
+			}
+
+			visitor.visit(particle, mapMaterials && emissive.test(particle));
+		}
+
+		return culledCount;
+	}
+
+	@FunctionalInterface
+	public interface Visitor<P> {
+		void visit(P particle, boolean emissive);
+	}
+}
@@ -42,6 +42,7 @@ import grondag.canvas.terrain.occlusion.VisibleRegionList;
 import grondag.canvas.terrain.region.RegionRebuildManager;
 import grondag.canvas.terrain.region.RenderRegionBuilder;
 import grondag.canvas.terrain.region.RenderRegionStorage;
+import grondag.canvas.varia.GFX;
 
 /**
  * Holds most of the state needed by the world renderer, allowing that
@@ -82,6 +83,7 @@ public class WorldRenderState {
 	private String drawlistDebugSummary = "";
 
 	// these are measured in chunks, not blocks
+	private int requestedChunkRenderDistance;
 	private int chunkRenderDistance;
 	private int squaredChunkRenderDistance;
 	private int squaredChunkRetentionDistance;
@@ -103,12 +105,31 @@ public class WorldRenderState {
 	void computeDistances() {
 		@SuppressWarnings("resource")
 		int renderDistance = Minecraft.getInstance().options.renderDistance;
+		requestedChunkRenderDistance = renderDistance;
+
+		// sectors may not reach the requested distance if the driver has few vertex uniforms
+		if (world != null) {
+			renderDistance = Math.min(renderDistance, sectorManager.maxRenderDistanceChunks());
+		}
+
 		chunkRenderDistance = renderDistance;
 		squaredChunkRenderDistance = renderDistance * renderDistance;
 		renderDistance += 2;
 		squaredChunkRetentionDistance = renderDistance * renderDistance;
 	}
 
+	/**
+	 * Sizes terrain sectors for the level height and render distance.
+	 * Must happen before shaders are reloaded because the sector uniform depends on it.
+	 */
+	@SuppressWarnings("resource")
+	void resizeSectors() {
+		if (world != null) {
+			sectorManager.resize(world.getMinBuildHeight(), world.getHeight(), Minecraft.getInstance().options.renderDistance,
+					GFX.getInteger(GFX.GL_MAX_VERTEX_UNIFORM_COMPONENTS));
+		}
+	}
+
 	void setWorld(@Nullable ClientLevel clientWorld) {
 		// happens here to avoid creating before renderer is initialized
 		if (regionBuilder == null) {
@@ -138,6 +159,11 @@ public class WorldRenderState {
 		return chunkRenderDistance;
 	}
 
+	/** Render distance from options, which can be more than {@link #chunkRenderDistance()}. */
+	public int requestedChunkRenderDistance() {
+		return requestedChunkRenderDistance;
+	}
+
 	public int maxSquaredChunkRenderDistance() {
 		return squaredChunkRenderDistance;
 	}
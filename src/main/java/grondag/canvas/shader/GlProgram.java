@@ -231,12 +231,15 @@ public class GlProgram {
 		renderTickUpdates.clear();
 		gameTickUpdates.clear();
 
+		final UniformIndex vertexIndex = vertexShader.uniformIndex();
+		final UniformIndex fragmentIndex = fragmentShader.uniformIndex();
 		final int limit = uniforms.size();
 
 		for (int i = 0; i < limit; ++i) {
 			final Uniform<?> u = uniforms.get(i);
 
-			if (containsUniformSpec(u)) {
+			// uniforms not declared in either shader are never located or updated
+			if (vertexIndex.contains(u.declaredType(), u.name) || fragmentIndex.contains(u.declaredType(), u.name)) {
 				activeUniforms.add(u);
 
 				if (u.frequency == UniformRefreshFrequency.PER_FRAME) {
@@ -339,12 +342,12 @@ public class GlProgram {
 	}
 
 	public boolean containsUniformSpec(Uniform<?> uniform) {
-		return containsUniformSpec(uniform.searchString(), uniform.name);
+		return containsUniformSpec(uniform.declaredType(), uniform.name);
 	}
 
 	public boolean containsUniformSpec(String type, String name) {
-		return vertexShader.containsUniformSpec(type, name)
-				|| fragmentShader.containsUniformSpec(type, name);
+		return vertexShader.uniformIndex().contains(type, name)
+				|| fragmentShader.uniformIndex().contains(type, name);
 	}
 
 	public abstract class Uniform<T extends Uniform<T>> {
@@ -419,7 +422,7 @@ public class GlProgram {
 
 		protected abstract void uploadInner();
 
-		public abstract String searchString();
+		public abstract String declaredType();
 	}
 
 	protected abstract class UniformFloat<T extends Uniform<T>> extends Uniform<T> {
@@ -453,7 +456,7 @@ public class GlProgram {
 		}
 
 		@Override
-		public String searchString() {
+		public String declaredType() {
 			return "float";
 		}
 	}
@@ -485,7 +488,7 @@ public class GlProgram {
 		}
 
 		@Override
-		public String searchString() {
+		public String declaredType() {
 			return "vec2";
 		}
 	}
@@ -522,7 +525,7 @@ public class GlProgram {
 		}
 
 		@Override
-		public String searchString() {
+		public String declaredType() {
 			return "vec3";
 		}
 	}
@@ -564,7 +567,7 @@ public class GlProgram {
 		}
 
 		@Override
-		public String searchString() {
+		public String declaredType() {
 			return "vec4";
 		}
 	}
@@ -607,8 +610,8 @@ public class GlProgram {
 		}
 
 		@Override
-		public String searchString() {
-			return "float\\s*\\[\\s*[0-9]+\\s*]";
+		public String declaredType() {
+			return "float[]";
 		}
 	}
 
@@ -635,8 +638,8 @@ public class GlProgram {
 		}
 
 		@Override
-		public String searchString() {
-			return "vec4\\s*\\[\\s*[0-9]+\\s*]";
+		public String declaredType() {
+			return "vec4[]";
 		}
 
 		public void set(float[] v) {
@@ -675,7 +678,7 @@ public class GlProgram {
 		}
 
 		@Override
-		public String searchString() {
+		public String declaredType() {
 			return "int";
 		}
 	}
@@ -689,7 +692,7 @@ public class GlProgram {
 		}
 
 		@Override
-		public String searchString() {
+		public String declaredType() {
 			return type;
 		}
 	}
@@ -721,7 +724,7 @@ public class GlProgram {
 		}
 
 		@Override
-		public String searchString() {
+		public String declaredType() {
 			return "ivec2";
 		}
 	}
@@ -758,7 +761,7 @@ public class GlProgram {
 		}
 
 		@Override
-		public String searchString() {
+		public String declaredType() {
 			return "ivec3";
 		}
 	}
@@ -800,7 +803,7 @@ public class GlProgram {
 		}
 
 		@Override
-		public String searchString() {
+		public String declaredType() {
 			return "ivec4";
 		}
 	}
@@ -831,8 +834,8 @@ public class GlProgram {
 		}
 
 		@Override
-		public String searchString() {
-			return "int\\s*\\[\\s*[0-9]+\\s*]";
+		public String declaredType() {
+			return "int[]";
 		}
 	}
 
@@ -858,7 +861,7 @@ public class GlProgram {
 		}
 
 		@Override
-		public String searchString() {
+		public String declaredType() {
 			return "uint";
 		}
 	}
@@ -890,7 +893,7 @@ public class GlProgram {
 		}
 
 		@Override
-		public String searchString() {
+		public String declaredType() {
 			return "uvec2";
 		}
 	}
@@ -927,7 +930,7 @@ public class GlProgram {
 		}
 
 		@Override
-		public String searchString() {
+		public String declaredType() {
 			return "uvec3";
 		}
 	}
@@ -969,7 +972,7 @@ public class GlProgram {
 		}
 
 		@Override
-		public String searchString() {
+		public String declaredType() {
 			return "uvec4";
 		}
 	}
@@ -1004,8 +1007,8 @@ public class GlProgram {
 		}
 
 		@Override
-		public String searchString() {
-			return "uint\\s*\\[\\s*[0-9]+\\s*]";
+		public String declaredType() {
+			return "uint[]";
 		}
 
 		public void setExternal(IntBuffer buff) {
@@ -1045,8 +1048,8 @@ public class GlProgram {
 		}
 
 		@Override
-		public String searchString() {
-			return "mat4\\s*\\[\\s*[0-9]+\\s*]";
+		public String declaredType() {
+			return "mat4[]";
 		}
 	}
 
@@ -1075,7 +1078,7 @@ public class GlProgram {
 		}
 
 		@Override
-		public String searchString() {
+		public String declaredType() {
 			return "mat4";
 		}
 	}
@@ -1121,7 +1124,7 @@ public class GlProgram {
 		}
 
 		@Override
-		public String searchString() {
+		public String declaredType() {
 			return "mat3";
 		}
 	}
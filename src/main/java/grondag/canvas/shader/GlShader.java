@@ -30,8 +30,6 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.nio.ByteBuffer;
 import java.nio.file.Path;
-import java.util.HashSet;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import com.google.common.io.CharStreams;
@@ -58,19 +56,23 @@ import io.vram.frex.api.config.ShaderConfig;
 import grondag.canvas.CanvasMod;
 import grondag.canvas.config.Configurator;
 import grondag.canvas.pipeline.Pipeline;
+import grondag.canvas.render.terrain.TerrainSectorMap;
+import grondag.canvas.render.world.CanvasWorldRenderer;
 import grondag.canvas.varia.CanvasGlHelper;
 import grondag.canvas.varia.GFX;
 
 public class GlShader implements Shader {
 	static final Pattern PATTERN = Pattern.compile("^#include\\s+(\\\"*[\\w]+:[\\w/\\.]+)[ \\t]*.*", Pattern.MULTILINE);
-	private static final HashSet<String> INCLUDED = new HashSet<>();
+	private static final ShaderSourceCache CACHE = ShaderSourceCache.INSTANCE;
 	private static boolean isErrorNoticeComplete = false;
 	private static boolean needsClearDebugOutputWarning = true;
 	private static boolean needsDebugOutputWarning = true;
+	private static ShaderDiskCache diskCache;
 	private final ResourceLocation shaderSourceId;
 	protected final int shaderType;
 	protected final ProgramType programType;
 	private String source = null;
+	private UniformIndex uniformIndex = null;
 	private int glId = -1;
 	private boolean needsLoad = true;
 	private boolean isErrored = false;
@@ -91,6 +93,23 @@ public class GlShader implements Shader {
 		return Minecraft.getInstance().gameDirectory.toPath().normalize().resolve("canvas_shader_debug");
 	}
 
+	@SuppressWarnings("resource")
+	private static ShaderDiskCache diskCache() {
+		ShaderDiskCache result = diskCache;
+
+		if (result == null) {
+			final Path path = Minecraft.getInstance().gameDirectory.toPath().normalize().resolve("canvas_shader_cache");
+			result = new ShaderDiskCache(path, CanvasMod.versionString, ShaderDiskCache.DEFAULT_MAX_BYTES);
+			diskCache = result;
+		}
+
+		return result;
+	}
+
+	static String diskCacheSummary() {
+		return diskCache == null ? "disk: unused" : diskCache.debugSummary();
+	}
+
 	private static void clearDebugSource() {
 		final Path path = shaderDebugPath();
 
@@ -281,56 +300,63 @@ public class GlShader implements Shader {
 		String result = source;
 
 		if (result == null) {
-			result = getCombinedShaderSource();
+			final long start = System.nanoTime();
+			final ShaderVariant variant = new ShaderVariant();
 
 			if (Pipeline.config().enablePBR) {
-				result = StringUtils.replace(result, "//#define PBR_ENABLED", "#define PBR_ENABLED");
+				variant.replace("//#define PBR_ENABLED", "#define PBR_ENABLED");
 			}
 
 			if (!PreReleaseShaderCompat.needsFragmentShaderStubs()) {
-				result = StringUtils.replace(result, "#define _CV_FRAGMENT_COMPAT", "//#define _CV_FRAGMENT_COMPAT");
+				variant.replace("#define _CV_FRAGMENT_COMPAT", "//#define _CV_FRAGMENT_COMPAT");
 			}
 
 			if (programType.isTerrain) {
-				result = StringUtils.replace(result, "#define _CV_VERTEX_DEFAULT", "#define _CV_VERTEX_TERRAIN");
+				variant.replace("#define _CV_VERTEX_DEFAULT", "#define _CV_VERTEX_TERRAIN");
+
+				final TerrainSectorMap sectorMap = CanvasWorldRenderer.instance().worldRenderState.sectorManager;
+				variant.replace("uniform int[182] _cvu_sectors_int", "uniform int[" + sectorMap.uniformArrayLength() + "] _cvu_sectors_int");
+				variant.replace("#define _CV_SECTOR_XZ_RADIUS 5", "#define _CV_SECTOR_XZ_RADIUS " + sectorMap.xzRadius());
+				variant.replace("#define _CV_SECTOR_MIN_Y -64", "#define _CV_SECTOR_MIN_Y " + sectorMap.minBlockY());
 			}
 
 			if (programType.hasVertexProgramControl) {
-				result = StringUtils.replace(result, "#define PROGRAM_BY_UNIFORM", "//#define PROGRAM_BY_UNIFORM");
+				variant.replace("#define PROGRAM_BY_UNIFORM", "//#define PROGRAM_BY_UNIFORM");
 			}
 
 			if (shaderType == GL21.GL_FRAGMENT_SHADER) {
-				result = StringUtils.replace(result, "#define VERTEX_SHADER", "#define FRAGMENT_SHADER");
+				variant.replace("#define VERTEX_SHADER", "#define FRAGMENT_SHADER");
 			}
 
 			if (!Configurator.wavyGrass) {
-				result = StringUtils.replace(result, "#define ANIMATED_FOLIAGE", "//#define ANIMATED_FOLIAGE");
+				variant.replace("#define ANIMATED_FOLIAGE", "//#define ANIMATED_FOLIAGE");
 			}
 
 			if (Pipeline.shadowsEnabled()) {
-				result = StringUtils.replace(result, "#define SHADOW_MAP_SIZE 1024", "#define SHADOW_MAP_SIZE " + Pipeline.skyShadowSize);
+				variant.replace("#define SHADOW_MAP_SIZE 1024", "#define SHADOW_MAP_SIZE " + Pipeline.skyShadowSize);
 			} else {
-				result = StringUtils.replace(result, "#define SHADOW_MAP_PRESENT", "//#define SHADOW_MAP_PRESENT");
-				result = StringUtils.replace(result, "#define SHADOW_MAP_SIZE 1024", "//#define SHADOW_MAP_SIZE 1024");
+				variant.replace("#define SHADOW_MAP_PRESENT", "//#define SHADOW_MAP_PRESENT");
+				variant.replace("#define SHADOW_MAP_SIZE 1024", "//#define SHADOW_MAP_SIZE 1024");
 			}
 
-			result = StringUtils.replace(result, "#define _CV_MAX_SHADER_COUNT 0", "#define _CV_MAX_SHADER_COUNT " + MaterialShaderImpl.MAX_SHADERS);
-
-			// prepend GLSL version
-			result = "#version " + Pipeline.config().glslVersion + "\n\n" + result;
+			variant.replace("#define _CV_MAX_SHADER_COUNT 0", "#define _CV_MAX_SHADER_COUNT " + MaterialShaderImpl.MAX_SHADERS);
 
 			//if (Configurator.hdLightmaps()) {
-			//	result = StringUtils.replace(result, "#define VANILLA_LIGHTING", "//#define VANILLA_LIGHTING");
+			//	variant.replace("#define VANILLA_LIGHTING", "//#define VANILLA_LIGHTING");
 			//
 			//	if (Configurator.lightmapNoise) {
-			//		result = StringUtils.replace(result, "//#define ENABLE_LIGHT_NOISE", "#define ENABLE_LIGHT_NOISE");
+			//		variant.replace("//#define ENABLE_LIGHT_NOISE", "#define ENABLE_LIGHT_NOISE");
 			//	}
 			//}
 
+			// prepend GLSL version
+			result = "#version " + Pipeline.config().glslVersion + "\n\n" + variant.apply(getCombinedShaderSource());
+
 			if (Configurator.preprocessShaderSource) {
-				result = glslPreprocessSource(result);
+				result = CACHE.preprocess(result, GlShader::glslPreprocessSource);
 			}
 
+			CACHE.addAssemblyTime(System.nanoTime() - start);
 			source = result;
 		}
 
@@ -339,17 +365,22 @@ public class GlShader implements Shader {
 
 	private String getCombinedShaderSource() {
 		final ResourceManager resourceManager = Minecraft.getInstance().getResourceManager();
-		INCLUDED.clear();
-		String result = loadShaderSource(resourceManager, shaderSourceId);
-		result = preprocessSource(resourceManager, result);
-		return processSourceIncludes(resourceManager, result);
+		final String result = preprocessSource(resourceManager, loadShaderSource(resourceManager, shaderSourceId));
+		return CACHE.expandIncludes(result, id -> loadShaderSource(resourceManager, id));
 	}
 
 	protected String preprocessSource(ResourceManager resourceManager, String baseSource) {
 		return baseSource;
 	}
 
+	/**
+	 * Shader source for the given id, read from resources at most once per reload.
+	 */
 	protected static String loadShaderSource(ResourceManager resourceManager, ResourceLocation shaderSourceId) {
+		return CACHE.resource(shaderSourceId, id -> readShaderSource(resourceManager, id));
+	}
+
+	private static String readShaderSource(ResourceManager resourceManager, ResourceLocation shaderSourceId) {
 		String result;
 
 		try (Resource resource = resourceManager.getResource(shaderSourceId)) {
@@ -370,25 +401,6 @@ public class GlShader implements Shader {
 		return result == null || result.isBlank() ? "" : PreReleaseShaderCompat.compatify(result, shaderSourceId);
 	}
 
-	private String processSourceIncludes(ResourceManager resourceManager, String source) {
-		final Matcher m = PATTERN.matcher(source);
-
-		while (m.find()) {
-			// allow quoted arguments to #include for nicer IDE support
-			final String id = StringUtils.replace(m.group(1), "\"", "");
-
-			if (INCLUDED.contains(id)) {
-				source = StringUtils.replace(source, m.group(0), "");
-			} else {
-				INCLUDED.add(id);
-				final String src = processSourceIncludes(resourceManager, loadShaderSource(resourceManager, new ResourceLocation(id)));
-				source = StringUtils.replace(source, m.group(0), src, 1);
-			}
-		}
-
-		return source;
-	}
-
 	/**
 	 * Call after render / resource refresh to force shader reload.
 	 */
@@ -396,6 +408,7 @@ public class GlShader implements Shader {
 	public final void forceReload() {
 		needsLoad = true;
 		source = null;
+		uniformIndex = null;
 	}
 
 	@Override
@@ -411,10 +424,15 @@ public class GlShader implements Shader {
 	}
 
 	@Override
-	public boolean containsUniformSpec(String type, String name) {
-		final String regex = "(?m)^\\s*uniform\\s+" + type + "\\s+" + name + "\\s*;";
-		final Pattern pattern = Pattern.compile(regex);
-		return pattern.matcher(getSource()).find();
+	public UniformIndex uniformIndex() {
+		UniformIndex result = uniformIndex;
+
+		if (result == null) {
+			result = new UniformIndex(getSource());
+			uniformIndex = result;
+		}
+
+		return result;
 	}
 
 	@Override
@@ -423,6 +441,16 @@ public class GlShader implements Shader {
 	}
 
 	private static String glslPreprocessSource(String source) {
+		final ShaderDiskCache diskCache = diskCache();
+		final String cached = diskCache.get(source);
+
+		if (cached != null) {
+			return cached;
+		}
+
+		final String input = source;
+		boolean isComplete = true;
+
 		// The C preprocessor won't understand the #version token but
 		// we need to intercept __VERSION__ used in conditional compilation.
 		// GLSL won't let use define tokens starting with two underscores so
@@ -448,6 +476,7 @@ public class GlShader implements Shader {
 			}
 		} catch (final Exception e) {
 			CanvasMod.LOG.error("GLSL source pre-processing failed", e);
+			isComplete = false;
 		}
 
 		builder.append("\n");
@@ -468,6 +497,10 @@ public class GlShader implements Shader {
 		source = source.replaceAll("\\/\\*[^*]*\\*+(?:[^/*][^*]*\\*+)*\\/[\\s]+\\/\\*", "/*");
 		source = source.replaceAll("\\/\\*[^*]*\\*+(?:[^/*][^*]*\\*+)*\\/[\\s]+\\/\\*", "/*");
 
+		if (isComplete) {
+			diskCache.put(input, source);
+		}
+
 		return source;
 	}
 }
@@ -77,5 +77,10 @@ public enum GlShaderManager {
 	public void reload() {
 		fragmentShaders.values().forEach(s -> s.forceReload());
 		vertexShaders.values().forEach(s -> s.forceReload());
+		ShaderSourceCache.INSTANCE.reload();
+	}
+
+	public String debugSummary() {
+		return ShaderSourceCache.INSTANCE.debugSummary() + " " + GlShader.diskCacheSummary();
 	}
 }
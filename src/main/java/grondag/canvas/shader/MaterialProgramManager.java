@@ -26,6 +26,7 @@ import grondag.canvas.config.Configurator;
 import grondag.canvas.render.terrain.TerrainSectorMap;
 import grondag.canvas.render.terrain.TerrainFormat;
 import grondag.canvas.render.world.CanvasWorldRenderer;
+import grondag.canvas.shader.GlProgram.UniformArrayi;
 import grondag.canvas.shader.data.ShaderUniforms;
 import grondag.canvas.shader.data.UniformRefreshFrequency;
 import grondag.canvas.varia.GFX;
@@ -40,6 +41,7 @@ public enum MaterialProgramManager {
 	}
 
 	private final GlMaterialProgram[] materialPrograms = new GlMaterialProgram[ProgramType.values().length];
+	private final UniformArrayi[] sectorUniforms = new UniformArrayi[ProgramType.values().length];
 
 	GlMaterialProgram getOrCreateMaterialProgram(ProgramType programType) {
 		assert programType != ProgramType.PROCESS;
@@ -53,7 +55,7 @@ public enum MaterialProgramManager {
 			ShaderUniforms.MATERIAL_UNIFORM_SETUP.accept(result);
 
 			if (programType.isTerrain) {
-				result.uniformArrayi("_cvu_sectors_int", UniformRefreshFrequency.PER_FRAME, u -> u.set(CanvasWorldRenderer.instance().worldRenderState.sectorManager.uniformData()), TerrainSectorMap.UNIFORM_ARRAY_LENGTH);
+				sectorUniforms[key] = sectorUniform(result);
 			}
 
 			materialPrograms[key] = result;
@@ -62,9 +64,22 @@ public enum MaterialProgramManager {
 		return result;
 	}
 
+	private static UniformArrayi sectorUniform(GlMaterialProgram program) {
+		final TerrainSectorMap sectorMap = CanvasWorldRenderer.instance().worldRenderState.sectorManager;
+		return program.uniformArrayi("_cvu_sectors_int", UniformRefreshFrequency.PER_FRAME, u -> u.set(sectorMap.uniformData()), sectorMap.uniformArrayLength());
+	}
+
 	public void reload() {
-		for (final GlMaterialProgram prog : materialPrograms) {
+		for (int i = 0; i < materialPrograms.length; ++i) {
+			final GlMaterialProgram prog = materialPrograms[i];
+
 			if (prog != null) {
+				// sector array length depends on level height and render distance
+				if (sectorUniforms[i] != null) {
+					prog.removeUniform(sectorUniforms[i]);
+					sectorUniforms[i] = sectorUniform(prog);
+				}
+
 				prog.forceReload();
 			}
 		}
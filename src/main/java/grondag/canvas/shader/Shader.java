@@ -37,11 +37,9 @@ public interface Shader {
 	boolean attach(int program);
 
 	/**
-	 * @param type Uniform type
-	 * @param name Uniform name
-	 * @return Does this shader contain the provided uniform
+	 * @return Uniform declarations in the final shader source, built once per load
 	 */
-	boolean containsUniformSpec(String type, String name);
+	UniformIndex uniformIndex();
 
 	/**
 	 * @return The shader source location, typically for debugging
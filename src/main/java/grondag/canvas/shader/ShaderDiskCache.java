@@ -0,0 +1,218 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+package grondag.canvas.shader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import com.google.common.hash.Hashing;
+
+import grondag.canvas.CanvasMod;
+
+/**
+ * Keeps preprocessed shader source on disk so that the GLSL preprocessor
+ * only runs for source it has not seen before, including across launches.
+ *
+ * <p>Entries are named by a hash of the input source and a salt, so changed
+ * source or a new Canvas version simply misses and old entries age out.
+ * The input already includes the GLSL version and every define edit.
+ * When the total size passes the limit, least recently used entries are
+ * removed until the total is three quarters of the limit.
+ *
+ * <p>Any I/O failure disables the cache for the rest of the session.
+ */
+final class ShaderDiskCache {
+	static final long DEFAULT_MAX_BYTES = 0x2000000;
+	private static final String EXTENSION = ".glsl";
+	private static final String PENDING_PREFIX = "pending";
+	private static final String PENDING_EXTENSION = ".tmp";
+	/** Pending files older than this were left by a crash, not a write in progress. */
+	private static final long STALE_PENDING_MILLIS = 60000;
+
+	private final Path directory;
+	private final String salt;
+	private final long maxBytes;
+	private long totalBytes = -1;
+	private boolean isEnabled = true;
+	private int hits, misses, evictions;
+
+	ShaderDiskCache(Path directory, String salt, long maxBytes) {
+		this.directory = directory;
+		this.salt = salt;
+		this.maxBytes = maxBytes;
+	}
+
+	private String fileName(String source) {
+		return Hashing.sha256().newHasher()
+				.putString(salt, StandardCharsets.UTF_8)
+				.putByte((byte) 0)
+				.putString(source, StandardCharsets.UTF_8)
+				.hash().toString() + EXTENSION;
+	}
+
+	/** Preprocessed output for the given input, or null if not cached. */
+	String get(String source) {
+		if (!isEnabled) {
+			return null;
+		}
+
+		final Path file = directory.resolve(fileName(source));
+
+		try {
+			final String result = Files.readString(file, StandardCharsets.UTF_8);
+			// recently used entries are evicted last
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+			++hits;
+			return result;
+		} catch (final NoSuchFileException e) {
+			++misses;
+			return null;
+		} catch (final IOException e) {
+			disable(e);
+			return null;
+		}
+	}
+
+	void put(String source, String result) {
+		if (!isEnabled) {
+			return;
+		}
+
+		try {
+			if (totalBytes < 0) {
+				Files.createDirectories(directory);
+				totalBytes = scanBytes();
+			}
+
+			final Path file = directory.resolve(fileName(source));
+			final byte[] bytes = result.getBytes(StandardCharsets.UTF_8);
+			long replacedBytes;
+
+			try {
+				replacedBytes = Files.size(file);
+			} catch (final NoSuchFileException e) {
+				replacedBytes = 0;
+			}
+
+			// write then move so a crash never leaves a partial entry
+			final Path temp = Files.createTempFile(directory, PENDING_PREFIX, PENDING_EXTENSION);
+
+			try {
+				Files.write(temp, bytes);
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+
+			totalBytes += bytes.length - replacedBytes;
+
+			if (totalBytes > maxBytes) {
+				evict();
+			}
+		} catch (final IOException e) {
+			disable(e);
+		}
+	}
+
+	/** Size of all entries. Also removes pending files left by a crash, which are never counted. */
+	private long scanBytes() throws IOException {
+		final long staleTime = System.currentTimeMillis() - STALE_PENDING_MILLIS;
+
+		try (Stream<Path> files = Files.list(directory)) {
+			for (final Path path : (Iterable<Path>) files::iterator) {
+				final String name = path.getFileName().toString();
+
+				if (name.startsWith(PENDING_PREFIX) && name.endsWith(PENDING_EXTENSION) && Files.getLastModifiedTime(path).toMillis() < staleTime) {
+					Files.deleteIfExists(path);
+				}
+			}
+		}
+
+		long result = 0;
+
+		for (final Entry entry : entries()) {
+			result += entry.size();
+		}
+
+		return result;
+	}
+
+	private void evict() throws IOException {
+		final ArrayList<Entry> entries = entries();
+		entries.sort(Comparator.comparingLong(Entry::lastModified));
+		final long target = maxBytes / 4 * 3;
+		long bytes = 0;
+
+		for (final Entry entry : entries) {
+			bytes += entry.size();
+		}
+
+		for (final Entry entry : entries) {
+			if (bytes <= target) {
+				break;
+			}
+
+			Files.deleteIfExists(entry.path());
+			bytes -= entry.size();
+			++evictions;
+		}
+
+		totalBytes = bytes;
+	}
+
+	private ArrayList<Entry> entries() throws IOException {
+		final ArrayList<Entry> result = new ArrayList<>();
+
+		try (Stream<Path> files = Files.list(directory)) {
+			for (final Path path : (Iterable<Path>) files::iterator) {
+				// pending files are not entries until moved into place
+				if (path.getFileName().toString().endsWith(EXTENSION)) {
+					result.add(new Entry(path, Files.size(path), Files.getLastModifiedTime(path).toMillis()));
+				}
+			}
+		}
+
+		return result;
+	}
+
+	private void disable(IOException e) {
+		isEnabled = false;
+		CanvasMod.LOG.warn("Unable to use shader cache at " + directory.toString() + " due to exception. Shader caching is disabled.", e);
+	}
+
+	long totalBytes() {
+		return totalBytes;
+	}
+
+	String debugSummary() {
+		final int total = hits + misses;
+		return String.format("disk hit:%d%% of %d evicted:%d", total == 0 ? 0 : hits * 100 / total, total, evictions);
+	}
+
+	private record Entry(Path path, long size, long lastModified) { }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+package grondag.canvas.shader;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import org.apache.commons.lang3.StringUtils;
+
+import net.minecraft.resources.ResourceLocation;
+
+/**
+ * Caches the pieces of shader source assembly so that shared sources are
+ * read and parsed once instead of once per shader variant.
+ *
+ * <ul>
+ * <li>Resource text is cached by id until the next reload, so includes and
+ * material shaders are read from resources once per reload.</li>
+ * <li>Include structure is cached by id and kept across reloads while the
+ * resource text stays the same.</li>
+ * <li>Preprocessed output is cached by its input and kept for one extra
+ * reload, so a reload that changes nothing skips the GLSL preprocessor.</li>
+ * </ul>
+ *
+ * <p>Only used from the render thread.
+ */
+final class ShaderSourceCache {
+	static final ShaderSourceCache INSTANCE = new ShaderSourceCache();
+
+	private final Object2ObjectOpenHashMap<ResourceLocation, String> resources = new Object2ObjectOpenHashMap<>();
+	private final Object2ObjectOpenHashMap<ResourceLocation, ParsedSource> parsed = new Object2ObjectOpenHashMap<>();
+	private Object2ObjectOpenHashMap<String, String> processed = new Object2ObjectOpenHashMap<>();
+	private Object2ObjectOpenHashMap<String, String> priorProcessed = new Object2ObjectOpenHashMap<>();
+	private final HashSet<ResourceLocation> included = new HashSet<>();
+
+	private int resourceHits, resourceMisses;
+	private int parseHits, parseMisses;
+	private int processHits, processMisses;
+	private int assemblyCount;
+	private long assemblyNanos;
+
+	/** Source text with include directives split out. */
+	private static class ParsedSource {
+		final String content;
+
+		/** Text before each include, plus text after the last include. */
+		final String[] text;
+		final ResourceLocation[] includes;
+
+		ParsedSource(String content) {
+			this.content = content;
+			final ArrayList<String> text = new ArrayList<>();
+			final ArrayList<ResourceLocation> includes = new ArrayList<>();
+			final Matcher m = GlShader.PATTERN.matcher(content);
+			int start = 0;
+
+			while (m.find()) {
+				text.add(content.substring(start, m.start()));
+				// allow quoted arguments to #include for nicer IDE support
+				includes.add(new ResourceLocation(StringUtils.replace(m.group(1), "\"", "")));
+				start = m.end();
+			}
+
+			text.add(content.substring(start));
+			this.text = text.toArray(new String[text.size()]);
+			this.includes = includes.toArray(new ResourceLocation[includes.size()]);
+		}
+	}
+
+	/** Clears resource text so that changed resources are read again. */
+	void reload() {
+		resources.clear();
+		final var swap = priorProcessed;
+		priorProcessed = processed;
+		processed = swap;
+		processed.clear();
+
+		resourceHits = 0;
+		resourceMisses = 0;
+		parseHits = 0;
+		parseMisses = 0;
+		processHits = 0;
+		processMisses = 0;
+		assemblyCount = 0;
+		assemblyNanos = 0;
+	}
+
+	String resource(ResourceLocation id, Function<ResourceLocation, String> loader) {
+		String result = resources.get(id);
+
+		if (result == null) {
+			++resourceMisses;
+			result = loader.apply(id);
+			resources.put(id, result);
+		} else {
+			++resourceHits;
+		}
+
+		return result;
+	}
+
+	private ParsedSource parsed(ResourceLocation id, String content) {
+		ParsedSource result = parsed.get(id);
+
+		if (result != null && result.content.equals(content)) {
+			++parseHits;
+		} else {
+			++parseMisses;
+			result = new ParsedSource(content);
+			parsed.put(id, result);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Replaces each include directive in the given source with the source
+	 * it names, recursively.  Each source is included only the first time
+	 * it is named and later directives for it are removed.
+	 */
+	String expandIncludes(String source, Function<ResourceLocation, String> loader) {
+		included.clear();
+		final StringBuilder builder = new StringBuilder(source.length() * 4);
+		appendExpanded(builder, new ParsedSource(source), loader);
+		return builder.toString();
+	}
+
+	private void appendExpanded(StringBuilder builder, ParsedSource source, Function<ResourceLocation, String> loader) {
+		final String[] text = source.text;
+		final ResourceLocation[] includes = source.includes;
+
+		for (int i = 0; i < includes.length; ++i) {
+			builder.append(text[i]);
+			final ResourceLocation id = includes[i];
+
+			if (included.add(id)) {
+				appendExpanded(builder, parsed(id, resource(id, loader)), loader);
+			}
+		}
+
+		builder.append(text[includes.length]);
+	}
+
+	/** Runs the processor only for input not seen in this or the last reload. */
+	String preprocess(String source, UnaryOperator<String> processor) {
+		String result = processed.get(source);
+
+		if (result == null) {
+			result = priorProcessed.get(source);
+
+			if (result == null) {
+				++processMisses;
+				result = processor.apply(source);
+			} else {
+				++processHits;
+			}
+
+			processed.put(source, result);
+		} else {
+			++processHits;
+		}
+
+		return result;
+	}
+
+	void addAssemblyTime(long nanos) {
+		++assemblyCount;
+		assemblyNanos += nanos;
+	}
+
+	String debugSummary() {
+		return String.format("Shader source: %d in %dms  resource hit:%d%% parse hit:%d%% preprocess hit:%d%%",
+				assemblyCount, assemblyNanos / 1000000, percent(resourceHits, resourceMisses), percent(parseHits, parseMisses), percent(processHits, processMisses));
+	}
+
+	private static int percent(int hits, int misses) {
+		final int total = hits + misses;
+		return total == 0 ? 0 : hits * 100 / total;
+	}
+}
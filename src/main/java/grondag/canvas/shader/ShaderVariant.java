@@ -0,0 +1,92 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+package grondag.canvas.shader;
+
+import java.util.ArrayList;
+
+/**
+ * Define and declaration edits that turn combined shader source into
+ * one variant.  All edits are applied in a single pass over the source.
+ *
+ * <p>Edits are matched at each position in the order they were added and
+ * replaced text is not searched again.  This gives the same result as
+ * applying each edit to the whole source in turn, as long as the targets
+ * of different edits don't overlap in the source and no replacement
+ * contains the target of a later edit.
+ */
+final class ShaderVariant {
+	private final ArrayList<String> targets = new ArrayList<>();
+	private final ArrayList<String> replacements = new ArrayList<>();
+
+	ShaderVariant replace(String target, String replacement) {
+		assert !target.isEmpty();
+		targets.add(target);
+		replacements.add(replacement);
+		return this;
+	}
+
+	String apply(String source) {
+		final int editCount = targets.size();
+
+		if (editCount == 0) {
+			return source;
+		}
+
+		// first character of each edit, used to skip positions where no edit can start
+		final char[] firsts = new char[editCount];
+
+		for (int i = 0; i < editCount; ++i) {
+			firsts[i] = targets.get(i).charAt(0);
+		}
+
+		final int length = source.length();
+		final StringBuilder builder = new StringBuilder(length + 256);
+		int copyStart = 0;
+		int pos = 0;
+
+		while (pos < length) {
+			final char c = source.charAt(pos);
+			int matched = -1;
+
+			for (int i = 0; i < editCount; ++i) {
+				if (firsts[i] == c && source.startsWith(targets.get(i), pos)) {
+					matched = i;
+					break;
+				}
+			}
+
+			if (matched == -1) {
+				++pos;
+			} else {
+				builder.append(source, copyStart, pos);
+				builder.append(replacements.get(matched));
+				pos += targets.get(matched).length();
+				copyStart = pos;
+			}
+		}
+
+		if (copyStart == 0) {
+			return source;
+		}
+
+		builder.append(source, copyStart, length);
+		return builder.toString();
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+package grondag.canvas.shader;
+
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+
+/**
+ * Uniform declarations in one shader source, found with a single scan
+ * when the source is finalized.  Maps each uniform name to its declared
+ * type so that programs can check for uniforms without searching source.
+ *
+ * <p>Only simple declarations of the form {@code uniform <type> <name>;}
+ * are indexed.  Array types are recorded with the size removed, so
+ * {@code uniform int[182] x;} has type {@code int[]}.  A name declared more
+ * than once, as in different conditional blocks, keeps every distinct type.
+ */
+public final class UniformIndex {
+	private static final Pattern DECLARATION = Pattern.compile("^\\s*uniform\\s+(\\w+(?:\\s*\\[\\s*[0-9]+\\s*])?)\\s+(\\w+)\\s*;", Pattern.MULTILINE);
+
+	private final Object2ObjectOpenHashMap<String, String[]> types = new Object2ObjectOpenHashMap<>();
+
+	UniformIndex(String source) {
+		final Matcher m = DECLARATION.matcher(source);
+
+		while (m.find()) {
+			final String name = m.group(2);
+			final String type = normalizeType(m.group(1));
+			final String[] existing = types.get(name);
+
+			if (existing == null) {
+				types.put(name, new String[] {type});
+			} else if (!contains(existing, type)) {
+				final String[] expanded = Arrays.copyOf(existing, existing.length + 1);
+				expanded[existing.length] = type;
+				types.put(name, expanded);
+			}
+		}
+	}
+
+	private static String normalizeType(String type) {
+		final int bracket = type.indexOf('[');
+		return bracket == -1 ? type : type.substring(0, bracket).trim() + "[]";
+	}
+
+	/** True if the named uniform is declared with any type. */
+	boolean contains(String name) {
+		return types.containsKey(name);
+	}
+
+	boolean contains(String type, String name) {
+		final String[] declared = types.get(name);
+		return declared != null && contains(declared, type);
+	}
+
+	private static boolean contains(String[] declared, String type) {
+		for (final String t : declared) {
+			if (t.equals(type)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	int size() {
+		return types.size();
+	}
+}
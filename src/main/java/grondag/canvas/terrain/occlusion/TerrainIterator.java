@@ -51,6 +51,7 @@ import grondag.canvas.terrain.region.RegionBuildState;
 import grondag.canvas.terrain.region.RenderRegion;
 import grondag.canvas.terrain.region.RenderRegionIndexer;
 import grondag.canvas.terrain.region.RenderRegionStorage;
+import grondag.canvas.terrain.util.TerrainExecutor;
 import grondag.canvas.terrain.util.TerrainExecutorTask;
 import grondag.fermion.varia.Useful;
 
@@ -76,6 +77,8 @@ public class TerrainIterator implements TerrainExecutorTask {
 	 * camera is outside world range.  Otherwise will match the origin of the camera region.
 	 */
 	private long cameraChunkOrigin;
+	/** Camera region used for the last re-ranking of queued rebuilds. */
+	private long priorityCameraChunkOrigin = Long.MAX_VALUE;
 	private int renderDistance;
 	private boolean chunkCullingEnabled = true;
 	private volatile boolean cancelled = false;
@@ -210,6 +213,12 @@ public class TerrainIterator implements TerrainExecutorTask {
 		worldRenderState.renderRegionStorage.updateRegionPositionAndVisibility();
 		worldRenderState.drawListCullingHlper.update();
 
+		// Queued rebuilds were ranked by distance from the prior camera region.
+		if (cameraChunkOrigin != priorityCameraChunkOrigin) {
+			priorityCameraChunkOrigin = cameraChunkOrigin;
+			TerrainExecutor.INSTANCE.reprioritize();
+		}
+
 		if (resetCameraOccluder) {
 			visibleRegions.clear();
 			primeCameraRegions();
@@ -0,0 +1,254 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+
+package grondag.canvas.terrain.occlusion.geometry;
+
+import static grondag.canvas.terrain.util.RenderRegionStateIndexer.INTERIOR_CACHE_WORDS;
+
+import io.vram.frex.api.model.util.FaceUtil;
+
+/**
+ * Flood fill of open interior positions that works on whole words
+ * of the occlusion bit set instead of one position at a time.
+ *
+ * <p>Interior index layout is x | y << 4 | z << 8, so each word holds
+ * four 16-bit x rows, four words make up one z layer and neighbors
+ * along z are four words apart.  Runs along x are filled with carry
+ * arithmetic, y neighbors are 16-bit shifts within a word or across
+ * adjacent words, and sweeps over all words repeat until nothing changes.
+ *
+ * <p>Results match a queue-based fill that visits positions one at a time:
+ * reached open positions and closed positions adjacent to them are marked
+ * visited, as are seeds that turn out to be closed.
+ */
+final class BitFloodFill {
+	private static final long X_LOW_MASK = 0x0001000100010001L;
+	private static final long X_HIGH_MASK = 0x8000800080008000L;
+	private static final long X_INNER_MASK = ~(X_LOW_MASK | X_HIGH_MASK);
+	private static final long ROW_LOW_MASK = 0x000000000000FFFFL;
+	private static final long ROW_HIGH_MASK = 0xFFFF000000000000L;
+
+	private final long[] seeds = new long[INTERIOR_CACHE_WORDS];
+	private final long[] open = new long[INTERIOR_CACHE_WORDS];
+	private final long[] reached = new long[INTERIOR_CACHE_WORDS];
+
+	/** Adds an interior position to start the next fill. */
+	void seed(int interiorIndex) {
+		seeds[interiorIndex >> 6] |= 1L << (interiorIndex & 63);
+	}
+
+	/**
+	 * Fills from positions given to {@link #seed(int)} and then clears the seeds.
+	 *
+	 * @param bits closed bits for interior positions start at index 0
+	 * @param visitedOffset start of visited bits within the same array, updated by the fill
+	 * @return face flags of exterior faces touched by newly reached open positions,
+	 * each position contributing only the first of west, east, down, up, north or south it lies on
+	 */
+	int fill(long[] bits, int visitedOffset) {
+		final long[] seeds = this.seeds;
+		final long[] open = this.open;
+		final long[] reached = this.reached;
+
+		boolean changed = false;
+
+		for (int i = 0; i < INTERIOR_CACHE_WORDS; ++i) {
+			final long a = ~(bits[i] | bits[i + visitedOffset]);
+			final long s = seeds[i] & a;
+			open[i] = a;
+
+			if (s == 0) {
+				reached[i] = 0;
+			} else {
+				reached[i] = closeWord(s, a);
+				changed = true;
+			}
+		}
+
+		if (!changed) {
+			// nothing open to fill - seeds are closed or already visited
+			for (int i = 0; i < INTERIOR_CACHE_WORDS; ++i) {
+				bits[i + visitedOffset] |= seeds[i];
+				seeds[i] = 0;
+			}
+
+			return 0;
+		}
+
+		while (changed) {
+			changed = false;
+
+			for (int i = 0; i < INTERIOR_CACHE_WORDS; ++i) {
+				changed |= spread(i);
+			}
+
+			for (int i = INTERIOR_CACHE_WORDS - 1; i >= 0; --i) {
+				changed |= spread(i);
+			}
+		}
+
+		int faces = 0;
+
+		for (int i = 0; i < INTERIOR_CACHE_WORDS; ++i) {
+			final long r = reached[i];
+			final long closed = bits[i];
+
+			if (r != 0) {
+				faces |= faceFlags(i, r);
+			}
+
+			if (closed != 0) {
+				bits[i + visitedOffset] |= r | (closed & (seeds[i] | neighbors(i)));
+			} else {
+				bits[i + visitedOffset] |= r;
+			}
+
+			seeds[i] = 0;
+		}
+
+		return faces;
+	}
+
+	/** Updates reached bits of one word from its neighbors. True if anything changed. */
+	private boolean spread(int wordIndex) {
+		final long a = open[wordIndex];
+
+		if (a == 0) {
+			return false;
+		}
+
+		final long r = reached[wordIndex];
+		final long n = (neighbors(wordIndex) | r) & a;
+
+		if (n == r) {
+			return false;
+		}
+
+		reached[wordIndex] = closeWord(n, a);
+		return true;
+	}
+
+	/** Positions adjacent to reached positions, excluding those within the same x row or word. */
+	private long neighbors(int wordIndex) {
+		final long[] reached = this.reached;
+		final long r = reached[wordIndex];
+		long n = ((r << 1) & ~X_LOW_MASK) | ((r >>> 1) & ~X_HIGH_MASK) | (r << 16) | (r >>> 16);
+
+		if ((wordIndex & 3) != 0) {
+			n |= reached[wordIndex - 1] >>> 48;
+		}
+
+		if ((wordIndex & 3) != 3) {
+			n |= reached[wordIndex + 1] << 48;
+		}
+
+		if (wordIndex >= 4) {
+			n |= reached[wordIndex - 4];
+		}
+
+		if (wordIndex < INTERIOR_CACHE_WORDS - 4) {
+			n |= reached[wordIndex + 4];
+		}
+
+		return n;
+	}
+
+	/** Fills everything in the word reachable from the given bits without leaving the word. */
+	private static long closeWord(long bits, long open) {
+		long result = fillRows(bits, open);
+
+		while (true) {
+			final long next = fillRows(result | (((result << 16) | (result >>> 16)) & open), open);
+
+			if (next == result) {
+				return result;
+			}
+
+			result = next;
+		}
+	}
+
+	/** Extends each set bit to the whole run of open bits containing it within its 16-bit row. */
+	private static long fillRows(long bits, long open) {
+		long result = 0;
+
+		for (int shift = 0; shift < 64; shift += 16) {
+			final int a = (int) (open >>> shift) & 0xFFFF;
+			final int s = (int) (bits >>> shift) & a;
+
+			if (s == 0) {
+				continue;
+			}
+
+			if (a == 0xFFFF) {
+				result |= 0xFFFFL << shift;
+			} else {
+				// carry propagates the seed upward through the run,
+				// then the same again with bit order reversed fills downward
+				final int up = (((s + a) ^ a) | s) & a;
+				final int ra = Integer.reverse(a) >>> 16;
+				final int rs = Integer.reverse(up) >>> 16;
+				final int down = Integer.reverse((((rs + ra) ^ ra) | rs) & ra) >>> 16;
+				result |= (long) (up | down) << shift;
+			}
+		}
+
+		return result;
+	}
+
+	private static int faceFlags(int wordIndex, long r) {
+		int faces = 0;
+
+		if ((r & X_LOW_MASK) != 0) {
+			faces |= FaceUtil.WEST_FLAG;
+		}
+
+		if ((r & X_HIGH_MASK) != 0) {
+			faces |= FaceUtil.EAST_FLAG;
+		}
+
+		r &= X_INNER_MASK;
+		final int yWord = wordIndex & 3;
+
+		if (yWord == 0) {
+			if ((r & ROW_LOW_MASK) != 0) {
+				faces |= FaceUtil.DOWN_FLAG;
+			}
+
+			r &= ~ROW_LOW_MASK;
+		} else if (yWord == 3) {
+			if ((r & ROW_HIGH_MASK) != 0) {
+				faces |= FaceUtil.UP_FLAG;
+			}
+
+			r &= ~ROW_HIGH_MASK;
+		}
+
+		if (r != 0) {
+			if (wordIndex < 4) {
+				faces |= FaceUtil.NORTH_FLAG;
+			} else if (wordIndex >= INTERIOR_CACHE_WORDS - 4) {
+				faces |= FaceUtil.SOUTH_FLAG;
+			}
+		}
+
+		return faces;
+	}
+}
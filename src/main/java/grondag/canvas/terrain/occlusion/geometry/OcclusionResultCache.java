@@ -0,0 +1,119 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+
+package grondag.canvas.terrain.occlusion.geometry;
+
+import static grondag.canvas.terrain.util.RenderRegionStateIndexer.INTERIOR_CACHE_WORDS;
+import static grondag.canvas.terrain.util.RenderRegionStateIndexer.TOTAL_CACHE_WORDS;
+
+import java.util.Arrays;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+
+/**
+ * Shares occlusion results between regions with identical closed and renderable bits.
+ * Solid stone, open air, ocean and flat layers repeat across many sections and
+ * all produce the same result.
+ *
+ * <p>Entries are keyed by a hash of the input bits and hold a full copy of the
+ * input so that a hash collision is a miss and never a wrong result.  Each entry
+ * also holds the interior closed and renderable bits as they were after the
+ * build, because the build changes them and later block rendering reads them.
+ *
+ * <p>Bounded to {@link #MAX_ENTRIES} with least-recently-used eviction.
+ * Called from terrain worker threads, so access to the map is synchronized.
+ * Entries are never changed after they are added.
+ */
+final class OcclusionResultCache {
+	private static final int MAX_ENTRIES = 512;
+	private static final Long2ObjectLinkedOpenHashMap<Entry> MAP = new Long2ObjectLinkedOpenHashMap<>(MAX_ENTRIES);
+
+	private OcclusionResultCache() { }
+
+	private record Entry(int flags, long[] input, long[] output, OcclusionResult result) { }
+
+	/**
+	 * @param bits calculator bits before build
+	 * @param renderableOffset start of renderable bits
+	 * @param flags build options that change the result
+	 */
+	static long hash(long[] bits, int renderableOffset, int flags) {
+		long hash = flags;
+
+		for (int i = 0; i < TOTAL_CACHE_WORDS; ++i) {
+			hash = hash * 31 + bits[i];
+		}
+
+		for (int i = 0; i < INTERIOR_CACHE_WORDS; ++i) {
+			hash = hash * 31 + bits[renderableOffset + i];
+		}
+
+		return HashCommon.mix(hash);
+	}
+
+	/**
+	 * Returns the cached result for identical input and copies the built
+	 * interior bits into the given array, or returns null if not cached.
+	 */
+	static OcclusionResult restore(long hash, long[] bits, int renderableOffset, int flags) {
+		final Entry entry;
+
+		synchronized (MAP) {
+			entry = MAP.getAndMoveToLast(hash);
+		}
+
+		if (entry == null || entry.flags() != flags || !matches(entry.input(), bits, renderableOffset)) {
+			return null;
+		}
+
+		System.arraycopy(entry.output(), 0, bits, 0, INTERIOR_CACHE_WORDS);
+		System.arraycopy(entry.output(), INTERIOR_CACHE_WORDS, bits, renderableOffset, INTERIOR_CACHE_WORDS);
+		return entry.result();
+	}
+
+	/** Copy of build input, to be passed to {@link #add(long, long[], long[], int, int, OcclusionResult)} after the build. */
+	static long[] captureInput(long[] bits, int renderableOffset) {
+		final long[] input = new long[TOTAL_CACHE_WORDS + INTERIOR_CACHE_WORDS];
+		System.arraycopy(bits, 0, input, 0, TOTAL_CACHE_WORDS);
+		System.arraycopy(bits, renderableOffset, input, TOTAL_CACHE_WORDS, INTERIOR_CACHE_WORDS);
+		return input;
+	}
+
+	static void add(long hash, long[] input, long[] bits, int renderableOffset, int flags, OcclusionResult result) {
+		final long[] output = new long[INTERIOR_CACHE_WORDS * 2];
+		System.arraycopy(bits, 0, output, 0, INTERIOR_CACHE_WORDS);
+		System.arraycopy(bits, renderableOffset, output, INTERIOR_CACHE_WORDS, INTERIOR_CACHE_WORDS);
+		final Entry entry = new Entry(flags, input, output, result);
+
+		synchronized (MAP) {
+			MAP.putAndMoveToLast(hash, entry);
+
+			if (MAP.size() > MAX_ENTRIES) {
+				MAP.removeFirst();
+			}
+		}
+	}
+
+	private static boolean matches(long[] input, long[] bits, int renderableOffset) {
+		return Arrays.equals(input, 0, TOTAL_CACHE_WORDS, bits, 0, TOTAL_CACHE_WORDS)
+				&& Arrays.equals(input, TOTAL_CACHE_WORDS, input.length, bits, renderableOffset, renderableOffset + INTERIOR_CACHE_WORDS);
+	}
+}
@@ -26,18 +26,14 @@ import static grondag.canvas.terrain.util.RenderRegionStateIndexer.TOTAL_CACHE_W
 import static grondag.canvas.terrain.util.RenderRegionStateIndexer.interiorIndex;
 import static grondag.canvas.terrain.util.RenderRegionStateIndexer.regionIndex;
 
-import it.unimi.dsi.fastutil.ints.IntArrayFIFOQueue;
-import it.unimi.dsi.fastutil.ints.IntArrayList;
-
-import net.minecraft.world.level.block.Blocks;
-import net.minecraft.world.level.block.RenderShape;
-import net.minecraft.world.level.block.state.BlockState;
+import java.util.function.IntConsumer;
 
-import io.vram.frex.api.model.util.FaceUtil;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 
 import grondag.bitraster.PackedBox;
-import grondag.canvas.config.Configurator;
+import grondag.canvas.perf.ChunkRebuildCounters;
 import grondag.canvas.pipeline.Pipeline;
+import grondag.canvas.terrain.region.input.RegionPalette;
 
 public abstract class RegionOcclusionCalculator {
 	public static final int OCCLUSION_RESULT_RENDERABLE_BOUNDS_INDEX = 0;
@@ -64,7 +60,7 @@ public abstract class RegionOcclusionCalculator {
 	}
 
 	public final BoxFinder boxFinder = new BoxFinder(new AreaFinder());
-	private final IntArrayFIFOQueue queue = new IntArrayFIFOQueue();
+	private final BitFloodFill floodFill = new BitFloodFill();
 	private final long[] bits = new long[WORD_COUNT];
 	private int openCount;
 	private int minRenderableX;
@@ -74,12 +70,6 @@ public abstract class RegionOcclusionCalculator {
 	private int maxRenderableY;
 	private int maxRenderableZ;
 
-	/**
-	 * Accumulates exterior faces visited during fill to track which exterior
-	 * faces are connected. Used for occlusion.
-	 */
-	private int visitedFacesMask;
-
 	public void prepare() {
 		System.arraycopy(EMPTY_BITS, 0, bits, 0, WORD_COUNT);
 		captureExterior();
@@ -87,9 +77,11 @@ public abstract class RegionOcclusionCalculator {
 		captureInterior();
 	}
 
-	protected abstract BlockState blockStateAtIndex(int regionIndex);
+	/** Packed {@link RegionPalette} properties of the block at the given index. */
+	protected abstract int blockPropertiesAtIndex(int regionIndex);
 
-	protected abstract boolean closedAtRelativePos(BlockState blockState, int regionIndex);
+	/** True if the block at the given index is a solid full cube. */
+	protected abstract boolean closedAtIndex(int regionIndex);
 
 	public boolean isClosed(int index) {
 		return (bits[(index >> 6)] & (1L << (index & 63))) != 0;
@@ -99,6 +91,31 @@ public abstract class RegionOcclusionCalculator {
 		return (bits[(interiorIndex >> 6) + RENDERABLE_OFFSET] & (1L << (interiorIndex & 63))) != 0;
 	}
 
+	/**
+	 * Calls action with each interior index that should be rendered, in index order.
+	 * Skips whole words of non-renderable positions, which are often most of the region.
+	 */
+	public void forEachRenderableIndex(IntConsumer action) {
+		forEachSetBit(bits, RENDERABLE_OFFSET, INTERIOR_CACHE_WORDS, action);
+	}
+
+	/**
+	 * Calls action with the index of each set bit, in order.  Bit indexes
+	 * count from the low bit of words[offset].
+	 *
+	 * @param wordCount number of words visited, starting at offset
+	 */
+	public static void forEachSetBit(long[] words, int offset, int wordCount, IntConsumer action) {
+		for (int wordIndex = 0; wordIndex < wordCount; ++wordIndex) {
+			long word = words[offset + wordIndex];
+
+			while (word != 0) {
+				action.accept((wordIndex << 6) | Long.numberOfTrailingZeros(word));
+				word &= word - 1;
+			}
+		}
+	}
+
 	protected void setVisibility(int index, boolean isRenderable, boolean isClosed) {
 		final long mask = (1L << (index & 63));
 		final int baseIndex = index >> 6;
@@ -114,10 +131,10 @@ public abstract class RegionOcclusionCalculator {
 	}
 
 	private void captureInteriorVisibility(int regionIndex) {
-		final BlockState blockState = blockStateAtIndex(regionIndex);
+		final int properties = blockPropertiesAtIndex(regionIndex);
 
-		if (blockState.getRenderShape() != RenderShape.INVISIBLE || !blockState.getFluidState().isEmpty()) {
-			final boolean closed = closedAtRelativePos(blockState, regionIndex) || (Configurator.renderWhiteGlassAsOccluder && blockState.getBlock() == Blocks.WHITE_STAINED_GLASS);
+		if ((properties & RegionPalette.RENDERABLE) != 0) {
+			final boolean closed = closedAtIndex(regionIndex) || (properties & RegionPalette.FORCED_OCCLUDER) != 0;
 			setVisibility(regionIndex, true, closed);
 		}
 	}
@@ -235,9 +252,7 @@ public abstract class RegionOcclusionCalculator {
 	}
 
 	private void captureExteriorVisibility(int regionIndex) {
-		final BlockState blockState = blockStateAtIndex(regionIndex);
-
-		if ((blockState.getRenderShape() != RenderShape.INVISIBLE || !blockState.getFluidState().isEmpty()) && closedAtRelativePos(blockState, regionIndex)) {
+		if ((blockPropertiesAtIndex(regionIndex) & RegionPalette.RENDERABLE) != 0 && closedAtIndex(regionIndex)) {
 			setVisibility(regionIndex, false, true);
 		}
 	}
@@ -252,45 +267,6 @@ public abstract class RegionOcclusionCalculator {
 		}
 	}
 
-	/**
-	 * Checks if the position is interior and not already visited.
-	 * If the position is interior and not already visited, marks it visited
-	 * and returns a boolean indicating opacity.
-	 *
-	 * @param index
-	 * @return True if position met the conditions for visiting AND was not opaque.
-	 */
-	private boolean setVisited(int index) {
-		// interior only
-		if (index >= INTERIOR_STATE_COUNT) {
-			return false;
-		}
-
-		final int wordIndex = index >> 6;
-		final long mask = 1L << (index & 63);
-
-		if ((bits[wordIndex + EXTERIOR_VISIBLE_OFFSET] & mask) == 0) {
-			// not already visited
-
-			// mark visited
-			bits[wordIndex + EXTERIOR_VISIBLE_OFFSET] |= mask;
-
-			// return opacity result
-			if ((bits[wordIndex] & mask) == 0) {
-				if (!Pipeline.advancedTerrainCulling()) {
-					trackVistedFaces(index);
-				}
-
-				return true;
-			} else {
-				return false;
-			}
-		} else {
-			// already visited
-			return false;
-		}
-	}
-
 	private void clearInteriorRenderable(int interiorIndex) {
 		bits[(interiorIndex >> 6) + RENDERABLE_OFFSET] &= ~(1L << (interiorIndex & 63));
 	}
@@ -553,12 +529,6 @@ public abstract class RegionOcclusionCalculator {
 		maxRenderableZ = maxZ < minZ ? minZ : maxZ;
 	}
 
-	private void visitSurfaceIfPossible(int index) {
-		if (setVisited(index)) {
-			fill(index);
-		}
-	}
-
 	private OcclusionResult computeOcclusion(boolean isNear) {
 		// Determine which blocks are visible by visiting exterior blocks
 		// that aren't occluded by neighboring regions and doing a fill from there.
@@ -567,29 +537,26 @@ public abstract class RegionOcclusionCalculator {
 		if (Pipeline.advancedTerrainCulling()) {
 			for (int i = 0; i < COVERING_INDEX_COUNT; ++i) {
 				if (!isClosed(COVERING_INDEXES[i])) {
-					visitSurfaceIfPossible(COVERED_INDEXES[i]);
+					floodFill.seed(COVERED_INDEXES[i]);
 				}
 			}
+
+			floodFill.fill(bits, EXTERIOR_VISIBLE_OFFSET);
 		} else {
+			// face indices are six groups of 256, one for each face.
+			// Faces reached from each face are tracked separately.
 			for (int i = 0; i < COVERING_INDEX_COUNT; ++i) {
-				// face indices are six groups of 256, one for each face.
-				// We want to reset visibility search on each new face and
-				// exploit this fact to know when we progress to the next face
-				if ((i & 0xFF) == 0) {
+				if (!isClosed(COVERING_INDEXES[i])) {
+					floodFill.seed(COVERED_INDEXES[i]);
+				}
+
+				if ((i & 0xFF) == 0xFF) {
+					final int visitedFacesMask = floodFill.fill(bits, EXTERIOR_VISIBLE_OFFSET);
+
 					if (visitedFacesMask != 0) {
 						mutualFaceMask |= OcclusionResult.buildMutualFaceMask(visitedFacesMask);
-						visitedFacesMask = 0;
 					}
 				}
-
-				if (!isClosed(COVERING_INDEXES[i])) {
-					visitSurfaceIfPossible(COVERED_INDEXES[i]);
-				}
-			}
-
-			if (visitedFacesMask != 0) {
-				mutualFaceMask |= OcclusionResult.buildMutualFaceMask(visitedFacesMask);
-				visitedFacesMask = 0;
 			}
 		}
 
@@ -636,6 +603,28 @@ public abstract class RegionOcclusionCalculator {
 	}
 
 	public OcclusionResult build(boolean isNear) {
+		final boolean advanced = Pipeline.advancedTerrainCulling();
+		// near regions only differ when interior positions are hidden
+		final int flags = advanced ? (isNear ? 3 : 1) : 0;
+		final long hash = OcclusionResultCache.hash(bits, RENDERABLE_OFFSET, flags);
+		OcclusionResult result = OcclusionResultCache.restore(hash, bits, RENDERABLE_OFFSET, flags);
+
+		if (result == null) {
+			final long[] input = OcclusionResultCache.captureInput(bits, RENDERABLE_OFFSET);
+			result = buildUncached(isNear);
+			OcclusionResultCache.add(hash, input, bits, RENDERABLE_OFFSET, flags, result);
+
+			if (ChunkRebuildCounters.ENABLED) {
+				ChunkRebuildCounters.completeOcclusion(false);
+			}
+		} else if (ChunkRebuildCounters.ENABLED) {
+			ChunkRebuildCounters.completeOcclusion(true);
+		}
+
+		return result;
+	}
+
+	private OcclusionResult buildUncached(boolean isNear) {
 		if (openCount == 0) {
 			// If there are no open interior positions then only surface blocks can be visible,
 			// and only if they not covered by positions in adjacent sections.
@@ -656,84 +645,4 @@ public abstract class RegionOcclusionCalculator {
 			return computeOcclusion(isNear);
 		}
 	}
-
-	private void fill(int xyz4) {
-		visit(xyz4);
-
-		while (!queue.isEmpty()) {
-			final int nextXyz4 = queue.dequeueInt();
-			visit(nextXyz4);
-		}
-	}
-
-	private void visit(int xyz4) {
-		final int x = xyz4 & 0xF;
-
-		if (x == 0) {
-			enqueIfUnvisited(xyz4 + 1);
-		} else if (x == 15) {
-			enqueIfUnvisited(xyz4 - 1);
-		} else {
-			enqueIfUnvisited(xyz4 - 1);
-			enqueIfUnvisited(xyz4 + 1);
-		}
-
-		final int y = xyz4 & 0xF0;
-
-		if (y == 0) {
-			enqueIfUnvisited(xyz4 + 0x10);
-		} else if (y == 0xF0) {
-			enqueIfUnvisited(xyz4 - 0x10);
-		} else {
-			enqueIfUnvisited(xyz4 - 0x10);
-			enqueIfUnvisited(xyz4 + 0x10);
-		}
-
-		final int z = xyz4 & 0xF00;
-
-		if (z == 0) {
-			enqueIfUnvisited(xyz4 + 0x100);
-		} else if (z == 0xF00) {
-			enqueIfUnvisited(xyz4 - 0x100);
-		} else {
-			enqueIfUnvisited(xyz4 - 0x100);
-			enqueIfUnvisited(xyz4 + 0x100);
-		}
-	}
-
-	private void trackVistedFaces(int xyz4) {
-		final int x = xyz4 & 0xF;
-
-		if (x == 0) {
-			visitedFacesMask |= FaceUtil.WEST_FLAG;
-			return;
-		} else if (x == 15) {
-			visitedFacesMask |= FaceUtil.EAST_FLAG;
-			return;
-		}
-
-		final int y = xyz4 & 0xF0;
-
-		if (y == 0) {
-			visitedFacesMask |= FaceUtil.DOWN_FLAG;
-			return;
-		} else if (y == 0xF0) {
-			visitedFacesMask |= FaceUtil.UP_FLAG;
-			return;
-		}
-
-		final int z = xyz4 & 0xF00;
-
-		if (z == 0) {
-			visitedFacesMask |= FaceUtil.NORTH_FLAG;
-		} else if (z == 0xF00) {
-			visitedFacesMask |= FaceUtil.SOUTH_FLAG;
-		}
-	}
-
-	private void enqueIfUnvisited(int xyz4) {
-		if (setVisited(xyz4)) {
-			queue.enqueue(xyz4);
-		}
-	}
 }
@@ -30,6 +30,7 @@ import net.minecraft.world.phys.Vec3;
 
 import grondag.canvas.buffer.input.ArrayVertexCollector;
 import grondag.canvas.buffer.input.VertexCollectorList;
+import grondag.canvas.config.Configurator;
 import grondag.canvas.material.state.TerrainRenderStates;
 import grondag.canvas.render.terrain.TerrainSectorMap.RegionRenderSector;
 import grondag.canvas.terrain.occlusion.geometry.OcclusionResult;
@@ -39,12 +40,30 @@ public class RegionBuildState {
 	/** value for new regions that never been built or have been built and then closed. */
 	public static final RegionBuildState UNBUILT = new RegionBuildState();
 
+	private static final double SORT_BOUND_MARGIN = 0.01;
+
 	final ObjectArrayList<BlockEntity> blockEntities = new ObjectArrayList<>();
 	OcclusionResult occlusionResult = RegionOcclusionCalculator.EMPTY_OCCLUSION_RESULT;
 
 	@Nullable
 	int[] translucentState;
 
+	/**
+	 * Camera position and quad separation of the most recent translucency sort.
+	 * Written by the thread doing the sort and read on the render thread
+	 * when deciding if a resort is needed, so it is replaced as a unit.
+	 */
+	@Nullable
+	private volatile SortBound sortBound;
+
+	/**
+	 * Camera position of last sort, in world coordinates, and the minimum
+	 * difference in distance between translucent quads that are consecutive in
+	 * sort order. Each quad distance changes at most as much as the camera moves,
+	 * so quad order cannot change until the camera moves half the separation.
+	 */
+	private record SortBound(double x, double y, double z, float separation) { }
+
 	public List<BlockEntity> getBlockEntities() {
 		return blockEntities;
 	}
@@ -59,7 +78,35 @@ public class RegionBuildState {
 		if (buffer != null && !buffer.isEmpty()) {
 			buffer.sortTerrainQuads(sortPos, sector);
 			translucentState = buffer.saveState(translucentState);
+			updateSortBound(sortPos, buffer);
+		}
+	}
+
+	/**
+	 * Records the position and quad separation of a completed sort.
+	 * Should be called after each sort of the translucent collector.
+	 */
+	public void updateSortBound(Vec3 sortPos, ArrayVertexCollector buffer) {
+		sortBound = Configurator.incrementalTranslucentSort ? new SortBound(sortPos.x, sortPos.y, sortPos.z, buffer.sortSeparation()) : null;
+	}
+
+	/**
+	 * True when the camera has not moved far enough since the last sort
+	 * for the order of translucent quads to change.
+	 */
+	public boolean isSortCurrent(Vec3 cameraPos) {
+		final SortBound bound = sortBound;
+
+		if (bound == null) {
+			return false;
 		}
+
+		final double dx = cameraPos.x - bound.x;
+		final double dy = cameraPos.y - bound.y;
+		final double dz = cameraPos.z - bound.z;
+
+		// Margin covers float error in the quad distances measured by the sort.
+		return Math.sqrt(dx * dx + dy * dy + dz * dz) * 2.0 + SORT_BOUND_MARGIN < bound.separation;
 	}
 
 	public OcclusionResult getOcclusionResult() {
@@ -31,15 +31,30 @@ import net.minecraft.Util;
 import io.vram.frex.api.config.FlawlessFrames;
 import io.vram.sc.unordered.SimpleUnorderedArrayList;
 
+import grondag.canvas.config.Configurator;
+import grondag.canvas.perf.Timekeeper;
+import grondag.canvas.terrain.util.SectionSnapshotCache;
+
 /**
  * Tracks what regions require rebuilding and rebuilds them on demand.
  *
  * <p>Handles regions for both camera and shadow views.  "Near" regions
  * are exclusively a camera-view concept.
+ *
+ * <p>Time spent rebuilding on the main thread is limited by
+ * {@link Configurator#mainThreadRebuildBudgetMicros} when non-zero.  Once the
+ * budget for a frame is spent, near or urgent regions that already have a
+ * build are rebuilt off-thread ahead of other regions instead. They keep
+ * their current drawables until the new build is uploaded.
  */
 public class RegionRebuildManager {
+	public static final String MAIN_THREAD_REBUILD_TOKEN = "Main thread rebuild";
+
 	private final Set<RenderRegion> regionsToRebuild = Sets.newLinkedHashSet();
 
+	/** Nanoseconds spent rebuilding on the main thread since {@link #startFrame()}. */
+	private long frameRebuildNanos;
+
 	/**
 	 * Region rebuild requests accumulated on main thread that may impact visibility
 	 * but not generated by terrain iteration. These should be processed every frame
@@ -49,6 +64,34 @@ public class RegionRebuildManager {
 	 */
 	private final Set<RenderRegion> externalBuildRequests = new ObjectOpenHashSet<>();
 
+	/**
+	 * Resets the main-thread rebuild budget and reports the time
+	 * used in the prior frame. Also ends sharing of section copies
+	 * captured in the prior frame. Call once per frame before any rebuilds.
+	 */
+	public void startFrame() {
+		Timekeeper.instance.addFrameSample(MAIN_THREAD_REBUILD_TOKEN, frameRebuildNanos);
+		frameRebuildNanos = 0;
+		SectionSnapshotCache.clear();
+	}
+
+	/**
+	 * Rebuilds the region on the calling thread unless the main-thread rebuild
+	 * budget is spent and the region has a prior build that can stay in use
+	 * meanwhile, in which case it is promoted to the front of the off-thread queue.
+	 */
+	private void rebuildOnMainThread(RenderRegion region) {
+		final long budgetNanos = Configurator.mainThreadRebuildBudgetMicros * 1000L;
+
+		if (budgetNanos > 0 && frameRebuildNanos >= budgetNanos && region.hasBuild() && !FlawlessFrames.isActive()) {
+			region.promoteRebuildTask();
+		} else {
+			final long start = Util.getNanos();
+			region.rebuildOnMainThread();
+			frameRebuildNanos += Util.getNanos() - start;
+		}
+	}
+
 	public void acceptExternalBuildRequest(RenderRegion region) {
 		externalBuildRequests.add(region);
 	}
@@ -64,7 +107,7 @@ public class RegionRebuildManager {
 			if (flawless || region.needsRebuild() && !region.isClosed()) {
 				if (region.needsImportantRebuild() || region.origin.isNear()) {
 					regionsToRebuild.remove(region);
-					region.rebuildOnMainThread();
+					rebuildOnMainThread(region);
 				} else {
 					regionsToRebuild.add(region);
 				}
@@ -78,7 +121,8 @@ public class RegionRebuildManager {
 	 * Iterates the given list of regions and if a region requires an urgent
 	 * rebuild or is near the camera, immediately rebuilds it on the calling
 	 * thread (which should always be the render thread), removing the region
-	 * from the set of regions scheduled for rebuild.
+	 * from the set of regions scheduled for rebuild.  If the main-thread
+	 * rebuild budget is spent the region may be promoted off-thread instead.
 	 *
 	 * <p>Otherwise the region is scheduled for rebuild off thread, unless it
 	 * does not require rebuild. (It may have completed rebuild off-thread because
@@ -103,9 +147,11 @@ public class RegionRebuildManager {
 			final RenderRegion region = updateRegions.get(i);
 
 			if (region.needsRebuild()) {
+				region.markVisibleAwaitingBuild();
+
 				if (region.needsImportantRebuild() || region.origin.isNear()) {
 					regionsToRebuild.remove(region);
-					region.rebuildOnMainThread();
+					rebuildOnMainThread(region);
 				} else {
 					regionsToRebuild.add(region);
 				}
@@ -125,7 +171,7 @@ public class RegionRebuildManager {
 	public void buildNearRegionIfNeeded(RenderRegion region) {
 		if (region.needsRebuild()) {
 			regionsToRebuild.remove(region);
-			region.rebuildOnMainThread();
+			rebuildOnMainThread(region);
 		}
 	}
 
@@ -156,7 +202,7 @@ public class RegionRebuildManager {
 				if (region.isClosed()) {
 					iterator.remove();
 				} else if (flawless || region.needsImportantRebuild()) {
-					region.rebuildOnMainThread();
+					rebuildOnMainThread(region);
 					iterator.remove();
 				} else if (region.renderChunk.areCornersLoaded()) {
 					region.prepareAndExecuteRebuildTask();
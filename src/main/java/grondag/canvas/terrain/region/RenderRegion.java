@@ -31,20 +31,14 @@ import it.unimi.dsi.fastutil.objects.ObjectIterator;
 import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
 
 import com.mojang.blaze3d.systems.RenderSystem;
-import com.mojang.blaze3d.vertex.PoseStack;
-import com.mojang.math.Matrix3f;
-import com.mojang.math.Matrix4f;
 
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.renderer.block.BlockRenderDispatcher;
 import net.minecraft.client.renderer.blockentity.BlockEntityRenderer;
 import net.minecraft.client.resources.model.BakedModel;
 import net.minecraft.core.BlockPos;
-import net.minecraft.world.level.block.Block;
-import net.minecraft.world.level.block.RenderShape;
 import net.minecraft.world.level.block.entity.BlockEntity;
 import net.minecraft.world.level.block.state.BlockState;
-import net.minecraft.world.level.material.FluidState;
 import net.minecraft.world.phys.Vec3;
 
 import io.vram.frex.api.model.BlockModel;
@@ -53,6 +47,7 @@ import io.vram.frex.api.model.fluid.FluidModel;
 import grondag.canvas.apiimpl.rendercontext.TerrainRenderContext;
 import grondag.canvas.buffer.input.ArrayVertexCollector;
 import grondag.canvas.buffer.input.VertexCollectorList;
+import grondag.canvas.config.Configurator;
 import grondag.canvas.material.state.TerrainRenderStates;
 import grondag.canvas.perf.ChunkRebuildCounters;
 import grondag.canvas.pipeline.Pipeline;
@@ -65,8 +60,8 @@ import grondag.canvas.terrain.occlusion.geometry.RegionOcclusionCalculator;
 import grondag.canvas.terrain.occlusion.shadow.ShadowRegionVisibility;
 import grondag.canvas.terrain.region.input.InputRegion;
 import grondag.canvas.terrain.region.input.PackedInputRegion;
+import grondag.canvas.terrain.region.input.RegionPalette;
 import grondag.canvas.terrain.region.input.SignalInputRegion;
-import grondag.canvas.terrain.util.RenderRegionStateIndexer;
 import grondag.canvas.terrain.util.TerrainExecutor;
 import grondag.canvas.terrain.util.TerrainExecutorTask;
 
@@ -109,12 +104,19 @@ public class RenderRegion implements TerrainExecutorTask {
 	 */
 	private boolean needsRebuild;
 	private boolean needsImportantRebuild;
+
+	/** True when the queued rebuild was submitted ahead of all non-privileged tasks. */
+	private volatile boolean isPromoted;
+
 	private DrawableRegion translucentDrawable = DrawableRegion.EMPTY_DRAWABLE;
 	private DrawableRegion solidDrawable = DrawableRegion.EMPTY_DRAWABLE;
 	public final BitSet animationBits = new BitSet();
 
 	private boolean isClosed = false;
 
+	/** Render thread only. Zero if not visible and awaiting build or if not tracked. */
+	private long awaitingBuildSinceNanos = 0;
+
 	public RenderRegion(RenderChunk chunk, long packedPos) {
 		worldRenderState = chunk.worldRenderState;
 		renderRegionBuilder = worldRenderState.regionBuilder();
@@ -202,23 +204,49 @@ public class RenderRegion implements TerrainExecutorTask {
 	}
 
 	public void prepareAndExecuteRebuildTask() {
+		prepareAndExecuteRebuildTask(false);
+	}
+
+	/**
+	 * Rebuilds the region off-thread ahead of all non-privileged tasks.
+	 * For near or urgent regions when the main thread has no time for them.
+	 * Current drawables remain in use until the new build is uploaded.
+	 */
+	public void promoteRebuildTask() {
+		prepareAndExecuteRebuildTask(true);
+	}
+
+	private void prepareAndExecuteRebuildTask(boolean promote) {
 		final PackedInputRegion region = PackedInputRegion.claim(worldRenderState.getWorld(), origin);
 
 		// Idle region is signal to reschedule
 		// If region is something other than idle, we are already in the queue
 		// and we only need to update the input protoRegion (which we do here.)
+		// A queued task can still be promoted; it moves ahead on the next reprioritize.
 		if (inputState.getAndSet(region) == SignalInputRegion.IDLE) {
+			isPromoted = promote;
 			TerrainExecutor.INSTANCE.execute(this);
+		} else if (promote) {
+			isPromoted = true;
 		}
 
 		markBuilt();
 	}
 
+	/**
+	 * True if the region has been built before, even if the
+	 * build is stale, and so has something to draw meanwhile.
+	 */
+	public boolean hasBuild() {
+		return buildState.get() != RegionBuildState.UNBUILT;
+	}
+
 	/**
 	 * Schedules a resort of this region if all of the following are true.
 	 * 1) region has translucency
 	 * 2) region sort version doesn't match the input version
 	 * 3) resort isn't already scheduled for this region
+	 * 4) camera has moved far enough since the last sort that quad order could change
 	 *
 	 * <p>If a resort is already scheduled then the region sort version is
 	 * updated to match the input version.
@@ -233,9 +261,22 @@ public class RenderRegion implements TerrainExecutorTask {
 			return false;
 		}
 
-		if (regionData.translucentState != null && inputState.compareAndSet(SignalInputRegion.IDLE, SignalInputRegion.RESORT_ONLY)) {
+		if (regionData.translucentState == null) {
+			return false;
+		}
+
+		if (regionData.isSortCurrent(worldRenderState.sectorManager.cameraPos())) {
+			if (ChunkRebuildCounters.ENABLED) {
+				ChunkRebuildCounters.skipSort();
+			}
+
+			return false;
+		}
+
+		if (inputState.compareAndSet(SignalInputRegion.IDLE, SignalInputRegion.RESORT_ONLY)) {
 			// null means need to reschedule, otherwise was already scheduled for either
 			// resort or rebuild, or is invalid, not ready to be built.
+			isPromoted = false;
 			TerrainExecutor.INSTANCE.execute(this);
 			return true;
 		} else {
@@ -250,7 +291,48 @@ public class RenderRegion implements TerrainExecutorTask {
 
 	@Override
 	public int priority() {
-		return origin.squaredCameraChunkDistance();
+		return isPromoted ? -1 : origin.squaredCameraChunkDistance();
+	}
+
+	/**
+	 * Drops a queued rebuild if the region is no longer potentially visible,
+	 * same as would happen in {@link #run(TerrainRenderContext)} but without
+	 * holding up a worker. Resorts and empty-region signals are cheap and left as-is.
+	 */
+	@Override
+	public boolean cancelIfObsolete() {
+		if (origin.isPotentiallyVisibleFromCamera() || origin.isPotentiallyVisibleFromSkylight()) {
+			return false;
+		}
+
+		final AtomicReference<PackedInputRegion> runningState = inputState;
+		final PackedInputRegion protoRegion = runningState.get();
+
+		if (protoRegion instanceof SignalInputRegion || !runningState.compareAndSet(protoRegion, SignalInputRegion.IDLE)) {
+			return false;
+		}
+
+		protoRegion.release();
+		// Causes region to be rescheduled if/when it comes back into view
+		markForBuild(false);
+		return true;
+	}
+
+	/**
+	 * Called when the region is found to need a rebuild by terrain iteration.
+	 * Start of the interval tracked by {@link ChunkRebuildCounters#completeVisibleBuild(long)}.
+	 */
+	void markVisibleAwaitingBuild() {
+		if (ChunkRebuildCounters.ENABLED && awaitingBuildSinceNanos == 0) {
+			awaitingBuildSinceNanos = System.nanoTime();
+		}
+	}
+
+	private void completeVisibleBuild() {
+		if (ChunkRebuildCounters.ENABLED && awaitingBuildSinceNanos != 0) {
+			ChunkRebuildCounters.completeVisibleBuild(awaitingBuildSinceNanos);
+			awaitingBuildSinceNanos = 0;
+		}
 	}
 
 	private void notifyOcclusionChange() {
@@ -311,7 +393,18 @@ public class RenderRegion implements TerrainExecutorTask {
 				final ArrayVertexCollector collector = collectors.get(TerrainRenderStates.TRANSLUCENT_TERRAIN);
 				collector.loadState(state);
 
-				if (collector.sortTerrainQuads(worldRenderState.sectorManager.cameraPos(), renderSector)) {
+				final Vec3 sortPos = worldRenderState.sectorManager.cameraPos();
+				final boolean didChange = Configurator.incrementalTranslucentSort
+						? collector.repairTerrainQuads(sortPos, renderSector)
+						: collector.sortTerrainQuads(sortPos, renderSector);
+
+				regionData.updateSortBound(sortPos, collector);
+
+				if (ChunkRebuildCounters.ENABLED) {
+					ChunkRebuildCounters.completeSort(!collector.didFullSort(), didChange);
+				}
+
+				if (didChange) {
 					regionData.translucentState = collector.saveState(state);
 
 					if (runningState.get() != SignalInputRegion.INVALID) {
@@ -371,6 +464,8 @@ public class RenderRegion implements TerrainExecutorTask {
 					if (ChunkRebuildCounters.ENABLED) {
 						ChunkRebuildCounters.completeUpload();
 					}
+
+					completeVisibleBuild();
 				});
 			}
 
@@ -413,57 +508,62 @@ public class RenderRegion implements TerrainExecutorTask {
 		final int zOrigin = origin.getZ();
 
 		final InputRegion region = context.region;
-		final PoseStack matrixStack = new PoseStack();
-		final PoseStack.Pose entry = matrixStack.last();
-		final Matrix4f modelMatrix = entry.pose();
-		final Matrix3f normalMatrix = entry.normal();
-
 		final BlockRenderDispatcher blockRenderManager = Minecraft.getInstance().getBlockRenderer();
 		final RegionOcclusionCalculator occlusionRegion = region.occlusion;
+		final RegionPalette palette = region.palette;
 
-		for (int i = 0; i < RenderRegionStateIndexer.INTERIOR_STATE_COUNT; i++) {
-			if (occlusionRegion.shouldRender(i)) {
-				final BlockState blockState = region.getLocalBlockState(i);
-				final FluidState fluidState = blockState.getFluidState();
-				final int x = i & 0xF;
-				final int y = (i >> 4) & 0xF;
-				final int z = (i >> 8) & 0xF;
-				searchPos.set(xOrigin + x, yOrigin + y, zOrigin + z);
+		// visit only renderable positions, which are often a small fraction of the region
+		occlusionRegion.forEachRenderableIndex(i -> {
+			final BlockState blockState = region.getLocalBlockState(i);
+			final int properties = palette.properties(i);
+			searchPos.set(xOrigin + (i & 0xF), yOrigin + ((i >> 4) & 0xF), zOrigin + ((i >> 8) & 0xF));
 
-				final boolean hasFluid = !fluidState.isEmpty();
-				final boolean hasBlock = blockState.getRenderShape() != RenderShape.INVISIBLE;
+			if (ChunkRebuildCounters.ENABLED) {
+				// getFluidState, getRenderShape and getBlock for offset type
+				palette.countReplacedCalls((properties & RegionPalette.HAS_MODEL) == 0 ? 2 : 3);
+			}
 
-				if (hasFluid || hasBlock) {
-					// Vanilla does a push/pop for each block but that creates needless allocation spam.
-					modelMatrix.setIdentity();
-					modelMatrix.multiplyWithTranslation(x, y, z);
+			if ((properties & RegionPalette.HAS_FLUID) != 0) {
+				context.renderFluid(blockState, searchPos, false, FluidModel.get(blockState.getFluidState().getType()));
+			}
 
-					normalMatrix.setIdentity();
+			if ((properties & RegionPalette.HAS_MODEL) != 0) {
+				final BakedModel model = blockRenderManager.getBlockModel(blockState);
+				context.renderBlock(blockState, searchPos, model.useAmbientOcclusion(), (BlockModel) model, (properties & RegionPalette.HAS_OFFSET) != 0);
+			}
+		});
 
-					if (hasFluid) {
-						context.renderFluid(blockState, searchPos, false, FluidModel.get(fluidState.getType()), matrixStack);
-					}
+		if (context.mergeFaces) {
+			mergeFaces(context);
+		}
 
-					if (hasBlock) {
-						if (blockState.getBlock().getOffsetType() != Block.OffsetType.NONE) {
-							final Vec3 vec3d = blockState.getOffset(region, searchPos);
+		buildState.prepareTranslucentIfNeeded(worldRenderState.sectorManager.cameraPos(), renderSector, collectors);
 
-							if (vec3d != Vec3.ZERO) {
-								modelMatrix.multiplyWithTranslation((float) vec3d.x, (float) vec3d.y, (float) vec3d.z);
-							}
-						}
+		if (ChunkRebuildCounters.ENABLED) {
+			ChunkRebuildCounters.addBlockStateCalls(palette.stateCallCount(), palette.replacedCallCount());
+			ChunkRebuildCounters.addModelCounts(context.templateModelCount, context.emittedModelCount);
+			ChunkRebuildCounters.completeChunk();
+		}
+	}
 
-						final BakedModel model = blockRenderManager.getBlockModel(blockState);
-						context.renderBlock(blockState, searchPos, model.useAmbientOcclusion(), (BlockModel) model, matrixStack);
-					}
-				}
+	/** Translucent collectors are skipped because their quads are never flagged for merging. */
+	private static void mergeFaces(TerrainRenderContext context) {
+		final VertexCollectorList collectors = context.collectors;
+		final int limit = collectors.size();
+		int quadCount = 0;
+		int removedCount = 0;
+
+		for (int i = 0; i < limit; ++i) {
+			final ArrayVertexCollector collector = collectors.get(i);
+
+			if (!collector.isEmpty() && !collector.renderState.sorted) {
+				quadCount += collector.quadCount();
+				removedCount += collector.mergeFaces(context.faceMerger);
 			}
 		}
 
-		buildState.prepareTranslucentIfNeeded(worldRenderState.sectorManager.cameraPos(), renderSector, collectors);
-
 		if (ChunkRebuildCounters.ENABLED) {
-			ChunkRebuildCounters.completeChunk();
+			ChunkRebuildCounters.addMergedQuads(quadCount, removedCount);
 		}
 	}
 
@@ -555,6 +655,8 @@ public class RenderRegion implements TerrainExecutorTask {
 			inputRegion.release();
 		}
 
+		completeVisibleBuild();
+
 		markBuilt();
 	}
 
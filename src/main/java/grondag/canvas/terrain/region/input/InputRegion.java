@@ -22,7 +22,6 @@ package grondag.canvas.terrain.region.input;
 
 import static grondag.canvas.terrain.util.RenderRegionStateIndexer.EXTERIOR_STATE_COUNT;
 import static grondag.canvas.terrain.util.RenderRegionStateIndexer.INTERIOR_STATE_COUNT;
-import static grondag.canvas.terrain.util.RenderRegionStateIndexer.REGION_PADDING;
 import static grondag.canvas.terrain.util.RenderRegionStateIndexer.TOTAL_STATE_COUNT;
 import static grondag.canvas.terrain.util.RenderRegionStateIndexer.interiorIndex;
 import static grondag.canvas.terrain.util.RenderRegionStateIndexer.regionIndexToXyz5;
@@ -45,9 +44,11 @@ import net.minecraft.world.level.lighting.LevelLightEngine;
 import net.minecraft.world.level.material.FluidState;
 
 import grondag.canvas.apiimpl.rendercontext.TerrainRenderContext;
+import grondag.canvas.perf.ChunkRebuildCounters;
 import grondag.canvas.terrain.occlusion.geometry.RegionOcclusionCalculator;
 import grondag.canvas.terrain.util.ChunkColorCache;
 import grondag.canvas.terrain.util.ChunkPaletteCopier.PaletteCopy;
+import grondag.canvas.terrain.util.SectionUnpacker;
 
 // FIX: should not allow direct world access, esp from non-main threads
 public class InputRegion extends AbstractInputRegion implements BlockAndTintGetter {
@@ -66,20 +67,27 @@ public class InputRegion extends AbstractInputRegion implements BlockAndTintGett
 	protected final BlockPos.MutableBlockPos searchPos = new BlockPos.MutableBlockPos();
 	protected final Object[] renderData = new Object[INTERIOR_STATE_COUNT];
 	private final BlockState[] states = new BlockState[TOTAL_STATE_COUNT];
+	private final SectionUnpacker sectionUnpacker = new SectionUnpacker();
+	public final RegionPalette palette = new RegionPalette();
 
 	public final RegionOcclusionCalculator occlusion = new RegionOcclusionCalculator() {
 		@Override
-		protected BlockState blockStateAtIndex(int regionIndex) {
-			return states[regionIndex];
+		protected int blockPropertiesAtIndex(int regionIndex) {
+			if (ChunkRebuildCounters.ENABLED) {
+				// getRenderShape and getFluidState
+				palette.countReplacedCalls(2);
+			}
+
+			return palette.properties(regionIndex);
 		}
 
 		@Override
-		protected boolean closedAtRelativePos(BlockState blockState, int regionIndex) {
-			final int xyz5 = regionIndexToXyz5(regionIndex);
-			final int x = (xyz5 & 31) - REGION_PADDING;
-			final int y = ((xyz5 >> 5) & 31) - REGION_PADDING;
-			final int z = ((xyz5 >> 10) & 31) - REGION_PADDING;
-			return blockState.isSolidRender(InputRegion.this, searchPos.set(originX + x, originY + y, originZ + z));
+		protected boolean closedAtIndex(int regionIndex) {
+			if (ChunkRebuildCounters.ENABLED) {
+				palette.countReplacedCalls(1);
+			}
+
+			return palette.isSolidRender(regionIndex, InputRegion.this, originX, originY, originZ);
 		}
 	};
 
@@ -108,20 +116,36 @@ public class InputRegion extends AbstractInputRegion implements BlockAndTintGett
 		baseSectionIndex = packedRegion.baseSectionIndex;
 		chunkBaseZ = packedRegion.chunkBaseZ;
 
+		if (ChunkRebuildCounters.ENABLED) {
+			ChunkRebuildCounters.startUnpack();
+		}
+
 		final PaletteCopy pc = packedRegion.takePaletteCopy();
+		final SectionUnpacker unpacker = sectionUnpacker;
+		unpacker.unpack(pc);
+		pc.release();
+
+		final BlockState[] sectionStates = unpacker.states;
+		int sectionIndex = 0;
 
-		for (int x = 0; x < 16; x++) {
-			for (int y = 0; y < 16; y++) {
-				for (int z = 0; z < 16; z++) {
-					states[interiorIndex(x, y, z)] = pc.apply(x | (y << 8) | (z << 4));
+		// section order is x, then z, then y
+		for (int y = 0; y < 16; y++) {
+			for (int z = 0; z < 16; z++) {
+				for (int x = 0; x < 16; x++) {
+					states[interiorIndex(x, y, z)] = sectionStates[sectionIndex++];
 				}
 			}
 		}
 
-		pc.release();
-
+		packedRegion.unpackNeighborCopies();
 		System.arraycopy(packedRegion.states, 0, states, INTERIOR_STATE_COUNT, EXTERIOR_STATE_COUNT);
 
+		palette.prepare(this, originX, originY, originZ, states, unpacker);
+
+		if (ChunkRebuildCounters.ENABLED) {
+			ChunkRebuildCounters.completeUnpack();
+		}
+
 		copyBeData(packedRegion);
 
 		occlusion.prepare();
@@ -227,6 +251,24 @@ public class InputRegion extends AbstractInputRegion implements BlockAndTintGett
 		lightCache[blockIndex(x, y, z)] = val;
 	}
 
+	/**
+	 * Same result as {@link BlockState#isSolidRender(net.minecraft.world.level.BlockGetter, BlockPos)}
+	 * for the state at the given position, without asking the state when the position is in the region.
+	 */
+	public boolean isSolidRender(BlockPos pos) {
+		final int i = blockIndex(pos.getX(), pos.getY(), pos.getZ());
+
+		if (i == -1) {
+			return world.getBlockState(pos).isSolidRender(this, pos);
+		}
+
+		if (ChunkRebuildCounters.ENABLED) {
+			palette.countReplacedCalls(1);
+		}
+
+		return palette.isSolidRender(i, this, originX, originY, originZ);
+	}
+
 	public int directBrightness(BlockPos pos) {
 		return LevelRenderer.getLightColor(world, getBlockState(pos), pos);
 	}
@@ -73,6 +73,7 @@ import it.unimi.dsi.fastutil.shorts.ShortArrayList;
 
 import net.minecraft.client.multiplayer.ClientLevel;
 import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
 import net.minecraft.world.level.block.Blocks;
 import net.minecraft.world.level.block.entity.BlockEntity;
 import net.minecraft.world.level.block.state.BlockState;
@@ -81,9 +82,11 @@ import net.minecraft.world.level.chunk.LevelChunkSection;
 
 import io.vram.frex.api.world.BlockEntityRenderData;
 
+import grondag.canvas.config.Configurator;
 import grondag.canvas.perf.ChunkRebuildCounters;
 import grondag.canvas.terrain.util.ChunkPaletteCopier;
 import grondag.canvas.terrain.util.ChunkPaletteCopier.PaletteCopy;
+import grondag.canvas.terrain.util.SectionSnapshotCache;
 
 /**
  * Serves as a container to capture world state data on the main thread as quickly as possible
@@ -103,6 +106,13 @@ public class PackedInputRegion extends AbstractInputRegion {
 	final ShortArrayList blockEntityPos = new ShortArrayList();
 	PaletteCopy mainSectionCopy;
 
+	/**
+	 * Packed copies of neighboring sections, indexed by {@link #neighborIndex(int, int, int)},
+	 * when border states are unpacked off-thread.  Only valid when {@link #hasNeighborCopies} is true.
+	 */
+	private PaletteCopy[] neighborCopies;
+	private boolean hasNeighborCopies;
+
 	public static PackedInputRegion claim(ClientLevel world, BlockPos origin) {
 		final PackedInputRegion result = POOL.poll();
 		return (result == null ? new PackedInputRegion() : result).prepare(world, origin);
@@ -115,6 +125,7 @@ public class PackedInputRegion extends AbstractInputRegion {
 	public static void reload() {
 		// ensure current AoFix rule or other config-dependent lambdas are used
 		POOL.clear();
+		SectionSnapshotCache.clear();
 	}
 
 	private PackedInputRegion prepare(ClientLevel world, BlockPos origin) {
@@ -140,7 +151,16 @@ public class PackedInputRegion extends AbstractInputRegion {
 		this.chunkBaseZ = chunkBaseZ;
 
 		final LevelChunk mainChunk = world.getChunk(chunkBaseX + 1, chunkBaseZ + 1);
-		mainSectionCopy = ChunkPaletteCopier.captureCopy(mainChunk, originY);
+		final boolean deferUnpacking = Configurator.deferSectionUnpacking;
+
+		if (deferUnpacking) {
+			chunks[1 | (1 << 2)] = mainChunk;
+			mainSectionCopy = claimSectionCopy(1, 1, 1);
+		} else {
+			// Not shared through SectionSnapshotCache: without deferred unpacking no other
+			// region copies this section, and an unpacked copy is faster to read when building.
+			mainSectionCopy = ChunkPaletteCopier.captureCopy(mainChunk, originY);
+		}
 
 		final PackedInputRegion result;
 
@@ -159,9 +179,13 @@ public class PackedInputRegion extends AbstractInputRegion {
 			chunks[2 | (1 << 2)] = world.getChunk(chunkBaseX + 2, chunkBaseZ + 1);
 			chunks[2 | (2 << 2)] = world.getChunk(chunkBaseX + 2, chunkBaseZ + 2);
 
-			captureCorners();
-			captureEdges();
-			captureFaces();
+			if (deferUnpacking) {
+				captureNeighborCopies();
+			} else {
+				captureCorners();
+				captureEdges();
+				captureFaces();
+			}
 
 			result = this;
 		}
@@ -179,6 +203,86 @@ public class PackedInputRegion extends AbstractInputRegion {
 		return result;
 	}
 
+	private static int neighborIndex(int x, int y, int z) {
+		return x + y * 3 + z * 9;
+	}
+
+	/** Packed copy of a section, shared with other regions captured in the same frame. */
+	private PaletteCopy claimSectionCopy(int x, int y, int z) {
+		return SectionSnapshotCache.claim(getSection(x, y, z), SectionPos.asLong(chunkBaseX + x, baseSectionIndex + y, chunkBaseZ + z));
+	}
+
+	/**
+	 * Captures packed copies of all neighboring sections, which is much faster
+	 * than reading border states one at a time. Borders are then unpacked
+	 * by {@link #unpackNeighborCopies()} on the thread that builds the region.
+	 */
+	private void captureNeighborCopies() {
+		PaletteCopy[] copies = neighborCopies;
+
+		if (copies == null) {
+			copies = new PaletteCopy[27];
+			neighborCopies = copies;
+		}
+
+		for (int x = 0; x < 3; ++x) {
+			for (int y = 0; y < 3; ++y) {
+				for (int z = 0; z < 3; ++z) {
+					// center section is the main section copy
+					if (x != 1 || y != 1 || z != 1) {
+						copies[neighborIndex(x, y, z)] = claimSectionCopy(x, y, z);
+					}
+				}
+			}
+		}
+
+		hasNeighborCopies = true;
+	}
+
+	/**
+	 * Fills border states from neighbor section copies if they were captured
+	 * instead of border states. Meant to run off the main thread.
+	 */
+	void unpackNeighborCopies() {
+		if (hasNeighborCopies) {
+			captureCorners();
+			captureEdges();
+			captureFaces();
+			releaseNeighborCopies();
+		}
+	}
+
+	private void releaseNeighborCopies() {
+		if (hasNeighborCopies) {
+			final PaletteCopy[] copies = neighborCopies;
+
+			for (int i = 0; i < 27; ++i) {
+				if (copies[i] != null) {
+					copies[i].release();
+					copies[i] = null;
+				}
+			}
+
+			hasNeighborCopies = false;
+		}
+	}
+
+	/**
+	 * Reads block states of a neighboring section using section-relative coordinates.
+	 * Reads from packed copies if they were captured, otherwise from the world.
+	 *
+	 * @return null if the section is missing or only contains air
+	 */
+	private SectionReader sectionReader(int x, int y, int z) {
+		if (hasNeighborCopies) {
+			final PaletteCopy copy = neighborCopies[neighborIndex(x, y, z)];
+			return copy == ChunkPaletteCopier.AIR_COPY ? null : (i, j, k) -> copy.apply(i | (j << 8) | (k << 4));
+		} else {
+			final LevelChunkSection section = getSection(x, y, z);
+			return section == null ? null : section::getBlockState;
+		}
+	}
+
 	private void captureBlockEntities(LevelChunk mainChunk) {
 		renderDataPos.clear();
 		renderData.clear();
@@ -213,6 +317,10 @@ public class PackedInputRegion extends AbstractInputRegion {
 		BlockState apply (int i, int j, int k);
 	}
 
+	private interface SectionReader {
+		BlockState getBlockState(int x, int y, int z);
+	}
+
 	private static BlockStateFunction AIR_FUNCTION = (i, j, k) -> AIR;
 
 	//NB: the addressing math here must match what is in RenderRegionAddressHelper
@@ -223,22 +331,22 @@ public class PackedInputRegion extends AbstractInputRegion {
 	}
 
 	private void captureFaces() {
-		final LevelChunkSection lowX = getSection(0, 1, 1);
+		final SectionReader lowX = sectionReader(0, 1, 1);
 		captureFace(SIDE_INDEX_X0 - INTERIOR_STATE_COUNT, lowX == null ? AIR_FUNCTION : (i, j, k) -> lowX.getBlockState(14 + k, i, j));
 
-		final LevelChunkSection highX = getSection(2, 1, 1);
+		final SectionReader highX = sectionReader(2, 1, 1);
 		captureFace(SIDE_INDEX_X2 - INTERIOR_STATE_COUNT, highX == null ? AIR_FUNCTION : (i, j, k) -> highX.getBlockState(k, i, j));
 
-		final LevelChunkSection lowZ = getSection(1, 1, 0);
+		final SectionReader lowZ = sectionReader(1, 1, 0);
 		captureFace(SIDE_INDEX_Z0 - INTERIOR_STATE_COUNT, lowZ == null ? AIR_FUNCTION : (i, j, k) -> lowZ.getBlockState(i, j, 14 + k));
 
-		final LevelChunkSection highZ = getSection(1, 1, 2);
+		final SectionReader highZ = sectionReader(1, 1, 2);
 		captureFace(SIDE_INDEX_Z2 - INTERIOR_STATE_COUNT, highZ == null ? AIR_FUNCTION : (i, j, k) -> highZ.getBlockState(i, j, k));
 
-		final LevelChunkSection lowY = getSection(1, 0, 1);
+		final SectionReader lowY = sectionReader(1, 0, 1);
 		captureFace(SIDE_INDEX_Y0 - INTERIOR_STATE_COUNT, lowY == null ? AIR_FUNCTION : (i, j, k) -> lowY.getBlockState(i, 14 + k, j));
 
-		final LevelChunkSection highY = getSection(1, 2, 1);
+		final SectionReader highY = sectionReader(1, 2, 1);
 		captureFace(SIDE_INDEX_Y2 - INTERIOR_STATE_COUNT, highY == null ? AIR_FUNCTION : (i, j, k) -> highY.getBlockState(i, k, j));
 	}
 
@@ -250,40 +358,40 @@ public class PackedInputRegion extends AbstractInputRegion {
 	}
 
 	private void captureEdges() {
-		final LevelChunkSection aaZ = getSection(0, 0, 1);
+		final SectionReader aaZ = sectionReader(0, 0, 1);
 		captureEdge(EDGE_INDEX_Y0X0 - INTERIOR_STATE_COUNT, aaZ == null ? AIR_FUNCTION : (i, j, k) -> aaZ.getBlockState(14 + i, 14 + j, k));
 
-		final LevelChunkSection abZ = getSection(0, 2, 1);
+		final SectionReader abZ = sectionReader(0, 2, 1);
 		captureEdge(EDGE_INDEX_Y2X0 - INTERIOR_STATE_COUNT, abZ == null ? AIR_FUNCTION : (i, j, k) -> abZ.getBlockState(14 + i, j, k));
 
-		final LevelChunkSection baZ = getSection(2, 0, 1);
+		final SectionReader baZ = sectionReader(2, 0, 1);
 		captureEdge(EDGE_INDEX_Y0X2 - INTERIOR_STATE_COUNT, baZ == null ? AIR_FUNCTION : (i, j, k) -> baZ.getBlockState(i, 14 + j, k));
 
-		final LevelChunkSection bbZ = getSection(2, 2, 1);
+		final SectionReader bbZ = sectionReader(2, 2, 1);
 		captureEdge(EDGE_INDEX_Y2X2 - INTERIOR_STATE_COUNT, bbZ == null ? AIR_FUNCTION : (i, j, k) -> bbZ.getBlockState(i, j, k));
 
-		final LevelChunkSection aYa = getSection(0, 1, 0);
+		final SectionReader aYa = sectionReader(0, 1, 0);
 		captureEdge(EDGE_INDEX_Z0X0 - INTERIOR_STATE_COUNT, aYa == null ? AIR_FUNCTION : (i, j, k) -> aYa.getBlockState(14 + i, k, 14 + j));
 
-		final LevelChunkSection aYb = getSection(0, 1, 2);
+		final SectionReader aYb = sectionReader(0, 1, 2);
 		captureEdge(EDGE_INDEX_Z2X0 - INTERIOR_STATE_COUNT, aYb == null ? AIR_FUNCTION : (i, j, k) -> aYb.getBlockState(14 + i, k, j));
 
-		final LevelChunkSection bYa = getSection(2, 1, 0);
+		final SectionReader bYa = sectionReader(2, 1, 0);
 		captureEdge(EDGE_INDEX_Z0X2 - INTERIOR_STATE_COUNT, bYa == null ? AIR_FUNCTION : (i, j, k) -> bYa.getBlockState(i, k, 14 + j));
 
-		final LevelChunkSection bYb = getSection(2, 1, 2);
+		final SectionReader bYb = sectionReader(2, 1, 2);
 		captureEdge(EDGE_INDEX_Z2X2 - INTERIOR_STATE_COUNT, bYb == null ? AIR_FUNCTION : (i, j, k) -> bYb.getBlockState(i, k, j));
 
-		final LevelChunkSection Xaa = getSection(1, 0, 0);
+		final SectionReader Xaa = sectionReader(1, 0, 0);
 		captureEdge(EDGE_INDEX_Z0Y0 - INTERIOR_STATE_COUNT, Xaa == null ? AIR_FUNCTION : (i, j, k) -> Xaa.getBlockState(k, 14 + i, 14 + j));
 
-		final LevelChunkSection Xab = getSection(1, 0, 2);
+		final SectionReader Xab = sectionReader(1, 0, 2);
 		captureEdge(EDGE_INDEX_Z2Y0 - INTERIOR_STATE_COUNT, Xab == null ? AIR_FUNCTION : (i, j, k) -> Xab.getBlockState(k, 14 + i, j));
 
-		final LevelChunkSection Xba = getSection(1, 2, 0);
+		final SectionReader Xba = sectionReader(1, 2, 0);
 		captureEdge(EDGE_INDEX_Z0Y2 - INTERIOR_STATE_COUNT, Xba == null ? AIR_FUNCTION : (i, j, k) -> Xba.getBlockState(k, i, 14 + j));
 
-		final LevelChunkSection Xbb = getSection(1, 2, 2);
+		final SectionReader Xbb = sectionReader(1, 2, 2);
 		captureEdge(EDGE_INDEX_Z2Y2 - INTERIOR_STATE_COUNT, Xbb == null ? AIR_FUNCTION : (i, j, k) -> Xbb.getBlockState(k, i, j));
 	}
 
@@ -295,28 +403,28 @@ public class PackedInputRegion extends AbstractInputRegion {
 	}
 
 	private void captureCorners() {
-		final LevelChunkSection xyz = getSection(0, 0, 0);
+		final SectionReader xyz = sectionReader(0, 0, 0);
 		captureCorner(CORNER_INDEX_000 - INTERIOR_STATE_COUNT, xyz == null ? AIR_FUNCTION : (i, j, k) -> xyz.getBlockState(14 + i, 14 + j, 14 + k));
 
-		final LevelChunkSection xyZ = getSection(0, 0, 2);
+		final SectionReader xyZ = sectionReader(0, 0, 2);
 		captureCorner(CORNER_INDEX_200 - INTERIOR_STATE_COUNT, xyZ == null ? AIR_FUNCTION : (i, j, k) -> xyZ.getBlockState(14 + i, 14 + j, k));
 
-		final LevelChunkSection xYz = getSection(0, 2, 0);
+		final SectionReader xYz = sectionReader(0, 2, 0);
 		captureCorner(CORNER_INDEX_020 - INTERIOR_STATE_COUNT, xYz == null ? AIR_FUNCTION : (i, j, k) -> xYz.getBlockState(14 + i, j, 14 + k));
 
-		final LevelChunkSection xYZ = getSection(0, 2, 2);
+		final SectionReader xYZ = sectionReader(0, 2, 2);
 		captureCorner(CORNER_INDEX_220 - INTERIOR_STATE_COUNT, xYZ == null ? AIR_FUNCTION : (i, j, k) -> xYZ.getBlockState(14 + i, j, k));
 
-		final LevelChunkSection Xyz = getSection(2, 0, 0);
+		final SectionReader Xyz = sectionReader(2, 0, 0);
 		captureCorner(CORNER_INDEX_002 - INTERIOR_STATE_COUNT, Xyz == null ? AIR_FUNCTION : (i, j, k) -> Xyz.getBlockState(i, 14 + j, 14 + k));
 
-		final LevelChunkSection XyZ = getSection(2, 0, 2);
+		final SectionReader XyZ = sectionReader(2, 0, 2);
 		captureCorner(CORNER_INDEX_202 - INTERIOR_STATE_COUNT, XyZ == null ? AIR_FUNCTION : (i, j, k) -> XyZ.getBlockState(i, 14 + j, k));
 
-		final LevelChunkSection XYz = getSection(2, 2, 0);
+		final SectionReader XYz = sectionReader(2, 2, 0);
 		captureCorner(CORNER_INDEX_022 - INTERIOR_STATE_COUNT, XYz == null ? AIR_FUNCTION : (i, j, k) -> XYz.getBlockState(i, j, 14 + k));
 
-		final LevelChunkSection XYZ = getSection(2, 2, 2);
+		final SectionReader XYZ = sectionReader(2, 2, 2);
 		captureCorner(CORNER_INDEX_222 - INTERIOR_STATE_COUNT, XYZ == null ? AIR_FUNCTION : (i, j, k) -> XYZ.getBlockState(i, j, k));
 	}
 
@@ -326,6 +434,8 @@ public class PackedInputRegion extends AbstractInputRegion {
 			mainSectionCopy = null;
 		}
 
+		releaseNeighborCopies();
+
 		for (int x = 0; x < 3; x++) {
 			for (int z = 0; z < 3; z++) {
 				chunks[x | (z << 2)] = null;
@@ -0,0 +1,229 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+package grondag.canvas.terrain.region.input;
+
+import static grondag.canvas.terrain.util.RenderRegionStateIndexer.INTERIOR_STATE_COUNT;
+import static grondag.canvas.terrain.util.RenderRegionStateIndexer.REGION_PADDING;
+import static grondag.canvas.terrain.util.RenderRegionStateIndexer.TOTAL_STATE_COUNT;
+import static grondag.canvas.terrain.util.RenderRegionStateIndexer.interiorIndex;
+import static grondag.canvas.terrain.util.RenderRegionStateIndexer.regionIndexToXyz5;
+
+import java.util.Arrays;
+
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.BlockGetter;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.RenderShape;
+import net.minecraft.world.level.block.state.BlockState;
+
+import grondag.canvas.config.Configurator;
+import grondag.canvas.terrain.util.SectionUnpacker;
+
+/**
+ * Distinct block states of one region build and their properties, packed
+ * as flag bits.  Each position in the region has a palette id, so loops
+ * over the region read one int per block instead of asking the block state.
+ *
+ * <p>Properties are computed once per distinct state in the region.
+ * Whether a state is solid can depend on position when its block has a
+ * dynamic shape, and only those states are checked again per position.
+ */
+public class RegionPalette {
+	/** State has a block model to render. */
+	public static final int HAS_MODEL = 1;
+	/** State has a non-empty fluid state. */
+	public static final int HAS_FLUID = 2;
+	/** State has a model or fluid. */
+	public static final int RENDERABLE = HAS_MODEL | HAS_FLUID;
+	/** State is a solid full cube at any position. */
+	public static final int SOLID_RENDER = 4;
+	/** Solid render depends on position and must be checked for each block. */
+	public static final int DYNAMIC_SHAPE = 8;
+	/** Model is offset by a position-dependent random amount. */
+	public static final int HAS_OFFSET = 16;
+	/** Configured to occlude as if solid. */
+	public static final int FORCED_OCCLUDER = 32;
+
+	/** BlockState methods called to compute the properties of one state. */
+	private static final int CALLS_PER_STATE = 4;
+
+	private final short[] ids = new short[TOTAL_STATE_COUNT];
+	private final Reference2IntOpenHashMap<BlockState> map = new Reference2IntOpenHashMap<>();
+	private final BlockPos.MutableBlockPos searchPos = new BlockPos.MutableBlockPos();
+	private BlockState[] states = new BlockState[256];
+	private int[] properties = new int[256];
+	private int size;
+
+	/** BlockState method calls made for the current build. */
+	private int stateCallCount;
+	/** BlockState method calls that would have been made without the palette. */
+	private int replacedCallCount;
+
+	RegionPalette() {
+		map.defaultReturnValue(-1);
+	}
+
+	/**
+	 * Assigns palette ids for all region states. Interior ids follow the
+	 * section unpacker palette, which already holds each interior state once.
+	 */
+	void prepare(BlockGetter region, int originX, int originY, int originZ, BlockState[] regionStates, SectionUnpacker unpacker) {
+		size = 0;
+		map.clear();
+		stateCallCount = 0;
+		replacedCallCount = 0;
+
+		final int interiorCount = unpacker.paletteSize();
+
+		for (int i = 0; i < interiorCount; ++i) {
+			add(unpacker.paletteState(i));
+		}
+
+		final short[] ids = this.ids;
+		final short[] sectionIds = unpacker.paletteIndex;
+		int sectionIndex = 0;
+
+		// section order is x, then z, then y
+		for (int y = 0; y < 16; y++) {
+			for (int z = 0; z < 16; z++) {
+				for (int x = 0; x < 16; x++) {
+					ids[interiorIndex(x, y, z)] = sectionIds[sectionIndex++];
+				}
+			}
+		}
+
+		BlockState lastState = null;
+		int lastId = 0;
+
+		for (int i = INTERIOR_STATE_COUNT; i < TOTAL_STATE_COUNT; ++i) {
+			final BlockState state = regionStates[i];
+
+			if (state != lastState) {
+				lastState = state;
+				lastId = map.getInt(state);
+
+				if (lastId == -1) {
+					lastId = add(state);
+				}
+			}
+
+			ids[i] = (short) lastId;
+		}
+
+		final BlockPos.MutableBlockPos searchPos = this.searchPos;
+
+		for (int id = 0; id < size; ++id) {
+			properties[id] = computeProperties(states[id], region, searchPos.set(originX, originY, originZ));
+		}
+
+		stateCallCount = size * CALLS_PER_STATE;
+	}
+
+	private int add(BlockState state) {
+		final int id = size++;
+
+		if (id == states.length) {
+			states = Arrays.copyOf(states, id * 2);
+			properties = Arrays.copyOf(properties, id * 2);
+		}
+
+		states[id] = state;
+		map.put(state, id);
+		return id;
+	}
+
+	private static int computeProperties(BlockState state, BlockGetter region, BlockPos pos) {
+		int result = 0;
+
+		if (state.getRenderShape() != RenderShape.INVISIBLE) {
+			result |= HAS_MODEL;
+		}
+
+		if (!state.getFluidState().isEmpty()) {
+			result |= HAS_FLUID;
+		}
+
+		final Block block = state.getBlock();
+
+		if (block.hasDynamicShape()) {
+			result |= DYNAMIC_SHAPE;
+		} else if (state.isSolidRender(region, pos)) {
+			// without a dynamic shape the result is cached per state and position is ignored
+			result |= SOLID_RENDER;
+		}
+
+		if (block.getOffsetType() != Block.OffsetType.NONE) {
+			result |= HAS_OFFSET;
+		}
+
+		if (Configurator.renderWhiteGlassAsOccluder && block == Blocks.WHITE_STAINED_GLASS) {
+			result |= FORCED_OCCLUDER;
+		}
+
+		return result;
+	}
+
+	public int properties(int regionIndex) {
+		return properties[ids[regionIndex]];
+	}
+
+	/**
+	 * Same result as {@link BlockState#isSolidRender(BlockGetter, BlockPos)} for the state at the given index.
+	 */
+	public boolean isSolidRender(int regionIndex, BlockGetter region, int originX, int originY, int originZ) {
+		final int id = ids[regionIndex];
+		final int properties = this.properties[id];
+
+		if ((properties & DYNAMIC_SHAPE) == 0) {
+			return (properties & SOLID_RENDER) != 0;
+		}
+
+		final int xyz5 = regionIndexToXyz5(regionIndex);
+		final int x = (xyz5 & 31) - REGION_PADDING;
+		final int y = ((xyz5 >> 5) & 31) - REGION_PADDING;
+		final int z = ((xyz5 >> 10) & 31) - REGION_PADDING;
+		++stateCallCount;
+		return states[id].isSolidRender(region, searchPos.set(originX + x, originY + y, originZ + z));
+	}
+
+	/** Number of distinct states in the region. */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Records BlockState method calls that a property read replaced.
+	 * Only called when performance counters are enabled.
+	 */
+	public void countReplacedCalls(int count) {
+		replacedCallCount += count;
+	}
+
+	public int stateCallCount() {
+		return stateCallCount;
+	}
+
+	public int replacedCallCount() {
+		return replacedCallCount;
+	}
+}
@@ -20,8 +20,10 @@
 
 package grondag.canvas.terrain.util;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import it.unimi.dsi.fastutil.ints.IntArrayList;
-import org.apache.commons.lang3.ObjectUtils;
 
 import net.minecraft.util.BitStorage;
 import net.minecraft.world.level.block.Blocks;
@@ -34,7 +36,20 @@ import grondag.canvas.mixinterface.PalettedContainerExt;
 
 public class ChunkPaletteCopier {
 	private static final BlockState AIR = Blocks.AIR.defaultBlockState();
-	public static final PaletteCopy AIR_COPY = i -> AIR;
+	public static final PaletteCopy AIR_COPY = new UniformCopy(AIR);
+
+	/** Bytes of section data copied since startup. Render thread only. */
+	static long copiedBytes;
+
+	/** Recycled word arrays for packed copies, by bits per value. Length is the same for the same bits. */
+	@SuppressWarnings("unchecked")
+	private static final ArrayBlockingQueue<long[]>[] WORD_POOLS = new ArrayBlockingQueue[65];
+
+	static {
+		for (int i = 0; i < WORD_POOLS.length; ++i) {
+			WORD_POOLS[i] = new ArrayBlockingQueue<>(256);
+		}
+	}
 
 	public static PaletteCopy captureCopy(LevelChunk chunk, int y) {
 		if (chunk == null) {
@@ -53,18 +68,26 @@ public class ChunkPaletteCopier {
 			return AIR_COPY;
 		}
 
-		final LevelChunkSection sec = sections[sectionIndex];
+		return captureCopy(sections[sectionIndex], false);
+	}
 
+	/**
+	 * Copy of the given section, or {@link #AIR_COPY} if the section is null or only contains air.
+	 * @param packed if true, block state indices are left packed and unpacked when read,
+	 * which is faster to capture but slower to read
+	 */
+	public static PaletteCopy captureCopy(LevelChunkSection sec, boolean packed) {
 		if (sec == null) {
 			return AIR_COPY;
 		}
 
 		if (sec.isEmpty()) {
 			final BlockState filler = sec.getBlockState(0, 0, 0);
-			return filler == AIR ? AIR_COPY : i -> filler;
+			return filler == AIR ? AIR_COPY : new UniformCopy(filler);
 		}
 
-		return ((PalettedContainerExt) sec.getStates()).canvas_paletteCopy();
+		final PalettedContainerExt states = (PalettedContainerExt) sec.getStates();
+		return packed ? states.canvas_packedPaletteCopy() : states.canvas_paletteCopy();
 	}
 
 	/**
@@ -72,18 +95,61 @@ public class ChunkPaletteCopier {
 	 */
 	public static PaletteCopy captureCopy(Palette<BlockState> palette, BitStorage data, BlockState emptyVal) {
 		if (palette == null || data == null) {
-			return emptyVal == null ? AIR_COPY : i -> emptyVal;
+			return emptyVal == null ? AIR_COPY : new UniformCopy(emptyVal);
 		}
 
 		return new PaletteCopyImpl(palette, data, emptyVal);
 	}
 
+	/**
+	 * Callback from canvas_packedPaletteCopy().
+	 */
+	public static PaletteCopy capturePackedCopy(Palette<BlockState> palette, BitStorage data, BlockState emptyVal) {
+		if (palette == null || data == null) {
+			return emptyVal == null ? AIR_COPY : new UniformCopy(emptyVal);
+		}
+
+		return new PackedPaletteCopyImpl(palette, data, emptyVal);
+	}
+
+	private static long[] claimWords(int bits, int length) {
+		final long[] result = WORD_POOLS[bits].poll();
+		return result == null || result.length != length ? new long[length] : result;
+	}
+
 	@FunctionalInterface
 	public interface PaletteCopy {
 		BlockState apply(int index);
 
+		/**
+		 * Adds a reference for copies that are shared. Each call must
+		 * be matched by a call to {@link #release()}.
+		 */
+		default PaletteCopy retain() {
+			return this;
+		}
+
 		default void release() {
 		}
+
+		/**
+		 * Unpacks all states at once. Called by {@link SectionUnpacker#unpack(PaletteCopy)}.
+		 */
+		default void unpackTo(SectionUnpacker unpacker) {
+			unpacker.copy(this);
+		}
+	}
+
+	private record UniformCopy(BlockState state) implements PaletteCopy {
+		@Override
+		public BlockState apply(int index) {
+			return state;
+		}
+
+		@Override
+		public void unpackTo(SectionUnpacker unpacker) {
+			unpacker.fill(state);
+		}
 	}
 
 	private static class PaletteCopyImpl implements PaletteCopy {
@@ -97,11 +163,18 @@ public class ChunkPaletteCopier {
 			this.palette = palette;
 			this.data = PackedIntegerStorageHelper.claim(data);
 			this.emptyVal = emptyVal;
+			copiedBytes += this.data.size() * 4L;
 		}
 
 		@Override
 		public BlockState apply(int index) {
-			return ObjectUtils.defaultIfNull(palette.valueFor(data.getInt(index)), emptyVal);
+			final BlockState result = palette.valueFor(data.getInt(index));
+			return result == null ? emptyVal : result;
+		}
+
+		@Override
+		public void unpackTo(SectionUnpacker unpacker) {
+			unpacker.unpack(data.elements(), palette, emptyVal);
 		}
 
 		@Override
@@ -109,4 +182,68 @@ public class ChunkPaletteCopier {
 			PackedIntegerStorageHelper.release(data);
 		}
 	}
+
+	/**
+	 * Holds a copy of the packed words instead of unpacked indices.
+	 * Copying is a single array copy and unpacking is done by whichever
+	 * thread reads the states.  Palette instances are not copied, same as
+	 * {@link PaletteCopyImpl}, and values added to the palette later are
+	 * not referenced by the copied data.
+	 *
+	 * <p>Reference counted so that one copy can be shared by every region
+	 * that needs the section. The word array is recycled after the last release.
+	 */
+	private static class PackedPaletteCopyImpl implements PaletteCopy {
+		public final BlockState emptyVal;
+		private final long[] data;
+		private final int bits;
+		private final int valuesPerWord;
+		private final long mask;
+		private final Palette<BlockState> palette;
+		private final AtomicInteger refCount = new AtomicInteger(1);
+
+		private PackedPaletteCopyImpl(Palette<BlockState> palette, BitStorage data, BlockState emptyVal) {
+			assert data != null;
+			assert palette != null;
+			this.palette = palette;
+			bits = data.getBits();
+			valuesPerWord = 64 / bits;
+			mask = (1L << bits) - 1L;
+			this.emptyVal = emptyVal;
+
+			final long[] raw = data.getRaw();
+			this.data = claimWords(bits, raw.length);
+			System.arraycopy(raw, 0, this.data, 0, raw.length);
+			copiedBytes += raw.length * 8L;
+		}
+
+		@Override
+		public BlockState apply(int index) {
+			final int wordIndex = index / valuesPerWord;
+			final int shift = (index - wordIndex * valuesPerWord) * bits;
+			final BlockState result = palette.valueFor((int) ((data[wordIndex] >> shift) & mask));
+			return result == null ? emptyVal : result;
+		}
+
+		@Override
+		public void unpackTo(SectionUnpacker unpacker) {
+			unpacker.unpack(data, bits, palette, emptyVal);
+		}
+
+		@Override
+		public PaletteCopy retain() {
+			refCount.incrementAndGet();
+			return this;
+		}
+
+		@Override
+		public void release() {
+			final int count = refCount.decrementAndGet();
+			assert count >= 0;
+
+			if (count == 0) {
+				WORD_POOLS[bits].offer(data);
+			}
+		}
+	}
 }
@@ -20,10 +20,12 @@
 
 package grondag.canvas.terrain.util;
 
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import com.google.common.collect.ImmutableList;
 
@@ -44,25 +46,31 @@ public class DedicatedTerrainExecutor implements TerrainExecutor {
 		}
 	});
 
-	private final int poolSize = threadCount();
+	private final Supplier<TerrainRenderContext> contextFactory;
 
 	private final ImmutableList<Worker> workers;
 
 	private final AtomicInteger renderTaskCount = new AtomicInteger();
+	private final ArrayList<TerrainExecutorTask> reprioritizeTasks = new ArrayList<>();
+	private final AtomicInteger droppedTaskCount = new AtomicInteger();
 	private int lastRenderTaskCount;
+	private int lastDroppedTaskCount;
 	private long nextTime;
 	private String report = "";
 
 	DedicatedTerrainExecutor() {
+		this(threadCount(), TerrainRenderContext::new);
+	}
+
+	DedicatedTerrainExecutor(int poolSize, Supplier<TerrainRenderContext> contextFactory) {
+		this.contextFactory = contextFactory;
 		final ImmutableList.Builder<Worker> builder = ImmutableList.builder();
 
 		for (int i = 0; i < poolSize; i++) {
 			final Worker w = new Worker();
 			builder.add(w);
 
-			final Thread thread = new Thread(
-					new Worker(),
-					"Canvas Render Thread - " + i);
+			final Thread thread = new Thread(w, "Canvas Render Thread - " + i);
 			thread.setDaemon(true);
 			thread.start();
 		}
@@ -78,6 +86,7 @@ public class DedicatedTerrainExecutor implements TerrainExecutor {
 	@Override
 	public void execute(TerrainExecutorTask task) {
 		queue.add(task);
+		renderTaskCount.incrementAndGet();
 	}
 
 	@Override
@@ -86,8 +95,24 @@ public class DedicatedTerrainExecutor implements TerrainExecutor {
 
 		for (final Worker w : workers) {
 			w.context.close();
-			w.context = new TerrainRenderContext();
+			w.context = contextFactory.get();
+		}
+	}
+
+	@Override
+	public void reprioritize() {
+		final ArrayList<TerrainExecutorTask> tasks = reprioritizeTasks;
+		queue.drainTo(tasks);
+
+		for (final TerrainExecutorTask t : tasks) {
+			if (t.cancelIfObsolete()) {
+				droppedTaskCount.incrementAndGet();
+			} else {
+				queue.add(t);
+			}
 		}
+
+		tasks.clear();
 	}
 
 	@Override
@@ -96,7 +121,7 @@ public class DedicatedTerrainExecutor implements TerrainExecutor {
 	}
 
 	private class Worker implements Runnable {
-		private TerrainRenderContext context = new TerrainRenderContext();
+		private TerrainRenderContext context = contextFactory.get();
 
 		@Override
 		public void run() {
@@ -128,8 +153,10 @@ public class DedicatedTerrainExecutor implements TerrainExecutor {
 		if (newTime > nextTime) {
 			nextTime = newTime + 1000;
 			final int newRenderCount = renderTaskCount.get();
-			report = String.format("Render tasks: %d rate: %d", queue.size(), newRenderCount - lastRenderTaskCount);
+			final int newDroppedCount = droppedTaskCount.get();
+			report = String.format("Render tasks: %d rate: %d dropped: %d", queue.size(), newRenderCount - lastRenderTaskCount, newDroppedCount - lastDroppedTaskCount);
 			lastRenderTaskCount = newRenderCount;
+			lastDroppedTaskCount = newDroppedCount;
 		}
 
 		target.add(report);
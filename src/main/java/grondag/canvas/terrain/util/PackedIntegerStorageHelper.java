@@ -29,7 +29,8 @@ import net.minecraft.util.BitStorage;
 import grondag.canvas.mixinterface.BitStorageExt;
 
 /**
- * Minimize new allocation for chunk storage copies by recycling the arrays.
+ * Minimize new allocation for chunk storage copies by recycling the arrays,
+ * and unpack copied storage words in bulk.
  */
 public class PackedIntegerStorageHelper {
 	private static final ArrayBlockingQueue<IntArrayList> POOL = new ArrayBlockingQueue<>(1024);
@@ -49,4 +50,104 @@ public class PackedIntegerStorageHelper {
 		((BitStorageExt) array).canvas_fastForEach(list);
 		return list;
 	}
+
+	/**
+	 * Unpacks values from words packed the way {@link BitStorage} packs them:
+	 * lowest bits first and no value split across two words.  Common palette
+	 * sizes have their own loops so that shifts and masks are constants.
+	 *
+	 * @param words packed values
+	 * @param bits bits per value, 1 to 32. Global palettes can need more than 16.
+	 * @param target receives unpacked values
+	 * @param count number of values to unpack
+	 */
+	public static void unpack(long[] words, int bits, int[] target, int count) {
+		switch (bits) {
+			case 4 -> unpack4(words, target, count);
+			case 5 -> unpack5(words, target, count);
+			case 8 -> unpack8(words, target, count);
+			default -> unpackAny(words, bits, target, count);
+		}
+	}
+
+	private static void unpack4(long[] words, int[] target, int count) {
+		final int fullWords = count >> 4;
+		int i = 0;
+
+		for (int w = 0; w < fullWords; ++w) {
+			final long word = words[w];
+
+			for (int shift = 0; shift < 64; shift += 4) {
+				target[i++] = (int) ((word >>> shift) & 0xF);
+			}
+		}
+
+		if (i < count) {
+			unpackTail(words[fullWords], 4, target, i, count);
+		}
+	}
+
+	private static void unpack5(long[] words, int[] target, int count) {
+		// 12 values per word, top 4 bits unused
+		final int fullWords = count / 12;
+		int i = 0;
+
+		for (int w = 0; w < fullWords; ++w) {
+			final long word = words[w];
+
+			for (int shift = 0; shift < 60; shift += 5) {
+				target[i++] = (int) ((word >>> shift) & 0x1F);
+			}
+		}
+
+		if (i < count) {
+			unpackTail(words[fullWords], 5, target, i, count);
+		}
+	}
+
+	private static void unpack8(long[] words, int[] target, int count) {
+		final int fullWords = count >> 3;
+		int i = 0;
+
+		for (int w = 0; w < fullWords; ++w) {
+			final long word = words[w];
+
+			for (int shift = 0; shift < 64; shift += 8) {
+				target[i++] = (int) ((word >>> shift) & 0xFF);
+			}
+		}
+
+		if (i < count) {
+			unpackTail(words[fullWords], 8, target, i, count);
+		}
+	}
+
+	private static void unpackAny(long[] words, int bits, int[] target, int count) {
+		final int valuesPerWord = 64 / bits;
+		final int fullWords = count / valuesPerWord;
+		final long mask = (1L << bits) - 1L;
+		int i = 0;
+
+		for (int w = 0; w < fullWords; ++w) {
+			long word = words[w];
+
+			for (int j = 0; j < valuesPerWord; ++j) {
+				target[i++] = (int) (word & mask);
+				word >>>= bits;
+			}
+		}
+
+		if (i < count) {
+			unpackTail(words[fullWords], bits, target, i, count);
+		}
+	}
+
+	private static void unpackTail(long word, int bits, int[] target, int start, int count) {
+		final long mask = (1L << bits) - 1L;
+
+		for (int i = start; i < count; ++i) {
+			target[i] = (int) (word & mask);
+			word >>>= bits;
+		}
+	}
 }
@@ -0,0 +1,124 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+
+package grondag.canvas.terrain.util;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import net.minecraft.world.level.chunk.LevelChunkSection;
+
+import grondag.canvas.mixinterface.PalettedContainerExt;
+import grondag.canvas.terrain.util.ChunkPaletteCopier.PaletteCopy;
+
+/**
+ * Shares packed section copies between regions captured in the same frame.
+ * A section change usually causes the region containing it and all
+ * neighboring regions to be rebuilt, and each of those needs the same section.
+ *
+ * <p>Entries are keyed by section position and are only used if the section
+ * instance and its modification counter are unchanged. Copies are reference
+ * counted: the cache holds one reference until it is cleared each frame, and
+ * each region holds one until its build is done.
+ *
+ * <p>Render thread only.
+ */
+public class SectionSnapshotCache {
+	private static final Long2ObjectOpenHashMap<Entry> ENTRIES = new Long2ObjectOpenHashMap<>();
+
+	private static int hitCount;
+	private static int missCount;
+	private static long lastCopiedBytes;
+	private static long nextTime;
+	private static String report = "";
+
+	private record Entry(LevelChunkSection section, int modCount, PaletteCopy copy) { }
+
+	/**
+	 * Packed copy of the given section, shared if possible.
+	 * Caller must release the result.
+	 *
+	 * @param section section to copy, may be null
+	 * @param sectionKey unique position of the section, as from {@link net.minecraft.core.SectionPos#asLong(int, int, int)}
+	 */
+	public static PaletteCopy claim(LevelChunkSection section, long sectionKey) {
+		if (section == null) {
+			return ChunkPaletteCopier.AIR_COPY;
+		}
+
+		final int modCount = ((PalettedContainerExt) section.getStates()).canvas_modCount();
+		final Entry entry = ENTRIES.get(sectionKey);
+
+		if (entry != null && entry.section == section && entry.modCount == modCount) {
+			++hitCount;
+			return entry.copy.retain();
+		}
+
+		++missCount;
+		final PaletteCopy copy = ChunkPaletteCopier.captureCopy(section, true);
+		final Entry oldEntry = ENTRIES.put(sectionKey, new Entry(section, modCount, copy));
+
+		if (oldEntry != null) {
+			oldEntry.copy.release();
+		}
+
+		return copy.retain();
+	}
+
+	/**
+	 * Releases the cache's references to all copies.
+	 * Called every frame so that copies are not held longer than needed.
+	 */
+	public static void clear() {
+		if (!ENTRIES.isEmpty()) {
+			for (final Entry entry : ENTRIES.values()) {
+				entry.copy.release();
+			}
+
+			ENTRIES.clear();
+		}
+	}
+
+	public static String debugString() {
+		final long time = System.currentTimeMillis();
+
+		// first call only starts the interval, so the rate isn't measured from time zero
+		if (nextTime == 0) {
+			lastCopiedBytes = ChunkPaletteCopier.copiedBytes;
+			hitCount = 0;
+			missCount = 0;
+			nextTime = time + 1000;
+		} else if (time > nextTime) {
+			final long copiedBytes = ChunkPaletteCopier.copiedBytes;
+			final int total = hitCount + missCount;
+			final float seconds = (time - nextTime + 1000) / 1000f;
+
+			report = String.format("Section copies shared:%3d%%  copied:%5.1fMb/s",
+					total == 0 ? 0 : hitCount * 100 / total,
+					(copiedBytes - lastCopiedBytes) / seconds / 0x100000);
+
+			lastCopiedBytes = copiedBytes;
+			hitCount = 0;
+			missCount = 0;
+			nextTime = time + 1000;
+		}
+
+		return report;
+	}
+}
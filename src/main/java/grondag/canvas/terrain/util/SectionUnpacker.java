@@ -0,0 +1,158 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+package grondag.canvas.terrain.util;
+
+import java.util.Arrays;
+
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.Palette;
+
+import grondag.canvas.terrain.util.ChunkPaletteCopier.PaletteCopy;
+
+/**
+ * Unpacks all block states of a section copy at once, resolving each
+ * palette entry once instead of once per block.
+ *
+ * <p>Results are in section order: {@code x | (z << 4) | (y << 8)}.
+ * Each block also gets a local palette index, from zero in the order states
+ * were first seen, that can be used to look up the state.
+ *
+ * <p>Meant to be reused by one thread.
+ */
+public class SectionUnpacker {
+	public static final int SECTION_STATE_COUNT = 4096;
+
+	/** Raw palette values below this are mapped with an array instead of a hash lookup. */
+	private static final int RAW_MAP_SIZE = 256;
+
+	public final BlockState[] states = new BlockState[SECTION_STATE_COUNT];
+	public final short[] paletteIndex = new short[SECTION_STATE_COUNT];
+
+	private final BlockState[] paletteStates = new BlockState[SECTION_STATE_COUNT];
+	private int paletteSize;
+
+	private final int[] rawValues = new int[SECTION_STATE_COUNT];
+	private final short[] rawMap = new short[RAW_MAP_SIZE];
+	private final Reference2IntOpenHashMap<BlockState> stateMap = new Reference2IntOpenHashMap<>();
+
+	public SectionUnpacker() {
+		stateMap.defaultReturnValue(-1);
+	}
+
+	/**
+	 * Unpacks every state of the given copy. Does not release the copy.
+	 */
+	public void unpack(PaletteCopy copy) {
+		paletteSize = 0;
+		stateMap.clear();
+		copy.unpackTo(this);
+	}
+
+	public int paletteSize() {
+		return paletteSize;
+	}
+
+	public BlockState paletteState(int paletteIndex) {
+		return paletteStates[paletteIndex];
+	}
+
+	private int addState(BlockState state) {
+		int result = stateMap.getInt(state);
+
+		if (result == -1) {
+			result = paletteSize++;
+			paletteStates[result] = state;
+			stateMap.put(state, result);
+		}
+
+		return result;
+	}
+
+	/** All states are the same. */
+	void fill(BlockState state) {
+		final int index = addState(state);
+		Arrays.fill(states, state);
+		Arrays.fill(paletteIndex, (short) index);
+	}
+
+	/** Slow path for copies that can only be read one state at a time. */
+	void copy(PaletteCopy copy) {
+		BlockState lastState = null;
+		int lastIndex = 0;
+
+		for (int i = 0; i < SECTION_STATE_COUNT; ++i) {
+			final BlockState state = copy.apply(i);
+
+			if (state != lastState) {
+				lastState = state;
+				lastIndex = addState(state);
+			}
+
+			states[i] = state;
+			paletteIndex[i] = (short) lastIndex;
+		}
+	}
+
+	/** Values packed as in {@link net.minecraft.util.BitStorage}. */
+	void unpack(long[] words, int bits, Palette<BlockState> palette, BlockState emptyVal) {
+		PackedIntegerStorageHelper.unpack(words, bits, rawValues, SECTION_STATE_COUNT);
+		resolve(rawValues, palette, emptyVal);
+	}
+
+	/** Values already unpacked. */
+	void unpack(int[] values, Palette<BlockState> palette, BlockState emptyVal) {
+		resolve(values, palette, emptyVal);
+	}
+
+	private void resolve(int[] rawValues, Palette<BlockState> palette, BlockState emptyVal) {
+		final short[] rawMap = this.rawMap;
+		final BlockState[] states = this.states;
+		final short[] paletteIndex = this.paletteIndex;
+		final BlockState[] paletteStates = this.paletteStates;
+		Arrays.fill(rawMap, (short) -1);
+
+		for (int i = 0; i < SECTION_STATE_COUNT; ++i) {
+			final int raw = rawValues[i];
+			int index;
+
+			if (raw < RAW_MAP_SIZE) {
+				index = rawMap[raw];
+
+				if (index == -1) {
+					index = addState(resolve(palette, raw, emptyVal));
+					rawMap[raw] = (short) index;
+				}
+			} else {
+				// global palette - states are still resolved by identity
+				index = addState(resolve(palette, raw, emptyVal));
+			}
+
+			paletteIndex[i] = (short) index;
+			states[i] = paletteStates[index];
+		}
+	}
+
+	private static BlockState resolve(Palette<BlockState> palette, int raw, BlockState emptyVal) {
+		final BlockState result = palette.valueFor(raw);
+		return result == null ? emptyVal : result;
+	}
+}
@@ -20,12 +20,14 @@
 
 package grondag.canvas.terrain.util;
 
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import com.google.common.collect.ImmutableList;
 
@@ -48,13 +50,17 @@ public class SharedTerrainExecutor implements TerrainExecutor {
 
 	private final LinkedBlockingQueue<Runnable> serverQueue = new LinkedBlockingQueue<>();
 
-	private final int poolSize = threadCount();
-	private final Semaphore mixedSignal = new Semaphore(poolSize - 2);
+	private final int poolSize;
+	private final Semaphore mixedSignal;
+	private final Supplier<TerrainRenderContext> contextFactory;
 
 	private final ImmutableList<Worker> workers;
 
 	private final AtomicInteger renderTaskCount = new AtomicInteger();
 	private final AtomicInteger serverTaskCount = new AtomicInteger();
+	private final ArrayList<TerrainExecutorTask> reprioritizeTasks = new ArrayList<>();
+	private final AtomicInteger droppedTaskCount = new AtomicInteger();
+	private int lastDroppedTaskCount;
 
 	private int lastRenderTaskCount;
 	private int lastServerTaskCount;
@@ -62,8 +68,16 @@ public class SharedTerrainExecutor implements TerrainExecutor {
 	private String report0 = "", report1 = "";
 
 	SharedTerrainExecutor() {
+		this(threadCount(), TerrainRenderContext::new);
+	}
+
+	SharedTerrainExecutor(int poolSize, Supplier<TerrainRenderContext> contextFactory) {
 		assert poolSize >= 4;
 
+		this.poolSize = poolSize;
+		this.contextFactory = contextFactory;
+		mixedSignal = new Semaphore(poolSize - 2);
+
 		final ImmutableList.Builder<Worker> builder = ImmutableList.builder();
 
 		final RenderWorker renderWorker = new RenderWorker();
@@ -128,6 +142,23 @@ public class SharedTerrainExecutor implements TerrainExecutor {
 		}
 	}
 
+	@Override
+	public void reprioritize() {
+		final ArrayList<TerrainExecutorTask> tasks = reprioritizeTasks;
+		renderQueue.drainTo(tasks);
+
+		for (final TerrainExecutorTask t : tasks) {
+			if (t.cancelIfObsolete()) {
+				droppedTaskCount.incrementAndGet();
+			} else {
+				// no release of mixedSignal here - permit was already granted when first added
+				renderQueue.add(t);
+			}
+		}
+
+		tasks.clear();
+	}
+
 	@Override
 	public boolean isEmpty() {
 		return renderQueue.isEmpty();
@@ -138,7 +169,7 @@ public class SharedTerrainExecutor implements TerrainExecutor {
 	}
 
 	private class RenderWorker implements Worker {
-		protected TerrainRenderContext context = new TerrainRenderContext();
+		protected TerrainRenderContext context = contextFactory.get();
 
 		@Override
 		public void run() {
@@ -261,14 +292,17 @@ public class SharedTerrainExecutor implements TerrainExecutor {
 			final int newRenderCount = renderTaskCount.get();
 			final int newServerCount = serverTaskCount.get();
 
-			report0 = String.format("Render tasks: %d rate: %d",
-					renderQueue.size(), newRenderCount - lastRenderTaskCount);
+			final int newDroppedCount = droppedTaskCount.get();
+
+			report0 = String.format("Render tasks: %d rate: %d dropped: %d",
+					renderQueue.size(), newRenderCount - lastRenderTaskCount, newDroppedCount - lastDroppedTaskCount);
 
 			report1 = String.format("Server tasks: %d rate: %d",
 					serverQueue.size(), newServerCount - lastServerTaskCount);
 
 			lastRenderTaskCount = newRenderCount;
 			lastServerTaskCount = newServerCount;
+			lastDroppedTaskCount = newDroppedCount;
 		}
 
 		target.add(report0);
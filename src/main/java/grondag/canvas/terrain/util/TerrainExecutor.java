@@ -26,12 +26,19 @@ import java.util.concurrent.Executor;
 import grondag.canvas.config.Configurator;
 
 public interface TerrainExecutor extends Executor {
-	TerrainExecutor INSTANCE = Configurator.useCombinedThreadPool ? new SharedTerrainExecutor() : new DedicatedTerrainExecutor();
+	TerrainExecutor INSTANCE = Configurator.useCombinedThreadPool ? new SharedTerrainExecutor()
+			: Configurator.useWorkStealingExecutor ? new WorkStealingTerrainExecutor() : new DedicatedTerrainExecutor();
 
 	void execute(TerrainExecutorTask task);
 
 	void clear();
 
+	/**
+	 * Re-ranks queued tasks using their current priority and discards
+	 * those that report themselves obsolete.  Call when the camera region changes.
+	 */
+	void reprioritize();
+
 	boolean isEmpty();
 
 	void debugReport(List<String> target);
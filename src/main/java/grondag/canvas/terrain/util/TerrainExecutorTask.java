@@ -29,4 +29,16 @@ public interface TerrainExecutorTask {
 	 * Normally squared chunk distance. Use -1 for privileged execution.
 	 */
 	int priority();
+
+	/**
+	 * Called by the executor for tasks still in queue when priorities are re-ranked.
+	 * Tasks that can no longer be useful should release any resources, restore
+	 * whatever state is needed to be scheduled again later, and return true.
+	 * The executor will then discard the task without running it.
+	 *
+	 * @return true if the task should be removed from the queue
+	 */
+	default boolean cancelIfObsolete() {
+		return false;
+	}
 }
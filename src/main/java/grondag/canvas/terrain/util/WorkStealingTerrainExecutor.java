@@ -0,0 +1,349 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+
+package grondag.canvas.terrain.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import grondag.canvas.CanvasMod;
+import grondag.canvas.apiimpl.rendercontext.TerrainRenderContext;
+
+/**
+ * Terrain executor without a shared queue or lock.
+ *
+ * <p>Each worker owns a set of lock-free deques, one per distance bucket.
+ * Submitted tasks are spread round-robin across workers and each worker
+ * runs the nearest task it can find, taking it from another worker's
+ * deques when that worker has something nearer.  Nearness is tracked per
+ * worker as a bit mask of non-empty buckets, so finding the best source is
+ * one read per worker and no global heap is needed.
+ *
+ * <p>Bucket zero holds privileged tasks (priority -1) and buckets after that
+ * are whole chunk distances.  Tasks within a bucket run in submission order.
+ * Ordering across workers is approximate - a worker may briefly run a task
+ * slightly farther than one just submitted to another worker.
+ */
+public class WorkStealingTerrainExecutor implements TerrainExecutor {
+	private static final int BUCKET_COUNT = 64;
+
+	private final Worker[] workers;
+	private final ConcurrentLinkedQueue<Worker> idleWorkers = new ConcurrentLinkedQueue<>();
+	private final Supplier<TerrainRenderContext> contextFactory;
+	private final AtomicInteger nextWorker = new AtomicInteger();
+	private final AtomicInteger queuedCount = new AtomicInteger();
+	private final AtomicInteger renderTaskCount = new AtomicInteger();
+	private final AtomicInteger stealCount = new AtomicInteger();
+	private final AtomicInteger droppedTaskCount = new AtomicInteger();
+	private final ArrayList<TerrainExecutorTask> reprioritizeTasks = new ArrayList<>();
+
+	private int lastRenderTaskCount;
+	private int lastStealCount;
+	private int lastDroppedTaskCount;
+	private long nextTime;
+	private String report = "";
+
+	WorkStealingTerrainExecutor() {
+		this(threadCount(), TerrainRenderContext::new);
+	}
+
+	WorkStealingTerrainExecutor(int poolSize, Supplier<TerrainRenderContext> contextFactory) {
+		this.contextFactory = contextFactory;
+		workers = new Worker[poolSize];
+
+		for (int i = 0; i < poolSize; i++) {
+			workers[i] = new Worker(i);
+		}
+
+		for (int i = 0; i < poolSize; i++) {
+			final Thread thread = new Thread(workers[i], "Canvas Render Thread - " + i);
+			workers[i].thread = thread;
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	private static int threadCount() {
+		final int threadCount = Runtime.getRuntime().availableProcessors() - 1;
+		return threadCount > 1 ? threadCount : 1;
+	}
+
+	static int bucket(int priority) {
+		if (priority < 0) {
+			return 0;
+		}
+
+		return Math.min(BUCKET_COUNT - 1, 1 + (int) Math.sqrt(priority));
+	}
+
+	@Override
+	public void execute(TerrainExecutorTask task) {
+		final Worker[] workers = this.workers;
+		final Worker target = workers[(nextWorker.getAndIncrement() & Integer.MAX_VALUE) % workers.length];
+		target.push(task, bucket(task.priority()));
+		queuedCount.incrementAndGet();
+		renderTaskCount.incrementAndGet();
+
+		final Worker idle = idleWorkers.poll();
+
+		if (idle != null) {
+			LockSupport.unpark(idle.thread);
+		} else if (target.isIdle) {
+			LockSupport.unpark(target.thread);
+		}
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		throw new UnsupportedOperationException("Work-stealing terrain executor recevied shared-mode task");
+	}
+
+	@Override
+	public void clear() {
+		for (final Worker w : workers) {
+			w.clear();
+			w.resetContext = true;
+		}
+	}
+
+	/**
+	 * Tasks are moved between buckets of the same worker so that
+	 * the spread of tasks across workers is retained.
+	 */
+	@Override
+	public void reprioritize() {
+		final ArrayList<TerrainExecutorTask> tasks = reprioritizeTasks;
+
+		for (final Worker w : workers) {
+			w.drainTo(tasks);
+
+			for (final TerrainExecutorTask t : tasks) {
+				if (t.cancelIfObsolete()) {
+					queuedCount.decrementAndGet();
+					droppedTaskCount.incrementAndGet();
+				} else {
+					w.push(t, bucket(t.priority()));
+				}
+			}
+
+			tasks.clear();
+		}
+
+		// an idle worker may have looked while tasks were drained and found nothing
+		if (!isEmpty()) {
+			for (final Worker w : idleWorkers) {
+				LockSupport.unpark(w.thread);
+			}
+		}
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return queuedCount.get() <= 0;
+	}
+
+	/**
+	 * Finds the nearest available task, preferring the given worker's own deques
+	 * when nearness is equal.  Returns null if all deques appear to be empty.
+	 */
+	private TerrainExecutorTask pollNearest(Worker self) {
+		while (true) {
+			Worker best = self;
+			int bestBucket = self.firstBucket();
+			final Worker[] workers = this.workers;
+			final int limit = workers.length;
+
+			// start after self so that thieves don't all converge on the first worker
+			for (int i = 1; i < limit && bestBucket != 0; ++i) {
+				final Worker w = workers[(self.index + i) % limit];
+				final int b = w.firstBucket();
+
+				if (b < bestBucket) {
+					best = w;
+					bestBucket = b;
+				}
+			}
+
+			if (bestBucket >= BUCKET_COUNT) {
+				return null;
+			}
+
+			final TerrainExecutorTask result = best.poll(bestBucket);
+
+			if (result != null) {
+				queuedCount.decrementAndGet();
+
+				if (best != self) {
+					stealCount.incrementAndGet();
+				}
+
+				return result;
+			}
+
+			// lost a race for that bucket - look again
+		}
+	}
+
+	private class Worker implements Runnable {
+		private final int index;
+		private final AtomicLong occupied = new AtomicLong();
+		private final ConcurrentLinkedDeque<TerrainExecutorTask>[] buckets;
+		private Thread thread;
+		private volatile boolean isIdle;
+		private volatile boolean resetContext;
+		private TerrainRenderContext context = contextFactory.get();
+
+		@SuppressWarnings("unchecked")
+		Worker(int index) {
+			this.index = index;
+			buckets = new ConcurrentLinkedDeque[BUCKET_COUNT];
+
+			for (int i = 0; i < BUCKET_COUNT; ++i) {
+				buckets[i] = new ConcurrentLinkedDeque<>();
+			}
+		}
+
+		void push(TerrainExecutorTask task, int bucket) {
+			buckets[bucket].addLast(task);
+			final long bit = 1L << bucket;
+
+			// avoid the write when already set
+			if ((occupied.get() & bit) == 0) {
+				occupied.getAndUpdate(v -> v | bit);
+			}
+		}
+
+		/** Index of nearest non-empty bucket, or BUCKET_COUNT if all are empty. */
+		int firstBucket() {
+			return Long.numberOfTrailingZeros(occupied.get());
+		}
+
+		TerrainExecutorTask poll(int bucket) {
+			final ConcurrentLinkedDeque<TerrainExecutorTask> deque = buckets[bucket];
+			final TerrainExecutorTask result = deque.pollFirst();
+
+			if (deque.isEmpty()) {
+				final long bit = 1L << bucket;
+				occupied.getAndUpdate(v -> v & ~bit);
+
+				// a push may have happened between the check and the clear
+				if (!deque.isEmpty()) {
+					occupied.getAndUpdate(v -> v | bit);
+				}
+			}
+
+			return result;
+		}
+
+		/** Moves all tasks to the given list without changing the queued count. */
+		void drainTo(List<TerrainExecutorTask> target) {
+			for (int i = 0; i < BUCKET_COUNT; ++i) {
+				final ConcurrentLinkedDeque<TerrainExecutorTask> deque = buckets[i];
+				TerrainExecutorTask t = deque.pollFirst();
+
+				while (t != null) {
+					target.add(t);
+					t = deque.pollFirst();
+				}
+
+				final long bit = 1L << i;
+				occupied.getAndUpdate(v -> v & ~bit);
+
+				// a push may have happened after the deque was drained
+				if (!deque.isEmpty()) {
+					occupied.getAndUpdate(v -> v | bit);
+				}
+			}
+		}
+
+		void clear() {
+			final ArrayList<TerrainExecutorTask> tasks = new ArrayList<>();
+			drainTo(tasks);
+			queuedCount.addAndGet(-tasks.size());
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				try {
+					if (resetContext) {
+						resetContext = false;
+
+						if (context != null) {
+							context.close();
+						}
+
+						context = contextFactory.get();
+					}
+
+					TerrainExecutorTask t = pollNearest(this);
+
+					if (t == null) {
+						isIdle = true;
+						idleWorkers.add(this);
+
+						// check again in case a task was added before we were visible as idle
+						t = pollNearest(this);
+
+						// execute() unparks an idle worker after each push, and a permit
+						// from an unpark before this point makes park return at once
+						if (t == null) {
+							LockSupport.park(this);
+						}
+
+						idleWorkers.remove(this);
+						isIdle = false;
+					}
+
+					if (t != null) {
+						t.run(context);
+					}
+				} catch (final Exception e) {
+					CanvasMod.LOG.error("Unhandled error during rendering. Impact unknown.", e);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void debugReport(List<String> target) {
+		final long newTime = System.currentTimeMillis();
+
+		if (newTime > nextTime) {
+			nextTime = newTime + 1000;
+			final int newRenderCount = renderTaskCount.get();
+			final int newStealCount = stealCount.get();
+			final int newDroppedCount = droppedTaskCount.get();
+			report = String.format("Render tasks: %d rate: %d steals: %d dropped: %d", Math.max(0, queuedCount.get()),
+					newRenderCount - lastRenderTaskCount, newStealCount - lastStealCount, newDroppedCount - lastDroppedTaskCount);
+			lastRenderTaskCount = newRenderCount;
+			lastStealCount = newStealCount;
+			lastDroppedTaskCount = newDroppedCount;
+		}
+
+		target.add(report);
+	}
+}
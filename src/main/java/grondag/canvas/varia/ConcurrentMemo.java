@@ -0,0 +1,69 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+
+package grondag.canvas.varia;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import com.mojang.datafixers.util.Pair;
+
+/**
+ * Thread-safe substitutes for the memoizing functions in vanilla Util, which
+ * use plain hash maps.  Render types are looked up through these, and entity
+ * renderers may run on more than one thread.
+ *
+ * <p>Values are computed outside of any lock so that a memoized function can
+ * look up other memoized values.  When two threads compute the same key at
+ * once, both get the value stored first.  Null results are not stored,
+ * same as the vanilla versions.
+ */
+public class ConcurrentMemo {
+	private ConcurrentMemo() { }
+
+	public static <T, R> Function<T, R> of(Function<T, R> function) {
+		final ConcurrentHashMap<T, R> cache = new ConcurrentHashMap<>();
+
+		return t -> {
+			final R result = cache.get(t);
+			return result == null ? store(cache, t, function.apply(t)) : result;
+		};
+	}
+
+	public static <T, U, R> BiFunction<T, U, R> of(BiFunction<T, U, R> function) {
+		final ConcurrentHashMap<Pair<T, U>, R> cache = new ConcurrentHashMap<>();
+
+		return (t, u) -> {
+			final Pair<T, U> key = Pair.of(t, u);
+			final R result = cache.get(key);
+			return result == null ? store(cache, key, function.apply(t, u)) : result;
+		};
+	}
+
+	private static <K, R> R store(ConcurrentHashMap<K, R> cache, K key, R value) {
+		if (value == null) {
+			return null;
+		}
+
+		final R prior = cache.putIfAbsent(key, value);
+		return prior == null ? value : prior;
+	}
+}
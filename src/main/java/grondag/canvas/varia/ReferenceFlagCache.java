@@ -0,0 +1,71 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+
+package grondag.canvas.varia;
+
+import java.util.function.Predicate;
+
+import it.unimi.dsi.fastutil.objects.Reference2BooleanOpenHashMap;
+
+/**
+ * Remembers a yes-or-no result for each key, compared by identity, so that the
+ * predicate is called once per key until cleared.  Keys often come in runs of
+ * the same key, so the last result is checked before the map.
+ *
+ * <p>Not thread-safe.
+ */
+public class ReferenceFlagCache<T> {
+	private final Reference2BooleanOpenHashMap<T> map = new Reference2BooleanOpenHashMap<>();
+	private final Predicate<T> predicate;
+	private T lastKey;
+	private boolean lastResult;
+	private boolean hasLastKey;
+
+	public ReferenceFlagCache(Predicate<T> predicate) {
+		this.predicate = predicate;
+	}
+
+	public boolean test(T key) {
+		if (hasLastKey && key == lastKey) {
+			return lastResult;
+		}
+
+		final boolean result;
+
+		if (map.containsKey(key)) {
+			result = map.getBoolean(key);
+		} else {
+			result = predicate.test(key);
+			map.put(key, result);
+		}
+
+		lastKey = key;
+		lastResult = result;
+		hasLastKey = true;
+		return result;
+	}
+
+	/** Call when results may have changed. */
+	public void clear() {
+		map.clear();
+		lastKey = null;
+		hasLastKey = false;
+	}
+}
@@ -23,7 +23,18 @@ void main() {
 		discard;
 	}
 #endif
-	frx_sampleColor = texture(frxs_baseColor, frx_texcoord, frx_matUnmipped * -4.0);
+	if (_cvv_tiledUV == 1) {
+		// Merged faces span several sprites - wrap within the sprite bounds.
+		// Gradients come from the unwrapped coordinates to avoid mip seams
+		// and are scaled to match the LOD bias of unmipped materials.
+		float gradScale = exp2(frx_matUnmipped * -4.0);
+		vec2 dx = dFdx(frx_texcoord) * gradScale;
+		vec2 dy = dFdy(frx_texcoord) * gradScale;
+		vec2 uv = frx_mapNormalizedUV(fract(frx_normalizeMappedUV(frx_texcoord)));
+		frx_sampleColor = textureGrad(frxs_baseColor, uv, dx, dy);
+	} else {
+		frx_sampleColor = texture(frxs_baseColor, frx_texcoord, frx_matUnmipped * -4.0);
+	}
 
 #ifdef _CV_FRAGMENT_COMPAT
 	compatData = frx_FragmentData(frx_sampleColor, frx_vertexColor);
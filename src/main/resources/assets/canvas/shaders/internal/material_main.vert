@@ -19,7 +19,7 @@ void _cv_startVertex(in int cv_programId) {
 void main() {
 	_cv_prepareForVertex();
 	frx_vertex = vec4(in_vertex, 1.0);
-	frx_texcoord = in_uv;
+	frx_texcoord = _cv_tiledUV ? in_uv * _CV_TILED_UV_SCALE : in_uv;
 	frx_vertexColor = in_color;
 	frx_vertexNormal = in_normal;
 	
@@ -22,11 +22,13 @@ uniform isamplerBuffer _cvu_materialInfo;
 #ifdef VERTEX_SHADER
 flat out ivec4 _cvu_program;
 flat out vec4 _cvv_spriteBounds;
+flat out int _cvv_tiledUV;
 
 	// UGLY: _cv_modelOrigin is in vertex.glsl due to include order
 #else
 flat in ivec4 _cvu_program;
 flat in vec4 _cvv_spriteBounds;
+flat in int _cvv_tiledUV;
 
 #ifndef _CV_VERTEX_DEFAULT
 flat in vec4 _cv_modelToWorld;
@@ -40,6 +42,8 @@ flat in vec4 _cv_modelToCamera;
 
 #ifdef VERTEX_SHADER
 void _cv_setupProgram() {
+	_cvv_tiledUV = _cv_tiledUV ? 1 : 0;
+
 	if (_cvu_context[_CV_ATLAS_WIDTH] == 0) {
 		_cvu_program = texelFetch(_cvu_materialInfo, in_material);
 		_cvu_program.w = _cv_testCondition(_cvu_program.w) ? 1 : 0;
@@ -6,13 +6,21 @@
 float in_ao = 1.0;
 vec3 in_normal;
 
+// Merged terrain faces repeat the sprite - UV is stored divided by this
+#define _CV_TILED_UV_SCALE 16.0
+bool _cv_tiledUV = false;
+
 // Same as default but region is looked up based on a vertex attribute.
 // This avoid a uniform update per draw call.
 #ifdef _CV_VERTEX_TERRAIN
 
+// Replaced at load with values for the current level height and render distance
+#define _CV_SECTOR_XZ_RADIUS 5
+#define _CV_SECTOR_MIN_Y -64
 uniform int[182] _cvu_sectors_int;
 
 // High bits store sign for normal and tangent vector z components
+// and the flag for tiled UV.
 in ivec4 in_region;
 in ivec4 in_blockpos_ao;
 in vec4 in_color;
@@ -25,12 +33,12 @@ in vec4 in_normal_tangent;
 vec3 in_vertex;
 
 void _cv_prepareForVertex() {
-	// Mask out the bits for vector signs
-	int packedSector = _cvu_sectors_int[(in_region.x & 0x3FFF) >> 1];
+	// Mask out the bits for vector signs and tiled UV
+	int packedSector = _cvu_sectors_int[(in_region.x & 0x1FFF) >> 1];
 	packedSector = (in_region.x & 1) == 1 ? ((packedSector >> 16) & 0xFFFF) : (packedSector & 0xFFFF);
 
 	// These are relative to the sector origin, which will be near the camera position
-	vec3 origin = vec3(((packedSector & 0xF) - 5) * 128, ((packedSector >> 4) & 0xF) * 128 - 64, (((packedSector >> 8) & 0xF) - 5) * 128);
+	vec3 origin = vec3(((packedSector & 0x1F) - _CV_SECTOR_XZ_RADIUS) * 128, ((packedSector >> 5) & 0x1F) * 128 + _CV_SECTOR_MIN_Y, (((packedSector >> 10) & 0x1F) - _CV_SECTOR_XZ_RADIUS) * 128);
 
 	// Add intra-sector block pos and fractional block pos
 	in_vertex = origin + in_region.yzw / 65535.0 + in_blockpos_ao.xyz - 63;
@@ -39,6 +47,7 @@ void _cv_prepareForVertex() {
 	in_normal = vec3(in_normal_tangent.xy, normalSign * sqrt(clamp(1.0 - dot(in_normal_tangent.xy, in_normal_tangent.xy), 0.0, 1.0)));
 	
 	in_ao = in_blockpos_ao.w * (1.0 / 255.0);
+	_cv_tiledUV = (in_region.x & 0x2000) != 0;
 }
 #endif
 
@@ -0,0 +1,86 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+
+package grondag.canvas;
+
+/**
+ * Timing harness shared by the benchmark methods of tests.
+ *
+ * <p>Benchmark methods are disabled with {@link #DISABLED} so that they don't run,
+ * or print, with the unit tests.  Enable one to run it by hand.
+ */
+public final class Benchmark {
+	public static final String DISABLED = "Benchmark - prints timings, run manually";
+
+	private Benchmark() { }
+
+	/**
+	 * Times each case in turn, warmup + runs times.  Cases are interleaved so that
+	 * anything that slows the machine during a run affects all of them equally.
+	 *
+	 * @param setup run before each case and not timed, may be null
+	 * @return average nanoseconds per run of each case, in argument order
+	 */
+	public static double[] time(int warmup, int runs, Runnable setup, Runnable... cases) {
+		final long[] nanos = new long[cases.length];
+
+		for (int run = 0; run < warmup + runs; ++run) {
+			for (int c = 0; c < cases.length; ++c) {
+				if (setup != null) {
+					setup.run();
+				}
+
+				final long start = System.nanoTime();
+				cases[c].run();
+				final long elapsed = System.nanoTime() - start;
+
+				if (run >= warmup) {
+					nanos[c] += elapsed;
+				}
+			}
+		}
+
+		final double[] result = new double[cases.length];
+
+		for (int c = 0; c < cases.length; ++c) {
+			result[c] = (double) nanos[c] / runs;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Prints one line: the label, then each name with its time in milliseconds.
+	 */
+	public static void report(String label, String[] names, double[] nanos) {
+		final StringBuilder builder = new StringBuilder(label);
+
+		for (int i = 0; i < names.length; ++i) {
+			builder.append(String.format("  %s: %8.3fms", names[i], nanos[i] / 1000000.0));
+		}
+
+		System.out.println(builder);
+	}
+
+	/** Prints one line of results that are not plain times, such as rates or percentiles. */
+	public static void report(String format, Object... args) {
+		System.out.println(String.format(format, args));
+	}
+}
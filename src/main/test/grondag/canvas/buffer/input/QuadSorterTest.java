@@ -0,0 +1,193 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+
+package grondag.canvas.buffer.input;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import it.unimi.dsi.fastutil.Swapper;
+import it.unimi.dsi.fastutil.ints.IntComparator;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+import grondag.canvas.Benchmark;
+
+class QuadSorterTest {
+	private static final int QUAD_STRIDE = 28;
+	private static final int WARMUP = 20;
+	private static final int RUNS = 50;
+
+	final QuadSorter sorter = new QuadSorter();
+	final Random r = new Random(42);
+
+	@Test
+	void test() {
+		for (int quadCount = 1; quadCount <= 4096; quadCount *= 2) {
+			checkParity(quadCount, 0);
+			// few distinct distances means lots of ties
+			checkParity(quadCount, 8);
+		}
+
+		for (int quadCount = 1; quadCount <= 4096; quadCount *= 2) {
+			checkRepair(quadCount, 0.1f);
+			// large moves should fall back to full sort and still be correct
+			checkRepair(quadCount, 64f);
+		}
+
+		// already sorted input should report no change
+		final float[] dist = new float[] {5, 4, 4, 3, 0};
+		final int[] data = quadData(dist.length);
+		assert !sorter.sort(data, dist, dist.length, QUAD_STRIDE);
+		assert Arrays.equals(data, quadData(dist.length));
+	}
+
+	@Test
+	@Disabled(Benchmark.DISABLED)
+	void benchmark() {
+		for (int quadCount = 1024; quadCount <= 65536; quadCount *= 2) {
+			final int count = quadCount;
+			final float[] dist = new float[quadCount];
+			final float[] work = new float[quadCount];
+			final int[] source = quadData(quadCount);
+			final int[] data = new int[source.length];
+
+			for (int i = 0; i < quadCount; ++i) {
+				dist[i] = r.nextFloat() * 4096;
+			}
+
+			final double[] nanos = Benchmark.time(WARMUP, RUNS, () -> {
+				System.arraycopy(source, 0, data, 0, source.length);
+				System.arraycopy(dist, 0, work, 0, count);
+			}, () -> mergeSort(data, work, count), () -> sorter.sort(data, work, count, QUAD_STRIDE));
+
+			Benchmark.report(String.format("%6d quads", quadCount), new String[] {"mergesort", "radix"}, nanos);
+		}
+	}
+
+	private void checkParity(int quadCount, int distinctDistances) {
+		final float[] dist = new float[quadCount];
+
+		for (int i = 0; i < quadCount; ++i) {
+			dist[i] = distinctDistances == 0 ? r.nextFloat() * 1024 : r.nextInt(distinctDistances) * 0.5f;
+		}
+
+		final int[] expected = quadData(quadCount);
+		mergeSort(expected, Arrays.copyOf(dist, quadCount), quadCount);
+
+		final int[] actual = quadData(quadCount);
+		sorter.sort(actual, Arrays.copyOf(dist, quadCount), quadCount, QUAD_STRIDE);
+
+		assert Arrays.equals(expected, actual);
+	}
+
+	/**
+	 * Sorts random quad centers for one camera position, moves the camera and
+	 * checks that repair of the sorted data gives the same result as a full
+	 * sort, and that the separation bound holds.
+	 */
+	private void checkRepair(int quadCount, float cameraMove) {
+		final float[] cx = new float[quadCount];
+		final float[] cy = new float[quadCount];
+		final float[] cz = new float[quadCount];
+
+		for (int i = 0; i < quadCount; ++i) {
+			cx[i] = r.nextInt(64) + 0.5f;
+			cy[i] = r.nextInt(64) + 0.5f;
+			cz[i] = r.nextInt(64);
+		}
+
+		final float[] dist = new float[quadCount];
+		distances(cx, cy, cz, 8, 8, 8, dist);
+		final int[] data = quadData(quadCount);
+		sorter.sort(data, dist, quadCount, QUAD_STRIDE);
+		final float separation = sorter.minimumSeparation(quadCount, true);
+
+		final float x = 8 + cameraMove * (r.nextFloat() - 0.5f);
+		final float y = 8 + cameraMove * (r.nextFloat() - 0.5f);
+		final float z = 8 + cameraMove * (r.nextFloat() - 0.5f);
+		final float moved = (float) Math.sqrt((x - 8) * (x - 8) + (y - 8) * (y - 8) + (z - 8) * (z - 8));
+
+		// distances for quads in their sorted order
+		final float[] sortedDist = new float[quadCount];
+
+		for (int i = 0; i < quadCount; ++i) {
+			final int q = data[i * QUAD_STRIDE];
+			final float dx = cx[q] - x;
+			final float dy = cy[q] - y;
+			final float dz = cz[q] - z;
+			sortedDist[i] = dx * dx + dy * dy + dz * dz;
+		}
+
+		final int[] expected = data.clone();
+		mergeSort(expected, sortedDist.clone(), quadCount);
+
+		final boolean changed = sorter.repair(data, sortedDist, quadCount, QUAD_STRIDE);
+
+		assert Arrays.equals(expected, data);
+
+		if (moved * 2 + 0.01f < separation) {
+			assert !changed;
+		}
+	}
+
+	private static void distances(float[] cx, float[] cy, float[] cz, float x, float y, float z, float[] out) {
+		for (int i = 0; i < out.length; ++i) {
+			final float dx = cx[i] - x;
+			final float dy = cy[i] - y;
+			final float dz = cz[i] - z;
+			out[i] = dx * dx + dy * dy + dz * dz;
+		}
+	}
+
+	/** Each quad is filled with its own original index so order can be checked. */
+	private static int[] quadData(int quadCount) {
+		final int[] result = new int[quadCount * QUAD_STRIDE];
+
+		for (int i = 0; i < quadCount; ++i) {
+			Arrays.fill(result, i * QUAD_STRIDE, (i + 1) * QUAD_STRIDE, i);
+		}
+
+		return result;
+	}
+
+	/** The sort previously used by ArrayVertexCollector, kept for comparison. */
+	private static void mergeSort(int[] vertexData, float[] perQuadDistance, int quadCount) {
+		final int[] swapData = new int[QUAD_STRIDE * 2];
+
+		final IntComparator comparator = (a, b) -> Float.compare(perQuadDistance[b], perQuadDistance[a]);
+
+		final Swapper swapper = (a, b) -> {
+			final float distSwap = perQuadDistance[a];
+			perQuadDistance[a] = perQuadDistance[b];
+			perQuadDistance[b] = distSwap;
+
+			final int aIndex = a * QUAD_STRIDE;
+			final int bIndex = b * QUAD_STRIDE;
+
+			System.arraycopy(vertexData, aIndex, swapData, 0, QUAD_STRIDE);
+			System.arraycopy(vertexData, bIndex, swapData, QUAD_STRIDE, QUAD_STRIDE);
+			System.arraycopy(swapData, 0, vertexData, bIndex, QUAD_STRIDE);
+			System.arraycopy(swapData, QUAD_STRIDE, vertexData, aIndex, QUAD_STRIDE);
+		};
+
+		it.unimi.dsi.fastutil.Arrays.mergeSort(0, quadCount, comparator, swapper);
+	}
+}
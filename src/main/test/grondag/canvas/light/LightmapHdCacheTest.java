@@ -0,0 +1,220 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+package grondag.canvas.light;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+import grondag.canvas.Benchmark;
+
+class LightmapHdCacheTest {
+	private static final int THREAD_COUNT = 8;
+
+	final AtomicInteger createCount = new AtomicInteger();
+
+	@Test
+	void test() {
+		final LightmapHdCache cache = new LightmapHdCache(4, m -> createCount.incrementAndGet());
+		final int priorCreated = createCount.get();
+
+		final LightmapHd a = cache.acquire(faceData(1));
+		assert a == cache.acquire(faceData(1));
+		assert createCount.get() == priorCreated + 1;
+
+		final LightmapHd[] held = new LightmapHd[4];
+		held[0] = a;
+
+		for (int i = 1; i < 4; ++i) {
+			held[i] = cache.acquire(faceData(i + 1));
+			assert held[i] != a;
+		}
+
+		// all slots held
+		assert cache.acquire(faceData(5)) == null;
+
+		// released lightmaps stay cached until their slot is needed
+		held[1].release();
+		assert cache.acquire(faceData(2)) == held[1];
+		held[1].release();
+
+		final LightmapHd e = cache.acquire(faceData(5));
+		assert e != null;
+		assert e.slot == held[1].slot;
+		assert cache.liveCount() == 4;
+
+		// evicted lightmap can't be acquired again and is rebuilt on demand
+		assert !held[1].tryAcquire();
+		assert cache.acquire(faceData(2)) == null;
+
+		// a still has two holders
+		a.release();
+		assert !a.tryEvict();
+		a.release();
+
+		final LightmapHd b = cache.acquire(faceData(2));
+		assert b != null && b != held[1];
+		assert b.slot == a.slot;
+
+		cache.clear();
+		assert cache.liveCount() == 0;
+	}
+
+	@Test
+	void testGrowth() {
+		final LightmapHdCache cache = new LightmapHdCache(100000, m -> { });
+		final ArrayList<LightmapHd> maps = new ArrayList<>();
+
+		for (int i = 0; i < 20000; ++i) {
+			maps.add(cache.acquire(faceData(i)));
+		}
+
+		for (int i = 0; i < 20000; ++i) {
+			assert cache.acquire(faceData(i)) == maps.get(i);
+			assert maps.get(i).slot == i;
+		}
+
+		assert cache.liveCount() == 20000;
+	}
+
+	/**
+	 * Threads acquire and release lightmaps for a key set larger than the
+	 * slot limit, so slots are continually evicted and reused.  Checks that
+	 * lookups always return matching face data and that a slot is never
+	 * given to a second lightmap while it is held.
+	 */
+	@Test
+	void testConcurrent() throws InterruptedException {
+		final int slotLimit = 64;
+		final LightmapHdCache cache = new LightmapHdCache(slotLimit, m -> { });
+		final LightmapHd[] slotOwners = new LightmapHd[slotLimit];
+		final int[] slotHolders = new int[slotLimit];
+		final AtomicInteger failures = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(THREAD_COUNT);
+
+		for (int t = 0; t < THREAD_COUNT; ++t) {
+			final Random r = new Random(t);
+
+			new Thread(() -> {
+				final LightmapHd[] held = new LightmapHd[4];
+
+				for (int n = 0; n < 50000; ++n) {
+					final int k = n & 3;
+
+					if (held[k] != null) {
+						synchronized (slotOwners) {
+							--slotHolders[held[k].slot];
+						}
+
+						held[k].release();
+						held[k] = null;
+					}
+
+					final AoFaceData faceData = faceData(r.nextInt(200));
+					final LightmapHd map = cache.acquire(faceData);
+
+					if (map == null) {
+						continue;
+					}
+
+					if (!map.key.equals(faceData)) {
+						failures.incrementAndGet();
+					}
+
+					synchronized (slotOwners) {
+						if (slotHolders[map.slot] > 0 && slotOwners[map.slot] != map) {
+							failures.incrementAndGet();
+						}
+
+						slotOwners[map.slot] = map;
+						++slotHolders[map.slot];
+					}
+
+					held[k] = map;
+				}
+
+				done.countDown();
+			}).start();
+		}
+
+		assert done.await(60, TimeUnit.SECONDS);
+		assert failures.get() == 0;
+		assert cache.liveCount() <= slotLimit;
+	}
+
+	@Test
+	@Disabled(Benchmark.DISABLED)
+	void benchmark() throws InterruptedException {
+		// warm up, then measure
+		run(false);
+		run(true);
+	}
+
+	/** Repeated lookups of a working set that fits, as happens when neighboring faces share light. */
+	private void run(boolean print) throws InterruptedException {
+		final LightmapHdCache cache = new LightmapHdCache(LightmapSizer.maxCount, m -> { });
+		final int lookups = 200000;
+		final CountDownLatch done = new CountDownLatch(THREAD_COUNT);
+		final long start = System.nanoTime();
+
+		for (int t = 0; t < THREAD_COUNT; ++t) {
+			final Random r = new Random(t);
+
+			new Thread(() -> {
+				for (int n = 0; n < lookups; ++n) {
+					cache.acquire(faceData(r.nextInt(4096))).release();
+				}
+
+				done.countDown();
+			}).start();
+		}
+
+		assert done.await(60, TimeUnit.SECONDS);
+		final long elapsed = System.nanoTime() - start;
+
+		if (print) {
+			Benchmark.report("threads: %d  throughput: %,d lookups/s  %s", THREAD_COUNT,
+					THREAD_COUNT * lookups * 1000000000L / elapsed, cache.occupancyReport());
+		}
+	}
+
+	private static AoFaceData faceData(int seed) {
+		final AoFaceData result = new AoFaceData();
+		result.center = seed & 0xFF;
+		result.top = (seed >> 8) & 0xFF;
+		result.left = (seed >> 16) & 0xFF;
+		result.aoCenter = 255;
+		result.aoTop = 255;
+		result.aoLeft = 255;
+		result.aoRight = 255;
+		result.aoBottom = 255;
+		result.aoTopLeft = 255;
+		result.aoTopRight = 255;
+		result.aoBottomLeft = 255;
+		result.aoBottomRight = 255;
+		result.updateHash();
+		return result;
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+package grondag.canvas.material.state;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongUnaryOperator;
+
+import it.unimi.dsi.fastutil.Hash;
+import it.unimi.dsi.fastutil.longs.Long2IntFunction;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+import grondag.canvas.Benchmark;
+
+class ConcurrentLongTableTest {
+	private static final int THREAD_COUNT = 8;
+	private static final int KEY_COUNT = 3000;
+	private static final int LOOKUPS_PER_THREAD = 1000000;
+
+	/** Sparse keys like material bits, in a fixed random order. */
+	final long[] keys = new long[KEY_COUNT];
+
+	ConcurrentLongTableTest() {
+		final Random r = new Random(42);
+
+		for (int i = 0; i < KEY_COUNT; ++i) {
+			keys[i] = r.nextLong();
+		}
+	}
+
+	@Test
+	void test() throws InterruptedException {
+		final ConcurrentLongTable<Entry> table = new ConcurrentLongTable<>(16, Entry::key);
+		final AtomicInteger nextIndex = new AtomicInteger();
+		final Entry[] entries = new Entry[KEY_COUNT];
+		final AtomicInteger failures = new AtomicInteger();
+
+		// every thread requests every key, in a different order, while the table grows
+		run(t -> {
+			final Random r = new Random(t);
+
+			for (int n = 0; n < KEY_COUNT * 4; ++n) {
+				final int k = r.nextInt(KEY_COUNT);
+				final Entry e = table.computeIfAbsent(keys[k], key -> new Entry(key, nextIndex.getAndIncrement()));
+
+				synchronized (entries) {
+					if (entries[k] == null) {
+						entries[k] = e;
+					} else if (entries[k] != e) {
+						failures.incrementAndGet();
+					}
+				}
+			}
+
+			return 0;
+		});
+
+		assert failures.get() == 0;
+
+		// indices are dense and each key got exactly one
+		final boolean[] seen = new boolean[KEY_COUNT];
+
+		for (int i = 0; i < KEY_COUNT; ++i) {
+			final Entry e = table.get(keys[i]);
+			assert e != null && e.key == keys[i];
+
+			if (entries[i] != null) {
+				assert entries[i] == e;
+			}
+
+			assert e.index < nextIndex.get();
+			assert !seen[e.index];
+			seen[e.index] = true;
+		}
+
+		assert nextIndex.get() <= KEY_COUNT;
+		assert table.get(keys[0] + 1) == null;
+	}
+
+	/**
+	 * Compares lookups of existing keys against the synchronized map previously
+	 * used by CollectorIndexMap, from one thread and from several threads.
+	 */
+	@Test
+	@Disabled(Benchmark.DISABLED)
+	void benchmark() throws InterruptedException {
+		for (int pass = 0; pass < 2; ++pass) {
+			final boolean print = pass == 1;
+			final Long2IntOpenHashMap map = new Long2IntOpenHashMap(256, Hash.VERY_FAST_LOAD_FACTOR);
+			final AtomicInteger mapIndex = new AtomicInteger();
+			final Long2IntFunction func = k -> mapIndex.getAndIncrement();
+			final ConcurrentLongTable<Entry> table = new ConcurrentLongTable<>(256, Entry::key);
+			final AtomicInteger tableIndex = new AtomicInteger();
+
+			final LongUnaryOperator synchronizedLookup = k -> {
+				synchronized (map) {
+					return map.computeIfAbsent(k, func);
+				}
+			};
+
+			final LongUnaryOperator tableLookup = k -> table.computeIfAbsent(k, key -> new Entry(key, tableIndex.getAndIncrement())).index;
+
+			for (final int threads : new int[] {1, THREAD_COUNT}) {
+				final long syncNanos = time(synchronizedLookup, threads);
+				final long tableNanos = time(tableLookup, threads);
+
+				if (print) {
+					Benchmark.report("threads: %d  synchronized: %,12d lookups/s  lock-free: %,12d lookups/s",
+							threads, threads * LOOKUPS_PER_THREAD * 1000000000L / syncNanos, threads * LOOKUPS_PER_THREAD * 1000000000L / tableNanos);
+				}
+			}
+		}
+	}
+
+	private long time(LongUnaryOperator lookup, int threads) throws InterruptedException {
+		final long start = System.nanoTime();
+
+		run(t -> {
+			if (t >= threads) {
+				return 0;
+			}
+
+			final Random r = new Random(t);
+			long sum = 0;
+
+			for (int n = 0; n < LOOKUPS_PER_THREAD; ++n) {
+				// a few hundred materials in active use, as in a large pack
+				sum += lookup.applyAsLong(keys[r.nextInt(300)]);
+			}
+
+			return sum;
+		});
+
+		return System.nanoTime() - start;
+	}
+
+	private static void run(LongUnaryOperator task) throws InterruptedException {
+		final CountDownLatch done = new CountDownLatch(THREAD_COUNT);
+
+		for (int t = 0; t < THREAD_COUNT; ++t) {
+			final int threadIndex = t;
+
+			new Thread(() -> {
+				task.applyAsLong(threadIndex);
+				done.countDown();
+			}).start();
+		}
+
+		assert done.await(60, TimeUnit.SECONDS);
+	}
+
+	record Entry(long key, int index) { }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+
+package grondag.canvas.render.frustum;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+import grondag.canvas.Benchmark;
+
+class RegionVisibilityCacheTest {
+	private static final double N = Math.sqrt(0.5);
+	private static final double[][] PLANES = {{0, 0, 1, -0.05}, {N, 0, N, 0}, {-N, 0, N, 0}, {0, N, N, 0}, {0, -N, N, 0}};
+	private static final int ENTITY_COUNT = 10000;
+	private static final int RENDER_DISTANCE = 32;
+	private static final int WARMUP = 500;
+	private static final int RUNS = 1000;
+	/** Chunk columns on each side of the test grid. */
+	private static final int GRID = 32;
+	private static final int Y_REGIONS = 16;
+
+	final Random r = new Random(42);
+	final RegionVisibilityCache cache = new RegionVisibilityCache();
+	final RegionGrid grid = new RegionGrid(0.3f);
+	final HashMap<Integer, double[]> renderers = new HashMap<>();
+	/** Keeps renderer boxes from being optimized away. */
+	double[] lastBox;
+
+	@Test
+	void test() {
+		int lookups = 0;
+
+		for (int pass = 0; pass < 3; ++pass) {
+			cache.prepare(grid::isPotentiallyVisible, 0, 0, 0, RENDER_DISTANCE, true);
+
+			for (final double[] b : randomBoxes(ENTITY_COUNT, pass == 0 ? 0 : 8)) {
+				assert cache.isBoxVisible(b[0], b[1], b[2], b[3], b[4], b[5]) == grid.isBoxVisible(b);
+			}
+
+			lookups = cache.lookupCount();
+		}
+
+		// crowded boxes share a few regions
+		assert lookups < 200;
+
+		// results don't carry over to the next frame
+		cache.prepare(grid::isPotentiallyVisible, 0, 0, 0, RENDER_DISTANCE, true);
+		assert cache.isPotentiallyVisible(0, 0, 0) == grid.isPotentiallyVisible(0, 0, 0);
+		grid.visible[grid.index(0, 0, 0)] ^= true;
+		assert cache.isPotentiallyVisible(0, 0, 0) != grid.isPotentiallyVisible(0, 0, 0);
+		cache.prepare(grid::isPotentiallyVisible, 0, 0, 0, RENDER_DISTANCE, true);
+		assert cache.isPotentiallyVisible(0, 0, 0) == grid.isPotentiallyVisible(0, 0, 0);
+		assert cache.lookupCount() == 1;
+
+		// grid follows render distance
+		for (final int renderDistance : new int[] {8, 64, 12}) {
+			cache.prepare(grid::isPotentiallyVisible, 0, 0, 0, renderDistance, true);
+			final int x = (renderDistance + 2) * 16;
+			cache.isPotentiallyVisible(x, 0, 0);
+			cache.isPotentiallyVisible(x, 0, 0);
+			assert cache.lookupCount() == 1;
+			cache.isPotentiallyVisible(x + 16, 0, 0);
+			cache.isPotentiallyVisible(x + 16, 0, 0);
+			assert cache.lookupCount() == 3;
+		}
+
+		// disabled for a frame, every region is looked up
+		cache.prepare(grid::isPotentiallyVisible, 0, 0, 0, RENDER_DISTANCE, false);
+
+		for (final double[] b : randomBoxes(ENTITY_COUNT, 8)) {
+			assert cache.isBoxVisible(b[0], b[1], b[2], b[3], b[4], b[5]) == grid.isBoxVisible(b);
+		}
+
+		assert cache.lookupCount() >= ENTITY_COUNT;
+		cache.prepare(grid::isPotentiallyVisible, 0, 0, 0, RENDER_DISTANCE, false);
+		cache.isPotentiallyVisible(0, 0, 0);
+		cache.isPotentiallyVisible(0, 0, 0);
+		assert cache.lookupCount() == 2;
+	}
+
+	@Test
+	@Disabled(Benchmark.DISABLED)
+	void benchmark() {
+		for (int i = 0; i < 64; ++i) {
+			renderers.put(i, new double[] {r.nextDouble()});
+		}
+
+		// mobs crowded into few regions, as in a farm, and spread out
+		run("farm", randomBoxes(ENTITY_COUNT, 8));
+		run("spread", randomBoxes(ENTITY_COUNT, 0));
+	}
+
+	/**
+	 * Compares the prior order - renderer test, then frustum, then region lookups
+	 * with the cache disabled - with cached region tests first and with cached region
+	 * tests after the frustum.  The renderer test is a stand-in with a map lookup and
+	 * an allocated box, like EntityRenderDispatcher.shouldRender.
+	 */
+	private void run(String label, double[][] boxes) {
+		final int[] visible = new int[3];
+		final int[] lookups = new int[3];
+
+		final double[] nanos = Benchmark.time(WARMUP, RUNS, null, () -> {
+			visible[0] = 0;
+			cache.prepare(grid::isPotentiallyVisible, 0, 0, 0, RENDER_DISTANCE, false);
+
+			for (int i = 0; i < boxes.length; ++i) {
+				final double[] b = rendererBox(boxes[i], i);
+
+				if (inFrustum(b) && cache.isBoxVisible(b[0], b[1], b[2], b[3], b[4], b[5])) {
+					++visible[0];
+				}
+			}
+
+			lookups[0] = cache.lookupCount();
+		}, () -> {
+			visible[1] = 0;
+			cache.prepare(grid::isPotentiallyVisible, 0, 0, 0, RENDER_DISTANCE, true);
+
+			for (int i = 0; i < boxes.length; ++i) {
+				final double[] b = boxes[i];
+
+				if (cache.isBoxVisible(b[0], b[1], b[2], b[3], b[4], b[5]) && inFrustum(rendererBox(b, i))) {
+					++visible[1];
+				}
+			}
+
+			lookups[1] = cache.lookupCount();
+		}, () -> {
+			visible[2] = 0;
+			cache.prepare(grid::isPotentiallyVisible, 0, 0, 0, RENDER_DISTANCE, true);
+
+			for (int i = 0; i < boxes.length; ++i) {
+				final double[] b = rendererBox(boxes[i], i);
+
+				if (inFrustum(b) && cache.isBoxVisible(b[0], b[1], b[2], b[3], b[4], b[5])) {
+					++visible[2];
+				}
+			}
+
+			lookups[2] = cache.lookupCount();
+		});
+
+		assert visible[0] == visible[1];
+		assert visible[0] == visible[2];
+
+		Benchmark.report(String.format("%-6s %d entities, %d visible, region lookups %d/%d/%d", label, boxes.length, visible[0], lookups[0], lookups[1], lookups[2]),
+				new String[] {"renderer first", "regions first", "renderer then cached regions"}, nanos);
+	}
+
+	/** Renderer lookup by type and a new padded box, as the entity renderer does. */
+	private double[] rendererBox(double[] b, int entityIndex) {
+		final double[] renderer = renderers.get(entityIndex & 63);
+		final double pad = renderer[0] * 0.0;
+		lastBox = new double[] {b[0] - pad, b[1] - pad, b[2] - pad, b[3] + pad, b[4] + pad, b[5] + pad};
+		return lastBox;
+	}
+
+	/**
+	 * Camera at the origin looking along +z with a 90 degree field of view.
+	 * Tests the box center and half extents against five planes like CanvasFrustum.
+	 */
+	private static boolean inFrustum(double[] b) {
+		final double hx = (b[3] - b[0]) * 0.5;
+		final double hy = (b[4] - b[1]) * 0.5;
+		final double hz = (b[5] - b[2]) * 0.5;
+		final double cx = b[0] + hx;
+		final double cy = b[1] + hy;
+		final double cz = b[2] + hz;
+
+		for (final double[] p : PLANES) {
+			final double d = p[0] * cx + p[1] * cy + p[2] * cz + p[3];
+			final double r = Math.abs(p[0]) * hx + Math.abs(p[1]) * hy + Math.abs(p[2]) * hz;
+
+			if (d + r < 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Mob-sized boxes, padded like entity culling boxes.
+	 * @param clusterCount if non-zero, boxes are crowded around this many points
+	 */
+	private double[][] randomBoxes(int count, int clusterCount) {
+		final double[][] result = new double[count][];
+		final double[][] centers = new double[Math.max(1, clusterCount)][];
+		final int range = GRID * 16 - 32;
+
+		for (int i = 0; i < centers.length; ++i) {
+			centers[i] = new double[] {r.nextInt(range) - range / 2, r.nextInt(224) - 112, r.nextInt(range) - range / 2};
+		}
+
+		for (int i = 0; i < count; ++i) {
+			final double x, y, z;
+
+			if (clusterCount == 0) {
+				x = r.nextDouble() * range - range / 2;
+				y = r.nextDouble() * 240 - 120;
+				z = r.nextDouble() * range - range / 2;
+			} else {
+				final double[] c = centers[r.nextInt(clusterCount)];
+				x = c[0] + r.nextDouble() * 8;
+				y = c[1] + r.nextDouble() * 2;
+				z = c[2] + r.nextDouble() * 8;
+			}
+
+			final double w = 0.3 + r.nextDouble() * 0.5 + 0.5;
+			final double h = 0.5 + r.nextDouble() * 1.5 + 0.5;
+			result[i] = new double[] {x - w, y - 0.5, z - w, x + w, y + h, z + w};
+		}
+
+		return result;
+	}
+
+	/**
+	 * Regions centered on the origin, looked up through a synchronized
+	 * column like RenderRegionStorage.  Regions outside the grid are visible.
+	 */
+	private class RegionGrid {
+		final boolean[] visible = new boolean[GRID * GRID * Y_REGIONS];
+		final Object[] columns = new Object[GRID * GRID];
+
+		RegionGrid(float chance) {
+			for (int i = 0; i < visible.length; ++i) {
+				visible[i] = r.nextFloat() < chance;
+			}
+
+			for (int i = 0; i < columns.length; ++i) {
+				columns[i] = new Object();
+			}
+		}
+
+		int index(int x, int y, int z) {
+			final int cx = (x >> 4) + GRID / 2;
+			final int cy = (y >> 4) + Y_REGIONS / 2;
+			final int cz = (z >> 4) + GRID / 2;
+
+			if (cx < 0 || cx >= GRID || cy < 0 || cy >= Y_REGIONS || cz < 0 || cz >= GRID) {
+				return -1;
+			}
+
+			return (cx * GRID + cz) * Y_REGIONS + cy;
+		}
+
+		boolean isPotentiallyVisible(int x, int y, int z) {
+			final int i = index(x, y, z);
+
+			if (i == -1) {
+				return true;
+			}
+
+			synchronized (columns[i / Y_REGIONS]) {
+				return visible[i];
+			}
+		}
+
+		boolean isBoxVisible(double[] b) {
+			final int rx0 = (int) Math.floor(b[0]) & 0xFFFFFFF0;
+			final int ry0 = (int) Math.floor(b[1]) & 0xFFFFFFF0;
+			final int rz0 = (int) Math.floor(b[2]) & 0xFFFFFFF0;
+			final int rx1 = (int) Math.floor(b[3]) & 0xFFFFFFF0;
+			final int ry1 = (int) Math.floor(b[4]) & 0xFFFFFFF0;
+			final int rz1 = (int) Math.floor(b[5]) & 0xFFFFFFF0;
+
+			for (int x = rx0; x <= rx1; x += 16) {
+				for (int y = ry0; y <= ry1; y += 16) {
+					for (int z = rz0; z <= rz1; z += 16) {
+						if (isPotentiallyVisible(x, y, z)) {
+							return true;
+						}
+					}
+				}
+			}
+
+			return false;
+		}
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+
+package grondag.canvas.render.terrain;
+
+import static grondag.canvas.render.terrain.TerrainFormat.TILED_UV_FLAG;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+import grondag.canvas.Benchmark;
+
+class TerrainFaceMergerTest {
+	private static final int QUAD_STRIDE = 28;
+	private static final int VERTEX_STRIDE = 7;
+	private static final int SECTOR = 5;
+	private static final int WARMUP = 50;
+	private static final int RUNS = 200;
+
+	final TerrainFaceMerger merger = new TerrainFaceMerger();
+	final Random r = new Random(42);
+
+	@Test
+	void test() {
+		// one full 16x16 floor becomes a single quad repeating the sprite 16 times each way
+		int[] data = new int[QUAD_STRIDE * 256];
+		int[] buckets = new int[256];
+
+		for (int i = 0; i < 256; ++i) {
+			upFace(data, i, i & 15, 4, i >> 4, 0xF0, TILED_UV_FLAG);
+			buckets[i] = 1;
+		}
+
+		assert merger.merge(data, 256, buckets) == 1;
+		assert buckets[0] == 1;
+		assert area(data, 0) == 256;
+		assert (data[0] & TILED_UV_FLAG) != 0;
+		assert (data[0] & 0x1FFF) == SECTOR;
+		assert maxUV(data, 0) == 0xFFFF;
+
+		// strip longer than the repeat limit is split
+		data = new int[QUAD_STRIDE * 20];
+
+		for (int i = 0; i < 20; ++i) {
+			upFace(data, i, i, 0, 0, 0xF0, TILED_UV_FLAG);
+		}
+
+		assert merger.merge(data, 20, null) == 2;
+		assert area(data, 0) + area(data, 1) == 20;
+		assert maxUV(data, 0) == Math.round(16 * 0xFFFF / 16f) || maxUV(data, 0) == Math.round(4 * 0xFFFF / 16f);
+
+		// different light and unflagged quads are not merged together, order of kept quads is retained
+		data = new int[QUAD_STRIDE * 6];
+		buckets = new int[] {6, 6, 6, 3, 6, 6};
+		upFace(data, 0, 0, 0, 0, 0xF0, TILED_UV_FLAG);
+		upFace(data, 1, 1, 0, 0, 0xF0, TILED_UV_FLAG);
+		upFace(data, 2, 2, 0, 0, 0x10, TILED_UV_FLAG);
+		upFace(data, 3, 3, 0, 0, 0xF0, TILED_UV_FLAG);
+		upFace(data, 4, 4, 0, 0, 0xF0, 0);
+		upFace(data, 5, 5, 0, 0, 0xF0, 0);
+
+		assert merger.merge(data, 6, buckets) == 5;
+		assert blockX(data, 0) == 2 && buckets[0] == 6;
+		assert blockX(data, 1) == 3 && buckets[1] == 3;
+		assert blockX(data, 2) == 4 && blockX(data, 3) == 5;
+		assert area(data, 4) == 2 && buckets[4] == 6;
+
+		for (int i = 0; i < 4; ++i) {
+			assert (data[i * QUAD_STRIDE] & TILED_UV_FLAG) == 0;
+		}
+
+		// faces that are not on the block grid are never merged
+		data = new int[QUAD_STRIDE * 2];
+		upFace(data, 0, 0, 0, 0, 0xF0, TILED_UV_FLAG);
+		upFace(data, 1, 1, 0, 0, 0xF0, TILED_UV_FLAG);
+		data[QUAD_STRIDE + 1] = 0x8000;
+		assert merger.merge(data, 2, null) == 2;
+		assert (data[0] & TILED_UV_FLAG) == 0;
+	}
+
+	@Test
+	@Disabled(Benchmark.DISABLED)
+	void benchmark() {
+		// layered floors with a few light levels, similar to flat terrain in a region
+		final int quadCount = 16 * 256;
+		final int[] source = new int[quadCount * QUAD_STRIDE];
+
+		for (int i = 0; i < quadCount; ++i) {
+			upFace(source, i, i & 15, i >> 8, (i >> 4) & 15, 0xF0 - r.nextInt(2) * 0x10, TILED_UV_FLAG);
+		}
+
+		final int[] data = new int[source.length];
+		final int[] buckets = new int[quadCount];
+		final int[] result = new int[1];
+
+		final double[] nanos = Benchmark.time(WARMUP, RUNS, () -> System.arraycopy(source, 0, data, 0, source.length),
+				() -> result[0] = merger.merge(data, quadCount, buckets));
+
+		Benchmark.report(String.format("%6d quads  merged to: %6d  bytes saved: %,d", quadCount, result[0], (quadCount - result[0]) * QUAD_STRIDE * 4),
+				new String[] {"time"}, nanos);
+	}
+
+	/** Writes an upward-facing full block face with the sprite mapped once, u along x and v along z. */
+	private static void upFace(int[] data, int quad, int x, int y, int z, int light, int flags) {
+		final int[][] corners = {{0, 0}, {0, 1}, {1, 1}, {1, 0}};
+
+		for (int v = 0; v < 4; ++v) {
+			final int i = quad * QUAD_STRIDE + v * VERTEX_STRIDE;
+			final int dx = corners[v][0];
+			final int dz = corners[v][1];
+			data[i] = SECTOR | flags;
+			data[i + 1] = 0;
+			data[i + 2] = (x + dx) | ((y + 1) << 8) | ((z + dz) << 16) | 0xFF000000;
+			data[i + 3] = -1;
+			data[i + 4] = (dx == 0 ? 0 : 0xFFFF) | ((dz == 0 ? 0 : 0xFFFF) << 16);
+			data[i + 5] = light | (light << 8) | (7 << 16);
+			data[i + 6] = 0x7F00;
+		}
+	}
+
+	private static int blockX(int[] data, int quad) {
+		int result = 255;
+
+		for (int v = 0; v < 4; ++v) {
+			result = Math.min(result, data[quad * QUAD_STRIDE + v * VERTEX_STRIDE + 2] & 0xFF);
+		}
+
+		return result;
+	}
+
+	/** Area in the xz plane of a quad with integer positions. */
+	private static int area(int[] data, int quad) {
+		int minX = 255, minZ = 255, maxX = 0, maxZ = 0;
+
+		for (int v = 0; v < 4; ++v) {
+			final int pos = data[quad * QUAD_STRIDE + v * VERTEX_STRIDE + 2];
+			minX = Math.min(minX, pos & 0xFF);
+			maxX = Math.max(maxX, pos & 0xFF);
+			minZ = Math.min(minZ, (pos >> 16) & 0xFF);
+			maxZ = Math.max(maxZ, (pos >> 16) & 0xFF);
+		}
+
+		return (maxX - minX) * (maxZ - minZ);
+	}
+
+	private static int maxUV(int[] data, int quad) {
+		int result = 0;
+
+		for (int v = 0; v < 4; ++v) {
+			result = Math.max(result, data[quad * QUAD_STRIDE + v * VERTEX_STRIDE + 4] & 0xFFFF);
+		}
+
+		return result;
+	}
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+package grondag.canvas.render.terrain;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.phys.Vec3;
+
+import grondag.canvas.render.terrain.TerrainSectorMap.RegionRenderSector;
+
+class TerrainSectorMapTest {
+	private static final int THREAD_COUNT = 8;
+	private static final int NO_LIMIT = Integer.MAX_VALUE;
+
+	@Test
+	void testSize() {
+		final TerrainSectorMap map = new TerrainSectorMap();
+
+		// default matches vanilla overworld at 32 chunks
+		assert map.uniformArrayLength() == 182;
+		assert map.xzRadius() == 5;
+		assert map.minBlockY() == -64;
+		assert !map.resize(-64, 384, 32, NO_LIMIT);
+
+		assert map.resize(-64, 384, 64, NO_LIMIT);
+		assert map.xzRadius() == 9;
+		assert map.uniformArrayLength() == (19 * 19 * 3 + 1) / 2;
+
+		// tallest possible world
+		assert map.resize(-2032, 4064, 16, NO_LIMIT);
+		assert map.minBlockY() == -2032;
+		assert map.uniformArrayLength() == 7 * 7 * 32 / 2;
+
+		// limit of vertex sector IDs
+		assert map.resize(-2032, 4064, 64, NO_LIMIT);
+		assert map.uniformArrayLength() == TerrainSectorMap.MAX_SECTOR_COUNT / 2;
+
+		// limit of the packed sector offsets
+		assert map.resize(-2032, 4064, 200, NO_LIMIT);
+		assert map.xzRadius() == TerrainSectorMap.MAX_SECTOR_XZ_RADIUS;
+		assert map.uniformArrayLength() == TerrainSectorMap.MAX_SECTOR_COUNT / 2;
+
+		assert map.maxRenderDistanceChunks() == 200;
+
+		// drivers with few vertex uniform components reduce the radius until sectors fit
+		assert map.resize(-2032, 4064, 200, 4096);
+		assert map.xzRadius() == 6;
+		assert map.uniformArrayLength() == 13 * 13 * 32 / 2;
+		assert map.maxRenderDistanceChunks() == 6 * 8 - 2;
+		// a limit that is not reached doesn't change the size
+		assert map.resize(-64, 384, 32, 4096);
+		assert map.uniformArrayLength() == 182;
+		assert map.maxRenderDistanceChunks() == 32;
+		assert !map.resize(-64, 384, 32, NO_LIMIT);
+
+		// only the uniform limit changed
+		assert map.resize(-64, 384, 32, 1024 + 100);
+		assert map.xzRadius() == 3;
+		assert map.uniformArrayLength() == (7 * 7 * 3 + 1) / 2;
+		assert map.maxRenderDistanceChunks() == 22;
+		// distance is still reported when the size is unchanged
+		assert !map.resize(-64, 384, 24, 1024 + 100);
+		assert map.maxRenderDistanceChunks() == 22;
+		assert !map.resize(-64, 384, 20, 1024 + 100);
+		assert map.maxRenderDistanceChunks() == 20;
+
+		// sector count is capped when even the smallest radius doesn't fit
+		assert map.resize(-2032, 4064, 32, 1024 + 10);
+		assert map.xzRadius() == 1;
+		assert map.uniformArrayLength() == 10;
+		assert map.maxRenderDistanceChunks() == 6;
+	}
+
+	@Test
+	void testRelease() {
+		final TerrainSectorMap map = new TerrainSectorMap();
+		map.resize(0, 256, 16, NO_LIMIT);
+		map.setCamera(new Vec3(0, 0, 0), new BlockPos(0, 0, 0));
+
+		final BlockPos a = new BlockPos(16, 32, 16);
+		final BlockPos b = new BlockPos(32, 48, 0);
+		final BlockPos c = new BlockPos(128, 48, 0);
+		final RegionRenderSector sa = map.findSector(a);
+		assert map.findSector(b) == sa;
+		final RegionRenderSector sc = map.findSector(c);
+		assert sc != sa && sc.sectorId() != sa.sectorId();
+		assert map.loadedSectorCount() == 2;
+
+		sa.release(a);
+		assert map.loadedSectorCount() == 2;
+		sa.release(b);
+		assert map.loadedSectorCount() == 1;
+
+		// a new sector is created once the old one is released
+		assert map.findSector(a) != sa;
+		assert map.loadedSectorCount() == 2;
+
+		// sectors from before a resize can still be released
+		map.resize(0, 384, 16, NO_LIMIT);
+		assert map.loadedSectorCount() == 0;
+		sc.release(c);
+		assert map.loadedSectorCount() == 0;
+	}
+
+	/**
+	 * Simulates terrain workers building regions in overlapping sectors.
+	 * Each region retains its sector while it builds and then releases it.
+	 * Checks that concurrent lookups for the same sector get the same instance,
+	 * that no two held sectors share an ID, that shader offsets decode to each
+	 * sector's position and that every sector is freed at the end.
+	 */
+	@Test
+	void testConcurrent() throws InterruptedException {
+		final TerrainSectorMap map = new TerrainSectorMap();
+		final int renderDistance = 48;
+		map.resize(-128, 512, renderDistance, NO_LIMIT);
+		map.setCamera(new Vec3(0, 0, 0), new BlockPos(0, 0, 0));
+
+		final Object lock = new Object();
+		final IdentityHashMap<RegionRenderSector, int[]> holdCounts = new IdentityHashMap<>();
+		final HashMap<Integer, RegionRenderSector> idOwners = new HashMap<>();
+		final HashMap<Long, RegionRenderSector> keyOwners = new HashMap<>();
+		final AtomicInteger failures = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(THREAD_COUNT);
+
+		for (int t = 0; t < THREAD_COUNT; ++t) {
+			final Random r = new Random(t);
+
+			new Thread(() -> {
+				final ArrayList<BlockPos> regions = new ArrayList<>();
+				final ArrayList<RegionRenderSector> sectors = new ArrayList<>();
+
+				for (int n = 0; n < 20000; ++n) {
+					// region origins anywhere within render distance
+					final BlockPos pos = new BlockPos((r.nextInt(renderDistance * 2) - renderDistance) * 16, r.nextInt(32) * 16 - 128, (r.nextInt(renderDistance * 2) - renderDistance) * 16);
+					final RegionRenderSector sector = map.findSector(pos);
+					final int[] uniforms = map.uniformData();
+					final int packed = (uniforms[sector.sectorId() >> 1] >>> ((sector.sectorId() & 1) * 16)) & 0xFFFF;
+
+					if ((packed & 0x1F) - map.xzRadius() != sector.sectorOriginX
+							|| ((packed >> 5) & 0x1F) != sector.sectorOriginY
+							|| ((packed >> 10) & 0x1F) - map.xzRadius() != sector.sectorOriginZ
+							|| sector.paddedBlockOriginY + 63 != sector.sectorOriginY * 128 - 128) {
+						failures.incrementAndGet();
+					}
+
+					synchronized (lock) {
+						final int[] count = holdCounts.computeIfAbsent(sector, s -> new int[1]);
+
+						if (count[0]++ == 0) {
+							final RegionRenderSector idOwner = idOwners.put(sector.sectorId(), sector);
+							final RegionRenderSector keyOwner = keyOwners.put(sector.sectorKey, sector);
+
+							if ((idOwner != null && idOwner != sector) || (keyOwner != null && keyOwner != sector)) {
+								failures.incrementAndGet();
+							}
+						}
+					}
+
+					regions.add(pos);
+					sectors.add(sector);
+
+					// release a random region once several are building
+					if (regions.size() > 16 || n == 19999) {
+						while (!regions.isEmpty()) {
+							final int i = r.nextInt(regions.size());
+							final BlockPos p = regions.remove(i);
+							final RegionRenderSector s = sectors.remove(i);
+
+							synchronized (lock) {
+								if (--holdCounts.get(s)[0] == 0) {
+									holdCounts.remove(s);
+									idOwners.remove(s.sectorId());
+									keyOwners.remove(s.sectorKey);
+								}
+							}
+
+							s.release(p);
+
+							if (n != 19999) {
+								break;
+							}
+						}
+					}
+				}
+
+				done.countDown();
+			}).start();
+		}
+
+		assert done.await(60, TimeUnit.SECONDS);
+		assert failures.get() == 0;
+		assert map.loadedSectorCount() == 0;
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+
+package grondag.canvas.render.terrain.cluster;
+
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Drives the slab pool and demand policy with plain objects in place of GL buffers.
+ */
+class SlabPoolTest {
+	private static final int BASE = 1000;
+
+	private int created;
+	private int destroyed;
+
+	private final class FakeSlab {
+		final int capacityBytes;
+		boolean isDestroyed;
+
+		FakeSlab(int capacityBytes) {
+			this.capacityBytes = capacityBytes;
+			++created;
+		}
+
+		void destroy() {
+			assert !isDestroyed;
+			isDestroyed = true;
+			++destroyed;
+		}
+	}
+
+	private SlabPool<FakeSlab> pool(long maxRetainedBytes) {
+		return new SlabPool<>(new DemandSlabPoolPolicy(BASE, maxRetainedBytes), DemandSlabPoolPolicy.SIZE_CLASS_COUNT,
+				FakeSlab::new, s -> s.capacityBytes, FakeSlab::destroy);
+	}
+
+	@Test
+	void testSizeClasses() {
+		final DemandSlabPoolPolicy policy = new DemandSlabPoolPolicy(BASE, Long.MAX_VALUE);
+
+		assert policy.sizeClass(1) == 0;
+		assert policy.sizeClass(BASE) == 0;
+		assert policy.sizeClass(BASE + 1) == 1;
+		assert policy.sizeClass(BASE * 2) == 1;
+		assert policy.sizeClass(BASE * 3) == 2;
+		assert policy.sizeClass(BASE * 4) == 2;
+		assert policy.sizeClass(BASE * 5) == 3;
+		assert policy.sizeClass(BASE << (DemandSlabPoolPolicy.SIZE_CLASS_COUNT - 1)) == DemandSlabPoolPolicy.SIZE_CLASS_COUNT - 1;
+		assert policy.sizeClass((BASE << (DemandSlabPoolPolicy.SIZE_CLASS_COUNT - 1)) + 1) == -1;
+
+		for (int i = 0; i < DemandSlabPoolPolicy.SIZE_CLASS_COUNT; ++i) {
+			assert policy.sizeClass(policy.capacityBytes(i)) == i;
+			assert policy.capacityBytes(i) >= BASE;
+		}
+	}
+
+	@Test
+	void testReuse() {
+		final SlabPool<FakeSlab> pool = pool(Long.MAX_VALUE);
+
+		final FakeSlab a = pool.claim(BASE * 3);
+		assert a.capacityBytes == BASE * 4;
+		assert pool.missCount() == 1;
+
+		// demand has been seen, so release should keep the slab
+		pool.update();
+		pool.release(a);
+		assert !a.isDestroyed;
+		assert pool.retainedBytes() == BASE * 4;
+
+		// any request in the same size class gets the same slab back
+		final FakeSlab b = pool.claim(BASE * 4);
+		assert b == a;
+		assert pool.hitCount() == 1;
+		assert pool.retainedBytes() == 0;
+
+		// different size class is a miss
+		final FakeSlab c = pool.claim(BASE);
+		assert c != a;
+		assert pool.missCount() == 2;
+
+		// too big to pool - exact size, never retained
+		final FakeSlab big = pool.claim(Integer.MAX_VALUE);
+		assert big.capacityBytes == Integer.MAX_VALUE;
+		pool.release(big);
+		assert big.isDestroyed;
+	}
+
+	@Test
+	void testRetention() {
+		final SlabPool<FakeSlab> pool = pool(Long.MAX_VALUE);
+		final ArrayList<FakeSlab> slabs = new ArrayList<>();
+		final int outstanding = created - destroyed;
+
+		// with no demand nothing is kept
+		final FakeSlab unwanted = new FakeSlab(BASE);
+		pool.release(unwanted);
+		assert unwanted.isDestroyed;
+
+		for (int i = 0; i < 8; ++i) {
+			slabs.add(pool.claim(BASE));
+		}
+
+		pool.update();
+
+		for (final FakeSlab s : slabs) {
+			pool.release(s);
+		}
+
+		assert pool.retainedCount() == 8;
+
+		// kept slabs are destroyed as demand decays until none are left
+		int lastCount = 8;
+
+		for (int i = 0; i < DemandSlabPoolPolicy.DEMAND_WINDOW * 8; ++i) {
+			pool.update();
+			assert pool.retainedCount() <= lastCount;
+			lastCount = pool.retainedCount();
+		}
+
+		assert lastCount == 0;
+
+		pool.clear();
+		assert pool.retainedCount() == 0;
+		assert pool.retainedBytes() == 0;
+		assert created - destroyed == outstanding;
+	}
+
+	@Test
+	void testRetainedLimit() {
+		final SlabPool<FakeSlab> pool = pool(BASE * 3);
+		final ArrayList<FakeSlab> slabs = new ArrayList<>();
+		final int priorDestroyed = destroyed;
+
+		for (int i = 0; i < 5; ++i) {
+			slabs.add(pool.claim(BASE));
+		}
+
+		pool.update();
+
+		for (final FakeSlab s : slabs) {
+			pool.release(s);
+		}
+
+		assert pool.retainedCount() == 3;
+		assert pool.retainedBytes() == BASE * 3;
+		assert destroyed - priorDestroyed == 2;
+	}
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+
+package grondag.canvas.render.world;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+import grondag.canvas.Benchmark;
+import grondag.canvas.render.frustum.RegionVisibilityCache;
+import grondag.canvas.varia.ReferenceFlagCache;
+
+class ParticleCullerTest {
+	private static final int PARTICLE_COUNT = 50000;
+	private static final int EMITTER_COUNT = 40;
+	private static final int TYPE_COUNT = 12;
+	private static final int RENDER_DISTANCE = 16;
+	private static final int WARMUP = 200;
+	private static final int RUNS = 300;
+	/** Chunk columns on each side of the test grid. */
+	private static final int GRID = 32;
+	private static final int Y_REGIONS = 16;
+	private static final double N = Math.sqrt(0.5);
+	private static final double[][] PLANES = {{0, 0, 1, -0.05}, {N, 0, N, 0}, {-N, 0, N, 0}, {0, N, N, 0}, {0, -N, N, 0}};
+	/** Camera rotation. */
+	private static final float QX = 0.1f, QY = 0.3f, QZ = 0.05f, QW = 0.95f;
+
+	final Random r = new Random(42);
+	final boolean[] regionVisible = new boolean[GRID * GRID * Y_REGIONS];
+	final Object[] columns = new Object[GRID * GRID];
+	final Object[] types = new Object[TYPE_COUNT];
+	/** Stands in for MaterialMap.getForParticle, a map lookup for each particle. */
+	final HashMap<Object, Boolean> materialMaps = new HashMap<>();
+	/** Stands in for block light lookups in the level. */
+	final Long2IntOpenHashMap lightMap = new Long2IntOpenHashMap();
+	final RegionVisibilityCache regionVisibility = new RegionVisibilityCache();
+	final ReferenceFlagCache<Object> emissiveTypes = new ReferenceFlagCache<>(materialMaps::get);
+
+	/** As the per-particle path: frustum planes only and the material map for each particle. */
+	final ParticleCuller<Particle> culler = new ParticleCuller<>(p -> inFrustum(p.box), p -> materialMaps.get(p.type));
+
+	/** As the batched path: frustum planes, then remembered region visibility, and emissive flags per type. */
+	final ParticleCuller<Particle> batchedCuller = new ParticleCuller<>(p -> inFrustum(p.box)
+			&& regionVisibility.isBoxVisible(p.box[0], p.box[1], p.box[2], p.box[3], p.box[4], p.box[5]), p -> emissiveTypes.test(p.type));
+
+	ParticleCullerTest() {
+		for (int i = 0; i < regionVisible.length; ++i) {
+			regionVisible[i] = r.nextFloat() < 0.3f;
+		}
+
+		for (int i = 0; i < columns.length; ++i) {
+			columns[i] = new Object();
+		}
+
+		for (int i = 0; i < TYPE_COUNT; ++i) {
+			types[i] = new Object();
+			materialMaps.put(types[i], i % 4 == 0);
+		}
+
+		for (int i = 0; i < 4096; ++i) {
+			lightMap.put(r.nextLong(), r.nextInt(0xF000F0));
+		}
+	}
+
+	@Test
+	void test() {
+		final Particle[] particles = particles();
+		final ArrayList<Particle> visited = new ArrayList<>();
+		final ArrayList<Particle> batchedVisited = new ArrayList<>();
+		regionVisibility.prepare(this::isPotentiallyVisible, 0, 0, 0, RENDER_DISTANCE, true);
+
+		final int culled = culler.forEach(Arrays.asList(particles).iterator(), true, (p, emissive) -> {
+			assert emissive == materialMaps.get(p.type);
+			visited.add(p);
+		});
+
+		final int batchedCulled = batchedCuller.forEach(Arrays.asList(particles).iterator(), true, (p, emissive) -> {
+			assert emissive == materialMaps.get(p.type);
+			batchedVisited.add(p);
+		});
+
+		assert culled + visited.size() == PARTICLE_COUNT;
+		assert batchedCulled + batchedVisited.size() == PARTICLE_COUNT;
+
+		// region culling only removes particles, in order
+		int j = 0;
+
+		for (final Particle p : batchedVisited) {
+			while (visited.get(j) != p) {
+				assert !isBoxVisible(visited.get(j).box);
+				++j;
+			}
+
+			++j;
+		}
+
+		assert batchedVisited.size() < visited.size();
+
+		// without material maps, nothing is emissive
+		culler.forEach(Arrays.asList(particles).iterator(), false, (p, emissive) -> {
+			assert !emissive;
+		});
+	}
+
+	@Test
+	@Disabled(Benchmark.DISABLED)
+	void benchmark() {
+		final Particle[] particles = particles();
+		final int[] visible = new int[2];
+		final int[] encoded = new int[1024 * 16];
+
+		final double[] nanos = Benchmark.time(WARMUP, RUNS, null, () -> {
+			visible[0] = PARTICLE_COUNT - culler.forEach(Arrays.asList(particles).iterator(), true, (p, emissive) -> encode(p, emissive, encoded));
+		}, () -> {
+			regionVisibility.prepare(this::isPotentiallyVisible, 0, 0, 0, RENDER_DISTANCE, true);
+			visible[1] = PARTICLE_COUNT - batchedCuller.forEach(Arrays.asList(particles).iterator(), true, (p, emissive) -> encode(p, emissive, encoded));
+		});
+
+		Benchmark.report(String.format("%d particles, drawn %d/%d", PARTICLE_COUNT, visible[0], visible[1]), new String[] {"per particle", "batched"}, nanos);
+	}
+
+	/**
+	 * Stands in for Particle.render: a light lookup at the particle position and
+	 * one camera-facing quad rotated by a quaternion, four ints per vertex.
+	 */
+	private void encode(Particle p, boolean emissive, int[] target) {
+		final double[] b = p.box;
+		final int x = (int) Math.floor(b[0]);
+		final int y = (int) Math.floor(b[1]);
+		final int z = (int) Math.floor(b[2]);
+		final int light = emissive ? 0xF000F0 : lightMap.get(((long) x << 38) | ((long) (y & 0xFFF) << 26) | (z & 0x3FFFFFF));
+		final float size = (float) (b[3] - b[0]) * 0.5f;
+		int i = (p.index & 1023) * 16;
+
+		for (int v = 0; v < 4; ++v) {
+			final float cx = (v == 0 || v == 1 ? -size : size);
+			final float cy = (v == 0 || v == 3 ? -size : size);
+			// v' = q * v * q^-1 with z = 0
+			final float tx = -2 * QZ * cy;
+			final float ty = 2 * QZ * cx;
+			final float tz = 2 * (QX * cy - QY * cx);
+			target[i++] = Float.floatToRawIntBits((float) b[0] + cx + QW * tx + QY * tz - QZ * ty);
+			target[i++] = Float.floatToRawIntBits((float) b[1] + cy + QW * ty + QZ * tx - QX * tz);
+			target[i++] = Float.floatToRawIntBits((float) b[2] + QW * tz + QX * ty - QY * tx);
+			target[i++] = light;
+		}
+	}
+
+	/**
+	 * Camera at the origin looking along +z with a 90 degree field of view.
+	 * Tests the box center and half extents against five planes like CanvasFrustum.
+	 */
+	private static boolean inFrustum(double[] b) {
+		final double hx = (b[3] - b[0]) * 0.5;
+		final double hy = (b[4] - b[1]) * 0.5;
+		final double hz = (b[5] - b[2]) * 0.5;
+		final double cx = b[0] + hx;
+		final double cy = b[1] + hy;
+		final double cz = b[2] + hz;
+
+		for (final double[] p : PLANES) {
+			final double d = p[0] * cx + p[1] * cy + p[2] * cz + p[3];
+			final double r = Math.abs(p[0]) * hx + Math.abs(p[1]) * hy + Math.abs(p[2]) * hz;
+
+			if (d + r < 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/** Small boxes crowded around emitters, mostly in front of the camera. */
+	private Particle[] particles() {
+		final Particle[] result = new Particle[PARTICLE_COUNT];
+		final double[][] emitters = new double[EMITTER_COUNT][];
+		final int range = GRID * 16 - 32;
+
+		for (int i = 0; i < EMITTER_COUNT; ++i) {
+			emitters[i] = new double[] {r.nextInt(range) - range / 2, r.nextInt(224) - 112, r.nextInt(range / 2)};
+		}
+
+		for (int i = 0; i < PARTICLE_COUNT; ++i) {
+			final double[] e = emitters[r.nextInt(EMITTER_COUNT)];
+			final double x = e[0] + r.nextGaussian() * 3;
+			final double y = e[1] + r.nextGaussian() * 3;
+			final double z = e[2] + r.nextGaussian() * 3;
+			final double s = 0.1 + r.nextDouble() * 0.2;
+			result[i] = new Particle(i, types[r.nextInt(TYPE_COUNT)], new double[] {x - s, y - s, z - s, x + s, y + s, z + s});
+		}
+
+		return result;
+	}
+
+	private int index(int x, int y, int z) {
+		final int cx = (x >> 4) + GRID / 2;
+		final int cy = (y >> 4) + Y_REGIONS / 2;
+		final int cz = (z >> 4) + GRID / 2;
+
+		if (cx < 0 || cx >= GRID || cy < 0 || cy >= Y_REGIONS || cz < 0 || cz >= GRID) {
+			return -1;
+		}
+
+		return (cx * GRID + cz) * Y_REGIONS + cy;
+	}
+
+	/** Synchronized per column like RenderRegionStorage.  Regions outside the grid are visible. */
+	private boolean isPotentiallyVisible(int x, int y, int z) {
+		final int i = index(x, y, z);
+
+		if (i == -1) {
+			return true;
+		}
+
+		synchronized (columns[i / Y_REGIONS]) {
+			return regionVisible[i];
+		}
+	}
+
+	private boolean isBoxVisible(double[] b) {
+		for (int x = (int) Math.floor(b[0]) & 0xFFFFFFF0; x <= ((int) Math.floor(b[3]) & 0xFFFFFFF0); x += 16) {
+			for (int y = (int) Math.floor(b[1]) & 0xFFFFFFF0; y <= ((int) Math.floor(b[4]) & 0xFFFFFFF0); y += 16) {
+				for (int z = (int) Math.floor(b[2]) & 0xFFFFFFF0; z <= ((int) Math.floor(b[5]) & 0xFFFFFFF0); z += 16) {
+					if (isPotentiallyVisible(x, y, z)) {
+						return true;
+					}
+				}
+			}
+		}
+
+		return false;
+	}
+
+	private record Particle(int index, Object type, double[] box) { }
+}
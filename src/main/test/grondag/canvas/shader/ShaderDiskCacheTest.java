@@ -0,0 +1,123 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+package grondag.canvas.shader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+class ShaderDiskCacheTest {
+	@Test
+	void test() throws IOException {
+		final Path dir = Files.createTempDirectory("canvas_shader_cache");
+
+		try {
+			final ShaderDiskCache cache = new ShaderDiskCache(dir, "1.0", ShaderDiskCache.DEFAULT_MAX_BYTES);
+			assert cache.get("#version 330\nfloat a;") == null;
+			cache.put("#version 330\nfloat a;", "#version 330\nfloat A;");
+			assert cache.get("#version 330\nfloat a;").equals("#version 330\nfloat A;");
+
+			// different version or defines is different input
+			assert cache.get("#version 400\nfloat a;") == null;
+
+			// survives restart
+			final ShaderDiskCache restarted = new ShaderDiskCache(dir, "1.0", ShaderDiskCache.DEFAULT_MAX_BYTES);
+			assert restarted.get("#version 330\nfloat a;").equals("#version 330\nfloat A;");
+
+			// a new salt invalidates everything
+			final ShaderDiskCache upgraded = new ShaderDiskCache(dir, "1.1", ShaderDiskCache.DEFAULT_MAX_BYTES);
+			assert upgraded.get("#version 330\nfloat a;") == null;
+		} finally {
+			delete(dir);
+		}
+	}
+
+	@Test
+	void testEviction() throws IOException {
+		final Path dir = Files.createTempDirectory("canvas_shader_cache");
+
+		try {
+			final String output = "x".repeat(1000);
+			final ShaderDiskCache cache = new ShaderDiskCache(dir, "1.0", 10000);
+
+			for (int i = 0; i < 50; ++i) {
+				cache.put("source " + i, output);
+				assert cache.totalBytes() <= 10000;
+			}
+
+			// existing entries are counted at startup
+			final ShaderDiskCache restarted = new ShaderDiskCache(dir, "1.0", 10000);
+			restarted.put("source 50", output);
+			assert restarted.totalBytes() <= 10000;
+
+			try (Stream<Path> files = Files.list(dir)) {
+				assert files.count() <= 10;
+			}
+		} finally {
+			delete(dir);
+		}
+	}
+
+	@Test
+	void testPending() throws IOException {
+		final Path dir = Files.createTempDirectory("canvas_shader_cache");
+
+		try {
+			// left by a crash before the move
+			final Path stale = dir.resolve("pending123.tmp");
+			Files.writeString(stale, "x".repeat(1000));
+			Files.setLastModifiedTime(stale, FileTime.fromMillis(System.currentTimeMillis() - 3600000));
+			final Path recent = dir.resolve("pending456.tmp");
+			Files.writeString(recent, "x".repeat(1000));
+
+			final String output = "y".repeat(100);
+			final ShaderDiskCache cache = new ShaderDiskCache(dir, "1.0", ShaderDiskCache.DEFAULT_MAX_BYTES);
+			cache.put("source", output);
+			assert cache.totalBytes() == 100;
+			assert !Files.exists(stale);
+			// may belong to another instance still writing
+			assert Files.exists(recent);
+			Files.delete(recent);
+
+			// replaced entries are not counted twice
+			cache.put("source", output);
+			assert cache.totalBytes() == 100;
+			cache.put("other", output);
+			assert cache.totalBytes() == 200;
+
+			try (Stream<Path> files = Files.list(dir)) {
+				assert files.count() == 2;
+			}
+		} finally {
+			delete(dir);
+		}
+	}
+
+	private static void delete(Path dir) throws IOException {
+		try (Stream<Path> files = Files.walk(dir)) {
+			files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+}
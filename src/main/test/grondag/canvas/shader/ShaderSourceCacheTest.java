@@ -0,0 +1,165 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+package grondag.canvas.shader;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+import net.minecraft.resources.ResourceLocation;
+
+import grondag.canvas.Benchmark;
+
+class ShaderSourceCacheTest {
+	private static final int RUNS = 200;
+
+	final HashMap<ResourceLocation, String> sources = new HashMap<>();
+	int loadCount;
+
+	final Function<ResourceLocation, String> loader = id -> {
+		++loadCount;
+		return sources.getOrDefault(id, "");
+	};
+
+	ShaderSourceCacheTest() {
+		sources.put(new ResourceLocation("canvas:a.glsl"), "#include canvas:c.glsl\nfloat a;\n#include canvas:d.glsl\n");
+		sources.put(new ResourceLocation("canvas:b.glsl"), "#include \"canvas:c.glsl\"\nfloat b;\n#include canvas:a.glsl // trailing\n");
+		sources.put(new ResourceLocation("canvas:c.glsl"), "#define VERTEX_SHADER\n#define ANIMATED_FOLIAGE\nfloat c;\n");
+		sources.put(new ResourceLocation("canvas:d.glsl"), "#include canvas:c.glsl\n#include canvas:b.glsl\nfloat d;\n");
+	}
+
+	@Test
+	void test() {
+		final ShaderSourceCache cache = new ShaderSourceCache();
+		final String root = "#include canvas:b.glsl\n#include canvas:a.glsl\nvoid main() {}\n#include canvas:c.glsl\n";
+		final String expected = referenceExpand(root);
+		final String actual = cache.expandIncludes(root, id -> cache.resource(id, loader));
+		assert expected.equals(actual);
+
+		// resources are read once until reload
+		final int loads = loadCount;
+		assert cache.expandIncludes(root, id -> cache.resource(id, loader)).equals(expected);
+		assert loadCount == loads;
+
+		cache.reload();
+		sources.put(new ResourceLocation("canvas:c.glsl"), "float changed;\n");
+		assert cache.expandIncludes(root, id -> cache.resource(id, loader)).equals(referenceExpand(root));
+		assert loadCount > loads;
+
+		// preprocess results survive one reload but not two
+		final int[] processCount = new int[1];
+		final Function<String, String> processor = s -> {
+			++processCount[0];
+			return s.toUpperCase();
+		};
+
+		assert cache.preprocess("abc", processor::apply).equals("ABC");
+		assert cache.preprocess("abc", processor::apply).equals("ABC");
+		cache.reload();
+		assert cache.preprocess("abc", processor::apply).equals("ABC");
+		assert processCount[0] == 1;
+		cache.reload();
+		cache.reload();
+		assert cache.preprocess("abc", processor::apply).equals("ABC");
+		assert processCount[0] == 2;
+	}
+
+	@Test
+	void testVariant() {
+		final String source = referenceExpand("#include canvas:b.glsl\n//#define PBR_ENABLED\n#define SHADOW_MAP_SIZE 1024\n#define SHADOW_MAP_PRESENT\n");
+
+		final ShaderVariant variant = new ShaderVariant()
+				.replace("//#define PBR_ENABLED", "#define PBR_ENABLED")
+				.replace("#define VERTEX_SHADER", "#define FRAGMENT_SHADER")
+				.replace("#define ANIMATED_FOLIAGE", "//#define ANIMATED_FOLIAGE")
+				.replace("#define SHADOW_MAP_PRESENT", "//#define SHADOW_MAP_PRESENT")
+				.replace("#define SHADOW_MAP_SIZE 1024", "//#define SHADOW_MAP_SIZE 1024");
+
+		String expected = source;
+		expected = StringUtils.replace(expected, "//#define PBR_ENABLED", "#define PBR_ENABLED");
+		expected = StringUtils.replace(expected, "#define VERTEX_SHADER", "#define FRAGMENT_SHADER");
+		expected = StringUtils.replace(expected, "#define ANIMATED_FOLIAGE", "//#define ANIMATED_FOLIAGE");
+		expected = StringUtils.replace(expected, "#define SHADOW_MAP_PRESENT", "//#define SHADOW_MAP_PRESENT");
+		expected = StringUtils.replace(expected, "#define SHADOW_MAP_SIZE 1024", "//#define SHADOW_MAP_SIZE 1024");
+
+		assert variant.apply(source).equals(expected);
+
+		final String unchanged = "float x;\n";
+		assert variant.apply(unchanged) == unchanged;
+		assert new ShaderVariant().apply(source) == source;
+	}
+
+	@Test
+	@Disabled(Benchmark.DISABLED)
+	void benchmark() {
+		// many roots sharing the same includes, like one shader per material and program type
+		final StringBuilder common = new StringBuilder();
+
+		for (int i = 0; i < 400; ++i) {
+			common.append("vec4 common").append(i).append(";\n");
+		}
+
+		sources.put(new ResourceLocation("canvas:common.glsl"), common.toString());
+		sources.put(new ResourceLocation("canvas:c.glsl"), "#include canvas:common.glsl\n#define VERTEX_SHADER\nfloat c;\n");
+
+		final String root = "#include canvas:b.glsl\n#include canvas:d.glsl\nvoid main() {}\n";
+		final ShaderSourceCache cache = new ShaderSourceCache();
+
+		final double[] nanos = Benchmark.time(1, 1, null, () -> {
+			for (int i = 0; i < RUNS; ++i) {
+				referenceExpand(root);
+			}
+		}, () -> {
+			for (int i = 0; i < RUNS; ++i) {
+				cache.expandIncludes(root, id -> cache.resource(id, loader));
+			}
+		});
+
+		Benchmark.report(RUNS + " assemblies  " + cache.debugSummary(), new String[] {"uncached", "cached"}, nanos);
+	}
+
+	/** The include expansion previously done by GlShader, kept for comparison. */
+	private String referenceExpand(String source) {
+		return referenceExpand(source, new HashSet<>());
+	}
+
+	private String referenceExpand(String source, HashSet<String> included) {
+		final Matcher m = GlShader.PATTERN.matcher(source);
+
+		while (m.find()) {
+			final String id = StringUtils.replace(m.group(1), "\"", "");
+
+			if (included.contains(id)) {
+				source = StringUtils.replace(source, m.group(0), "");
+			} else {
+				included.add(id);
+				final String src = referenceExpand(sources.getOrDefault(new ResourceLocation(id), ""), included);
+				source = StringUtils.replace(source, m.group(0), src, 1);
+			}
+		}
+
+		return source;
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+package grondag.canvas.shader;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+import grondag.canvas.Benchmark;
+
+class UniformIndexTest {
+	private static final String[] TYPES = {"float", "vec4", "int", "uint", "mat3", "mat4", "sampler2D", "sampler2DArray", "sampler2DShadow"};
+
+	/** Declared types and the regex previously used to search for them. */
+	private static final String[][] SEARCHES = {
+		{"float", "float"},
+		{"vec4", "vec4"},
+		{"int", "int"},
+		{"mat4", "mat4"},
+		{"sampler2D", "sampler2D"},
+		{"sampler2DArray", "sampler2DArray"},
+		{"float[]", "float\\s*\\[\\s*[0-9]+\\s*]"},
+		{"int[]", "int\\s*\\[\\s*[0-9]+\\s*]"},
+		{"mat4[]", "mat4\\s*\\[\\s*[0-9]+\\s*]"},
+	};
+
+	private static final String[] NAMES = {"a", "b", "frxu_size", "_cvu_sectors_int", "frxs_shadowMap", "missing", "uniform"};
+
+	@Test
+	void test() {
+		final String source = String.join("\n",
+				"#version 330",
+				"uniform float a;",
+				"  uniform   vec4 b ;",
+				"uniform int[182] _cvu_sectors_int;",
+				"uniform float [ 4 ] frxu_size;",
+				"#ifdef SHADOW_MAP_PRESENT",
+				"uniform sampler2DArray frxs_shadowMap;",
+				"#else",
+				"uniform sampler2D frxs_shadowMap;",
+				"#endif",
+				"uniform highp float precise;",
+				"uniform vec4 c, d;",
+				"// uniform mat4 commented;",
+				"float uniform_value;");
+
+		final UniformIndex index = new UniformIndex(source);
+
+		for (final String[] search : SEARCHES) {
+			for (final String name : NAMES) {
+				assert index.contains(search[0], name) == regexContains(source, search[1], name) : search[0] + " " + name;
+			}
+		}
+
+		assert index.contains("frxs_shadowMap");
+		assert !index.contains("precise");
+		assert !index.contains("c");
+		assert index.size() == 5;
+	}
+
+	@Test
+	@Disabled(Benchmark.DISABLED)
+	void benchmark() {
+		// a large pipeline: many programs, each with long source and many candidate uniforms
+		final int programCount = 64;
+		final int uniformCount = 256;
+		final Random r = new Random(42);
+		final String[] sources = new String[programCount];
+
+		for (int p = 0; p < programCount; ++p) {
+			final StringBuilder builder = new StringBuilder();
+
+			for (int u = 0; u < uniformCount; ++u) {
+				if (r.nextBoolean()) {
+					builder.append("uniform ").append(TYPES[u % TYPES.length]).append(" u").append(u).append(";\n");
+				}
+
+				builder.append("vec4 f").append(u).append("(vec4 x) { return x * ").append(u).append(".0; }\n");
+			}
+
+			sources[p] = builder.toString();
+		}
+
+		final int[] found = new int[2];
+
+		final double[] nanos = Benchmark.time(1, 1, null, () -> {
+			found[0] = 0;
+
+			for (final String source : sources) {
+				for (int u = 0; u < uniformCount; ++u) {
+					if (regexContains(source, TYPES[u % TYPES.length], "u" + u)) {
+						++found[0];
+					}
+				}
+			}
+		}, () -> {
+			found[1] = 0;
+
+			for (final String source : sources) {
+				final UniformIndex index = new UniformIndex(source);
+
+				for (int u = 0; u < uniformCount; ++u) {
+					if (index.contains(TYPES[u % TYPES.length], "u" + u)) {
+						++found[1];
+					}
+				}
+			}
+		});
+
+		assert found[0] == found[1];
+		Benchmark.report(programCount + " programs x " + uniformCount + " uniforms", new String[] {"regex", "index"}, nanos);
+	}
+
+	/** The search previously done by GlShader for every uniform, kept for comparison. */
+	private static boolean regexContains(String source, String type, String name) {
+		final String regex = "(?m)^\\s*uniform\\s+" + type + "\\s+" + name + "\\s*;";
+		final Pattern pattern = Pattern.compile(regex);
+		return pattern.matcher(source).find();
+	}
+}
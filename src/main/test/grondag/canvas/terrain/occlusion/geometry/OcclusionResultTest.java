@@ -16,8 +16,17 @@
 
 package grondag.canvas.terrain.occlusion.geometry;
 
+import java.util.Arrays;
+import java.util.Random;
+
+import it.unimi.dsi.fastutil.ints.IntArrayFIFOQueue;
+import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 
+import io.vram.frex.api.model.util.FaceUtil;
+
+import grondag.canvas.Benchmark;
+
 class OcclusionResultTest {
 	private static final int BIT_A = 1;
 	private static final int BIT_B = 2;
@@ -26,6 +35,13 @@ class OcclusionResultTest {
 	private static final int BIT_E = 16;
 	private static final int BIT_F = 32;
 
+	private static final int WORDS = 64;
+	private static final int VISITED_OFFSET = WORDS;
+	private static final int WARMUP = 20;
+	private static final int RUNS = 100;
+
+	final Random r = new Random(42);
+
 	@Test
 	void test() {
 		long mutualMask = 0L;
@@ -69,4 +85,273 @@ class OcclusionResultTest {
 		openMask = OcclusionResult.openFacesFlag(mutualMask, BIT_C);
 		assert openMask == 0;
 	}
+
+	@Test
+	void testFloodFill() {
+		for (int n = 0; n < 200; ++n) {
+			checkFill(random(r.nextFloat()), randomCovering(r.nextFloat()));
+		}
+
+		final long[] checkerboard = new long[WORDS];
+
+		for (int i = 0; i < 4096; ++i) {
+			if ((((i & 15) + ((i >> 4) & 15) + (i >> 8)) & 1) == 0) {
+				set(checkerboard, i);
+			}
+		}
+
+		checkFill(checkerboard, randomCovering(0));
+		checkFill(checkerboard, randomCovering(0.5f));
+
+		// closed outer layer with open interior, then the same with a hole
+		final long[] shell = shell(0);
+		checkFill(shell, randomCovering(0));
+
+		final long[] leakyShell = shell.clone();
+		clear(leakyShell, index(2, 2, 0));
+		checkFill(leakyShell, randomCovering(0));
+
+		// nested shells - interior should only be reached through the holes
+		final long[] nested = shell(0);
+		final long[] inner = shell(4);
+
+		for (int i = 0; i < WORDS; ++i) {
+			nested[i] |= inner[i];
+		}
+
+		clear(nested, index(5, 5, 0));
+		clear(nested, index(6, 6, 4));
+		checkFill(nested, randomCovering(0.2f));
+	}
+
+	@Test
+	@Disabled(Benchmark.DISABLED)
+	void benchmark() {
+		benchmark("mostly open", 0.05f);
+		benchmark("caves", 0.6f);
+		benchmark("mostly closed", 0.9f);
+		benchmark("random", 0.35f);
+	}
+
+	private void benchmark(String label, float density) {
+		final long[][] regions = new long[16][];
+		final boolean[][] coverings = new boolean[16][];
+
+		for (int i = 0; i < regions.length; ++i) {
+			regions[i] = new long[WORDS * 2];
+			System.arraycopy(random(density), 0, regions[i], 0, WORDS);
+			coverings[i] = randomCovering(density);
+		}
+
+		final BitFloodFill fill = new BitFloodFill();
+		final long[] work = new long[WORDS * 2];
+
+		// each run fills all regions, copy time is the same for both
+		final double[] nanos = Benchmark.time(WARMUP, RUNS, null, () -> {
+			for (int i = 0; i < regions.length; ++i) {
+				System.arraycopy(regions[i], 0, work, 0, work.length);
+				queueFill(work, coverings[i], true);
+			}
+		}, () -> {
+			for (int i = 0; i < regions.length; ++i) {
+				System.arraycopy(regions[i], 0, work, 0, work.length);
+				wordFill(fill, work, coverings[i], true);
+			}
+		});
+
+		Benchmark.report(String.format("%-14s per region", label), new String[] {"queue fill", "word fill"},
+				new double[] {nanos[0] / regions.length, nanos[1] / regions.length});
+	}
+
+	/**
+	 * Runs both fills grouped by face, as for face-based culling, and as a
+	 * single fill, as for advanced culling, and checks visited bits and
+	 * mutual face masks match.
+	 */
+	private static void checkFill(long[] closed, boolean[] coveringOpen) {
+		final BitFloodFill fill = new BitFloodFill();
+
+		for (final boolean byFace : new boolean[] {true, false}) {
+			final long[] expected = new long[WORDS * 2];
+			System.arraycopy(closed, 0, expected, 0, WORDS);
+			final long[] actual = expected.clone();
+
+			final long expectedMask = queueFill(expected, coveringOpen, byFace);
+			final long actualMask = wordFill(fill, actual, coveringOpen, byFace);
+
+			assert Arrays.equals(expected, actual);
+			assert expectedMask == actualMask;
+		}
+	}
+
+	private static long wordFill(BitFloodFill fill, long[] bits, boolean[] coveringOpen, boolean byFace) {
+		long mutualFaceMask = 0;
+
+		for (int i = 0; i < 256 * 6; ++i) {
+			if (coveringOpen[i]) {
+				fill.seed(coveredIndex(i));
+			}
+
+			if (byFace && (i & 0xFF) == 0xFF) {
+				final int faces = fill.fill(bits, VISITED_OFFSET);
+
+				if (faces != 0) {
+					mutualFaceMask |= OcclusionResult.buildMutualFaceMask(faces);
+				}
+			}
+		}
+
+		if (!byFace) {
+			fill.fill(bits, VISITED_OFFSET);
+		}
+
+		return mutualFaceMask;
+	}
+
+	/** The fill previously used by RegionOcclusionCalculator, kept for comparison. */
+	private static long queueFill(long[] bits, boolean[] coveringOpen, boolean byFace) {
+		final IntArrayFIFOQueue queue = new IntArrayFIFOQueue();
+		final int[] faces = new int[1];
+		long mutualFaceMask = 0;
+
+		for (int i = 0; i < 256 * 6; ++i) {
+			if (byFace && (i & 0xFF) == 0 && faces[0] != 0) {
+				mutualFaceMask |= OcclusionResult.buildMutualFaceMask(faces[0]);
+				faces[0] = 0;
+			}
+
+			final int index = coveredIndex(i);
+
+			if (coveringOpen[i] && setVisited(bits, index, faces)) {
+				queue.enqueue(index);
+
+				while (!queue.isEmpty()) {
+					final int xyz4 = queue.dequeueInt();
+					final int x = xyz4 & 0xF;
+					final int y = (xyz4 >> 4) & 0xF;
+					final int z = xyz4 >> 8;
+
+					if (x != 0 && setVisited(bits, xyz4 - 1, faces)) queue.enqueue(xyz4 - 1);
+					if (x != 15 && setVisited(bits, xyz4 + 1, faces)) queue.enqueue(xyz4 + 1);
+					if (y != 0 && setVisited(bits, xyz4 - 0x10, faces)) queue.enqueue(xyz4 - 0x10);
+					if (y != 15 && setVisited(bits, xyz4 + 0x10, faces)) queue.enqueue(xyz4 + 0x10);
+					if (z != 0 && setVisited(bits, xyz4 - 0x100, faces)) queue.enqueue(xyz4 - 0x100);
+					if (z != 15 && setVisited(bits, xyz4 + 0x100, faces)) queue.enqueue(xyz4 + 0x100);
+				}
+			}
+		}
+
+		if (byFace && faces[0] != 0) {
+			mutualFaceMask |= OcclusionResult.buildMutualFaceMask(faces[0]);
+		}
+
+		return mutualFaceMask;
+	}
+
+	private static boolean setVisited(long[] bits, int index, int[] faces) {
+		final long mask = 1L << (index & 63);
+		final int word = index >> 6;
+
+		if ((bits[word + VISITED_OFFSET] & mask) != 0) {
+			return false;
+		}
+
+		bits[word + VISITED_OFFSET] |= mask;
+
+		if ((bits[word] & mask) != 0) {
+			return false;
+		}
+
+		final int x = index & 15;
+		final int y = (index >> 4) & 15;
+		final int z = index >> 8;
+
+		if (x == 0) {
+			faces[0] |= FaceUtil.WEST_FLAG;
+		} else if (x == 15) {
+			faces[0] |= FaceUtil.EAST_FLAG;
+		} else if (y == 0) {
+			faces[0] |= FaceUtil.DOWN_FLAG;
+		} else if (y == 15) {
+			faces[0] |= FaceUtil.UP_FLAG;
+		} else if (z == 0) {
+			faces[0] |= FaceUtil.NORTH_FLAG;
+		} else if (z == 15) {
+			faces[0] |= FaceUtil.SOUTH_FLAG;
+		}
+
+		return true;
+	}
+
+	/** Interior surface position for each covering index, in the same face order as RegionOcclusionCalculator. */
+	private static int coveredIndex(int coveringIndex) {
+		final int i = (coveringIndex >> 4) & 15;
+		final int j = coveringIndex & 15;
+
+		return switch (coveringIndex >> 8) {
+			case 0 -> index(0, i, j);
+			case 1 -> index(15, i, j);
+			case 2 -> index(i, j, 0);
+			case 3 -> index(i, j, 15);
+			case 4 -> index(i, 0, j);
+			default -> index(i, 15, j);
+		};
+	}
+
+	private static int index(int x, int y, int z) {
+		return x | (y << 4) | (z << 8);
+	}
+
+	private static void set(long[] bits, int index) {
+		bits[index >> 6] |= 1L << (index & 63);
+	}
+
+	private static void clear(long[] bits, int index) {
+		bits[index >> 6] &= ~(1L << (index & 63));
+	}
+
+	private long[] random(float density) {
+		final long[] result = new long[WORDS];
+
+		for (int i = 0; i < 4096; ++i) {
+			if (r.nextFloat() < density) {
+				set(result, i);
+			}
+		}
+
+		return result;
+	}
+
+	private boolean[] randomCovering(float density) {
+		final boolean[] result = new boolean[256 * 6];
+
+		for (int i = 0; i < result.length; ++i) {
+			result[i] = r.nextFloat() >= density;
+		}
+
+		return result;
+	}
+
+	/** Closed one-block layer inset the given distance from the region surface. */
+	private static long[] shell(int inset) {
+		final long[] result = new long[WORDS];
+		final int min = inset;
+		final int max = 15 - inset;
+
+		for (int i = 0; i < 4096; ++i) {
+			final int x = i & 15;
+			final int y = (i >> 4) & 15;
+			final int z = i >> 8;
+
+			if (x < min || x > max || y < min || y > max || z < min || z > max) {
+				continue;
+			}
+
+			if (x == min || x == max || y == min || y == max || z == min || z == max) {
+				set(result, i);
+			}
+		}
+
+		return result;
+	}
 }
@@ -0,0 +1,110 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+
+package grondag.canvas.terrain.occlusion.geometry;
+
+import java.util.Random;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+import grondag.canvas.Benchmark;
+
+class RegionOcclusionCalculatorTest {
+	private static final int WORDS = 64;
+	/** Renderable bits follow other words in the calculator, so the test array has some in front. */
+	private static final int OFFSET = 3;
+	private static final int WARMUP = 2000;
+	private static final int RUNS = 5000;
+
+	final Random r = new Random(42);
+
+	@Test
+	void test() {
+		for (final float density : new float[] {0f, 0.01f, 0.1f, 0.5f, 1f}) {
+			final long[] words = randomWords(density);
+			final IntArrayList expected = new IntArrayList();
+			final IntArrayList actual = new IntArrayList();
+
+			for (int i = 0; i < WORDS * 64; ++i) {
+				if (isSet(words, i)) {
+					expected.add(i);
+				}
+			}
+
+			RegionOcclusionCalculator.forEachSetBit(words, OFFSET, WORDS, actual::add);
+			assert actual.equals(expected) : "density " + density;
+		}
+
+		// words before the offset and after the count are never read
+		final long[] words = new long[WORDS + OFFSET + 1];
+		words[0] = -1L;
+		words[WORDS + OFFSET] = -1L;
+		words[OFFSET] = 1L << 63;
+		words[OFFSET + WORDS - 1] = 1L;
+		final IntArrayList actual = new IntArrayList();
+		RegionOcclusionCalculator.forEachSetBit(words, OFFSET, WORDS, actual::add);
+		assert actual.equals(IntArrayList.wrap(new int[] {63, (WORDS - 1) * 64}));
+	}
+
+	@Test
+	@Disabled(Benchmark.DISABLED)
+	void benchmark() {
+		// open air, caves and mostly solid terrain differ mainly in how many positions are renderable
+		for (final float density : new float[] {0.01f, 0.1f, 0.5f}) {
+			final long[] words = randomWords(density);
+			final int[] sums = new int[2];
+
+			final double[] nanos = Benchmark.time(WARMUP, RUNS, null, () -> {
+				sums[0] = 0;
+
+				for (int i = 0; i < WORDS * 64; ++i) {
+					if (isSet(words, i)) {
+						sums[0] += i;
+					}
+				}
+			}, () -> {
+				sums[1] = 0;
+				RegionOcclusionCalculator.forEachSetBit(words, OFFSET, WORDS, i -> sums[1] += i);
+			});
+
+			assert sums[0] == sums[1];
+			Benchmark.report(String.format("%3.0f%% renderable  per region", density * 100), new String[] {"each index", "set bits"}, nanos);
+		}
+	}
+
+	/** Same test as RegionOcclusionCalculator.shouldRender, which buildTerrain used for every index. */
+	private static boolean isSet(long[] words, int index) {
+		return (words[(index >> 6) + OFFSET] & (1L << (index & 63))) != 0;
+	}
+
+	private long[] randomWords(float density) {
+		final long[] result = new long[WORDS + OFFSET];
+
+		for (int i = 0; i < WORDS * 64; ++i) {
+			if (r.nextFloat() < density) {
+				result[(i >> 6) + OFFSET] |= 1L << (i & 63);
+			}
+		}
+
+		return result;
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+package grondag.canvas.terrain.util;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+import grondag.canvas.Benchmark;
+
+class PackedIntegerStorageHelperTest {
+	private static final int COUNT = 4096;
+	private static final int WARMUP = 2000;
+	private static final int RUNS = 5000;
+
+	final Random r = new Random(42);
+
+	@Test
+	void test() {
+		final int[] actual = new int[COUNT];
+
+		// global palettes of large modpacks need more than 16 bits
+		for (int bits = 1; bits <= 32; ++bits) {
+			final int[] values = randomValues(bits);
+			PackedIntegerStorageHelper.unpack(pack(values, bits), bits, actual, COUNT);
+
+			for (int i = 0; i < COUNT; ++i) {
+				assert actual[i] == values[i] : "bits " + bits + " index " + i;
+			}
+		}
+	}
+
+	@Test
+	@Disabled(Benchmark.DISABLED)
+	void benchmark() {
+		for (final int bits : new int[] {4, 5, 8}) {
+			final long[] words = pack(randomValues(bits), bits);
+			// stands in for palette entries
+			final Object[] palette = new Object[1 << bits];
+
+			for (int i = 0; i < palette.length; ++i) {
+				palette[i] = i % 3 == 0 ? null : Integer.valueOf(i);
+			}
+
+			final Object emptyVal = Integer.valueOf(-1);
+			final Object[] target = new Object[COUNT];
+			final Object[] bulkTarget = new Object[COUNT];
+			final int[] raw = new int[COUNT];
+
+			final double[] nanos = Benchmark.time(WARMUP, RUNS, null,
+					() -> perIndex(words, bits, palette, emptyVal, target),
+					() -> bulk(words, bits, palette, emptyVal, bulkTarget, raw));
+
+			assert Arrays.equals(target, bulkTarget);
+			Benchmark.report(bits + " bits  per section", new String[] {"per index", "bulk"}, nanos);
+		}
+	}
+
+	/** Same lookup as a packed palette copy did for each block. */
+	private static void perIndex(long[] words, int bits, Object[] palette, Object emptyVal, Object[] target) {
+		final int valuesPerWord = 64 / bits;
+		final long mask = (1L << bits) - 1L;
+
+		for (int index = 0; index < COUNT; ++index) {
+			final int wordIndex = index / valuesPerWord;
+			final int shift = (index - wordIndex * valuesPerWord) * bits;
+			final Object result = palette[(int) ((words[wordIndex] >> shift) & mask)];
+			target[index] = result == null ? emptyVal : result;
+		}
+	}
+
+	/** Bulk unpack, then resolve each palette entry once. */
+	private static void bulk(long[] words, int bits, Object[] palette, Object emptyVal, Object[] target, int[] raw) {
+		PackedIntegerStorageHelper.unpack(words, bits, raw, COUNT);
+		final Object[] resolved = new Object[palette.length];
+
+		for (int i = 0; i < COUNT; ++i) {
+			final int value = raw[i];
+			Object result = resolved[value];
+
+			if (result == null) {
+				result = palette[value];
+				result = result == null ? emptyVal : result;
+				resolved[value] = result;
+			}
+
+			target[i] = result;
+		}
+	}
+
+	private int[] randomValues(int bits) {
+		final int[] result = new int[COUNT];
+
+		for (int i = 0; i < COUNT; ++i) {
+			result[i] = (int) (r.nextLong() & ((1L << bits) - 1L));
+		}
+
+		return result;
+	}
+
+	/** Packs values the same way as BitStorage. */
+	private static long[] pack(int[] values, int bits) {
+		final int valuesPerWord = 64 / bits;
+		final long mask = (1L << bits) - 1L;
+		final long[] result = new long[(values.length + valuesPerWord - 1) / valuesPerWord];
+
+		for (int i = 0; i < values.length; ++i) {
+			final int word = i / valuesPerWord;
+			final int shift = (i - word * valuesPerWord) * bits;
+			result[word] |= (values[i] & mask) << shift;
+		}
+
+		return result;
+	}
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+
+package grondag.canvas.terrain.util;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+import grondag.canvas.Benchmark;
+import grondag.canvas.apiimpl.rendercontext.TerrainRenderContext;
+
+/**
+ * Runs synthetic tasks through each terrain executor without a game instance.
+ * Workers are given null contexts because synthetic tasks never use them.
+ */
+class TerrainExecutorTest {
+	private static final int TASK_COUNT = 20000;
+	private static final int TASKS_PER_FRAME = 200;
+	private static final long TASK_WORK_NANOS = 20000;
+
+	final int threadCount = Math.max(4, Runtime.getRuntime().availableProcessors() - 1);
+
+	@Test
+	void test() throws InterruptedException {
+		final WorkStealingTerrainExecutor executor = new WorkStealingTerrainExecutor(threadCount, () -> null);
+		final Random r = new Random(42);
+		final SyntheticTask[] tasks = new SyntheticTask[TASK_COUNT];
+		final CountDownLatch latch = new CountDownLatch(TASK_COUNT);
+
+		for (int i = 0; i < TASK_COUNT; ++i) {
+			tasks[i] = new SyntheticTask(r.nextInt(64 * 64) - 1, 0, latch);
+			executor.execute(tasks[i]);
+		}
+
+		assert latch.await(60, TimeUnit.SECONDS);
+		assert executor.isEmpty();
+
+		for (final SyntheticTask t : tasks) {
+			assert t.runCount == 1;
+		}
+
+		assert WorkStealingTerrainExecutor.bucket(-1) == 0;
+		assert WorkStealingTerrainExecutor.bucket(0) == 1;
+		assert WorkStealingTerrainExecutor.bucket(4) == 3;
+		assert WorkStealingTerrainExecutor.bucket(Integer.MAX_VALUE) == 63;
+	}
+
+	/**
+	 * Idle workers park without a timeout, so a lost wake-up would leave
+	 * a task waiting forever. Submits single tasks to idle workers.
+	 */
+	@Test
+	void testIdleWakeup() throws InterruptedException {
+		final WorkStealingTerrainExecutor executor = new WorkStealingTerrainExecutor(threadCount, () -> null);
+
+		for (int i = 0; i < 500; ++i) {
+			final CountDownLatch latch = new CountDownLatch(1);
+			executor.execute(new SyntheticTask(i, 0, latch));
+			assert latch.await(10, TimeUnit.SECONDS);
+
+			if ((i & 15) == 0) {
+				// let every worker go idle
+				Thread.sleep(2);
+			}
+		}
+	}
+
+	@Test
+	void testReprioritize() throws InterruptedException {
+		reprioritize(new DedicatedTerrainExecutor(threadCount, () -> null), threadCount);
+		// one shared thread only runs server tasks
+		reprioritize(new SharedTerrainExecutor(threadCount, () -> null), threadCount - 1);
+		reprioritize(new WorkStealingTerrainExecutor(threadCount, () -> null), threadCount);
+	}
+
+	/**
+	 * Occupies every worker so that queued tasks can be changed
+	 * and re-ranked before any of them run.
+	 */
+	private void reprioritize(TerrainExecutor executor, int renderThreadCount) throws InterruptedException {
+		final CountDownLatch blocked = new CountDownLatch(renderThreadCount);
+		final CountDownLatch release = new CountDownLatch(1);
+
+		for (int i = 0; i < renderThreadCount; ++i) {
+			executor.execute(new TerrainExecutorTask() {
+				@Override
+				public void run(TerrainRenderContext context) {
+					blocked.countDown();
+
+					try {
+						release.await();
+					} catch (final InterruptedException e) {
+						// NOOP
+					}
+				}
+
+				@Override
+				public int priority() {
+					return -1;
+				}
+			});
+		}
+
+		assert blocked.await(10, TimeUnit.SECONDS);
+
+		final int count = 1000;
+		final CountDownLatch latch = new CountDownLatch(count / 2);
+		final SyntheticTask[] tasks = new SyntheticTask[count];
+
+		for (int i = 0; i < count; ++i) {
+			tasks[i] = new SyntheticTask(i, 0, latch);
+			executor.execute(tasks[i]);
+		}
+
+		// reverse the order and make every other task obsolete
+		for (int i = 0; i < count; ++i) {
+			tasks[i].priority = count - i;
+			tasks[i].isObsolete = (i & 1) == 1;
+		}
+
+		executor.reprioritize();
+		release.countDown();
+		assert latch.await(10, TimeUnit.SECONDS);
+
+		for (int i = 0; i < count; ++i) {
+			assert tasks[i].runCount == (tasks[i].isObsolete ? 0 : 1);
+		}
+	}
+
+	@Test
+	@Disabled(Benchmark.DISABLED)
+	void benchmark() throws InterruptedException {
+		// warm up, then measure
+		run("dedicated", new DedicatedTerrainExecutor(threadCount, () -> null), false);
+		run("dedicated", new DedicatedTerrainExecutor(threadCount, () -> null), true);
+		run("shared", new SharedTerrainExecutor(threadCount, () -> null), false);
+		run("shared", new SharedTerrainExecutor(threadCount, () -> null), true);
+		run("work-stealing", new WorkStealingTerrainExecutor(threadCount, () -> null), false);
+		run("work-stealing", new WorkStealingTerrainExecutor(threadCount, () -> null), true);
+	}
+
+	/**
+	 * Submits tasks in frame-sized bursts, like the render thread does, and reports
+	 * time spent in execute() on the submitting thread (a proxy for queue contention),
+	 * time from submission to start, and overall throughput.
+	 */
+	private void run(String label, TerrainExecutor executor, boolean print) throws InterruptedException {
+		final Random r = new Random(42);
+		final CountDownLatch latch = new CountDownLatch(TASK_COUNT);
+		final SyntheticTask[] tasks = new SyntheticTask[TASK_COUNT];
+		final long[] submitNanos = new long[TASK_COUNT];
+
+		for (int i = 0; i < TASK_COUNT; ++i) {
+			tasks[i] = new SyntheticTask(r.nextInt(32 * 32), TASK_WORK_NANOS / 2 + r.nextInt((int) TASK_WORK_NANOS), latch);
+		}
+
+		final long start = System.nanoTime();
+
+		for (int i = 0; i < TASK_COUNT; ++i) {
+			final long submitStart = System.nanoTime();
+			tasks[i].submitTime = submitStart;
+			executor.execute(tasks[i]);
+			submitNanos[i] = System.nanoTime() - submitStart;
+
+			if (i % TASKS_PER_FRAME == TASKS_PER_FRAME - 1) {
+				Thread.sleep(1);
+			}
+		}
+
+		assert latch.await(60, TimeUnit.SECONDS);
+		final long elapsed = System.nanoTime() - start;
+
+		if (print) {
+			final long[] latency = new long[TASK_COUNT];
+
+			for (int i = 0; i < TASK_COUNT; ++i) {
+				latency[i] = tasks[i].startTime - tasks[i].submitTime;
+			}
+
+			Arrays.sort(latency);
+			Arrays.sort(submitNanos);
+
+			Benchmark.report("%-14s threads: %d  throughput: %,8d tasks/s  latency p50: %,9dns p90: %,9dns p99: %,11dns  execute() p50: %,6dns p99: %,8dns",
+					label, threadCount, TASK_COUNT * 1000000000L / elapsed,
+					percentile(latency, 50), percentile(latency, 90), percentile(latency, 99),
+					percentile(submitNanos, 50), percentile(submitNanos, 99));
+		}
+	}
+
+	private static long percentile(long[] sorted, int percent) {
+		return sorted[Math.min(sorted.length - 1, sorted.length * percent / 100)];
+	}
+
+	private static class SyntheticTask implements TerrainExecutorTask {
+		private int priority;
+		private boolean isObsolete;
+		private final long workNanos;
+		private final CountDownLatch latch;
+		private long submitTime;
+		private volatile long startTime;
+		private volatile int runCount;
+
+		SyntheticTask(int priority, long workNanos, CountDownLatch latch) {
+			this.priority = priority;
+			this.workNanos = workNanos;
+			this.latch = latch;
+		}
+
+		@Override
+		public void run(TerrainRenderContext context) {
+			startTime = System.nanoTime();
+			++runCount;
+			final long end = startTime + workNanos;
+
+			while (System.nanoTime() < end) {
+				Thread.onSpinWait();
+			}
+
+			latch.countDown();
+		}
+
+		@Override
+		public int priority() {
+			return priority;
+		}
+
+		@Override
+		public boolean cancelIfObsolete() {
+			return isObsolete;
+		}
+	}
+}
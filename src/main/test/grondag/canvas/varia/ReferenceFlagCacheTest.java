@@ -0,0 +1,89 @@
+/*
+ * Copyright © Contributing Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Additional copyright and licensing notices may apply for content that was
+ * included from other projects. For more information, see ATTRIBUTION.md.
+ */
+
+package grondag.canvas.varia;
+
+import java.util.HashMap;
+
+import org.junit.jupiter.api.Test;
+
+class ReferenceFlagCacheTest {
+	final HashMap<Object, Integer> calls = new HashMap<>();
+
+	@Test
+	void test() {
+		final Object[] keys = new Object[8];
+
+		for (int i = 0; i < keys.length; ++i) {
+			keys[i] = new Object();
+		}
+
+		final boolean[] flags = {true, false, false, true, false, true, true, false};
+		final ReferenceFlagCache<Object> cache = new ReferenceFlagCache<>(k -> {
+			calls.merge(k, 1, Integer::sum);
+			return flags[indexOf(keys, k)];
+		});
+
+		// runs of the same key, then keys in mixed order
+		for (int pass = 0; pass < 3; ++pass) {
+			for (int i = 0; i < keys.length; ++i) {
+				for (int j = 0; j < 4; ++j) {
+					assert cache.test(keys[i]) == flags[i];
+				}
+			}
+
+			for (int i = 0; i < keys.length * 4; ++i) {
+				final int k = (i * 5) % keys.length;
+				assert cache.test(keys[k]) == flags[k];
+			}
+		}
+
+		for (final Object k : keys) {
+			assert calls.get(k) == 1;
+		}
+
+		// cleared results are computed again, including the last key
+		flags[7] = true;
+		assert !cache.test(keys[7]);
+		cache.clear();
+		assert cache.test(keys[7]);
+		assert calls.get(keys[7]) == 2;
+
+		// keys are compared by identity
+		final ReferenceFlagCache<String> strings = new ReferenceFlagCache<>(s -> {
+			calls.merge(s, 1, Integer::sum);
+			return true;
+		});
+		final String a = new String("abcd");
+		final String b = new String("abcd");
+		assert strings.test(a) && strings.test(b) && strings.test(a);
+		assert calls.get("abcd") == 2;
+	}
+
+	private static int indexOf(Object[] keys, Object key) {
+		for (int i = 0; i < keys.length; ++i) {
+			if (keys[i] == key) {
+				return i;
+			}
+		}
+
+		throw new IllegalArgumentException();
+	}
+}